@@ -0,0 +1,130 @@
+package ch.epfl.rechor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate count of the recent occurrences of keys, used by StopIndexCache to compare the
+ * popularity of the queries (TinyLFU).
+ * The counts are stored in a count-min sketch of 4-bit counters, sixteen of them being packed in
+ * each long: each key has a counter in each of four rows, and its count is the smallest of them.
+ * Once the number of occurrences counted reaches ten times the number of keys followed, all the
+ * counters are halved, so that the counts reflect the recent occurrences.
+ * The counters are updated with atomic operations, so that the sketch can be used by several
+ * threads without locking.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+final class FrequencySketch {
+
+    /**
+     * The number of counters of a key, one per row.
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * The odd multipliers giving the counter of a key in each row.
+     */
+    private static final long[] SEEDS = {
+            0x9E37_79B9_7F4A_7C15L, 0xC2B2_AE3D_27D4_EB4FL,
+            0x1656_67B1_9E37_79F9L, 0xBF58_476D_1CE4_E5B9L};
+
+    /**
+     * The maximal value of a 4-bit counter.
+     */
+    private static final int MAX_COUNT = 0xF;
+
+    /**
+     * Mask keeping the three least significant bits of every counter of a long.
+     */
+    private static final long HALVING_MASK = 0x7777_7777_7777_7777L;
+
+    /**
+     * The number of occurrences counted per key followed before the counters are halved.
+     */
+    private static final int SAMPLE_SIZE_PER_KEY = 10;
+
+    /**
+     * The counters, sixteen per long.
+     */
+    private final AtomicLongArray table;
+
+    /**
+     * The number of occurrences counted after which the counters are halved.
+     */
+    private final int sampleSize;
+
+    /**
+     * The number of occurrences counted since the counters were last halved.
+     */
+    private final AtomicInteger additions;
+
+    /**
+     * Constructs a sketch in which all the counts are zero.
+     *
+     * @param keyCount the number of keys whose counts are to be compared, for instance the
+     *                 capacity of a cache
+     */
+    FrequencySketch(int keyCount) {
+        int length = Integer.highestOneBit(Math.max(keyCount, 1) - 1 | 1) << 1;
+        table = new AtomicLongArray(length);
+        sampleSize = SAMPLE_SIZE_PER_KEY * Math.max(keyCount, 1);
+        additions = new AtomicInteger();
+    }
+
+    /**
+     * Returns the index, in the table, of the counter of the key of the given hash in the given
+     * row, multiplied by four and added to the index of the counter in its long.
+     */
+    private int counter(int hash, int row) {
+        long mixed = (hash + SEEDS[row]) * SEEDS[row];
+        int spread = (int) (mixed >>> Integer.SIZE);
+        int tableIndex = spread >>> 4 & (table.length() - 1);
+        return tableIndex << 4 | spread & 0xF;
+    }
+
+    /**
+     * Counts one more occurrence of the key of the given hash.
+     *
+     * @param hash the hash of the key
+     */
+    void increment(int hash) {
+        for (int row = 0; row < DEPTH; row++) {
+            int counter = counter(hash, row);
+            int tableIndex = counter >>> 4;
+            int shift = (counter & 0xF) * 4;
+            long value;
+            do {
+                value = table.get(tableIndex);
+            } while ((value >>> shift & MAX_COUNT) != MAX_COUNT
+                    && !table.compareAndSet(tableIndex, value, value + (1L << shift)));
+        }
+        if (additions.incrementAndGet() == sampleSize) {
+            halve();
+        }
+    }
+
+    private void halve() {
+        for (int i = 0; i < table.length(); i++) {
+            table.getAndUpdate(i, value -> value >>> 1 & HALVING_MASK);
+        }
+        additions.addAndGet(-sampleSize / 2);
+    }
+
+    /**
+     * Returns the estimated number of recent occurrences of the key of the given hash.
+     *
+     * @param hash the hash of the key
+     * @return the estimated number of occurrences, at most 15
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            int counter = counter(hash, row);
+            long value = table.get(counter >>> 4);
+            frequency = Math.min(frequency, (int) (value >>> (counter & 0xF) * 4 & MAX_COUNT));
+        }
+        return frequency;
+    }
+}
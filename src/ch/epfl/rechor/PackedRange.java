@@ -3,6 +3,14 @@ package ch.epfl.rechor;
 /**
  * Utility class used to work with intervals, creating intervals,
  * as well as extracting the data out of an interval.
+ * <p>
+ * An interval is packed in an int, its start in the 24 most significant bits and its length
+ * in the 8 least significant ones, so that it starts before 2<sup>24</sup> and holds at most
+ * 255 integers. These limits are those of the intervals of transfers arriving at a station,
+ * and are not lifted by the wide formats, which only widen the identifiers and the payloads:
+ * a timetable has at most 2<sup>24</sup> transfers, and at most 255 of them arrive at each
+ * station, GtfsCompiler keeping the shortest ones. Packing a larger interval fails rather than
+ * overflowing.
  *
  * @author Matteo Lazzari (397247)
  * @author Pamphil Nedev (380400)
@@ -28,7 +36,7 @@ public final class PackedRange {
      * @param endExclusive the integer marking the end of the interval (excluded)
      * @throws IllegalArgumentException if:
      *      - startInclusive cannot be represented with 24 bits
-     *      - representing values in the interval takes more than 8 bits
+     *      - the interval holds more than 255 integers, or ends before it starts
      * @return the integer containing the information about the interval
      */
     public static int pack(int startInclusive, int endExclusive) {
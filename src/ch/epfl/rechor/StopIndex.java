@@ -1,25 +1,117 @@
 package ch.epfl.rechor;
 
+import ch.epfl.rechor.timetable.Connections;
+import ch.epfl.rechor.timetable.StationAliases;
+import ch.epfl.rechor.timetable.Stations;
+import ch.epfl.rechor.timetable.TimeTable;
+
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.IntUnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
  * This class represents an index of stop names in which it's possible to sort the stops according
  * to the query that was given.
+ * The names are indexed by the trigrams of their folded version (see fold), so that a query only
+ * scores the names containing all the trigrams of its folded sub-queries, and by the words of
+ * their folded version, so that a query whose sub-queries are made of letters first scores the
+ * names in which they all start a word, which have the highest scores, and then only the names
+ * short enough for their score to be among the best ones. The other queries also score the
+ * names by increasing length, until the score of the shorter remaining names cannot be among
+ * the best ones. The queries that no name matches are answered with the names in which every
+ * word of the query starts a word up to a few typos.
  *
  * @author Matteo Lazzari (397247)
  * @author Pamphil Nedev (380400)
  */
 public final class StopIndex {
-    private final List<String> indexedStopNames;
-    private final Map<String, String> alternativeNamesMap;
+
+    /**
+     * The stop names followed by the alternative names, in the order in which they are scored.
+     */
+    private final List<String> allNames;
+
+    /**
+     * The main name of each station, in the order of the stations.
+     */
+    private final List<String> stationNames;
+    private final TrigramIndex trigramIndex;
+    private final WordTrie wordTrie;
+
+    /**
+     * The indexes of all the names, sorted by increasing length.
+     */
+    private final IntBuffer namesByLength;
+
+    /**
+     * The station of each name, a main name and its alternative names having the same station.
+     */
+    private final IntBuffer nameStations;
+
+    /**
+     * The importance of the station of each name, and the greatest of them.
+     */
+    private final ShortBuffer nameImportances;
+    private final int maxImportance;
+
     private final static int BEGINNING_OCCURRENCE_FACTOR = 4;
     private final static int ENDING_OCCURRENCE_FACTOR = 2;
 
+    /**
+     * The score of a name that does not match a query.
+     */
+    private final static int NO_MATCH = -1;
+
+    /**
+     * The importance of a station per doubling of its number of departures, the greatest
+     * importance, and the factor by which the score of a name is multiplied in addition to the
+     * importance of its station, so that the most important stations have scores less than
+     * 1.5 times greater than the ones they would have without departures.
+     */
+    private final static int IMPORTANCE_PER_DOUBLING = 8;
+    private final static int MAX_IMPORTANCE = 0x7F;
+    private final static int IMPORTANCE_BASE = 0x100;
+
+    /**
+     * The number of names from which they are scored in parallel.
+     */
+    private final static int PARALLEL_SCORING_THRESHOLD = 4096;
+
+    /**
+     * The number of names from which they are scored by increasing length, as long as they can
+     * be among the best ones, and the number of names scored at once before checking it first.
+     */
+    private final static int BOUNDED_SCORING_THRESHOLD = 1024;
+    private final static int FIRST_BOUNDED_BLOCK_LENGTH = 256;
+
     private static final Pattern SPACE_PATTERN = Pattern.compile(" ");
+    private static final Pattern LETTERS_PATTERN = Pattern.compile("\\P{L}+");
+
+    /**
+     * The German transliteration of the vowels with an umlaut, folded, such as "ue" for "ü".
+     */
+    private static final Pattern UMLAUT_TRANSLITERATION = Pattern.compile("([aou])e");
+
+    /**
+     * The minimal lengths of the words of a query that can have one and two typos.
+     */
+    private final static int ONE_TYPO_LENGTH = 4;
+    private final static int TWO_TYPOS_LENGTH = 8;
+
+    /**
+     * The total number of typos and the length from which the names nearly matching a query are
+     * no longer distinguished.
+     */
+    private final static int MAX_NEAR_DISTANCE = 0xFF;
+    private final static int MAX_NEAR_LENGTH = 0xFFFF;
     private static final Pattern SPLITTING_PATTERN = Pattern.compile("[aeiouc]");
 
     private static final Map<String, String> CHAR_REPLACEMENT =
@@ -27,17 +119,268 @@ public final class StopIndex {
                     "[eéèêë]", "i", "[iîïìí]", "o", "[oôöòó]",
                     "u", "[uûùü]", "c", "[cç]"));
 
-    private record StopScores(String stopName, int score) {}
+    /**
+     * The letter to which each character of the Latin-1 block is folded, the accented letters
+     * of CHAR_REPLACEMENT being folded to the letter they replace.
+     */
+    private static final char[] LATIN_1_FOLDING = latin1Folding();
+
+    /**
+     * The lower case of the upper case of each character of the Latin-1 block, to which the
+     * case-insensitive patterns compare the characters.
+     */
+    private static final char[] LATIN_1_LOWER_CASE = latin1LowerCase();
+
+    /**
+     * The result of a search, with the indexes of all the names matching the query, in
+     * increasing order, or null if they were not all scored.
+     */
+    private record Search(List<String> stops, int[] matchingNameIds) {}
 
     /**
-     * Builds an index ready for auto-completion.
+     * Builds an index ready for auto-completion, in which all the stations are equally important.
      *
      * @param stopName list of the stop's names to index
      * @param map      map associating the alternative stop's names to their main one's
      */
     public StopIndex(List<String> stopName, Map<String, String> map) {
-        indexedStopNames = stopName;
-        alternativeNamesMap = map;
+        this(stopName, map, new short[stopName.size()]);
+    }
+
+    /**
+     * Builds an index ready for auto-completion, in which the score of each stop matching a
+     * query is multiplied by a factor growing with the importance of its station, from 1 for
+     * an importance of 0 to almost 1.5 for an importance of 127, so that an important station
+     * can outrank a stop matching the query better; the importances are for instance computed
+     * by stationImportances, the importance of a station being the one of its main name.
+     *
+     * @param stopName           list of the stop's names to index
+     * @param map                map associating the alternative stop's names to their main one's
+     * @param stationImportances the importance of the station of each stop's name, between 0
+     *                           and 127, a stop's name absent from the map being a main name
+     * @throws IllegalArgumentException if there is not one importance per stop's name, or if an
+     * importance is not between 0 and 127
+     */
+    public StopIndex(List<String> stopName, Map<String, String> map, short[] stationImportances) {
+        Preconditions.checkArgument(stationImportances.length == stopName.size());
+        allNames = Stream.concat(stopName.stream(), map.keySet().stream()).toList();
+        List<String> foldedNames = allNames.stream().map(StopIndex::fold).toList();
+        trigramIndex = new TrigramIndex(foldedNames);
+        wordTrie = new WordTrie(foldedNames);
+        namesByLength = IntBuffer.wrap(IntStream.range(0, allNames.size())
+                .boxed()
+                .sorted(Comparator.comparingInt(nameId -> allNames.get(nameId).length()))
+                .mapToInt(Integer::intValue)
+                .toArray());
+
+        Map<String, Integer> stationIds = new LinkedHashMap<>();
+        nameStations = IntBuffer.wrap(allNames.stream()
+                .mapToInt(name -> stationIds.computeIfAbsent(map.getOrDefault(name, name),
+                        stationName -> stationIds.size()))
+                .toArray());
+        stationNames = List.copyOf(stationIds.keySet());
+
+        short[] importances = new short[stationNames.size()];
+        for (int i = 0; i < stationImportances.length; i++) {
+            Preconditions.checkArgument(stationImportances[i] >= 0
+                    && stationImportances[i] <= MAX_IMPORTANCE);
+            int station = nameStations.get(i);
+            importances[station] = (short) Math.max(importances[station], stationImportances[i]);
+        }
+        short[] nameImportances = new short[allNames.size()];
+        for (int nameId = 0; nameId < nameImportances.length; nameId++) {
+            nameImportances[nameId] = importances[nameStations.get(nameId)];
+        }
+        this.nameImportances = ShortBuffer.wrap(nameImportances);
+        maxImportance = maxImportance(this.nameImportances);
+    }
+
+    /**
+     * Reads an index from the sections of a snapshot, as written by writeTo.
+     *
+     * @param reader the reader of the sections of the snapshot
+     */
+    StopIndex(StopIndexSnapshot.Reader reader) {
+        allNames = reader.nextStrings();
+        stationNames = reader.nextStrings();
+        trigramIndex = new TrigramIndex(reader);
+        wordTrie = new WordTrie(reader);
+        namesByLength = reader.nextInts();
+        nameStations = reader.nextInts();
+        nameImportances = reader.nextShorts();
+        maxImportance = maxImportance(nameImportances);
+    }
+
+    private static int maxImportance(ShortBuffer nameImportances) {
+        int maxImportance = 0;
+        for (int i = 0; i < nameImportances.limit(); i++) {
+            maxImportance = Math.max(maxImportance, nameImportances.get(i));
+        }
+        return maxImportance;
+    }
+
+    /**
+     * Writes the index as sections of a snapshot.
+     *
+     * @param writer the writer of the sections of the snapshot
+     */
+    void writeTo(StopIndexSnapshot.Writer writer) {
+        writer.add(allNames);
+        writer.add(stationNames);
+        trigramIndex.writeTo(writer);
+        wordTrie.writeTo(writer);
+        writer.add(namesByLength);
+        writer.add(nameStations);
+        writer.add(nameImportances);
+    }
+
+    /**
+     * Builds the index of the names of the stations of the given timetable, whose aliases are
+     * the alternative names.
+     *
+     * @param timeTable the timetable whose stations are indexed
+     * @return the index of the stations of the timetable
+     */
+    public static StopIndex of(TimeTable timeTable) {
+        return of(timeTable, new short[timeTable.stations().size()]);
+    }
+
+    /**
+     * Builds the index of the names of the stations of the given timetable, whose aliases are
+     * the alternative names, the stations being ranked by the given importances.
+     *
+     * @param timeTable          the timetable whose stations are indexed
+     * @param stationImportances the importance of each station of the timetable, for instance
+     *                           computed by stationImportances
+     * @return the index of the stations of the timetable
+     * @throws IllegalArgumentException if there is not one importance per station, or if an
+     * importance is not between 0 and 127
+     */
+    public static StopIndex of(TimeTable timeTable, short[] stationImportances) {
+        Stations stations = timeTable.stations();
+        StationAliases stationAliases = timeTable.stationAliases();
+
+        List<String> stopNames = new ArrayList<>();
+        for (int i = 0; i < stations.size(); i++) {
+            stopNames.add(stations.name(i));
+        }
+
+        Map<String, String> alternativeStopNamesTable = new HashMap<>();
+        for (int i = 0; i < stationAliases.size(); i++) {
+            alternativeStopNamesTable.put(stationAliases.alias(i), stationAliases.stationName(i));
+        }
+        return new StopIndex(stopNames, alternativeStopNamesTable, stationImportances);
+    }
+
+    /**
+     * Computes the importance of each station of the given timetable out of its number of
+     * departures on the given date: the importance grows by 8 each time the number of
+     * departures doubles, from 0 for a station without departures, and is at most 127.
+     *
+     * @param timeTable the timetable whose stations are ranked
+     * @param date      the date whose departures are counted, for instance a typical weekday
+     * @return the importance of each station, in the order of the stations
+     */
+    public static short[] stationImportances(TimeTable timeTable, LocalDate date) {
+        return importancesOf(departuresOn(timeTable, date));
+    }
+
+    /**
+     * Computes the importance of each station of the given timetable out of its greatest
+     * number of departures on one of the given dates, as stationImportances does for a single
+     * date, the dates whose data cannot be read being ignored, so that the importances are
+     * derived from the files of the timetable only, whatever the current date.
+     *
+     * @param timeTable the timetable whose stations are ranked
+     * @param dates     the dates whose departures are counted, for instance the dates of the
+     *                  directories of day of a FileTimeTable
+     * @return the importance of each station, in the order of the stations, all 0 if none of
+     * the dates can be read
+     */
+    public static short[] stationImportances(TimeTable timeTable, List<LocalDate> dates) {
+        int[] maxDepartures = new int[timeTable.stations().size()];
+        for (LocalDate date : dates) {
+            int[] departures;
+            try {
+                departures = departuresOn(timeTable, date);
+            } catch (UncheckedIOException e) {
+                continue;
+            }
+            for (int i = 0; i < departures.length; i++) {
+                maxDepartures[i] = Math.max(maxDepartures[i], departures[i]);
+            }
+        }
+        return importancesOf(maxDepartures);
+    }
+
+    private static int[] departuresOn(TimeTable timeTable, LocalDate date) {
+        int[] departures = new int[timeTable.stations().size()];
+        Connections connections = timeTable.connectionsFor(date);
+        for (int i = 0; i < connections.size(); i++) {
+            departures[timeTable.stationId(connections.depStopId(i))]++;
+        }
+        return departures;
+    }
+
+    private static short[] importancesOf(int[] departures) {
+        short[] importances = new short[departures.length];
+        for (int i = 0; i < departures.length; i++) {
+            double doublings = Math.log1p(departures[i]) / Math.log(2);
+            importances[i] = (short) Math.min(MAX_IMPORTANCE,
+                    Math.round(IMPORTANCE_PER_DOUBLING * doublings));
+        }
+        return importances;
+    }
+
+    private static char[] latin1Folding() {
+        char[] folding = new char[1 << Byte.SIZE];
+        for (int i = 0; i < folding.length; i++) {
+            folding[i] = (char) i;
+        }
+        CHAR_REPLACEMENT.forEach((letter, letterClass) -> {
+            for (char c : letterClass.toCharArray()) {
+                if (Character.isLetter(c)) {
+                    folding[c] = letter.charAt(0);
+                }
+            }
+        });
+        return folding;
+    }
+
+    private static char[] latin1LowerCase() {
+        char[] lowerCase = new char[1 << Byte.SIZE];
+        for (char c = 0; c < lowerCase.length; c++) {
+            lowerCase[c] = Character.toLowerCase(Character.toUpperCase(c));
+        }
+        return lowerCase;
+    }
+
+    /**
+     * Returns the lower case of the upper case of the given character, as the case-insensitive
+     * patterns compare it.
+     */
+    private static char lowerCase(char c) {
+        return c < LATIN_1_LOWER_CASE.length ? LATIN_1_LOWER_CASE[c]
+                : Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Folds the given name, by lowering its case as case-insensitive patterns compare characters,
+     * and replacing the accented letters of CHAR_REPLACEMENT by the letter they replace.
+     * The characters matched by a sub-query pattern are folded to the folded sub-query, so that
+     * the names matching a pattern contain its folded sub-query.
+     *
+     * @param name the name to fold
+     * @return the folded name
+     */
+    static String fold(String name) {
+        StringBuilder folded = new StringBuilder(name.length());
+        name.codePoints().forEach(codePoint -> {
+            int lowerCase = Character.toLowerCase(Character.toUpperCase(codePoint));
+            folded.appendCodePoint(lowerCase < LATIN_1_FOLDING.length
+                    ? LATIN_1_FOLDING[lowerCase] : lowerCase);
+        });
+        return folded.toString();
     }
 
     /**
@@ -48,63 +391,405 @@ public final class StopIndex {
      * @return list of the stop's names corresponding to the query
      */
     public List<String> stopsMatching(String query, int maxNumberOfStops) {
+        return search(query, maxNumberOfStops, null, false).stops();
+    }
+
+    /**
+     * Returns a new session of this index, for the successive queries of a single text field.
+     *
+     * @return a new session, without previous query
+     */
+    public Session session() {
+        return new Session();
+    }
+
+    /**
+     * Searches the stops matching the given query, among the given names if they are not null,
+     * or the stops nearly matching it if none matches it, recording the indexes of all the
+     * names matching it if requested.
+     */
+    private Search search(String query, int maxNumberOfStops, int[] nameIds,
+                          boolean recordsMatches) {
+        Preconditions.checkArgument(maxNumberOfStops >= 0);
+        Search search = exactSearch(query, maxNumberOfStops, nameIds, recordsMatches);
+        if (!search.stops().isEmpty() || maxNumberOfStops == 0) {
+            return search;
+        }
+        return new Search(stops(nearStations(query, maxNumberOfStops)),
+                search.matchingNameIds());
+    }
+
+    /**
+     * Selects the best stations of the names in which every word of the query, folded, starts a
+     * word up to a few typos, the names with the fewest typos, then the ones of the most important
+     * stations, and then the shortest ones, being the best ones.
+     * The words of the query are its sequences of letters, and a word being in German, a vowel
+     * followed by an e (as in "Zuerich") can be the same vowel with an umlaut.
+     */
+    private TopStations nearStations(String query, int maxNumberOfStops) {
+        TopStations topStations = new TopStations(maxNumberOfStops, nameStations, false);
+        long[] nearNames = null;
+        for (String word : LETTERS_PATTERN.split(fold(query))) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            int maxDistance = word.length() >= TWO_TYPOS_LENGTH ? 2
+                    : word.length() >= ONE_TYPO_LENGTH ? 1 : 0;
+            long[] wordNames = wordTrie.namesWithWordStartingNear(word, maxDistance);
+            String transliteratedWord = UMLAUT_TRANSLITERATION.matcher(word).replaceAll("$1");
+            if (!transliteratedWord.equals(word)) {
+                wordNames = nearest(wordNames,
+                        wordTrie.namesWithWordStartingNear(transliteratedWord, maxDistance));
+            }
+            nearNames = nearNames == null ? wordNames : withSummedDistances(nearNames, wordNames);
+        }
+        if (nearNames == null) {
+            return topStations;
+        }
+
+        for (long nearName : nearNames) {
+            int nameId = (int) (nearName >>> Integer.SIZE);
+            int distance = (int) nearName;
+            int length = Math.min(allNames.get(nameId).length(), MAX_NEAR_LENGTH);
+            int closeness = (MAX_NEAR_DISTANCE - Math.min(distance, MAX_NEAR_DISTANCE))
+                    * (MAX_IMPORTANCE + 1) + nameImportances.get(nameId);
+            topStations.add(nameId, closeness * (MAX_NEAR_LENGTH + 1) + MAX_NEAR_LENGTH - length);
+        }
+        return topStations;
+    }
+
+    /**
+     * Returns the names of both given sorted arrays of names and distances, with their smallest
+     * distance.
+     */
+    private static long[] nearest(long[] firstNames, long[] secondNames) {
+        long[] names = new long[firstNames.length + secondNames.length];
+        System.arraycopy(firstNames, 0, names, 0, firstNames.length);
+        System.arraycopy(secondNames, 0, names, firstNames.length, secondNames.length);
+        Arrays.sort(names);
+        int count = 0;
+        for (long name : names) {
+            if (count == 0 || name >>> Integer.SIZE != names[count - 1] >>> Integer.SIZE) {
+                names[count++] = name;
+            }
+        }
+        return Arrays.copyOf(names, count);
+    }
+
+    /**
+     * Returns the names of both given sorted arrays of names and distances, with the sum of
+     * their distances.
+     */
+    private static long[] withSummedDistances(long[] firstNames, long[] secondNames) {
+        long[] names = new long[Math.min(firstNames.length, secondNames.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < firstNames.length && j < secondNames.length; ) {
+            long firstNameId = firstNames[i] >>> Integer.SIZE;
+            long secondNameId = secondNames[j] >>> Integer.SIZE;
+            if (firstNameId < secondNameId) {
+                i++;
+            } else if (firstNameId > secondNameId) {
+                j++;
+            } else {
+                names[count++] = firstNames[i] + (int) secondNames[j];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(names, count);
+    }
+
+    /**
+     * Searches the stops matching the given query, among the given names if they are not null,
+     * recording the indexes of all the names matching it if requested and if they are all
+     * scored.
+     */
+    private Search exactSearch(String query, int maxNumberOfStops, int[] nameIds,
+                               boolean recordsMatches) {
 
         final String[] subQueries = SPACE_PATTERN.split(query);
-        final List<Pattern> subQueriesPatterns = new ArrayList<>();
+        final List<SubQuery> subQueriesPatterns = new ArrayList<>();
+        final List<String> foldedSubQueries = new ArrayList<>();
 
         for (String subQuery : subQueries) {
-            subQueriesPatterns.add(pattern(subQuery));
-        }
-
-        Stream <String> originalStopsStream = indexedStopNames.stream();
-        Stream <String> aliaseNamesStream = alternativeNamesMap.keySet().stream();
-        List <String> matchingStops = Stream.concat(originalStopsStream, aliaseNamesStream)
-                .map(stopName -> {
-                    return stopScore(subQueriesPatterns, stopName);
-
-                })
-                .filter(Objects::nonNull)
-                .sorted((firstPair, secondPair) ->
-                        Integer.compare(secondPair.score(), firstPair.score()))
-                .map((scorePair) -> scorePair.stopName)
-                .map((stopName) -> alternativeNamesMap.getOrDefault(stopName, stopName))
-                .distinct()
-                .limit(maxNumberOfStops)
-                .collect(Collectors.toList());
+            subQueriesPatterns.add(SubQuery.of(subQuery));
+            foldedSubQueries.add(fold(subQuery));
+        }
+
+        // The names in which every sub-query starts a word are scored first, and then the other
+        // ones, each group by increasing length while its names can still be among the best
+        // ones. Recording all the matching names requires scoring all of them, which is only
+        // avoided when a sub-query is shorter than the trigrams, which then barely restrict the
+        // names.
+        int[] candidates = trigramIndex.candidates(foldedSubQueries);
+        if (nameIds != null) {
+            candidates = intersection(candidates, nameIds);
+        }
+        boolean shortSubQuery = foldedSubQueries.stream().anyMatch(foldedSubQuery ->
+                !foldedSubQuery.isEmpty()
+                        && foldedSubQuery.length() < TrigramIndex.TRIGRAM_LENGTH);
+        int[] wordStartCandidates = shortSubQuery || !recordsMatches
+                ? wordStartCandidates(foldedSubQueries)
+                : null;
+        if (wordStartCandidates != null) {
+            wordStartCandidates = intersection(wordStartCandidates, candidates);
+        }
+        if (recordsMatches && (wordStartCandidates == null
+                || wordStartCandidates.length == candidates.length)) {
+            return allMatches(candidates, subQueriesPatterns, maxNumberOfStops);
+        }
+        TopStations topStations = new TopStations(maxNumberOfStops, nameStations, false);
+        if (wordStartCandidates != null) {
+            int[] wholeWordCandidates = intersection(wholeWordCandidates(foldedSubQueries),
+                    wordStartCandidates);
+            addBoundedScores(topStations, wholeWordCandidates, subQueriesPatterns,
+                    maxNumberOfStops, length -> maxScore(subQueriesPatterns, length));
+            addBoundedScores(topStations, difference(wordStartCandidates, wholeWordCandidates),
+                    subQueriesPatterns, maxNumberOfStops, length -> maxScoreWithOneFactor(
+                            foldedSubQueries, length, BEGINNING_OCCURRENCE_FACTOR));
+        }
+        if (recordsMatches && topStations.minimalScore() < 0) {
+            return allMatches(candidates, subQueriesPatterns, maxNumberOfStops);
+        }
+
+        int[] otherCandidates = wordStartCandidates != null
+                ? difference(candidates, wordStartCandidates) : candidates;
+        int[] finalWordStartCandidates = wordStartCandidates;
+        addBoundedScores(topStations, otherCandidates, subQueriesPatterns, maxNumberOfStops,
+                length -> finalWordStartCandidates != null
+                        ? maxScoreWithOneFactor(foldedSubQueries, length,
+                                ENDING_OCCURRENCE_FACTOR)
+                        : maxScore(subQueriesPatterns, length));
+        return new Search(stops(topStations), null);
+    }
+
+    /**
+     * Adds the given names to the given selection by increasing length, as long as their
+     * highest possible score, given by maxScores out of their length, can make them be among
+     * the best ones. The names are scored by blocks, whose length doubles from one to the next
+     * so that the few names enough to fill the selection are scored first, and so that the
+     * large blocks are scored in parallel; a few names are simply all scored.
+     */
+    private void addBoundedScores(TopStations topStations, int[] nameIds,
+                                  List<SubQuery> patternList, int maxNumberOfStops,
+                                  IntUnaryOperator maxScores) {
+        if (nameIds.length <= BOUNDED_SCORING_THRESHOLD) {
+            topStations.merge(scores(nameIds, patternList, maxNumberOfStops, false));
+            return;
+        }
+        BitSet remainingNames = new BitSet(allNames.size());
+        for (int nameId : nameIds) {
+            remainingNames.set(nameId);
+        }
+        int[] block = new int[FIRST_BOUNDED_BLOCK_LENGTH];
+        int count = 0;
+        // The names being sorted by length, the highest score is computed once per length.
+        int length = -1;
+        long maxScore = 0;
+        for (int i = 0; i < namesByLength.limit(); i++) {
+            int nameId = namesByLength.get(i);
+            if (!remainingNames.get(nameId)) {
+                continue;
+            }
+            if (count == block.length) {
+                topStations.merge(scores(block, patternList, maxNumberOfStops, false));
+                block = new int[2 * block.length];
+                count = 0;
+            }
+            if (allNames.get(nameId).length() != length) {
+                length = allNames.get(nameId).length();
+                maxScore = (long) maxScores.applyAsInt(length) * (IMPORTANCE_BASE + maxImportance);
+            }
+            int minimalScore = topStations.minimalScore();
+            if (minimalScore >= 0 && maxScore < minimalScore) {
+                break;
+            }
+            block[count++] = nameId;
+        }
+        topStations.merge(scores(Arrays.copyOf(block, count), patternList, maxNumberOfStops,
+                false));
+    }
 
-        return matchingStops;
+    /**
+     * Scores all the given names, keeping the names matching the patterns, if any.
+     */
+    private Search allMatches(int[] nameIds, List<SubQuery> patternList, int maxNumberOfStops) {
+        TopStations topStations = scores(nameIds, patternList, maxNumberOfStops, true);
+        return new Search(stops(topStations), patternList.isEmpty() ? null
+                : topStations.matchingNameIds());
+    }
+
+    /**
+     * Returns the names in which every non-empty folded sub-query starts a word, or null if one
+     * of them is not made of letters only.
+     */
+    private int[] wordStartCandidates(List<String> foldedSubQueries) {
+        int[] candidates = null;
+        for (String foldedSubQuery : foldedSubQueries) {
+            if (foldedSubQuery.isEmpty()) {
+                continue;
+            }
+            if (!WordTrie.isWordPrefix(foldedSubQuery)) {
+                return null;
+            }
+            int[] names = wordTrie.namesWithWordStartingWith(foldedSubQuery);
+            candidates = candidates == null ? names : intersection(candidates, names);
+        }
+        return candidates != null ? candidates : IntStream.range(0, allNames.size()).toArray();
+    }
+
+    /**
+     * Returns the names in which every non-empty folded sub-query, made of letters, is a word.
+     */
+    private int[] wholeWordCandidates(List<String> foldedSubQueries) {
+        int[] candidates = null;
+        for (String foldedSubQuery : foldedSubQueries) {
+            if (!foldedSubQuery.isEmpty()) {
+                int[] names = wordTrie.namesWithWord(foldedSubQuery);
+                candidates = candidates == null ? names : intersection(candidates, names);
+            }
+        }
+        return candidates != null ? candidates : IntStream.range(0, allNames.size()).toArray();
+    }
+
+    /**
+     * Returns the elements of both given sorted arrays, in increasing order.
+     */
+    private static int[] intersection(int[] firstIds, int[] secondIds) {
+        int[] intersection = new int[Math.min(firstIds.length, secondIds.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < firstIds.length && j < secondIds.length; ) {
+            if (firstIds[i] < secondIds[j]) {
+                i++;
+            } else if (firstIds[i] > secondIds[j]) {
+                j++;
+            } else {
+                intersection[count++] = firstIds[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(intersection, count);
+    }
+
+    /**
+     * Returns the elements of the first given sorted array that are not in the second one, in
+     * increasing order.
+     */
+    private static int[] difference(int[] firstIds, int[] secondIds) {
+        int[] difference = new int[firstIds.length];
+        int count = 0;
+        for (int i = 0, j = 0; i < firstIds.length; i++) {
+            while (j < secondIds.length && secondIds[j] < firstIds[i]) {
+                j++;
+            }
+            if (j == secondIds.length || secondIds[j] != firstIds[i]) {
+                difference[count++] = firstIds[i];
+            }
+        }
+        return Arrays.copyOf(difference, count);
+    }
+
+    /**
+     * Returns the highest score that a name of the given length can have.
+     */
+    private static int maxScore(List<SubQuery> patternList, int length) {
+        int maxScore = 0;
+        for (SubQuery subQuery : patternList) {
+            maxScore += (int) ((double) subQuery.subQuery().length() / length * 100)
+                    * BEGINNING_OCCURRENCE_FACTOR * ENDING_OCCURRENCE_FACTOR;
+        }
+        return maxScore;
+    }
+
+    /**
+     * Returns the highest score that a name of the given length can have if the occurrence of
+     * one of the non-empty sub-queries is only multiplied by the given factor, as when it does
+     * not start a word (the ending factor at most) or is not a whole word (the beginning factor
+     * at most, the sub-queries being made of letters).
+     */
+    private static int maxScoreWithOneFactor(List<String> foldedSubQueries, int length,
+                                             int factor) {
+        int maxScore = 0;
+        int minSubQueryScore = Integer.MAX_VALUE;
+        for (String foldedSubQuery : foldedSubQueries) {
+            if (foldedSubQuery.isEmpty()) {
+                continue;
+            }
+            int subQueryScore = (int) ((double) foldedSubQuery.length() / length * 100);
+            maxScore += subQueryScore * BEGINNING_OCCURRENCE_FACTOR * ENDING_OCCURRENCE_FACTOR;
+            minSubQueryScore = Math.min(minSubQueryScore, subQueryScore);
+        }
+        return minSubQueryScore == Integer.MAX_VALUE ? maxScore
+                : maxScore - minSubQueryScore
+                * (BEGINNING_OCCURRENCE_FACTOR * ENDING_OCCURRENCE_FACTOR - factor);
+    }
+
+    /**
+     * Returns the given score of the given name, multiplied by the importance of its station.
+     */
+    private int boostedScore(int nameId, int score) {
+        return score * (IMPORTANCE_BASE + nameImportances.get(nameId));
+    }
+
+    /**
+     * Scores the given names, in parallel if they are numerous, selecting the given number of
+     * best stations.
+     */
+    private TopStations scores(int[] nameIds, List<SubQuery> patternList, int maxNumberOfStops,
+                               boolean recordsMatches) {
+        IntStream nameIdsStream = Arrays.stream(nameIds);
+        if (nameIds.length >= PARALLEL_SCORING_THRESHOLD) {
+            nameIdsStream = nameIdsStream.parallel();
+        }
+        return nameIdsStream.collect(
+                () -> new TopStations(maxNumberOfStops, nameStations, recordsMatches),
+                (topStations, nameId) -> {
+                    int score = stopScore(patternList, allNames.get(nameId));
+                    if (score != NO_MATCH) {
+                        topStations.add(nameId, boostedScore(nameId, score));
+                    }
+                },
+                TopStations::merge);
+    }
+
+    private List<String> stops(TopStations topStations) {
+        return Arrays.stream(topStations.bestNameIds())
+                .mapToObj(nameId -> stationNames.get(nameStations.get(nameId)))
+                .collect(Collectors.toList());
     }
 
     /**
      * Computes a relevance score for the stop name against every pattern in the pattern list.
      *
-     * @param patternList compiled sub-query patterns
+     * @param patternList compiled sub-queries
      * @param stopName    the stop name being scored
-     * @return a stop score record, or null if no match
+     * @return the score of the stop name, or NO_MATCH if no match
      */
-    private static StopScores stopScore (List <Pattern> patternList, String stopName) {
+    private static int stopScore (List <SubQuery> patternList, String stopName) {
 
         int totalScore = 0;
 
-        for (Pattern pattern : patternList) {
-            Matcher matcher = pattern.matcher(stopName);
-            if (matcher.find()) {
-                int sequenceFound = matcher.end() - matcher.start();
+        for (SubQuery subQuery : patternList) {
+            int start = subQuery.indexIn(stopName);
+            if (start >= 0) {
+                int end = start + subQuery.subQuery().length();
+                int sequenceFound = end - start;
                 int currentSubQueryScore = (int) ((double) sequenceFound / stopName.length() * 100);
-                if (matcher.start() == 0 || !Character.isLetter(stopName.charAt(matcher.start() - 1))) {
+                if (start == 0 || !Character.isLetter(stopName.charAt(start - 1))) {
                     currentSubQueryScore *= BEGINNING_OCCURRENCE_FACTOR;
                 }
-                if (matcher.end() == stopName.length() ||
-                        !Character.isLetter(stopName.charAt(matcher.end()))) {
+                if (end == stopName.length() ||
+                        !Character.isLetter(stopName.charAt(end))) {
                     currentSubQueryScore *= ENDING_OCCURRENCE_FACTOR;
                 }
                 totalScore += currentSubQueryScore;
             }
             else {
-                return null;
+                return NO_MATCH;
             }
         }
-        return patternList.isEmpty() ? null : new StopScores(stopName, totalScore);
+        return patternList.isEmpty() ? NO_MATCH : totalScore;
     }
 
     /**
@@ -128,4 +813,109 @@ public final class StopIndex {
                 Pattern.compile(toBeCompiled,
                         Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
     }
-}
\ No newline at end of file
+
+    /**
+     * A sub-query, matched against the names at the same position as its pattern, but by
+     * comparing their characters directly: the letters of CHAR_REPLACEMENT also match their
+     * accented versions, and if the sub-query is case-insensitive, the characters are compared
+     * after lowering their case as case-insensitive patterns do.
+     * The sub-queries containing surrogate characters are matched with their pattern.
+     *
+     * @param subQuery the sub-query
+     * @param caseSensitive whether the sub-query is case-sensitive, as its pattern
+     * @param pattern the pattern of the sub-query if it contains surrogate characters, or null
+     * @param replacedChars whether each character of the sub-query is one of CHAR_REPLACEMENT,
+     *                      matching its accented versions, computed once per query
+     * @param lowerCaseChars the lower case of each character of the sub-query, as lowerCase
+     *                       gives it
+     */
+    private record SubQuery(String subQuery, boolean caseSensitive, Pattern pattern,
+                            boolean[] replacedChars, char[] lowerCaseChars) {
+
+        static SubQuery of(String subQuery) {
+            boolean surrogates = subQuery.length() != subQuery.codePointCount(0,
+                    subQuery.length());
+            boolean[] replacedChars = new boolean[subQuery.length()];
+            char[] lowerCaseChars = new char[subQuery.length()];
+            for (int i = 0; i < subQuery.length(); i++) {
+                replacedChars[i] =
+                        CHAR_REPLACEMENT.containsKey(String.valueOf(subQuery.charAt(i)));
+                lowerCaseChars[i] = lowerCase(subQuery.charAt(i));
+            }
+            return new SubQuery(subQuery, !subQuery.equals(subQuery.toLowerCase()),
+                    surrogates ? StopIndex.pattern(subQuery) : null, replacedChars,
+                    lowerCaseChars);
+        }
+
+        /**
+         * Returns the index of the first occurrence of the sub-query in the given name, or -1
+         * if it does not occur in it.
+         */
+        int indexIn(String name) {
+            if (pattern != null) {
+                Matcher matcher = pattern.matcher(name);
+                return matcher.find() ? matcher.start() : -1;
+            }
+            for (int start = 0; start + subQuery.length() <= name.length(); start++) {
+                int i = 0;
+                while (i < subQuery.length() && matches(i, name.charAt(start + i))) {
+                    i++;
+                }
+                if (i == subQuery.length()) {
+                    return start;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns true if the character of the sub-query at the given index matches the given
+         * character of a name.
+         */
+        private boolean matches(int queryIndex, char nameChar) {
+            char queryChar = subQuery.charAt(queryIndex);
+            if (queryChar == nameChar) {
+                return true;
+            }
+            char comparedChar = caseSensitive ? nameChar : lowerCase(nameChar);
+            if (replacedChars[queryIndex]) {
+                return comparedChar < LATIN_1_FOLDING.length
+                        && LATIN_1_FOLDING[comparedChar] == queryChar;
+            }
+            return !caseSensitive && comparedChar == lowerCaseChars[queryIndex];
+        }
+    }
+
+    /**
+     * Session of a stop index, remembering the names matching its previous query, so that a
+     * query extending it, as typing one more character does, only scores these names, the
+     * names matching a query also matching its prefixes.
+     * A session is meant to be used by a single text field, and is not thread-safe.
+     */
+    public final class Session {
+
+        /**
+         * The previous query, and the indexes of all the names matching it, or null if they
+         * are not known.
+         */
+        private String previousQuery = "";
+        private int[] previousMatchingNameIds = null;
+
+        private Session() {}
+
+        /**
+         * Converts a query into a list of corresponding stops, as stopsMatching does.
+         *
+         * @param query            user's query when searching for an arrival station
+         * @param maxNumberOfStops the maximum number of stations suggested for a query
+         * @return list of the stop's names corresponding to the query
+         */
+        public List<String> stopsMatching(String query, int maxNumberOfStops) {
+            Search search = search(query, maxNumberOfStops,
+                    query.startsWith(previousQuery) ? previousMatchingNameIds : null, true);
+            previousQuery = query;
+            previousMatchingNameIds = search.matchingNameIds();
+            return search.stops();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package ch.epfl.rechor;
+
+import ch.epfl.rechor.timetable.ReloadableTimeTable;
+import ch.epfl.rechor.timetable.TimeTable;
+import ch.epfl.rechor.timetable.mapped.FileTimeTable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of the results of the queries of a stop index, for the autocompletion of many clients,
+ * whose queries are mostly the same few prefixes.
+ * The results are kept in a concurrent map, so that a query already answered is answered
+ * without locking. When the cache is full, a new result is only kept if its query is more
+ * frequent than the least frequent of a few queries sampled among the cached ones, which it then
+ * replaces: the frequencies of the recent queries, cached or not, are estimated by a
+ * FrequencySketch (TinyLFU), so that the popular prefixes stay in the cache while the queries
+ * typed only once do not evict them.
+ * <p>
+ * The queries are normalized by removing their leading and trailing spaces and the repeated
+ * spaces between their words, which does not change their results; their case and accents are
+ * kept, as they change the results of the index. The queries made of spaces only, matching no
+ * stop while the empty query matches all of them, are answered without the cache.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class StopIndexCache {
+
+    /**
+     * The number of cached queries among which the one to evict is chosen.
+     */
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    private static final Pattern SPACES_PATTERN = Pattern.compile(" +");
+
+    /**
+     * A cached query: its normalized version and the maximal number of stops of its result.
+     */
+    private record Key(String query, int maxNumberOfStops) {}
+
+    /**
+     * The statistics of the cache since it was constructed.
+     *
+     * @param hits the number of queries answered by the cache
+     * @param misses the number of queries answered by the index
+     * @param evictions the number of results evicted to keep more frequent ones
+     * @param rejections the number of results not kept because their query was less frequent
+     *                   than the cached ones
+     */
+    public record Statistics(long hits, long misses, long evictions, long rejections) {
+
+        /**
+         * Returns the proportion of the queries answered by the cache.
+         *
+         * @return the proportion of the queries answered by the cache, between 0 and 1, or 0
+         * if there was no query
+         */
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    /**
+     * The index answering the queries that are not in the cache.
+     */
+    private volatile StopIndex stopIndex;
+
+    /**
+     * The cached results, by query.
+     */
+    private final Map<Key, List<String>> results;
+
+    /**
+     * The cached queries, in no particular order, in which the queries to evict are sampled.
+     * Accessed only while holding the lock of this cache, as the number of them.
+     */
+    private final Key[] keys;
+    private int size;
+
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Constructs an empty cache of the results of the given index.
+     *
+     * @param stopIndex the index answering the queries
+     * @param capacity the maximal number of results cached
+     * @throws IllegalArgumentException if the capacity is not strictly positive
+     */
+    public StopIndexCache(StopIndex stopIndex, int capacity) {
+        Preconditions.checkArgument(capacity > 0);
+        this.stopIndex = stopIndex;
+        results = new ConcurrentHashMap<>(2 * capacity);
+        keys = new Key[capacity];
+        sketch = new FrequencySketch(capacity);
+    }
+
+    /**
+     * Constructs an empty cache of the results of the index of the stations of the given
+     * timetable, whose index is replaced and whose results are invalidated each time the
+     * timetable is reloaded.
+     * The stations of a FileTimeTable are ranked by their greatest importance on the dates of
+     * its files, and its index is mapped from the snapshot of its directory (see
+     * StopIndexSnapshot), which is only built when it is missing or outdated, on the thread
+     * reloading the timetable; the stations of other timetables are equally important.
+     *
+     * @param timeTable the timetable whose stations are indexed
+     * @param capacity the maximal number of results cached
+     * @return the cache of the results of the index of the stations of the timetable
+     * @throws IllegalArgumentException if the capacity is not strictly positive
+     */
+    public static StopIndexCache of(ReloadableTimeTable timeTable, int capacity) {
+        StopIndexCache cache = new StopIndexCache(rankedStopIndex(timeTable.current()),
+                capacity);
+        timeTable.addReloadListener(newTimeTable -> cache.reset(rankedStopIndex(newTimeTable)));
+        return cache;
+    }
+
+    private static StopIndex rankedStopIndex(TimeTable timeTable) {
+        if (!(timeTable instanceof FileTimeTable fileTimeTable)) {
+            return StopIndex.of(timeTable);
+        }
+        Supplier<StopIndex> builder = () -> StopIndex.of(timeTable,
+                StopIndex.stationImportances(timeTable, fileTimeTable.dayDates()));
+        Path directory = fileTimeTable.directory();
+        try {
+            return StopIndexSnapshot.in(directory, StopIndexSnapshot.keyOf(directory), builder);
+        } catch (IOException e) {
+            return builder.get();
+        }
+    }
+
+    /**
+     * Returns the stops matching the given query, as StopIndex.stopsMatching does, from the
+     * cache if the query was already answered.
+     *
+     * @param query            user's query when searching for an arrival station
+     * @param maxNumberOfStops the maximum number of stations suggested for a query
+     * @return the unmodifiable list of the stop's names corresponding to the query
+     * @throws IllegalArgumentException if the maximum number of stations is negative
+     */
+    public List<String> stopsMatching(String query, int maxNumberOfStops) {
+        Preconditions.checkArgument(maxNumberOfStops >= 0);
+        Key key = new Key(normalized(query), maxNumberOfStops);
+        if (key.query().isEmpty() && !query.isEmpty()) {
+            return List.of();
+        }
+        sketch.increment(key.hashCode());
+        List<String> stops = results.get(key);
+        if (stops != null) {
+            hits.increment();
+            return stops;
+        }
+
+        misses.increment();
+        StopIndex index = stopIndex;
+        stops = List.copyOf(index.stopsMatching(key.query(), maxNumberOfStops));
+        admit(index, key, stops);
+        return stops;
+    }
+
+    private static String normalized(String query) {
+        return SPACES_PATTERN.splitAsStream(query)
+                .filter(word -> !word.isEmpty())
+                .collect(Collectors.joining(" "));
+    }
+
+    /**
+     * Caches the given result of the given query, computed by the given index, if the index was
+     * not replaced since and if the cache is not full or the query is more frequent than the
+     * least frequent of the sampled cached queries.
+     */
+    private synchronized void admit(StopIndex index, Key key, List<String> stops) {
+        if (index != stopIndex || results.containsKey(key)) {
+            return;
+        }
+        if (size < keys.length) {
+            keys[size++] = key;
+            results.put(key, stops);
+            return;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int victim = random.nextInt(size);
+        int victimFrequency = sketch.frequency(keys[victim].hashCode());
+        for (int i = 1; i < EVICTION_SAMPLE_SIZE; i++) {
+            int candidate = random.nextInt(size);
+            int candidateFrequency = sketch.frequency(keys[candidate].hashCode());
+            if (candidateFrequency < victimFrequency) {
+                victim = candidate;
+                victimFrequency = candidateFrequency;
+            }
+        }
+        if (sketch.frequency(key.hashCode()) <= victimFrequency) {
+            rejections.increment();
+            return;
+        }
+        results.remove(keys[victim]);
+        keys[victim] = key;
+        results.put(key, stops);
+        evictions.increment();
+    }
+
+    /**
+     * Replaces the index answering the queries, and removes all the cached results.
+     * The frequencies of the queries are kept, as they do not depend on the index.
+     *
+     * @param newStopIndex the new index
+     */
+    public synchronized void reset(StopIndex newStopIndex) {
+        stopIndex = newStopIndex;
+        results.clear();
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the statistics of the cache since it was constructed.
+     *
+     * @return the statistics of the cache
+     */
+    public Statistics statistics() {
+        return new Statistics(hits.sum(), misses.sum(), evictions.sum(), rejections.sum());
+    }
+}
@@ -0,0 +1,356 @@
+package ch.epfl.rechor;
+
+import ch.epfl.rechor.timetable.mapped.DerivedIndexCache;
+import ch.epfl.rechor.timetable.mapped.FileHeader;
+import ch.epfl.rechor.timetable.mapped.MappedStringTable;
+import ch.epfl.rechor.timetable.mapped.ServiceCalendar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Class giving access to the snapshot of the stop index of a timetable: a binary file
+ * (stop-index.bin) saved next to the timetable files, containing the whole index (the names, the
+ * stations of the names and their importance, and the trigram index and word trie of the folded
+ * names), so that the index is mapped at start instead of being built, and that the processes
+ * using the same timetable share its pages.
+ * <p>
+ * The file starts with a header (see FileHeader), followed by the key of the sources of the
+ * index (S64), the number of sections n (S32), n + 1 offsets (S32) and the sections, the section
+ * of index i being made of the bytes between the offsets i (included) and i + 1 (excluded), all
+ * the offsets being relative to the end of the header and multiples of 8. Each section contains
+ * shorts (S16), integers (S32), longs (S64) or characters (U16), and a list of strings is stored
+ * as two sections: the offsets of the strings in their characters, and the characters.
+ * The sections are written and read in the same order by the index and its components (see the
+ * writeTo methods), the mapped sections being used as they are by the index read.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class StopIndexSnapshot {
+
+    /**
+     * Name of the snapshot file, in the directory of the timetable.
+     */
+    public static final String FILE_NAME = "stop-index.bin";
+
+    /**
+     * The alignment of the sections, in bytes, so that each section can be viewed as a buffer
+     * of longs.
+     */
+    private static final int ALIGNMENT = Long.BYTES;
+
+    /**
+     * The position of the number of sections, and of the offsets of the sections, in the
+     * payload of the file.
+     */
+    private static final int SECTION_COUNT_POSITION = Long.BYTES;
+    private static final int OFFSETS_POSITION = SECTION_COUNT_POSITION + Integer.BYTES;
+
+    private StopIndexSnapshot() {}
+
+    /**
+     * Returns the key of the stop index of the timetable in the given directory, computed out
+     * of the keys of its string table, stations, station aliases and platforms as the derived
+     * indexes are, and of the keys of its calendar and of the files of its directories of
+     * day, out of which the importances of the stations are computed, so that the snapshot of
+     * the index is built again when one of them changes, and only then.
+     *
+     * @param timeTableDirectory the directory of the timetable
+     * @return the key of the stop index of the timetable
+     * @throws IOException if accessing one of the files causes a problem
+     */
+    public static long keyOf(Path timeTableDirectory) throws IOException {
+        Path strings = MappedStringTable.isPresentIn(timeTableDirectory)
+                ? timeTableDirectory.resolve(MappedStringTable.FILE_NAME)
+                : timeTableDirectory.resolve("strings.txt");
+        List<Path> sources = new ArrayList<>(List.of(strings,
+                timeTableDirectory.resolve("stations.bin"),
+                timeTableDirectory.resolve("station-aliases.bin"),
+                timeTableDirectory.resolve("platforms.bin")));
+        ServiceCalendar calendar = new ServiceCalendar(Map.of());
+        if (ServiceCalendar.isPresentIn(timeTableDirectory)) {
+            sources.add(timeTableDirectory.resolve(ServiceCalendar.FILE_NAME));
+            calendar = ServiceCalendar.in(timeTableDirectory);
+        }
+        for (Path dayDirectory : calendar.dayDirectories(timeTableDirectory)) {
+            try (Stream<Path> files = Files.list(dayDirectory)) {
+                files.filter(Files::isRegularFile).sorted().forEach(sources::add);
+            }
+        }
+
+        long key = 0;
+        for (Path source : sources) {
+            key = key * 0x9E37_79B9_7F4A_7C15L
+                    + Integer.toUnsignedLong(DerivedIndexCache.keyOf(source));
+        }
+        return key;
+    }
+
+    /**
+     * Returns the stop index of the given key, mapped from the snapshot of the given timetable
+     * directory if it is up to date, or built by the given builder and saved as the snapshot
+     * otherwise.
+     * As the snapshot only avoids building the index, failing to save it (for instance because
+     * the directory is read-only) is ignored.
+     *
+     * @param timeTableDirectory the directory of the timetable
+     * @param key the key of the index, for instance computed by keyOf
+     * @param builder the builder of the index if the snapshot is missing or outdated
+     * @return the stop index
+     */
+    public static StopIndex in(Path timeTableDirectory, long key, Supplier<StopIndex> builder) {
+        Path file = timeTableDirectory.resolve(FILE_NAME);
+        try {
+            if (Files.exists(file)) {
+                return read(file, key);
+            }
+        } catch (IOException e) {
+            // The index is built again below.
+        }
+
+        StopIndex stopIndex = builder.get();
+        try {
+            write(stopIndex, key, file);
+        } catch (IOException e) {
+            // The snapshot will simply be built again at the next start.
+        }
+        return stopIndex;
+    }
+
+    /**
+     * Maps the stop index saved in the given snapshot file.
+     *
+     * @param file the snapshot file
+     * @param key the key that the snapshot must have
+     * @return the stop index, whose data is read from the mapped file
+     * @throws IOException if accessing the file causes a problem, or if it is truncated, is
+     * not a snapshot or does not have the given key
+     */
+    public static StopIndex read(Path file, long key) throws IOException {
+        ByteBuffer buffer = mapFile(file);
+        if (!FileHeader.isPresentIn(buffer)) {
+            throw new IOException("Not a stop index snapshot " + file);
+        }
+        ByteBuffer payload = FileHeader.payloadOf(buffer);
+        if (!FileHeader.read(buffer).describes(payload) || payload.capacity() < OFFSETS_POSITION
+                || payload.getLong(0) != key) {
+            throw new IOException("Truncated or outdated stop index snapshot " + file);
+        }
+        try {
+            return new StopIndex(new Reader(payload));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid stop index snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Saves the given stop index in the given snapshot file, through a temporary file so that a
+     * partially written snapshot is never read.
+     *
+     * @param stopIndex the stop index to save
+     * @param key the key of the index
+     * @param file the snapshot file
+     * @throws IOException if writing the file causes a problem
+     */
+    public static void write(StopIndex stopIndex, long key, Path file) throws IOException {
+        Writer writer = new Writer();
+        stopIndex.writeTo(writer);
+        ByteBuffer payload = writer.payload(key);
+        ByteBuffer header = FileHeader.of(FileHeader.DEFAULT_VERSION, ALIGNMENT, payload)
+                .toBuffer();
+
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporaryFile = Files.createTempFile(directory, FILE_NAME, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = {header, payload};
+                while (header.hasRemaining() || payload.hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static ByteBuffer mapFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static int aligned(int size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Writer of the sections of a snapshot, added one after the other.
+     */
+    static final class Writer {
+
+        private final List<ByteBuffer> sections = new ArrayList<>();
+
+        private Writer() {}
+
+        void add(ShortBuffer shorts) {
+            ByteBuffer section = ByteBuffer.allocate(shorts.limit() * Short.BYTES);
+            section.asShortBuffer().put(0, shorts, 0, shorts.limit());
+            sections.add(section);
+        }
+
+        void add(IntBuffer ints) {
+            ByteBuffer section = ByteBuffer.allocate(ints.limit() * Integer.BYTES);
+            section.asIntBuffer().put(0, ints, 0, ints.limit());
+            sections.add(section);
+        }
+
+        void add(LongBuffer longs) {
+            ByteBuffer section = ByteBuffer.allocate(longs.limit() * Long.BYTES);
+            section.asLongBuffer().put(0, longs, 0, longs.limit());
+            sections.add(section);
+        }
+
+        void add(CharBuffer chars) {
+            ByteBuffer section = ByteBuffer.allocate(chars.limit() * Character.BYTES);
+            section.asCharBuffer().put(0, chars, 0, chars.limit());
+            sections.add(section);
+        }
+
+        void add(List<String> strings) {
+            int[] offsets = new int[strings.size() + 1];
+            for (int i = 0; i < strings.size(); i++) {
+                offsets[i + 1] = offsets[i] + strings.get(i).length();
+            }
+            char[] chars = new char[offsets[strings.size()]];
+            for (int i = 0; i < strings.size(); i++) {
+                strings.get(i).getChars(0, strings.get(i).length(), chars, offsets[i]);
+            }
+            add(IntBuffer.wrap(offsets));
+            add(CharBuffer.wrap(chars));
+        }
+
+        /**
+         * Returns the payload of the file: the key, the offsets and the aligned sections.
+         */
+        ByteBuffer payload(long key) {
+            int[] offsets = new int[sections.size() + 1];
+            offsets[0] = aligned(OFFSETS_POSITION + offsets.length * Integer.BYTES);
+            for (int i = 0; i < sections.size(); i++) {
+                offsets[i + 1] = offsets[i] + aligned(sections.get(i).capacity());
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(offsets[sections.size()]);
+            payload.putLong(key);
+            payload.putInt(sections.size());
+            for (int offset : offsets) {
+                payload.putInt(offset);
+            }
+            for (int i = 0; i < sections.size(); i++) {
+                payload.put(offsets[i], sections.get(i), 0, sections.get(i).capacity());
+            }
+            return payload.clear();
+        }
+    }
+
+    /**
+     * Reader of the sections of a snapshot, read one after the other.
+     */
+    static final class Reader {
+
+        private final ByteBuffer payload;
+        private final int sectionCount;
+        private int nextSection;
+
+        private Reader(ByteBuffer payload) {
+            this.payload = payload;
+            sectionCount = payload.getInt(SECTION_COUNT_POSITION);
+            Preconditions.checkArgument(sectionCount >= 0);
+        }
+
+        private ByteBuffer nextSection() {
+            Preconditions.checkArgument(nextSection < sectionCount);
+            int start = payload.getInt(OFFSETS_POSITION + nextSection * Integer.BYTES);
+            int end = payload.getInt(OFFSETS_POSITION + (nextSection + 1) * Integer.BYTES);
+            nextSection++;
+            return payload.slice(start, end - start);
+        }
+
+        ShortBuffer nextShorts() {
+            return nextSection().asShortBuffer();
+        }
+
+        IntBuffer nextInts() {
+            return nextSection().asIntBuffer();
+        }
+
+        LongBuffer nextLongs() {
+            return nextSection().asLongBuffer();
+        }
+
+        CharBuffer nextChars() {
+            return nextSection().asCharBuffer();
+        }
+
+        List<String> nextStrings() {
+            return new MappedStrings(nextInts(), nextChars());
+        }
+    }
+
+    /**
+     * List of strings stored in a snapshot, each string being decoded the first time it is
+     * accessed, and then kept.
+     */
+    private static final class MappedStrings extends AbstractList<String>
+            implements RandomAccess {
+
+        private final IntBuffer offsets;
+        private final CharBuffer chars;
+        private final String[] decodedStrings;
+
+        MappedStrings(IntBuffer offsets, CharBuffer chars) {
+            Preconditions.checkArgument(offsets.limit() > 0
+                    && offsets.get(offsets.limit() - 1) <= chars.limit());
+            this.offsets = offsets;
+            this.chars = chars;
+            decodedStrings = new String[offsets.limit() - 1];
+        }
+
+        @Override
+        public String get(int index) {
+            String string = decodedStrings[index];
+            if (string == null) {
+                int start = offsets.get(index);
+                char[] stringChars = new char[offsets.get(index + 1) - start];
+                chars.get(start, stringChars);
+                string = new String(stringChars);
+                decodedStrings[index] = string;
+            }
+            return string;
+        }
+
+        @Override
+        public int size() {
+            return decodedStrings.length;
+        }
+    }
+}
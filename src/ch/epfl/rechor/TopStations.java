@@ -0,0 +1,294 @@
+package ch.epfl.rechor;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Selection of the best stations among scored names, each station being ranked by its best
+ * name, the names being ordered by decreasing score and then in increasing order of index.
+ * The kept names are stored in a bounded min-heap of primitive keys, whose root is the name of
+ * the worst kept station, so that a name that does not beat it is rejected at once. The heap
+ * grows with the names kept, so that a large number of stations, up to all of them, can be
+ * requested without allocating it in full for each selection. The position in the heap of the
+ * name of each kept station is found in a hash table growing with the heap, so that adding a
+ * name takes a logarithmic time whatever the number of stations requested.
+ * The selections of several parts of the names can be merged, as the best stations of all the
+ * names are among the best stations of the part containing their best name.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+final class TopStations {
+
+    /**
+     * Mask constant for the 32 least significant bits of the keys.
+     */
+    private static final long MASK_32_BITS = 0xFFFF_FFFFL;
+
+    /**
+     * The initial length of the arrays of the kept names and of the recorded names.
+     */
+    private static final int INITIAL_LENGTH = 16;
+
+    /**
+     * The multiplier spreading the stations in the hash table.
+     */
+    private static final int HASH_MULTIPLIER = 0x9E37_79B9;
+
+    /**
+     * The station of each name.
+     */
+    private final IntBuffer nameStations;
+
+    /**
+     * The maximal number of stations selected.
+     */
+    private final int capacity;
+
+    /**
+     * The keys of the kept names, a greater key being a better name, ordered as a min-heap.
+     */
+    private long[] keys;
+    private int size;
+
+    /**
+     * The station of the name of each key, in the same order, compared to the one of a new name
+     * without reading the stations of the names.
+     */
+    private int[] keyStations;
+
+    /**
+     * The position in the heap of the kept name of each station, in a hash table with linear
+     * probing whose length is a power of two at least twice the one of the keys: the station
+     * plus one of each cell, 0 for an empty cell, and the position of its name.
+     */
+    private int[] cellStations;
+    private int[] cellPositions;
+
+    /**
+     * The indexes of all the names added, in the order in which they were added, if they are
+     * recorded.
+     */
+    private int[] matchingNameIds;
+    private int matchingCount;
+
+    /**
+     * Constructs an empty selection of the given number of stations.
+     *
+     * @param capacity the maximal number of stations selected
+     * @param nameStations the station of each name
+     * @param recordsMatches whether the indexes of all the names added are recorded
+     */
+    TopStations(int capacity, IntBuffer nameStations, boolean recordsMatches) {
+        this.nameStations = nameStations;
+        this.capacity = capacity;
+        keys = new long[Math.min(capacity, INITIAL_LENGTH)];
+        keyStations = new int[keys.length];
+        cellStations = new int[tableLength(keys.length)];
+        cellPositions = new int[cellStations.length];
+        matchingNameIds = recordsMatches ? new int[INITIAL_LENGTH] : null;
+    }
+
+    private static long key(int nameId, int score) {
+        return (long) score << Integer.SIZE | (Integer.MAX_VALUE - nameId);
+    }
+
+    private static int nameId(long key) {
+        return Integer.MAX_VALUE - (int) (key & MASK_32_BITS);
+    }
+
+    private static int score(long key) {
+        return (int) (key >>> Integer.SIZE);
+    }
+
+    /**
+     * Adds the given name, with the given score.
+     *
+     * @param nameId the index of the name
+     * @param score the score of the name, positive or zero
+     */
+    void add(int nameId, int score) {
+        if (matchingNameIds != null) {
+            if (matchingCount == matchingNameIds.length) {
+                matchingNameIds = Arrays.copyOf(matchingNameIds, 2 * matchingCount);
+            }
+            matchingNameIds[matchingCount++] = nameId;
+        }
+        add(key(nameId, score));
+    }
+
+    private void add(long key) {
+        if (capacity == 0 || (size == capacity && key <= keys[0])) {
+            return;
+        }
+        int station = nameStations.get(nameId(key));
+        int cell = cell(station);
+        if (cellStations[cell] != 0) {
+            int i = cellPositions[cell];
+            if (key > keys[i]) {
+                keys[i] = key;
+                siftDown(i);
+            }
+            return;
+        }
+        if (size < capacity) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, (int) Math.min(2L * size, capacity));
+                keyStations = Arrays.copyOf(keyStations, keys.length);
+                rehash();
+                cell = cell(station);
+            }
+            keys[size] = key;
+            keyStations[size] = station;
+            cellStations[cell] = station + 1;
+            cellPositions[cell] = size;
+            siftUp(size++);
+        } else {
+            removeCell(cell(keyStations[0]));
+            cell = cell(station);
+            keys[0] = key;
+            keyStations[0] = station;
+            cellStations[cell] = station + 1;
+            cellPositions[cell] = 0;
+            siftDown(0);
+        }
+    }
+
+    private static int tableLength(int keysLength) {
+        return Integer.highestOneBit(keysLength) << 2;
+    }
+
+    private int homeCell(int station) {
+        return station * HASH_MULTIPLIER & (cellStations.length - 1);
+    }
+
+    /**
+     * Returns the cell of the given station in the hash table, or the empty cell at which it
+     * would be added.
+     */
+    private int cell(int station) {
+        int mask = cellStations.length - 1;
+        int cell = homeCell(station);
+        while (cellStations[cell] != 0 && cellStations[cell] != station + 1) {
+            cell = (cell + 1) & mask;
+        }
+        return cell;
+    }
+
+    /**
+     * Empties the given cell of the hash table, moving back the following stations that could
+     * no longer be found otherwise.
+     */
+    private void removeCell(int cell) {
+        int mask = cellStations.length - 1;
+        cellStations[cell] = 0;
+        for (int next = (cell + 1) & mask; cellStations[next] != 0; next = (next + 1) & mask) {
+            int home = homeCell(cellStations[next] - 1);
+            // The station can move to the empty cell if its home is not between the two.
+            if (((next - home) & mask) >= ((next - cell) & mask)) {
+                cellStations[cell] = cellStations[next];
+                cellPositions[cell] = cellPositions[next];
+                cellStations[next] = 0;
+                cell = next;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the hash table for the current length of the keys.
+     */
+    private void rehash() {
+        cellStations = new int[tableLength(keys.length)];
+        cellPositions = new int[cellStations.length];
+        for (int i = 0; i < size; i++) {
+            int cell = cell(keyStations[i]);
+            cellStations[cell] = keyStations[i] + 1;
+            cellPositions[cell] = i;
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0 && keys[(i - 1) / 2] > keys[i]) {
+            swap(i, (i - 1) / 2);
+            i = (i - 1) / 2;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (keys[i] <= keys[child]) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int station = keyStations[i];
+        keyStations[i] = keyStations[j];
+        keyStations[j] = station;
+        cellPositions[cell(keyStations[i])] = i;
+        cellPositions[cell(keyStations[j])] = j;
+    }
+
+    /**
+     * Adds the names selected by the given selection, and the names it recorded after those of
+     * this one.
+     *
+     * @param that the selection to merge into this one, of names following those of this one
+     */
+    void merge(TopStations that) {
+        for (int i = 0; i < that.size; i++) {
+            add(that.keys[i]);
+        }
+        if (matchingNameIds != null) {
+            matchingNameIds = Arrays.copyOf(matchingNameIds, matchingCount + that.matchingCount);
+            System.arraycopy(that.matchingNameIds, 0, matchingNameIds, matchingCount,
+                    that.matchingCount);
+            matchingCount += that.matchingCount;
+        }
+    }
+
+    /**
+     * Returns the score of the worst selected station if as many stations as possible are
+     * selected, so that only the names with at least this score can still be selected.
+     *
+     * @return the score of the worst selected station, or -1 if less stations are selected
+     */
+    int minimalScore() {
+        return size == capacity && size > 0 ? score(keys[0]) : -1;
+    }
+
+    /**
+     * Returns the best name of each selected station.
+     *
+     * @return the indexes of the names, from the best one to the worst one
+     */
+    int[] bestNameIds() {
+        long[] sortedKeys = Arrays.copyOf(keys, size);
+        Arrays.sort(sortedKeys);
+        int[] nameIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            nameIds[i] = nameId(sortedKeys[size - 1 - i]);
+        }
+        return nameIds;
+    }
+
+    /**
+     * Returns the indexes of all the names added.
+     *
+     * @return the indexes of the names, in the order in which they were added
+     * @throws NullPointerException if the names are not recorded
+     */
+    int[] matchingNameIds() {
+        return Arrays.copyOf(matchingNameIds, matchingCount);
+    }
+}
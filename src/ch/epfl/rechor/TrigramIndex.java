@@ -0,0 +1,225 @@
+package ch.epfl.rechor;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Inverted index of the trigrams (sequences of three consecutive characters) of a list of
+ * names, giving the names that may contain a given string.
+ * The sequences of one and two characters are indexed too, so that the strings shorter than a
+ * trigram also restrict the names.
+ * The postings of all the trigrams are stored one after the other in a single buffer of
+ * integers, in the order of the trigrams, each of them being the sorted list of the indexes of
+ * the names containing the trigram. The buffers wrap arrays when the index is built, and are
+ * mapped from the file of a StopIndexSnapshot when it is read from it.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+final class TrigramIndex {
+
+    /**
+     * The number of characters of a trigram.
+     */
+    static final int TRIGRAM_LENGTH = 3;
+
+    /**
+     * The number of names of the index.
+     */
+    private final int size;
+
+    /**
+     * The distinct trigrams, bigrams and unigrams of the names, each packed in a long with its
+     * length, in increasing order.
+     */
+    private final LongBuffer trigrams;
+
+    /**
+     * The index of the first posting of each trigram in the postings, followed by the number of
+     * postings.
+     */
+    private final IntBuffer postingStarts;
+
+    /**
+     * The indexes of the names containing each trigram, one trigram after the other.
+     */
+    private final IntBuffer postings;
+
+    /**
+     * Builds the index of the given names.
+     *
+     * @param names the names to index, usually folded by StopIndex
+     */
+    TrigramIndex(List<String> names) {
+        size = names.size();
+        long[][] nameTrigrams = new long[size][];
+        int occurrencesCount = 0;
+        for (int i = 0; i < size; i++) {
+            nameTrigrams[i] = distinctTrigrams(names.get(i));
+            occurrencesCount += nameTrigrams[i].length;
+        }
+
+        long[] allTrigrams = new long[occurrencesCount];
+        int position = 0;
+        for (long[] trigramsOfName : nameTrigrams) {
+            System.arraycopy(trigramsOfName, 0, allTrigrams, position, trigramsOfName.length);
+            position += trigramsOfName.length;
+        }
+        Arrays.sort(allTrigrams);
+        long[] trigrams = Arrays.stream(allTrigrams).distinct().toArray();
+
+        int[] postingStarts = new int[trigrams.length + 1];
+        for (long[] trigramsOfName : nameTrigrams) {
+            for (long trigram : trigramsOfName) {
+                postingStarts[Arrays.binarySearch(trigrams, trigram) + 1]++;
+            }
+        }
+        Arrays.parallelPrefix(postingStarts, Integer::sum);
+
+        // The names being added in increasing order, the postings of each trigram are sorted.
+        int[] postings = new int[occurrencesCount];
+        int[] nextPostings = Arrays.copyOf(postingStarts, trigrams.length);
+        for (int i = 0; i < size; i++) {
+            for (long trigram : nameTrigrams[i]) {
+                postings[nextPostings[Arrays.binarySearch(trigrams, trigram)]++] = i;
+            }
+        }
+
+        this.trigrams = LongBuffer.wrap(trigrams);
+        this.postingStarts = IntBuffer.wrap(postingStarts);
+        this.postings = IntBuffer.wrap(postings);
+    }
+
+    /**
+     * Reads an index from the sections of a snapshot, as written by writeTo.
+     *
+     * @param reader the reader of the sections of the snapshot
+     */
+    TrigramIndex(StopIndexSnapshot.Reader reader) {
+        size = reader.nextInts().get(0);
+        trigrams = reader.nextLongs();
+        postingStarts = reader.nextInts();
+        postings = reader.nextInts();
+    }
+
+    /**
+     * Writes the index as sections of a snapshot.
+     *
+     * @param writer the writer of the sections of the snapshot
+     */
+    void writeTo(StopIndexSnapshot.Writer writer) {
+        writer.add(IntBuffer.wrap(new int[]{size}));
+        writer.add(trigrams);
+        writer.add(postingStarts);
+        writer.add(postings);
+    }
+
+    private static long[] distinctTrigrams(String name) {
+        long[] trigrams = new long[TRIGRAM_LENGTH * name.length()];
+        int count = 0;
+        for (int length = 1; length <= TRIGRAM_LENGTH; length++) {
+            for (int i = 0; i + length <= name.length(); i++) {
+                trigrams[count++] = trigram(name, i, length);
+            }
+        }
+        Arrays.sort(trigrams, 0, count);
+        return Arrays.stream(trigrams, 0, count).distinct().toArray();
+    }
+
+    /**
+     * Packs the given number of characters of the given string, from the given index, with
+     * their number in the most significant bits.
+     */
+    private static long trigram(String string, int start, int length) {
+        long trigram = length;
+        for (int i = start; i < start + length; i++) {
+            trigram = trigram << Character.SIZE | string.charAt(i);
+        }
+        return trigram << (TRIGRAM_LENGTH - length) * Character.SIZE;
+    }
+
+    /**
+     * Returns the indexes of the names containing all the trigrams of the given strings, or the
+     * strings themselves if they are shorter than a trigram, which include all the names
+     * containing each of these strings.
+     * The empty strings do not restrict the names.
+     *
+     * @param strings the strings that the names must contain
+     * @return the indexes of the names, in increasing order
+     */
+    int[] candidates(List<String> strings) {
+        int[] candidates = null;
+        for (String string : strings) {
+            int length = Math.min(string.length(), TRIGRAM_LENGTH);
+            for (int i = 0; i + length <= string.length() && length > 0; i++) {
+                int trigramIndex = indexOf(trigram(string, i, length));
+                if (trigramIndex < 0) {
+                    return new int[0];
+                }
+                int start = postingStarts.get(trigramIndex);
+                int end = postingStarts.get(trigramIndex + 1);
+                if (candidates == null) {
+                    candidates = new int[end - start];
+                    postings.get(start, candidates);
+                } else {
+                    candidates = intersection(candidates, start, end);
+                }
+                if (candidates.length == 0) {
+                    return candidates;
+                }
+            }
+        }
+        if (candidates == null) {
+            candidates = new int[size];
+            Arrays.setAll(candidates, i -> i);
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the index of the given trigram among the trigrams, or a negative value if no name
+     * contains it.
+     */
+    private int indexOf(long trigram) {
+        int low = 0;
+        int high = trigrams.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleTrigram = trigrams.get(middle);
+            if (middleTrigram < trigram) {
+                low = middle + 1;
+            } else if (middleTrigram > trigram) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the elements of the given sorted array that are also postings between the given
+     * indexes.
+     */
+    private int[] intersection(int[] candidates, int start, int end) {
+        int[] intersection = new int[Math.min(candidates.length, end - start)];
+        int count = 0;
+        int i = 0;
+        int j = start;
+        while (i < candidates.length && j < end) {
+            int posting = postings.get(j);
+            if (candidates[i] < posting) {
+                i++;
+            } else if (candidates[i] > posting) {
+                j++;
+            } else {
+                intersection[count++] = candidates[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(intersection, count);
+    }
+}
@@ -0,0 +1,346 @@
+package ch.epfl.rechor;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Prefix trie of the words of a list of names, giving the names having a word that starts with
+ * a given prefix, in a time proportional to the length of the prefix and to the number of names.
+ * The words are the maximal sequences of letters of the names. The nodes of the trie are stored
+ * in arrays in breadth-first order, the children of each node being consecutive and sorted by
+ * their character, and the words being sorted, the words below each node are consecutive too.
+ * The arrays are stored in buffers, wrapping arrays when the trie is built, and mapped from the
+ * file of a StopIndexSnapshot when it is read from it.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+final class WordTrie {
+
+    /**
+     * The character leading to each node from its parent (unused for the root).
+     */
+    private final CharBuffer labels;
+
+    /**
+     * The index of the first child of each node, and its number of children.
+     */
+    private final IntBuffer firstChildren;
+    private final IntBuffer childCounts;
+
+    /**
+     * The index of the first word below each node, and of the word following the last one.
+     */
+    private final IntBuffer firstWords;
+    private final IntBuffer endWords;
+
+    /**
+     * The index of the first posting of each word in the postings, followed by the number of
+     * postings.
+     */
+    private final IntBuffer postingStarts;
+
+    /**
+     * The indexes of the names containing each word, one word after the other.
+     */
+    private final IntBuffer postings;
+
+    /**
+     * Builds the trie of the words of the given names.
+     *
+     * @param names the names whose words are indexed, usually folded by StopIndex
+     */
+    WordTrie(List<String> names) {
+        String[][] nameWords = new String[names.size()][];
+        for (int i = 0; i < nameWords.length; i++) {
+            nameWords[i] = words(names.get(i));
+        }
+        String[] words = Arrays.stream(nameWords)
+                .flatMap(Arrays::stream)
+                .sorted()
+                .distinct()
+                .toArray(String[]::new);
+
+        int[] postingStarts = new int[words.length + 1];
+        for (String[] wordsOfName : nameWords) {
+            for (String word : wordsOfName) {
+                postingStarts[Arrays.binarySearch(words, word) + 1]++;
+            }
+        }
+        Arrays.parallelPrefix(postingStarts, Integer::sum);
+
+        // The names being added in increasing order, the postings of each word are sorted.
+        int[] postings = new int[postingStarts[words.length]];
+        int[] nextPostings = Arrays.copyOf(postingStarts, words.length);
+        for (int i = 0; i < nameWords.length; i++) {
+            for (String word : nameWords[i]) {
+                postings[nextPostings[Arrays.binarySearch(words, word)]++] = i;
+            }
+        }
+
+        // Each node is created while its parent is visited, so that the nodes are visited in
+        // breadth-first order, and their number is at most one more than the number of
+        // characters of the words.
+        int maxNodeCount = 1 + Arrays.stream(words).mapToInt(String::length).sum();
+        char[] labels = new char[maxNodeCount];
+        int[] firstChildren = new int[maxNodeCount];
+        int[] childCounts = new int[maxNodeCount];
+        int[] firstWords = new int[maxNodeCount];
+        int[] endWords = new int[maxNodeCount];
+        int[] depths = new int[maxNodeCount];
+        endWords[0] = words.length;
+        int nodeCount = 1;
+        for (int node = 0; node < nodeCount; node++) {
+            int depth = depths[node];
+            firstChildren[node] = nodeCount;
+            int word = firstWords[node];
+            // The word equal to the prefix of the node, if any, is sorted before the others.
+            if (word < endWords[node] && words[word].length() == depth) {
+                word++;
+            }
+            while (word < endWords[node]) {
+                char label = words[word].charAt(depth);
+                int child = nodeCount++;
+                labels[child] = label;
+                depths[child] = depth + 1;
+                firstWords[child] = word;
+                while (word < endWords[node] && words[word].charAt(depth) == label) {
+                    word++;
+                }
+                endWords[child] = word;
+            }
+            childCounts[node] = nodeCount - firstChildren[node];
+        }
+
+        this.labels = CharBuffer.wrap(Arrays.copyOf(labels, nodeCount));
+        this.firstChildren = IntBuffer.wrap(Arrays.copyOf(firstChildren, nodeCount));
+        this.childCounts = IntBuffer.wrap(Arrays.copyOf(childCounts, nodeCount));
+        this.firstWords = IntBuffer.wrap(Arrays.copyOf(firstWords, nodeCount));
+        this.endWords = IntBuffer.wrap(Arrays.copyOf(endWords, nodeCount));
+        this.postingStarts = IntBuffer.wrap(postingStarts);
+        this.postings = IntBuffer.wrap(postings);
+    }
+
+    /**
+     * Reads a trie from the sections of a snapshot, as written by writeTo.
+     *
+     * @param reader the reader of the sections of the snapshot
+     */
+    WordTrie(StopIndexSnapshot.Reader reader) {
+        labels = reader.nextChars();
+        firstChildren = reader.nextInts();
+        childCounts = reader.nextInts();
+        firstWords = reader.nextInts();
+        endWords = reader.nextInts();
+        postingStarts = reader.nextInts();
+        postings = reader.nextInts();
+    }
+
+    /**
+     * Writes the trie as sections of a snapshot.
+     *
+     * @param writer the writer of the sections of the snapshot
+     */
+    void writeTo(StopIndexSnapshot.Writer writer) {
+        writer.add(labels);
+        writer.add(firstChildren);
+        writer.add(childCounts);
+        writer.add(firstWords);
+        writer.add(endWords);
+        writer.add(postingStarts);
+        writer.add(postings);
+    }
+
+    /**
+     * Returns the distinct words of the given name, delimited by the characters that are not
+     * letters, as in the scores of StopIndex.
+     */
+    private static String[] words(String name) {
+        List<String> words = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= name.length(); i++) {
+            if (i == name.length() || !Character.isLetter(name.charAt(i))) {
+                if (i > start) {
+                    words.add(name.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return words.stream().distinct().toArray(String[]::new);
+    }
+
+    /**
+     * Checks whether the given string only contains letters, so that the names having a word
+     * starting with it are exactly the names in which it occurs at the start of a word.
+     *
+     * @param string the string to check
+     * @return true if and only if all the characters of the string are letters
+     */
+    static boolean isWordPrefix(String string) {
+        return string.chars().allMatch(Character::isLetter);
+    }
+
+    /**
+     * Returns the names having a word that starts with the given prefix.
+     *
+     * @param prefix the prefix of the words
+     * @return the indexes of the names, in increasing order
+     */
+    int[] namesWithWordStartingWith(String prefix) {
+        int node = node(prefix);
+        if (node < 0) {
+            return new int[0];
+        }
+        // The names of the words are marked rather than sorted, as there are many of them for
+        // short prefixes.
+        BitSet names = new BitSet();
+        for (int i = postingStarts.get(firstWords.get(node));
+             i < postingStarts.get(endWords.get(node)); i++) {
+            names.set(postings.get(i));
+        }
+        return names.stream().toArray();
+    }
+
+    /**
+     * Returns the names having the given word.
+     *
+     * @param word the word
+     * @return the indexes of the names, in increasing order
+     */
+    int[] namesWithWord(String word) {
+        int node = node(word);
+        if (node < 0) {
+            return new int[0];
+        }
+        // The word equal to the prefix of the node, if any, is the one before the words of its
+        // children, and the names of a word are distinct and sorted.
+        int start = postingStarts.get(firstWords.get(node));
+        int[] names = new int[postingStarts.get(firstChildWord(node)) - start];
+        postings.get(start, names);
+        return names;
+    }
+
+    /**
+     * Returns the names having a word that starts with a prefix at most the given edit
+     * (Levenshtein) distance away from the given string, each with the smallest such distance.
+     * The trie is explored depth first, computing the distances between the string and the
+     * prefixes of the nodes one row at a time, and leaving the nodes from which every row
+     * exceeds the maximal distance, so that only a few nodes are visited.
+     *
+     * @param string the string from which the prefixes of the words are at most at the maximal
+     *               distance
+     * @param maxDistance the maximal distance
+     * @return the indexes of the names in increasing order, each in the 32 most significant bits
+     * of a long whose 32 least significant bits are the distance
+     */
+    long[] namesWithWordStartingNear(String string, int maxDistance) {
+        int[] row = new int[string.length() + 1];
+        Arrays.setAll(row, i -> i);
+        NearNames nearNames = new NearNames();
+        searchNear(0, string, row, row[string.length()], maxDistance, nearNames);
+
+        long[] sortedNames = Arrays.copyOf(nearNames.names, nearNames.count);
+        Arrays.sort(sortedNames);
+        int count = 0;
+        for (int i = 0; i < sortedNames.length; i++) {
+            // The distances of a name being sorted, its first one is the smallest.
+            if (count == 0 || sortedNames[i] >>> Integer.SIZE
+                    != sortedNames[count - 1] >>> Integer.SIZE) {
+                sortedNames[count++] = sortedNames[i];
+            }
+        }
+        return Arrays.copyOf(sortedNames, count);
+    }
+
+    /**
+     * Adds the names of the words below the given node, whose prefix has the given row of
+     * distances to the prefixes of the string, and the given smallest distance to the string
+     * among its prefixes.
+     */
+    private void searchNear(int node, String string, int[] row, int distance, int maxDistance,
+                            NearNames nearNames) {
+        int firstChild = firstChildren.get(node);
+        int endChildren = firstChild + childCounts.get(node);
+        int firstChildWord = firstChildWord(node);
+        if (distance <= maxDistance && firstWords.get(node) < firstChildWord) {
+            nearNames.addWords(firstWords.get(node), firstChildWord, distance);
+        }
+
+        for (int child = firstChild; child < endChildren; child++) {
+            int[] childRow = new int[row.length];
+            childRow[0] = row[0] + 1;
+            int minDistance = childRow[0];
+            for (int j = 1; j < row.length; j++) {
+                int substitution = string.charAt(j - 1) == labels.get(child) ? 0 : 1;
+                childRow[j] = Math.min(Math.min(row[j], childRow[j - 1]) + 1,
+                        row[j - 1] + substitution);
+                minDistance = Math.min(minDistance, childRow[j]);
+            }
+            int childDistance = Math.min(distance, childRow[row.length - 1]);
+            if (minDistance <= maxDistance) {
+                searchNear(child, string, childRow, childDistance, maxDistance, nearNames);
+            } else if (childDistance <= maxDistance) {
+                nearNames.addWords(firstWords.get(child), endWords.get(child), childDistance);
+            }
+        }
+    }
+
+    /**
+     * The names found by a search of the words near a string, with their distance.
+     */
+    private final class NearNames {
+        private long[] names = new long[16];
+        private int count;
+
+        void addWords(int firstWord, int endWord, int distance) {
+            for (int i = postingStarts.get(firstWord); i < postingStarts.get(endWord); i++) {
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, 2 * count);
+                }
+                names[count++] = (long) postings.get(i) << Integer.SIZE | distance;
+            }
+        }
+    }
+
+    /**
+     * Returns the node whose prefix is the given string, or -1 if there is none.
+     */
+    private int node(String prefix) {
+        int node = 0;
+        for (int i = 0; i < prefix.length() && node >= 0; i++) {
+            node = child(node, prefix.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * Returns the index of the first word below the children of the given node, or of the word
+     * following its last one if it has no children.
+     */
+    private int firstChildWord(int node) {
+        return childCounts.get(node) > 0
+                ? firstWords.get(firstChildren.get(node))
+                : endWords.get(node);
+    }
+
+    private int child(int node, char label) {
+        int low = firstChildren.get(node);
+        int high = low + childCounts.get(node) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char middleLabel = labels.get(middle);
+            if (middleLabel < label) {
+                low = middle + 1;
+            } else if (middleLabel > label) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+}
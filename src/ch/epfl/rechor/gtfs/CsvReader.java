@@ -0,0 +1,157 @@
+package ch.epfl.rechor.gtfs;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class reading a CSV file of a GTFS feed record by record, without loading it in memory.
+ * The first line of the file gives the names of the columns. The fields can be quoted, in
+ * which case they can contain commas, line breaks and doubled quotes.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+final class CsvReader implements Closeable {
+
+    /**
+     * The byte order mark that some feeds write at the beginning of their files.
+     */
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * The reader of the file.
+     */
+    private final BufferedReader reader;
+
+    /**
+     * The index of each column, by name.
+     */
+    private final Map<String, Integer> columns;
+
+    /**
+     * The fields of the current record.
+     */
+    private final List<String> fields;
+
+    /**
+     * Opens the given CSV file and reads the names of its columns.
+     *
+     * @param file the CSV file
+     * @throws IOException if reading the file causes a problem
+     */
+    CsvReader(Path file) throws IOException {
+        reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        fields = new ArrayList<>();
+        columns = new HashMap<>();
+        if (next()) {
+            for (int i = 0; i < fields.size(); i++) {
+                String name = fields.get(i).strip();
+                if (i == 0 && !name.isEmpty() && name.charAt(0) == BYTE_ORDER_MARK) {
+                    name = name.substring(1);
+                }
+                columns.put(name, i);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the column of the given name.
+     *
+     * @param name the name of the column
+     * @return the index of the column, or -1 if the file has no such column
+     */
+    int column(String name) {
+        return columns.getOrDefault(name, -1);
+    }
+
+    /**
+     * Reads the next record of the file.
+     *
+     * @return true if a record was read, false at the end of the file
+     * @throws IOException if reading the file causes a problem
+     */
+    boolean next() throws IOException {
+        String line = reader.readLine();
+        while (line != null && line.isBlank()) {
+            line = reader.readLine();
+        }
+        if (line == null) {
+            return false;
+        }
+
+        fields.clear();
+        if (line.indexOf('"') < 0) {
+            // Most records have no quoted field, and are split without copying each character.
+            int start = 0;
+            for (int comma = line.indexOf(','); comma >= 0; comma = line.indexOf(',', start)) {
+                fields.add(line.substring(start, comma));
+                start = comma + 1;
+            }
+            fields.add(line.substring(start));
+            return true;
+        }
+
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                String nextLine = reader.readLine();
+                if (nextLine == null) {
+                    break;
+                }
+                field.append('\n');
+                line = nextLine;
+                i = 0;
+                continue;
+            }
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return true;
+    }
+
+    /**
+     * Returns the field of the given column of the current record.
+     *
+     * @param column the index of the column, as given by {@link #column(String)}
+     * @return the field, without leading and trailing spaces, or the empty string if the file
+     * has no such column or if the record is too short
+     */
+    String get(int column) {
+        return column >= 0 && column < fields.size() ? fields.get(column).strip() : "";
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
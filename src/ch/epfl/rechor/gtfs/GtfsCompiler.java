@@ -0,0 +1,897 @@
+package ch.epfl.rechor.gtfs;
+
+import ch.epfl.rechor.Bits32_24_8;
+import ch.epfl.rechor.journey.Vehicle;
+import ch.epfl.rechor.timetable.StationCoordinates;
+import ch.epfl.rechor.timetable.mapped.BufferedConnections;
+import ch.epfl.rechor.timetable.mapped.BufferedPlatforms;
+import ch.epfl.rechor.timetable.mapped.BufferedRoutes;
+import ch.epfl.rechor.timetable.mapped.BufferedStationAliases;
+import ch.epfl.rechor.timetable.mapped.BufferedStations;
+import ch.epfl.rechor.timetable.mapped.BufferedTransfers;
+import ch.epfl.rechor.timetable.mapped.BufferedTrips;
+import ch.epfl.rechor.timetable.mapped.FileHeader;
+import ch.epfl.rechor.timetable.mapped.MappedStringTable;
+import ch.epfl.rechor.timetable.mapped.Structure;
+import ch.epfl.rechor.timetable.mapped.StructuredBufferWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class compiling a GTFS feed into a timetable directory readable by FileTimeTable.
+ * The CSV files of the feed are read record by record, the stops becoming stations and
+ * platforms, the routes, trips and transfers being converted to the identifiers of the
+ * timetable, and the stop times being grouped by trip into connections. The days are then
+ * compiled in parallel, each one keeping the trips whose service runs on that day, sorting
+ * their connections by decreasing departure time and linking each connection to the next one
+ * of its trip. All the files are written in the Buffered* layouts, with a header, in the wide
+ * format if the identifiers do not fit in 16 bits.
+ * <p>
+ * The feed being more general than the timetable, some of its data is simplified:
+ * <ul>
+ *     <li>the stops without times are skipped, the trips being made of the stops with times,</li>
+ *     <li>the trips running after the second midnight of their day, or having more
+ *     connections than the position of a connection can hold, are skipped,</li>
+ *     <li>the trips of frequencies.txt are repeated at each start of their intervals, their
+ *     stop times being shifted so that they leave at that start, whether their times are
+ *     exact or not,</li>
+ *     <li>the transfers are between stations, the shortest one being kept when several stops
+ *     of the same stations are given, and every station has a transfer to itself,</li>
+ *     <li>at most 255 transfers arrive at each station, the shortest ones, as their interval
+ *     is packed in a PackedRange,</li>
+ *     <li>the station aliases, which GTFS does not describe, are empty.</li>
+ * </ul>
+ * The day directories are not deduplicated, which ServiceCalendar.deduplicate can do
+ * afterwards.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class GtfsCompiler {
+
+    /**
+     * The duration of a change at a station for which the feed gives no transfer, in minutes.
+     */
+    public static final int DEFAULT_CHANGE_MINUTES = 2;
+
+    /**
+     * The departure and arrival times of the connections must be earlier than this number of
+     * minutes after the midnight of their day.
+     */
+    private static final int MAX_MINUTES = 48 * 60;
+
+    /**
+     * The largest number of minutes of a U16 field, from which the times are subtracted in the
+     * sort keys of the connections.
+     */
+    private static final int MAX_MINUTES_FIELD = 0xFFFF;
+
+    /**
+     * The maximal number of connections of a trip, whose positions are stored on 8 bits.
+     */
+    private static final int MAX_TRIP_CONNECTIONS = 1 << 8;
+
+    /**
+     * The maximal number of transfers arriving at a station, whose interval is packed with a
+     * length of 8 bits.
+     */
+    private static final int MAX_STATION_TRANSFERS = 0xFF;
+
+    /**
+     * The maximal duration of a transfer, stored on 8 bits.
+     */
+    private static final int MAX_TRANSFER_MINUTES = 0xFF;
+
+    /**
+     * The largest identifier of the narrow format, above which the wide format is used.
+     */
+    private static final int MAX_NARROW_ID = 0xFFFF;
+
+    /**
+     * The value of transfer_type of the transfers that are not possible.
+     */
+    private static final String IMPOSSIBLE_TRANSFER = "3";
+
+    /**
+     * The format of the dates of the feed.
+     */
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /**
+     * The structure of the successors of the connections, a single S32 field.
+     */
+    private static final Structure SUCCESSOR_STRUCTURE =
+            new Structure(Structure.field(0, Structure.FieldType.S32));
+
+    /**
+     * Mask constant for the 32 least significant bits of the sort keys.
+     */
+    private static final long MASK_32_BITS = 0xFFFF_FFFFL;
+
+    private GtfsCompiler() {}
+
+    /**
+     * Compiles the feed of the given directory into a timetable written in the given directory,
+     * for the days of the given interval.
+     *
+     * @param feed the directory containing the text files of the GTFS feed
+     * @param directory the directory in which the timetable is written, created if needed
+     * @param firstDate the first day of the timetable
+     * @param lastDate the last day of the timetable, included
+     * @throws IOException if reading the feed or writing the timetable causes a problem
+     * @throws IllegalArgumentException if the last date is before the first one, or if the feed
+     * is missing a required file or column
+     */
+    public static void compile(Path feed, Path directory, LocalDate firstDate,
+                               LocalDate lastDate) throws IOException {
+        if (lastDate.isBefore(firstDate)) {
+            throw new IllegalArgumentException();
+        }
+        Files.createDirectories(directory);
+        new Compilation(feed).write(directory, firstDate.datesUntil(lastDate.plusDays(1))
+                .toList());
+    }
+
+    /**
+     * Compiles a GTFS feed from the command line.
+     *
+     * @param args the directory of the feed, the directory of the timetable, and the first and
+     *             last dates of the timetable in the ISO format
+     * @throws IOException if reading the feed or writing the timetable causes a problem
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: GtfsCompiler <feed> <timetable> <first date> <last date>");
+            return;
+        }
+        long start = System.nanoTime();
+        compile(Path.of(args[0]), Path.of(args[1]), LocalDate.parse(args[2]),
+                LocalDate.parse(args[3]));
+        System.out.printf("Compiled in %.1f s%n", (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Returns the vehicle of the given GTFS route type, the basic and the extended route types
+     * being both accepted, and the unknown ones being buses.
+     */
+    private static Vehicle vehicleOf(int routeType) {
+        return switch (routeType) {
+            case 0, 5 -> Vehicle.TRAM;
+            case 1, 12 -> Vehicle.METRO;
+            case 2 -> Vehicle.TRAIN;
+            case 4, 1200 -> Vehicle.FERRY;
+            case 6 -> Vehicle.AERIAL_LIFT;
+            case 7 -> Vehicle.FUNICULAR;
+            default -> switch (routeType / 100) {
+                case 1, 3 -> Vehicle.TRAIN;
+                case 4, 5, 6 -> Vehicle.METRO;
+                case 9 -> Vehicle.TRAM;
+                case 10 -> Vehicle.FERRY;
+                case 13 -> Vehicle.AERIAL_LIFT;
+                case 14 -> Vehicle.FUNICULAR;
+                default -> Vehicle.BUS;
+            };
+        };
+    }
+
+    /**
+     * Returns the given time of the feed, "H:MM:SS" with possibly more than 24 hours, in
+     * seconds after the midnight of the day of the trip, or -1 if it is empty.
+     */
+    private static int secondsOf(String time) {
+        if (time.isEmpty()) {
+            return -1;
+        }
+        int seconds = 0;
+        int part = 0;
+        for (int i = 0; i < time.length(); i++) {
+            char c = time.charAt(i);
+            if (c == ':') {
+                seconds = seconds * 60 + part;
+                part = 0;
+            } else if (c >= '0' && c <= '9') {
+                part = part * 10 + c - '0';
+            } else {
+                throw new IllegalArgumentException(time);
+            }
+        }
+        return seconds * 60 + part;
+    }
+
+    /**
+     * Returns the given angle, in degrees, in the unit of the coordinates of the stations
+     * (2^32 units being a full turn).
+     */
+    private static int coordinateOf(String degrees) {
+        if (degrees.isEmpty()) {
+            return 0;
+        }
+        return StationCoordinates.unitsOf(Double.parseDouble(degrees));
+    }
+
+    /**
+     * Returns the index of the given required column of the given file.
+     */
+    private static int requiredColumn(CsvReader reader, String file, String name) {
+        int column = reader.column(name);
+        if (column < 0) {
+            throw new IllegalArgumentException(file + " has no column " + name);
+        }
+        return column;
+    }
+
+    /**
+     * Growable array of integers, used to store the stop times without boxing them.
+     */
+    private static final class IntList {
+
+        /**
+         * The values of the list, followed by unused space.
+         */
+        private int[] values = new int[1 << 10];
+
+        /**
+         * The number of values of the list.
+         */
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A stop of the feed, read before being classified as station or platform, as the parent
+     * station of a stop can be given after it.
+     */
+    private record Stop(String id, String name, int lon, int lat, String locationType,
+                        String parentId, String platformCode) {
+
+        boolean isStation() {
+            return locationType.equals("1");
+        }
+
+        boolean isStopOrPlatform() {
+            return locationType.isEmpty() || locationType.equals("0");
+        }
+    }
+
+    /**
+     * The data of the feed converted to the identifiers of the timetable, and written as a
+     * timetable by {@link #write(Path, List)}.
+     */
+    private static final class Compilation {
+
+        /**
+         * The strings of the timetable, and the index of each of them.
+         */
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIds = new HashMap<>();
+
+        /**
+         * The name, longitude and latitude of each station.
+         */
+        private final IntList stationNames = new IntList();
+        private final IntList stationLons = new IntList();
+        private final IntList stationLats = new IntList();
+
+        /**
+         * The name and station of each platform.
+         */
+        private final IntList platformNames = new IntList();
+        private final IntList platformStations = new IntList();
+
+        /**
+         * The identifier of the timetable of each stop of the feed, and the index of its
+         * station.
+         */
+        private final Map<String, Integer> stopIds = new HashMap<>();
+        private final Map<String, Integer> stopStationIds = new HashMap<>();
+
+        /**
+         * The name and vehicle of each route, and the index of each route of the feed.
+         */
+        private final IntList routeNames = new IntList();
+        private final IntList routeVehicles = new IntList();
+        private final Map<String, Integer> routeIds = new HashMap<>();
+
+        /**
+         * The index of each service of the feed, and the services running on each date.
+         */
+        private final Map<String, Integer> serviceIds = new HashMap<>();
+        private final Map<LocalDate, BitSet> activeServices = new HashMap<>();
+
+        /**
+         * The route, service and headsign (-1 if none) of each trip of the feed, and the index
+         * of each trip of the feed.
+         */
+        private final IntList feedTripRoutes = new IntList();
+        private final IntList feedTripServices = new IntList();
+        private final IntList feedTripHeadsigns = new IntList();
+        private final Map<String, Integer> tripIds = new HashMap<>();
+
+        /**
+         * The intervals of the trips of the feed repeated at a frequency, as the start, end
+         * and headway of each interval, in seconds, indexed by trip of the feed.
+         */
+        private final Map<Integer, IntList> feedTripFrequencies = new HashMap<>();
+
+        /**
+         * The route, service and destination of each compiled trip, and the index of its first
+         * connection in the connection arrays (followed by the end of the last trip).
+         */
+        private final IntList tripRoutes = new IntList();
+        private final IntList tripServices = new IntList();
+        private final IntList tripDestinations = new IntList();
+        private final IntList tripFirstConnections = new IntList();
+
+        /**
+         * The departure stop and time and the arrival stop and time of the connections of
+         * the compiled trips, grouped by trip and in the order of the trip.
+         */
+        private final IntList depStops = new IntList();
+        private final IntList depMinutes = new IntList();
+        private final IntList arrStops = new IntList();
+        private final IntList arrMinutes = new IntList();
+
+        /**
+         * The transfers between stations, the key being the departure station in the 32 most
+         * significant bits and the arrival station in the 32 least significant ones.
+         */
+        private final Map<Long, Integer> transfers = new HashMap<>();
+
+        /**
+         * Reads and converts the files of the given feed.
+         */
+        Compilation(Path feed) throws IOException {
+            readStops(feed.resolve("stops.txt"));
+            readRoutes(feed.resolve("routes.txt"));
+            readCalendar(feed.resolve("calendar.txt"));
+            readCalendarDates(feed.resolve("calendar_dates.txt"));
+            readTrips(feed.resolve("trips.txt"));
+            readFrequencies(feed.resolve("frequencies.txt"));
+            readStopTimes(feed.resolve("stop_times.txt"));
+            readTransfers(feed.resolve("transfers.txt"));
+        }
+
+        private int stringId(String string) {
+            return stringIds.computeIfAbsent(string.replace('\n', ' ').replace('\r', ' '), s -> {
+                strings.add(s);
+                return strings.size() - 1;
+            });
+        }
+
+        private int serviceId(String service) {
+            return serviceIds.computeIfAbsent(service, s -> serviceIds.size());
+        }
+
+        private void readStops(Path file) throws IOException {
+            List<Stop> stops = new ArrayList<>();
+            try (CsvReader reader = new CsvReader(file)) {
+                int id = requiredColumn(reader, "stops.txt", "stop_id");
+                int name = reader.column("stop_name");
+                int lat = reader.column("stop_lat");
+                int lon = reader.column("stop_lon");
+                int locationType = reader.column("location_type");
+                int parent = reader.column("parent_station");
+                int platformCode = reader.column("platform_code");
+                while (reader.next()) {
+                    stops.add(new Stop(reader.get(id), reader.get(name),
+                            coordinateOf(reader.get(lon)), coordinateOf(reader.get(lat)),
+                            reader.get(locationType), reader.get(parent),
+                            reader.get(platformCode)));
+                }
+            }
+
+            Map<String, Stop> stations = new HashMap<>();
+            for (Stop stop : stops) {
+                if (stop.isStation() || (stop.isStopOrPlatform() && stop.parentId().isEmpty())) {
+                    stations.put(stop.id(), stop);
+                }
+            }
+            for (Stop stop : stops) {
+                if (stations.containsKey(stop.id())) {
+                    addStation(stop);
+                }
+            }
+            // Stops whose parent is not a station of the feed are stations themselves.
+            for (Stop stop : stops) {
+                if (stop.isStopOrPlatform() && !stop.parentId().isEmpty()
+                        && !stations.containsKey(stop.parentId())) {
+                    addStation(stop);
+                }
+            }
+
+            int stationCount = stationNames.size();
+            for (Stop stop : stops) {
+                if (stop.isStopOrPlatform() && stations.containsKey(stop.parentId())) {
+                    int stationId = stopIds.get(stop.parentId());
+                    stopIds.put(stop.id(), stationCount + platformNames.size());
+                    stopStationIds.put(stop.id(), stationId);
+                    platformNames.add(stringId(stop.platformCode()));
+                    platformStations.add(stationId);
+                }
+            }
+        }
+
+        private void addStation(Stop stop) {
+            int stationId = stationNames.size();
+            stopIds.put(stop.id(), stationId);
+            stopStationIds.put(stop.id(), stationId);
+            stationNames.add(stringId(stop.name()));
+            stationLons.add(stop.lon());
+            stationLats.add(stop.lat());
+        }
+
+        private void readRoutes(Path file) throws IOException {
+            try (CsvReader reader = new CsvReader(file)) {
+                int id = requiredColumn(reader, "routes.txt", "route_id");
+                int shortName = reader.column("route_short_name");
+                int longName = reader.column("route_long_name");
+                int type = requiredColumn(reader, "routes.txt", "route_type");
+                while (reader.next()) {
+                    String name = reader.get(shortName).isEmpty()
+                            ? reader.get(longName)
+                            : reader.get(shortName);
+                    routeIds.put(reader.get(id), routeNames.size());
+                    routeNames.add(stringId(name));
+                    routeVehicles.add(vehicleOf(Integer.parseInt(reader.get(type))).ordinal());
+                }
+            }
+        }
+
+        private void readCalendar(Path file) throws IOException {
+            if (!Files.exists(file)) {
+                return;
+            }
+            try (CsvReader reader = new CsvReader(file)) {
+                int id = requiredColumn(reader, "calendar.txt", "service_id");
+                int start = requiredColumn(reader, "calendar.txt", "start_date");
+                int end = requiredColumn(reader, "calendar.txt", "end_date");
+                int[] days = new int[DayOfWeek.values().length];
+                for (DayOfWeek day : DayOfWeek.values()) {
+                    days[day.ordinal()] = requiredColumn(reader, "calendar.txt",
+                            day.name().toLowerCase());
+                }
+                while (reader.next()) {
+                    int service = serviceId(reader.get(id));
+                    LocalDate endDate = LocalDate.parse(reader.get(end), DATE_FORMAT);
+                    for (LocalDate date = LocalDate.parse(reader.get(start), DATE_FORMAT);
+                         !date.isAfter(endDate); date = date.plusDays(1)) {
+                        if (reader.get(days[date.getDayOfWeek().ordinal()]).equals("1")) {
+                            activeServices.computeIfAbsent(date, d -> new BitSet()).set(service);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void readCalendarDates(Path file) throws IOException {
+            if (!Files.exists(file)) {
+                return;
+            }
+            try (CsvReader reader = new CsvReader(file)) {
+                int id = requiredColumn(reader, "calendar_dates.txt", "service_id");
+                int date = requiredColumn(reader, "calendar_dates.txt", "date");
+                int exception = requiredColumn(reader, "calendar_dates.txt", "exception_type");
+                while (reader.next()) {
+                    BitSet services = activeServices.computeIfAbsent(
+                            LocalDate.parse(reader.get(date), DATE_FORMAT), d -> new BitSet());
+                    services.set(serviceId(reader.get(id)), reader.get(exception).equals("1"));
+                }
+            }
+        }
+
+        private void readTrips(Path file) throws IOException {
+            try (CsvReader reader = new CsvReader(file)) {
+                int route = requiredColumn(reader, "trips.txt", "route_id");
+                int service = requiredColumn(reader, "trips.txt", "service_id");
+                int id = requiredColumn(reader, "trips.txt", "trip_id");
+                int headsign = reader.column("trip_headsign");
+                while (reader.next()) {
+                    Integer routeId = routeIds.get(reader.get(route));
+                    if (routeId == null) {
+                        continue;
+                    }
+                    tripIds.put(reader.get(id), feedTripRoutes.size());
+                    feedTripRoutes.add(routeId);
+                    feedTripServices.add(serviceId(reader.get(service)));
+                    feedTripHeadsigns.add(reader.get(headsign).isEmpty()
+                            ? -1
+                            : stringId(reader.get(headsign)));
+                }
+            }
+        }
+
+        private void readFrequencies(Path file) throws IOException {
+            if (!Files.exists(file)) {
+                return;
+            }
+            try (CsvReader reader = new CsvReader(file)) {
+                int trip = requiredColumn(reader, "frequencies.txt", "trip_id");
+                int start = requiredColumn(reader, "frequencies.txt", "start_time");
+                int end = requiredColumn(reader, "frequencies.txt", "end_time");
+                int headway = requiredColumn(reader, "frequencies.txt", "headway_secs");
+                while (reader.next()) {
+                    Integer tripId = tripIds.get(reader.get(trip));
+                    int headwaySeconds = Integer.parseInt(reader.get(headway));
+                    if (tripId == null || headwaySeconds <= 0) {
+                        continue;
+                    }
+                    IntList intervals =
+                            feedTripFrequencies.computeIfAbsent(tripId, t -> new IntList());
+                    intervals.add(secondsOf(reader.get(start)));
+                    intervals.add(secondsOf(reader.get(end)));
+                    intervals.add(headwaySeconds);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of minutes to add to the times of the given trip of the feed for
+         * each of its runs: 0 if it runs once, or the shift of its first departure to each
+         * start of its intervals of frequencies.txt.
+         */
+        private IntList shiftsOf(int feedTrip, int firstDepartureMinutes) {
+            IntList shifts = new IntList();
+            IntList intervals = feedTripFrequencies.get(feedTrip);
+            if (intervals == null) {
+                shifts.add(0);
+                return shifts;
+            }
+            for (int i = 0; i < intervals.size(); i += 3) {
+                for (int start = intervals.get(i); start < intervals.get(i + 1);
+                     start += intervals.get(i + 2)) {
+                    shifts.add(start / 60 - firstDepartureMinutes);
+                }
+            }
+            return shifts;
+        }
+
+        private void readStopTimes(Path file) throws IOException {
+            IntList trips = new IntList();
+            IntList sequences = new IntList();
+            IntList stops = new IntList();
+            IntList arrivals = new IntList();
+            IntList departures = new IntList();
+            try (CsvReader reader = new CsvReader(file)) {
+                int trip = requiredColumn(reader, "stop_times.txt", "trip_id");
+                int arrival = requiredColumn(reader, "stop_times.txt", "arrival_time");
+                int departure = requiredColumn(reader, "stop_times.txt", "departure_time");
+                int stop = requiredColumn(reader, "stop_times.txt", "stop_id");
+                int sequence = requiredColumn(reader, "stop_times.txt", "stop_sequence");
+                while (reader.next()) {
+                    Integer tripId = tripIds.get(reader.get(trip));
+                    Integer stopId = stopIds.get(reader.get(stop));
+                    int arrivalSeconds = secondsOf(reader.get(arrival));
+                    int departureSeconds = secondsOf(reader.get(departure));
+                    if (tripId == null || stopId == null
+                            || (arrivalSeconds < 0 && departureSeconds < 0)) {
+                        continue;
+                    }
+                    trips.add(tripId);
+                    sequences.add(Integer.parseInt(reader.get(sequence)));
+                    stops.add(stopId);
+                    arrivals.add((arrivalSeconds < 0 ? departureSeconds : arrivalSeconds) / 60);
+                    departures.add((departureSeconds < 0 ? arrivalSeconds : departureSeconds)
+                            / 60);
+                }
+            }
+
+            // Groups the stop times by trip with a counting sort, then sorts each trip.
+            int tripCount = feedTripRoutes.size();
+            int[] tripStarts = new int[tripCount + 1];
+            for (int i = 0; i < trips.size(); i++) {
+                tripStarts[trips.get(i) + 1]++;
+            }
+            for (int t = 0; t < tripCount; t++) {
+                tripStarts[t + 1] += tripStarts[t];
+            }
+            long[] sortedStopTimes = new long[trips.size()];
+            int[] nextPositions = Arrays.copyOf(tripStarts, tripCount);
+            for (int i = 0; i < trips.size(); i++) {
+                sortedStopTimes[nextPositions[trips.get(i)]++] =
+                        (long) sequences.get(i) << Integer.SIZE | i;
+            }
+
+            for (int t = 0; t < tripCount; t++) {
+                int start = tripStarts[t];
+                int end = tripStarts[t + 1];
+                Arrays.sort(sortedStopTimes, start, end);
+                int connectionCount = end - start - 1;
+                if (connectionCount < 1 || connectionCount > MAX_TRIP_CONNECTIONS) {
+                    continue;
+                }
+                int first = (int) sortedStopTimes[start];
+                int last = (int) sortedStopTimes[end - 1];
+                IntList shifts = shiftsOf(t, departures.get(first));
+                for (int r = 0; r < shifts.size(); r++) {
+                    int shift = shifts.get(r);
+                    if (departures.get(first) + shift >= MAX_MINUTES
+                            || arrivals.get(last) + shift >= MAX_MINUTES) {
+                        continue;
+                    }
+
+                    tripRoutes.add(feedTripRoutes.get(t));
+                    tripServices.add(feedTripServices.get(t));
+                    tripDestinations.add(feedTripHeadsigns.get(t) >= 0
+                            ? feedTripHeadsigns.get(t)
+                            : stationName(stops.get(last)));
+                    tripFirstConnections.add(depStops.size());
+                    for (int s = start; s < end - 1; s++) {
+                        int from = (int) sortedStopTimes[s];
+                        int to = (int) sortedStopTimes[s + 1];
+                        int departureMinutes = departures.get(from) + shift;
+                        depStops.add(stops.get(from));
+                        depMinutes.add(departureMinutes);
+                        arrStops.add(stops.get(to));
+                        arrMinutes.add(Math.max(departureMinutes, arrivals.get(to) + shift));
+                    }
+                }
+            }
+            tripFirstConnections.add(depStops.size());
+        }
+
+        private int stationName(int stopId) {
+            int stationCount = stationNames.size();
+            return stationNames.get(stopId < stationCount
+                    ? stopId
+                    : platformStations.get(stopId - stationCount));
+        }
+
+        private void readTransfers(Path file) throws IOException {
+            if (Files.exists(file)) {
+                try (CsvReader reader = new CsvReader(file)) {
+                    int from = requiredColumn(reader, "transfers.txt", "from_stop_id");
+                    int to = requiredColumn(reader, "transfers.txt", "to_stop_id");
+                    int type = reader.column("transfer_type");
+                    int time = reader.column("min_transfer_time");
+                    while (reader.next()) {
+                        Integer fromStation = stopStationIds.get(reader.get(from));
+                        Integer toStation = stopStationIds.get(reader.get(to));
+                        if (fromStation == null || toStation == null
+                                || reader.get(type).equals(IMPOSSIBLE_TRANSFER)) {
+                            continue;
+                        }
+                        int minutes = reader.get(time).isEmpty()
+                                ? DEFAULT_CHANGE_MINUTES
+                                : Math.ceilDiv(Integer.parseInt(reader.get(time)), 60);
+                        if (minutes <= MAX_TRANSFER_MINUTES) {
+                            transfers.merge((long) fromStation << Integer.SIZE | toStation,
+                                    minutes, Math::min);
+                        }
+                    }
+                }
+            }
+            for (int station = 0; station < stationNames.size(); station++) {
+                transfers.putIfAbsent((long) station << Integer.SIZE | station,
+                        DEFAULT_CHANGE_MINUTES);
+            }
+        }
+
+        /**
+         * Writes the timetable of the given dates in the given directory.
+         */
+        void write(Path directory, List<LocalDate> dates) throws IOException {
+            int stopCount = stationNames.size() + platformNames.size();
+            int version = strings.size() > MAX_NARROW_ID || stopCount > MAX_NARROW_ID
+                    || routeNames.size() > MAX_NARROW_ID
+                    ? FileHeader.WIDE_IDS_VERSION
+                    : FileHeader.DEFAULT_VERSION;
+
+            writeStrings(directory);
+            writeStations(directory.resolve("stations.bin"), version);
+            // GTFS does not describe alternative names of the stations.
+            new StructuredBufferWriter(BufferedStationAliases.structure(version),
+                    directory.resolve("station-aliases.bin"), version).close();
+            writePlatforms(directory.resolve("platforms.bin"), version);
+            writeRoutes(directory.resolve("routes.bin"), version);
+            writeTransfers(directory.resolve("transfers.bin"), version);
+
+            // The days are written by as many threads as there are cores, each day needing
+            // memory proportional to its number of connections.
+            try {
+                dates.parallelStream().forEach(date -> {
+                    try {
+                        writeDay(directory.resolve(date.toString()),
+                                activeServices.getOrDefault(date, new BitSet()), version);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void writeStrings(Path directory) throws IOException {
+            List<String> latinStrings = strings.stream()
+                    .map(s -> new String(s.getBytes(StandardCharsets.ISO_8859_1),
+                            StandardCharsets.ISO_8859_1))
+                    .toList();
+            Files.write(directory.resolve("strings.txt"), latinStrings,
+                    StandardCharsets.ISO_8859_1);
+            MappedStringTable.write(latinStrings, directory.resolve(MappedStringTable.FILE_NAME));
+        }
+
+        private void writeStations(Path file, int version) throws IOException {
+            try (StructuredBufferWriter writer = new StructuredBufferWriter(
+                    BufferedStations.structure(version), file, version)) {
+                for (int i = 0; i < stationNames.size(); i++) {
+                    writer.newRecord()
+                            .putUnsigned(BufferedStations.NAME_ID, stationNames.get(i))
+                            .putS32(BufferedStations.LON, stationLons.get(i))
+                            .putS32(BufferedStations.LAT, stationLats.get(i));
+                }
+            }
+        }
+
+        private void writePlatforms(Path file, int version) throws IOException {
+            try (StructuredBufferWriter writer = new StructuredBufferWriter(
+                    BufferedPlatforms.structure(version), file, version)) {
+                for (int i = 0; i < platformNames.size(); i++) {
+                    writer.newRecord()
+                            .putUnsigned(BufferedPlatforms.NAME_ID, platformNames.get(i))
+                            .putUnsigned(BufferedPlatforms.STATION_ID, platformStations.get(i));
+                }
+            }
+        }
+
+        private void writeRoutes(Path file, int version) throws IOException {
+            try (StructuredBufferWriter writer = new StructuredBufferWriter(
+                    BufferedRoutes.structure(version), file, version)) {
+                for (int i = 0; i < routeNames.size(); i++) {
+                    writer.newRecord()
+                            .putUnsigned(BufferedRoutes.NAME_ID, routeNames.get(i))
+                            .putU8(BufferedRoutes.KIND, routeVehicles.get(i));
+                }
+            }
+        }
+
+        private void writeTransfers(Path file, int version) throws IOException {
+            // Sorted by arrival station, then by duration to keep the shortest transfers of
+            // the stations having too many of them. The arrival stations having up to 24 bits,
+            // the keys are compared unsigned, the arrival stations from 2^23 setting their sign.
+            long[] sortedTransfers = transfers.entrySet().stream()
+                    .map(e -> (e.getKey() & MASK_32_BITS) << 40
+                            | (long) e.getValue() << 32
+                            | e.getKey() >>> Integer.SIZE)
+                    .sorted(Long::compareUnsigned)
+                    .mapToLong(Long::longValue)
+                    .toArray();
+            try (StructuredBufferWriter writer = new StructuredBufferWriter(
+                    BufferedTransfers.structure(version), file, version)) {
+                int arrivingCount = 0;
+                for (int i = 0; i < sortedTransfers.length; i++) {
+                    int arrStation = (int) (sortedTransfers[i] >>> 40);
+                    boolean sameStation = i > 0
+                            && (int) (sortedTransfers[i - 1] >>> 40) == arrStation;
+                    arrivingCount = sameStation ? arrivingCount + 1 : 1;
+                    if (arrivingCount > MAX_STATION_TRANSFERS) {
+                        continue;
+                    }
+                    writer.newRecord()
+                            .putUnsigned(BufferedTransfers.DEP_STATION_ID,
+                                    (int) (sortedTransfers[i] & MASK_32_BITS))
+                            .putUnsigned(BufferedTransfers.ARR_STATION_ID, arrStation)
+                            .putU8(BufferedTransfers.TRANSFER_MINUTES,
+                                    (int) (sortedTransfers[i] >>> 32) & 0xFF);
+                }
+            }
+        }
+
+        /**
+         * Writes the trips, connections and successors of the trips whose service is one of
+         * the given services in the given day directory.
+         */
+        private void writeDay(Path dayDirectory, BitSet services, int version)
+                throws IOException {
+            Files.createDirectories(dayDirectory);
+            IntList dayTrips = new IntList();
+            int connectionCount = 0;
+            for (int t = 0; t < tripRoutes.size(); t++) {
+                if (services.get(tripServices.get(t))) {
+                    dayTrips.add(t);
+                    connectionCount += tripFirstConnections.get(t + 1)
+                            - tripFirstConnections.get(t);
+                }
+            }
+
+            // The connections of the day are numbered trip by trip; the sort key orders them by
+            // decreasing departure time, then decreasing arrival time, then decreasing number,
+            // so that the connections of a trip taking no time keep their reverse order.
+            // The other fields of each connection are stored side by side in the order of the
+            // numbers, so that writing a connection reads a single cache line of them.
+            long[] keys = new long[connectionCount];
+            long[] fields = new long[2 * connectionCount];
+            int[] tripFirsts = new int[dayTrips.size() + 1];
+            int c = 0;
+            for (int d = 0; d < dayTrips.size(); d++) {
+                int t = dayTrips.get(d);
+                tripFirsts[d] = c;
+                for (int g = tripFirstConnections.get(t); g < tripFirstConnections.get(t + 1);
+                     g++) {
+                    keys[c] = (long) (MAX_MINUTES_FIELD - depMinutes.get(g)) << 48
+                            | (long) (MAX_MINUTES_FIELD - arrMinutes.get(g)) << 32
+                            | (Integer.MAX_VALUE - c);
+                    fields[2 * c] = (long) depStops.get(g) << Integer.SIZE | arrStops.get(g);
+                    fields[2 * c + 1] = (long) Bits32_24_8.pack(d, c - tripFirsts[d])
+                            << Integer.SIZE;
+                    c++;
+                }
+            }
+            tripFirsts[dayTrips.size()] = c;
+            Arrays.parallelSort(keys);
+
+            int[] sortedIndexes = new int[connectionCount];
+            for (int i = 0; i < connectionCount; i++) {
+                sortedIndexes[Integer.MAX_VALUE - (int) (keys[i] & MASK_32_BITS)] = i;
+            }
+            for (int d = 0; d < dayTrips.size(); d++) {
+                for (c = tripFirsts[d]; c < tripFirsts[d + 1]; c++) {
+                    int next = c + 1 < tripFirsts[d + 1] ? c + 1 : tripFirsts[d];
+                    fields[2 * c + 1] |= sortedIndexes[next];
+                }
+            }
+
+            Path tripsFile = dayDirectory.resolve("trips.bin");
+            try (StructuredBufferWriter writer = new StructuredBufferWriter(
+                    BufferedTrips.structure(version), tripsFile, version)) {
+                for (int d = 0; d < dayTrips.size(); d++) {
+                    int t = dayTrips.get(d);
+                    writer.newRecord()
+                            .putUnsigned(BufferedTrips.ROUTE_ID, tripRoutes.get(t))
+                            .putUnsigned(BufferedTrips.DESTINATION_ID, tripDestinations.get(t));
+                }
+            }
+
+            try (StructuredBufferWriter connections = new StructuredBufferWriter(
+                    BufferedConnections.structure(version),
+                    dayDirectory.resolve("connections.bin"), version);
+                 StructuredBufferWriter successors = new StructuredBufferWriter(
+                         SUCCESSOR_STRUCTURE, dayDirectory.resolve("connections-succ.bin"),
+                         version)) {
+                for (long key : keys) {
+                    int dayConnection = Integer.MAX_VALUE - (int) (key & MASK_32_BITS);
+                    long stops = fields[2 * dayConnection];
+                    long tripPosAndSuccessor = fields[2 * dayConnection + 1];
+                    connections.newRecord()
+                            .putUnsigned(BufferedConnections.DEP_STOP_ID,
+                                    (int) (stops >>> Integer.SIZE))
+                            .putU16(BufferedConnections.DEP_MINUTES,
+                                    MAX_MINUTES_FIELD - (int) (key >>> 48))
+                            .putUnsigned(BufferedConnections.ARR_STOP_ID, (int) stops)
+                            .putU16(BufferedConnections.ARR_MINUTES,
+                                    MAX_MINUTES_FIELD - (int) (key >>> 32 & MAX_MINUTES_FIELD))
+                            .putS32(BufferedConnections.TRIP_POS_ID,
+                                    (int) (tripPosAndSuccessor >>> Integer.SIZE));
+                    successors.newRecord().putS32(0, (int) tripPosAndSuccessor);
+                }
+            }
+        }
+    }
+}
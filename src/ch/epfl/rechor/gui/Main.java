@@ -1,6 +1,7 @@
 package ch.epfl.rechor.gui;
 
 import ch.epfl.rechor.StopIndex;
+import ch.epfl.rechor.StopIndexSnapshot;
 import ch.epfl.rechor.journey.Journey;
 import ch.epfl.rechor.journey.JourneyExtractor;
 import ch.epfl.rechor.journey.Profile;
@@ -48,23 +49,6 @@ public class Main extends Application {
         launch(args);
     }
 
-    /**
-     * Returns the numeric identifier of the station whose name equals the station name
-     * inside stations, or -1 if no match is found.
-     *
-     * @param stations    the station list to search
-     * @param stationName the human‑readable name to look up
-     * @return the station’s index, or -1 when absent
-     */
-    static int stationId(Stations stations, String stationName) {
-        for (int i = 0; i < stations.size(); i++) {
-            if (Objects.equals(stations.name(i), stationName)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
     /**
      * JavaFX entry‑point.
      *
@@ -76,22 +60,12 @@ public class Main extends Application {
 
         Path pathToTimetable = Path.of("timetable");
 
-        TimeTable timetable = FileTimeTable.in(pathToTimetable);
-        Stations stations = timetable.stations();
-        StationAliases stationAliases = timetable.stationAliases();
-
-        List<String> stopNames = new LinkedList<>();
-
-        for (int i = 0; i < stations.size() ; i++) {
-            stopNames.add(stations.name(i));
-        }
-
-        Map<String, String> alternativeStopNamesTable = new HashMap<>();
-        for (int i = 0; i < stationAliases.size(); i++) {
-            alternativeStopNamesTable.put(stationAliases.alias(i), stationAliases.stationName(i));
-        }
-
-        StopIndex stopIndex = new StopIndex(stopNames,alternativeStopNamesTable);
+        FileTimeTable timetable = FileTimeTable.in(pathToTimetable);
+        StationDirectory stationDirectory = StationDirectory.of(timetable);
+        List<LocalDate> dayDates = timetable.dayDates();
+        StopIndex stopIndex = StopIndexSnapshot.in(pathToTimetable,
+                StopIndexSnapshot.keyOf(pathToTimetable),
+                () -> StopIndex.of(timetable, StopIndex.stationImportances(timetable, dayDates)));
 
         QueryUI queryUI = QueryUI.create(stopIndex);
 
@@ -114,14 +88,15 @@ public class Main extends Application {
                             !Objects.equals(currentArrStation, arrStopObserved.getValue()))){
 
                         profile = router.profile(dateObserved.getValue(),
-                                stationId(stations,arrStopObserved.getValue()));
+                                stationDirectory.stationId(arrStopObserved.getValue()));
                         currentArrStation = arrStopObserved.getValue();
                         currentLocalDate = dateObserved.getValue();
                     }
 
                     if (!depStopObserved.getValue().isEmpty() && profile != null) {
 
-                        int depStationId = stationId(stations, depStopObserved.getValue());
+                        int depStationId =
+                                stationDirectory.stationId(depStopObserved.getValue());
                         return JourneyExtractor.journeys(profile, depStationId);
                     }
                     return null;
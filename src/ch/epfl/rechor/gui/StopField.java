@@ -37,6 +37,7 @@ public record StopField(TextField textField, ObservableValue<String> stop0) {
     public static StopField create(StopIndex stopIndex) {
 
         ObjectProperty<String> observableStop = new SimpleObjectProperty<>();
+        StopIndex.Session stopIndexSession = stopIndex.session();
 
         TextField textField = new TextField();
 
@@ -78,7 +79,7 @@ public record StopField(TextField textField, ObservableValue<String> stop0) {
 
                 subscriptions.add(textField.textProperty().subscribe(
                         ((newText) -> {
-                    List<String> foundResults = stopIndex.stopsMatching(newText,
+                    List<String> foundResults = stopIndexSession.stopsMatching(newText,
                             NUMBER_OF_PRESENTED_RESULTS);
                     queryResults.getItems().setAll(foundResults);
 
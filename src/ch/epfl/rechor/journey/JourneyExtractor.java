@@ -12,8 +12,6 @@ import ch.epfl.rechor.journey.Journey.Leg.Transport;
 import ch.epfl.rechor.journey.Journey.Leg.IntermediateStop;
 import ch.epfl.rechor.journey.Journey.Leg.Foot;
 import ch.epfl.rechor.journey.Journey.Leg;
-import static ch.epfl.rechor.Bits32_24_8.unpack24;
-import static ch.epfl.rechor.Bits32_24_8.unpack8;
 import static ch.epfl.rechor.journey.PackedCriteria.*;
 
 /**
@@ -76,6 +74,7 @@ public final class JourneyExtractor {
         TimeTable timeTable = profile.timeTable();
         Trips trips = profile.trips();
         Routes routes = profile.timeTable().routes();
+        PayloadTable payloads = profile.payloads();
         ParetoFront paretoFront = profile.forStation(depStationId);
         List <Journey> journeyList = new ArrayList<>(paretoFront.size());
 
@@ -89,14 +88,14 @@ public final class JourneyExtractor {
 
             List<Journey.Leg> currentLegs = new ArrayList<>();
 
-            int connectionID = unpack24(payload(criteria));
+            int connectionID = payloads.connectionId(payload(criteria));
             int connectionDepStopId = connections.depStopId(connectionID);
             int connectionDepStationId = timeTable.stationId(connectionDepStopId);
             int connectionArrStopId = connections.arrStopId(connectionID);
             int connectionArrStationId = timeTable.stationId(connectionArrStopId);
             int connectionDepMins = connections.depMins(connectionID);
             int connectionArrMins = connections.arrMins(connectionID);
-            int numberOfIntermediateStops = unpack8(payload(criteria));
+            int numberOfIntermediateStops = payloads.intermediateStops(payload(criteria));
 
             LocalDateTime currentLegArrTime;
             Stop currentLegArrStop;
@@ -114,8 +113,8 @@ public final class JourneyExtractor {
 
                     criteria = profile.forStation(connectionArrStationId).
                             get(journeyArrMins, journeyChanges);
-                    connectionID = unpack24(payload(criteria));
-                    numberOfIntermediateStops = unpack8(payload(criteria));
+                    connectionID = payloads.connectionId(payload(criteria));
+                    numberOfIntermediateStops = payloads.intermediateStops(payload(criteria));
                     connectionDepStopId = connections.depStopId(connectionID);
                     connectionDepMins = connections.depMins(connectionID);
                     currentLegs.add(newFootLeg(timeTable,currentDate,connectionArrMins,
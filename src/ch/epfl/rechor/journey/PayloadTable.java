@@ -0,0 +1,132 @@
+package ch.epfl.rechor.journey;
+
+import ch.epfl.rechor.Bits32_24_8;
+import ch.epfl.rechor.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Class packing the payloads of the criteria of the station fronts of a profile, each payload
+ * identifying the first connection of a journey and the number of intermediate stops before
+ * leaving its trip.
+ * In the narrow mode, both values are packed in the 32 bits of the payload (24 bits for the
+ * connection and 8 bits for the stops), which limits the connections to 16M. In the wide mode,
+ * the payload is an index in a table stored beside the fronts, each entry of which contains
+ * both values on 32 bits, at the cost of 8 bytes per packed payload.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class PayloadTable {
+
+    /**
+     * The payload table of the narrow mode, which stores nothing.
+     */
+    public static final PayloadTable NARROW = new PayloadTable(false);
+
+    /**
+     * The initial capacity of the table of the wide mode.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * Mask constant for the 32 bits of the number of stops in an entry.
+     */
+    private static final long MASK_32_BITS = 0xFFFF_FFFFL;
+
+    /**
+     * Whether the payloads are indexes in the table.
+     */
+    private final boolean wide;
+
+    /**
+     * The entries of the table, each containing a connection (32 most significant bits) and a
+     * number of intermediate stops (32 least significant bits).
+     */
+    private long[] entries;
+
+    /**
+     * The number of entries of the table.
+     */
+    private int size;
+
+    private PayloadTable(boolean wide) {
+        this.wide = wide;
+        entries = wide ? new long[INITIAL_CAPACITY] : new long[0];
+    }
+
+    /**
+     * Returns a new, empty, payload table of the wide mode.
+     *
+     * @return a new payload table of the wide mode
+     */
+    public static PayloadTable wide() {
+        return new PayloadTable(true);
+    }
+
+    /**
+     * Checks whether the payloads are indexes in the table.
+     *
+     * @return true if the table is in the wide mode
+     */
+    public boolean isWide() {
+        return wide;
+    }
+
+    /**
+     * Returns the payload identifying the given connection and number of intermediate stops,
+     * adding an entry to the table in the wide mode.
+     *
+     * @param connectionId the index of the first connection of the journey
+     * @param intermediateStops the number of intermediate stops before leaving the trip
+     * @return the payload identifying both values
+     * @throws IllegalArgumentException if one of the values is negative, or if it does not fit
+     * in its bits in the narrow mode
+     */
+    public int pack(int connectionId, int intermediateStops) {
+        if (!wide) {
+            return Bits32_24_8.pack(connectionId, intermediateStops);
+        }
+        Preconditions.checkArgument(connectionId >= 0 && intermediateStops >= 0);
+        if (size == entries.length) {
+            Preconditions.checkArgument(size < Integer.MAX_VALUE);
+            entries = Arrays.copyOf(entries,
+                    (int) Math.min((long) size * 2, Integer.MAX_VALUE));
+        }
+        entries[size] = (long) connectionId << Integer.SIZE | intermediateStops;
+        return size++;
+    }
+
+    /**
+     * Returns the connection identified by the given payload.
+     *
+     * @param payload the payload of a criteria of a station front
+     * @return the index of the first connection of the journey
+     */
+    public int connectionId(int payload) {
+        return wide
+                ? (int) (entries[payload] >>> Integer.SIZE)
+                : Bits32_24_8.unpack24(payload);
+    }
+
+    /**
+     * Returns the number of intermediate stops identified by the given payload.
+     *
+     * @param payload the payload of a criteria of a station front
+     * @return the number of intermediate stops before leaving the trip
+     */
+    public int intermediateStops(int payload) {
+        return wide
+                ? (int) (entries[payload] & MASK_32_BITS)
+                : Bits32_24_8.unpack8(payload);
+    }
+
+    /**
+     * Returns the number of entries of the table, always 0 in the narrow mode.
+     *
+     * @return the number of entries of the table
+     */
+    public int size() {
+        return size;
+    }
+}
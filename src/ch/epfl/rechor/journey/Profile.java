@@ -20,11 +20,27 @@ import java.util.Objects;
  * @param date the date that corresponds to the profile
  * @param arrStationId the index of the station of the profile
  * @param stationFront a list of ParetoFront for our profile
+ * @param payloads the table giving the connection and intermediate stops identified by the
+ *                 payloads of the station fronts
  */
 public record Profile(TimeTable timeTable, LocalDate date, int arrStationId,
-                      List<ParetoFront> stationFront) {
+                      List<ParetoFront> stationFront, PayloadTable payloads) {
     public Profile {
         stationFront = List.copyOf(stationFront);
+        Objects.requireNonNull(payloads);
+    }
+
+    /**
+     * Constructs a profile whose payloads are packed in the narrow mode.
+     *
+     * @param timeTable the timetable of the profile
+     * @param date the date that corresponds to the profile
+     * @param arrStationId the index of the station of the profile
+     * @param stationFront a list of ParetoFront for our profile
+     */
+    public Profile(TimeTable timeTable, LocalDate date, int arrStationId,
+                   List<ParetoFront> stationFront) {
+        this(timeTable, date, arrStationId, stationFront, PayloadTable.NARROW);
     }
 
     /**
@@ -87,6 +103,11 @@ public record Profile(TimeTable timeTable, LocalDate date, int arrStationId,
          */
         ParetoFront.Builder [] tripsFront;
 
+        /**
+         * The table packing the payloads of the station fronts.
+         */
+        PayloadTable payloads;
+
         /**
          * The constructor stores the given arguments and initializes two primitive arrays
          * intended to hold the Pareto front builders for stops and trips.
@@ -96,6 +117,20 @@ public record Profile(TimeTable timeTable, LocalDate date, int arrStationId,
          * @param arrStationId the arrival station id for all the stations of our profile
          */
         public Builder(TimeTable timeTable, LocalDate date, int arrStationId) {
+            this(timeTable, date, arrStationId, PayloadTable.NARROW);
+        }
+
+        /**
+         * Constructs a builder whose station fronts have payloads packed by the given table.
+         *
+         * @param timeTable a timetable from the swiss official schedule
+         * @param date the date associated to the profile
+         * @param arrStationId the arrival station id for all the stations of our profile
+         * @param payloads the table packing the payloads of the station fronts
+         */
+        public Builder(TimeTable timeTable, LocalDate date, int arrStationId,
+                       PayloadTable payloads) {
+            this.payloads = Objects.requireNonNull(payloads);
             this.timeTable = timeTable;
             this.date = date;
             this.arrStationId = arrStationId;
@@ -103,6 +138,15 @@ public record Profile(TimeTable timeTable, LocalDate date, int arrStationId,
             tripsFront = new ParetoFront.Builder[timeTable.tripsFor(date).size()];
         }
 
+        /**
+         * Returns the table packing the payloads of the station fronts.
+         *
+         * @return the payload table of the profile
+         */
+        public PayloadTable payloads() {
+            return payloads;
+        }
+
         /**
          * Returns the Pareto front builder associated with the given station ID.
          *
@@ -159,7 +203,7 @@ public record Profile(TimeTable timeTable, LocalDate date, int arrStationId,
                     frontList.add(builder.build());
                 }
             }
-            return new Profile(timeTable,date,arrStationId, frontList);
+            return new Profile(timeTable,date,arrStationId, frontList, payloads);
         }
     }
 }
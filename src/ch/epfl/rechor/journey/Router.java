@@ -1,6 +1,5 @@
 package ch.epfl.rechor.journey;
 
-import ch.epfl.rechor.Bits32_24_8;
 import ch.epfl.rechor.PackedRange;
 import ch.epfl.rechor.timetable.Connections;
 import ch.epfl.rechor.timetable.Stations;
@@ -12,28 +11,123 @@ import static ch.epfl.rechor.journey.ParetoFront.Builder;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * This record represents a router, which holds a timetable and whose method based on the
  * timetable generates a profile for a given date and arrival station. It uses the CSA algorithm.
  *
+ * The payloads of the station fronts of the profiles are packed in the narrow mode
+ * (see {@link PayloadTable}) unless the connections of the date do not fit in it, or unless
+ * the wide mode is requested explicitly.
+ *
  * @param timeTable the given timetable to use
+ * @param payloadMode the mode in which the payloads of the station fronts are packed
  */
-public record Router(TimeTable timeTable) {
+public record Router(TimeTable timeTable, PayloadMode payloadMode) {
+
+    /**
+     * The number of connections whose identifiers fit in the payloads of the narrow mode.
+     */
+    private static final int MAX_NARROW_CONNECTIONS = 1 << 24;
+
+    /**
+     * The modes in which the payloads of the station fronts can be packed.
+     */
+    public enum PayloadMode {
+        /**
+         * The narrow mode if the connections of the date fit in it, the wide mode otherwise.
+         */
+        AUTOMATIC,
+        /**
+         * The connection and the stops packed in the 32 bits of the payload.
+         */
+        NARROW,
+        /**
+         * The payload being an index in a table of the profile.
+         */
+        WIDE
+    }
+
+    public Router {
+        Objects.requireNonNull(payloadMode);
+    }
+
+    /**
+     * Constructs a router choosing the mode of the payloads according to the number of
+     * connections of each date.
+     *
+     * @param timeTable the given timetable to use
+     */
+    public Router(TimeTable timeTable) {
+        this(timeTable, PayloadMode.AUTOMATIC);
+    }
 
     /**
      * Computes the pareto front profile for reaching the arrival station id on the given date.
+     * The connections whose departure station already has a front dominating theirs are not
+     * propagated to the stations from which it can be reached by walking, which only gives the
+     * optimal fronts when the transfers are closed under walking.
      *
      * @param date the date for which the optimal journeys must be computed
      * @param arrStationId arrival station id
      * @return profile containing a pareto front for each station.
      */
     public Profile profile (LocalDate date, int arrStationId) {
+        return profile(date, arrStationId, Map.of(), Map.of(), true);
+    }
+
+    /**
+     * Computes the pareto front profile for reaching the arrival station id on the given date,
+     * starting from fronts already known at some stations and after some connections, for
+     * instance computed from the connections of another region of a sharded timetable.
+     * The journeys arriving at one of these stations can continue with the tuples of its known
+     * front, as if they had been computed by this router. The journeys taking one of these
+     * connections can stay on its trip after it with the tuples of its known front, which are
+     * added to the front of the trip when the connection is reached, so that they are not
+     * offered to the journeys taking the trip at a later connection. The payloads of the
+     * known fronts are not used: the journeys staying on the trip are considered to leave it at
+     * the connection.
+     * Unlike profile(date, arrStationId), every connection is propagated to the stations from
+     * which its departure station can be reached by walking, even if the front of its departure
+     * station already dominates it: that front can come from the known fronts, which were not
+     * propagated to these stations. The fronts are thus the optimal ones whatever the
+     * transfers, with or without known fronts, at the cost of a slower profile.
+     *
+     * @param date the date for which the optimal journeys must be computed
+     * @param arrStationId arrival station id
+     * @param knownStationFronts the front already known at some stations, by station id
+     * @param knownTripFronts the front already known after some connections, of the journeys
+     *                        staying on their trip, by connection id
+     * @return profile containing a pareto front for each station.
+     */
+    public Profile profile (LocalDate date, int arrStationId,
+                            Map<Integer, ParetoFront> knownStationFronts,
+                            Map<Integer, ParetoFront> knownTripFronts) {
+        return profile(date, arrStationId, knownStationFronts, knownTripFronts, false);
+    }
+
+    private Profile profile (LocalDate date, int arrStationId,
+                             Map<Integer, ParetoFront> knownStationFronts,
+                             Map<Integer, ParetoFront> knownTripFronts,
+                             boolean skipsDominatedDepartures) {
 
-        final Profile.Builder profile = new Profile.Builder(timeTable, date, arrStationId);
         final Stations stations = timeTable.stations();
         final Connections connections = timeTable.connectionsFor(date);
         final Transfers transfers = timeTable.transfers();
+        final boolean widePayloads = payloadMode == PayloadMode.WIDE
+                || (payloadMode == PayloadMode.AUTOMATIC
+                && connections.size() > MAX_NARROW_CONNECTIONS);
+        final PayloadTable payloads = widePayloads ? PayloadTable.wide() : PayloadTable.NARROW;
+        final Profile.Builder profile = new Profile.Builder(timeTable, date, arrStationId,
+                payloads);
+        knownStationFronts.forEach((stationId, knownFront) -> {
+            Builder knownFrontBuilder = new Builder();
+            knownFront.forEach(knownFrontBuilder::add);
+            profile.setForStation(stationId, knownFrontBuilder);
+        });
+        final boolean hasKnownTripFronts = !knownTripFronts.isEmpty();
 
         final int[] arrayOfTransfersDuration = new int[stations.size()];
 
@@ -49,6 +143,7 @@ public record Router(TimeTable timeTable) {
         }
 
         Builder front = new Builder();
+        Builder departures = new Builder();
         Builder arrStationBuilder;
         Builder tripsBuilder;
 
@@ -81,6 +176,12 @@ public record Router(TimeTable timeTable) {
                 front.add(tuple);
             }
 
+            ParetoFront knownTripFront = hasKnownTripFronts ? knownTripFronts.get(i) : null;
+            if (knownTripFront != null) {
+                knownTripFront.forEach(criteria -> front.add(
+                        PackedCriteria.withPayload(criteria, associatedPayload)));
+            }
+
             front.addAll(tripsBuilder);
 
             arrStationBuilder.forEach((long criteria) -> {
@@ -97,7 +198,20 @@ public record Router(TimeTable timeTable) {
             tripsBuilder.addAll(front);
             profile.setForTrip(tripId,tripsBuilder);
 
-            if (!depStationFront.fullyDominates(front,connectionDepMins)) {
+            if (!skipsDominatedDepartures
+                    || !depStationFront.fullyDominates(front,connectionDepMins)) {
+
+                int connectionId = i;
+                departures.clear();
+                front.forEach( (long criteria) -> {
+                    int connexionToLeave = PackedCriteria.payload(criteria);
+                    int numberOfIntermediateStops = connections.tripPos(connexionToLeave)
+                            - currentConnectionTripPos;
+                    int payl = payloads.pack(connectionId,numberOfIntermediateStops);
+
+                    departures.add(PackedCriteria.pack(arrMins(criteria), changes(criteria),
+                            payl));
+                });
 
                 int firstChangeToDepStation = PackedRange.startInclusive
                         (transfers.arrivingAt(connectionDepStationId));
@@ -112,16 +226,7 @@ public record Router(TimeTable timeTable) {
 
                     int d = connectionDepMins - transfers.minutes(j);
 
-                    int connectionId = i;
-                    front.forEach( (long criteria) -> {
-                        int connexionToLeave = PackedCriteria.payload(criteria);
-                        int numberOfIntermediateStops = connections.tripPos(connexionToLeave)
-                                - currentConnectionTripPos;
-                        int payl = Bits32_24_8.pack(connectionId,numberOfIntermediateStops);
-
-
-                        long tupleWithoutDepMins = PackedCriteria.pack(arrMins(criteria),
-                                changes(criteria),payl);
+                    departures.forEach( (long tupleWithoutDepMins) -> {
                         long addedTuple = PackedCriteria.withDepMins(tupleWithoutDepMins, d);
 
                         stationToDepStationFront.add(addedTuple);
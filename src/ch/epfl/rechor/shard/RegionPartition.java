@@ -0,0 +1,111 @@
+package ch.epfl.rechor.shard;
+
+import ch.epfl.rechor.Preconditions;
+import ch.epfl.rechor.timetable.StationCoordinates;
+import ch.epfl.rechor.timetable.Stations;
+
+/**
+ * Partition of the stations of a timetable into geographical regions of about the same number
+ * of stations, one per worker of a sharded timetable.
+ * The partition is computed by recursive coordinate bisection: the stations are split at the
+ * median of the coordinate along which they are the most spread, and each half is split again
+ * until there are as many parts as regions. The partition only depends on the stations and
+ * on the number of regions, so that the coordinator and every worker compute the same one
+ * independently.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class RegionPartition {
+
+    /**
+     * The region of each station.
+     */
+    private final int[] stationRegions;
+
+    /**
+     * The number of regions.
+     */
+    private final int regionCount;
+
+    private RegionPartition(int[] stationRegions, int regionCount) {
+        this.stationRegions = stationRegions;
+        this.regionCount = regionCount;
+    }
+
+    /**
+     * Partitions the given stations into the given number of regions.
+     *
+     * @param stations the stations to partition, for instance those of a FileTimeTable
+     * @param regionCount the number of regions
+     * @return the partition of the stations
+     * @throws IllegalArgumentException if the number of regions is not strictly positive
+     */
+    public static RegionPartition of(Stations stations, int regionCount) {
+        Preconditions.checkArgument(regionCount > 0);
+        StationCoordinates coordinates = StationCoordinates.of(stations);
+        int[] stationIds = coordinates.stationIds();
+        int[] stationRegions = new int[stationIds.length];
+        split(stationIds, 0, stationIds.length, 0, regionCount, coordinates, stationRegions);
+        return new RegionPartition(stationRegions, regionCount);
+    }
+
+    /**
+     * Assigns the stations between the given indexes of the given array to the given number of
+     * regions, starting at the given region, reordering them in the array.
+     */
+    private static void split(int[] stationIds, int from, int to, int firstRegion, int count,
+                              StationCoordinates coordinates, int[] stationRegions) {
+        if (count == 1 || to - from <= 1) {
+            for (int i = from; i < to; i++) {
+                stationRegions[stationIds[i]] = firstRegion;
+            }
+            return;
+        }
+
+        coordinates.sort(stationIds, from, to,
+                coordinates.mostSpreadAlongLongitude(stationIds, from, to));
+
+        int firstCount = count / 2;
+        int middle = from + (int) ((long) (to - from) * firstCount / count);
+        split(stationIds, from, middle, firstRegion, firstCount, coordinates, stationRegions);
+        split(stationIds, middle, to, firstRegion + firstCount, count - firstCount, coordinates,
+                stationRegions);
+    }
+
+    /**
+     * Returns the region of the given station.
+     *
+     * @param stationId the index of the station
+     * @return the region of the station, between 0 (included) and the number of regions
+     * @throws IndexOutOfBoundsException if the station does not exist
+     */
+    public int region(int stationId) {
+        return stationRegions[stationId];
+    }
+
+    /**
+     * Returns the number of regions.
+     *
+     * @return the number of regions
+     */
+    public int regionCount() {
+        return regionCount;
+    }
+
+    /**
+     * Returns the number of stations of the given region.
+     *
+     * @param region the region
+     * @return the number of stations of the region
+     */
+    public int stationCount(int region) {
+        int count = 0;
+        for (int stationRegion : stationRegions) {
+            if (stationRegion == region) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,393 @@
+package ch.epfl.rechor.shard;
+
+import ch.epfl.rechor.FormatterFr;
+import ch.epfl.rechor.Preconditions;
+import ch.epfl.rechor.journey.PackedCriteria;
+import ch.epfl.rechor.journey.ParetoFront;
+import ch.epfl.rechor.timetable.StationDirectory;
+import ch.epfl.rechor.timetable.TimeTable;
+import ch.epfl.rechor.timetable.mapped.FileTimeTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coordinator of a sharded timetable, answering the queries by combining the profiles computed
+ * by the workers of the regions (see ShardWorker).
+ * Each worker first gives the border of its region: the stations at which its connections
+ * arrive, whose fronts it reads, and the trip positions at which its trips come from or go
+ * to another region. The workers then compute their profiles in rounds, all of them in
+ * parallel, each round starting from the fronts of the border stations and trip positions
+ * computed by the other workers in the previous ones, so that the journeys of each round can
+ * cross one more border, after a change at a border station or staying on a trip. The fronts
+ * only growing, the rounds stop once none of them changes: the journeys then cross any number
+ * of regions, any number of times, and the front of the departure station is the optimal one
+ * of the routing on the full timetable, without its payloads, whatever the transfers (see
+ * Router.profile with known fronts, which the workers use).
+ * As the fronts have no payloads, the journeys themselves cannot be extracted from them
+ * (see JourneyExtractor): the coordinator only gives their departure and arrival times and
+ * their number of changes.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class ShardCoordinator implements Closeable {
+
+    /**
+     * The partition of the stations.
+     */
+    private final RegionPartition partition;
+
+    /**
+     * The connection to the worker of each region.
+     */
+    private final List<WorkerConnection> workers;
+
+    /**
+     * Constructs a coordinator connected to the given workers.
+     *
+     * @param partition the partition of the stations of the timetable
+     * @param workerAddresses the address of the worker of each region, in the order of the
+     *                        regions
+     * @throws IOException if connecting to one of the workers causes a problem
+     * @throws IllegalArgumentException if the number of workers is not the number of regions
+     */
+    public ShardCoordinator(RegionPartition partition, List<InetSocketAddress> workerAddresses)
+            throws IOException {
+        Preconditions.checkArgument(workerAddresses.size() == partition.regionCount());
+        this.partition = partition;
+        List<WorkerConnection> workers = new ArrayList<>();
+        try {
+            for (InetSocketAddress address : workerAddresses) {
+                workers.add(new WorkerConnection(new Socket(address.getAddress(),
+                        address.getPort())));
+            }
+        } catch (IOException e) {
+            for (WorkerConnection worker : workers) {
+                worker.close();
+            }
+            throw e;
+        }
+        this.workers = List.copyOf(workers);
+    }
+
+    /**
+     * Computes the front of the optimal journeys from the given departure station to the
+     * given arrival station on the given date.
+     *
+     * @param date the date of the journeys
+     * @param depStationId the departure station
+     * @param arrStationId the arrival station
+     * @return the front of the journeys, whose criteria have departure times but no payloads,
+     * so that it cannot be given to JourneyExtractor
+     * @throws IOException if communicating with a worker causes a problem
+     */
+    public ParetoFront front(LocalDate date, int depStationId, int arrStationId)
+            throws IOException {
+        List<Border> borders = new ArrayList<>();
+        for (WorkerConnection worker : workers) {
+            borders.add(worker.border(date));
+        }
+        // The fronts of a region are requested at the stations read by the other regions, and
+        // at the trip positions at which its trips come from another one.
+        List<int[]> requestedStations = new ArrayList<>();
+        for (int region = 0; region < workers.size(); region++) {
+            BitSet stations = new BitSet();
+            stations.set(depStationId);
+            for (int other = 0; other < workers.size(); other++) {
+                if (other != region) {
+                    Arrays.stream(borders.get(other).arrStationIds()).forEach(stations::set);
+                }
+            }
+            requestedStations.add(stations.stream().toArray());
+        }
+
+        Map<Integer, ParetoFront> stationFronts = new HashMap<>();
+        Map<Long, ParetoFront> tripFronts = new HashMap<>();
+        boolean changed = true;
+        while (changed) {
+            List<Fronts> rounds = round(date, arrStationId, borders, requestedStations,
+                    stationFronts, tripFronts);
+            changed = false;
+            for (int region = 0; region < workers.size(); region++) {
+                Fronts fronts = rounds.get(region);
+                int[] stationIds = requestedStations.get(region);
+                for (int i = 0; i < stationIds.length; i++) {
+                    changed |= merge(stationFronts, stationIds[i],
+                            fronts.stationFronts().get(i));
+                }
+                long[] entries = borders.get(region).entries();
+                for (int i = 0; i < entries.length; i++) {
+                    changed |= merge(tripFronts, entries[i], fronts.tripFronts().get(i));
+                }
+            }
+        }
+        return stationFronts.getOrDefault(depStationId, ParetoFront.EMPTY);
+    }
+
+    /**
+     * Computes the profile of every region in parallel, starting from the given fronts, and
+     * returns the fronts requested from each of them.
+     */
+    private List<Fronts> round(LocalDate date, int arrStationId, List<Border> borders,
+                               List<int[]> requestedStations,
+                               Map<Integer, ParetoFront> stationFronts,
+                               Map<Long, ParetoFront> tripFronts) throws IOException {
+        List<Future<Fronts>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int region = 0; region < workers.size(); region++) {
+                Border border = borders.get(region);
+                Map<Integer, ParetoFront> knownStationFronts = new HashMap<>();
+                for (int stationId : border.arrStationIds()) {
+                    ParetoFront front = stationFronts.get(stationId);
+                    if (front != null) {
+                        knownStationFronts.put(stationId, front);
+                    }
+                }
+                Map<Long, ParetoFront> knownTripFronts = new HashMap<>();
+                for (long exit : border.exits()) {
+                    ParetoFront front = tripFronts.get(exit + 1);
+                    if (front != null) {
+                        knownTripFronts.put(exit + 1, front);
+                    }
+                }
+                WorkerConnection worker = workers.get(region);
+                int[] stationIds = requestedStations.get(region);
+                futures.add(executor.submit(() -> worker.fronts(date, arrStationId,
+                        knownStationFronts, knownTripFronts, stationIds, border.entries())));
+            }
+        }
+        List<Fronts> fronts = new ArrayList<>();
+        for (Future<Fronts> future : futures) {
+            try {
+                fronts.add(future.get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ioException
+                        ? ioException
+                        : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        return fronts;
+    }
+
+    /**
+     * Adds the given front to the one of the given key, and returns true if it changed.
+     */
+    private static <K> boolean merge(Map<K, ParetoFront> fronts, K key, ParetoFront front) {
+        if (front.size() == 0) {
+            return false;
+        }
+        ParetoFront known = fronts.getOrDefault(key, ParetoFront.EMPTY);
+        ParetoFront.Builder builder = new ParetoFront.Builder();
+        known.forEach(builder::add);
+        front.forEach(builder::add);
+        ParetoFront merged = builder.build();
+        if (Arrays.equals(criteriaOf(merged), criteriaOf(known))) {
+            return false;
+        }
+        fronts.put(key, merged);
+        return true;
+    }
+
+    private static long[] criteriaOf(ParetoFront front) {
+        long[] criteria = new long[front.size()];
+        int[] index = {0};
+        front.forEach(c -> criteria[index[0]++] = c);
+        return criteria;
+    }
+
+    /**
+     * Closes the connections to the workers.
+     *
+     * @throws IOException if closing one of the connections causes a problem
+     */
+    @Override
+    public void close() throws IOException {
+        for (WorkerConnection worker : workers) {
+            worker.close();
+        }
+    }
+
+    /**
+     * The border of a region: the stations at which its connections arrive, and the trip
+     * positions of its connections whose trip comes from another region, or goes on in
+     * another region or ends.
+     */
+    private record Border(int[] arrStationIds, long[] entries, long[] exits) {}
+
+    /**
+     * The fronts of some stations and trips, computed by a worker.
+     */
+    private record Fronts(List<ParetoFront> stationFronts, List<ParetoFront> tripFronts) {}
+
+    /**
+     * Connection to a worker, on which one request is sent at a time. The requests are
+     * serialized by a lock rather than by synchronized methods, which would pin the virtual
+     * thread waiting for the answer to its carrier, and could starve a worker running in the
+     * same JVM.
+     */
+    private static final class WorkerConnection implements Closeable {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        WorkerConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        Border border(LocalDate date) throws IOException {
+            lock.lock();
+            try {
+                out.writeByte(ShardProtocol.BORDER);
+                out.writeLong(date.toEpochDay());
+                out.flush();
+                return new Border(ShardProtocol.readInts(in), ShardProtocol.readLongs(in),
+                        ShardProtocol.readLongs(in));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Fronts fronts(LocalDate date, int arrStationId,
+                      Map<Integer, ParetoFront> knownStationFronts,
+                      Map<Long, ParetoFront> knownTripFronts,
+                      int[] stationIds, long[] tripPositions) throws IOException {
+            lock.lock();
+            try {
+                out.writeByte(ShardProtocol.PROFILE);
+                out.writeLong(date.toEpochDay());
+                out.writeInt(arrStationId);
+                ShardProtocol.writeFrontMap(out, knownStationFronts);
+                ShardProtocol.writeTripFrontMap(out, knownTripFronts);
+                ShardProtocol.writeInts(out, stationIds);
+                ShardProtocol.writeLongs(out, tripPositions);
+                out.flush();
+                return new Fronts(ShardProtocol.readFrontList(in),
+                        ShardProtocol.readFrontList(in));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Starts the workers of the given timetable as processes of this machine, each running in
+     * its own JVM with the class path of this one and listening on a free port of the loopback
+     * address, and waits until they are ready.
+     *
+     * @param timeTableDirectory the directory of the timetable
+     * @param regionCount the number of regions, and of workers
+     * @param processes the list to which the processes of the workers are added, so that they
+     *                  can be destroyed even if starting one of them fails
+     * @return the address of the worker of each region
+     * @throws IOException if starting a worker or reading its port causes a problem
+     */
+    public static List<InetSocketAddress> startLocalWorkers(Path timeTableDirectory,
+                                                            int regionCount,
+                                                            List<Process> processes)
+            throws IOException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        for (int region = 0; region < regionCount; region++) {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    ShardWorker.class.getName(), timeTableDirectory.toString(),
+                    Integer.toString(regionCount), Integer.toString(region), "0")
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start());
+        }
+
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (Process process : processes) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    process.getInputStream(), StandardCharsets.UTF_8));
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(ShardWorker.READY_MESSAGE)) {
+                throw new IOException("Worker failed to start");
+            }
+            addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(line.substring(ShardWorker.READY_MESSAGE.length()))));
+        }
+        return addresses;
+    }
+
+    private static int stationId(StationDirectory directory, String name) {
+        int stationId = directory.stationId(name);
+        if (stationId < 0) {
+            throw new NoSuchElementException(name);
+        }
+        return stationId;
+    }
+
+    /**
+     * Starts the workers of a timetable on this machine, and prints the front of the journeys
+     * between two stations computed by combining their profiles.
+     *
+     * @param args the directory of the timetable, the number of regions, the date in the ISO
+     *             format, and the names of the departure and arrival stations
+     * @throws IOException if starting or communicating with the workers causes a problem
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args[0]);
+        int regionCount = Integer.parseInt(args[1]);
+        TimeTable timeTable = FileTimeTable.in(directory);
+        RegionPartition partition = RegionPartition.of(timeTable.stations(), regionCount);
+        StationDirectory stationDirectory = StationDirectory.of(timeTable);
+        int depStationId = stationId(stationDirectory, args[3]);
+        int arrStationId = stationId(stationDirectory, args[4]);
+
+        List<Process> processes = new ArrayList<>();
+        try (ShardCoordinator coordinator = new ShardCoordinator(partition,
+                startLocalWorkers(directory, regionCount, processes))) {
+            LocalDate date = LocalDate.parse(args[2]);
+            ParetoFront front = coordinator.front(date, depStationId, arrStationId);
+            System.out.printf("%s (region %d) -> %s (region %d)%n", args[3],
+                    partition.region(depStationId), args[4], partition.region(arrStationId));
+            front.forEach(criteria -> System.out.printf("%s -> %s, %d change(s)%n",
+                    FormatterFr.formatTime(date.atStartOfDay().plusMinutes(
+                            PackedCriteria.depMins(criteria))),
+                    FormatterFr.formatTime(date.atStartOfDay().plusMinutes(
+                            PackedCriteria.arrMins(criteria))),
+                    PackedCriteria.changes(criteria)));
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+}
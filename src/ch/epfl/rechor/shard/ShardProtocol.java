@@ -0,0 +1,163 @@
+package ch.epfl.rechor.shard;
+
+import ch.epfl.rechor.journey.PackedCriteria;
+import ch.epfl.rechor.journey.ParetoFront;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary protocol between the coordinator and the workers of a sharded timetable.
+ * Each request starts with a byte giving its kind, and is answered before the next one is
+ * sent on the same connection:
+ * <ul>
+ *     <li>{@link #BORDER}: the date (epoch day, long); the answer is the stations at which
+ *     the connections of the worker arrive, the connections of the worker whose trip comes
+ *     from another region (the previous position of the trip not being in the region of the
+ *     worker), and those whose trip goes on in another region or ends (the next position not
+ *     being in the region of the worker), the connections being given by trip position,</li>
+ *     <li>{@link #PROFILE}: the date (epoch day, long), the arrival station (int), the fronts
+ *     already known at some stations and of the trips at some positions outside the region
+ *     of the worker, and the stations and the trip positions of the worker whose fronts are
+ *     requested; the answer is the front of each requested station, then of the journeys
+ *     staying on each requested trip from its position.</li>
+ * </ul>
+ * The trip positions are longs packing a trip in their 32 most significant bits and a
+ * position in their 32 least significant ones (see {@link #tripPosition}), so that the trip
+ * identifiers of the wide format fit. The arrays are sent as their length followed by their
+ * elements, and the fronts as their number of criteria followed by the criteria, without
+ * their payloads, which identify connections of the worker that computed them.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+final class ShardProtocol {
+
+    /**
+     * The kinds of the requests.
+     */
+    static final int BORDER = 1;
+    static final int PROFILE = 2;
+
+    private ShardProtocol() {}
+
+    /**
+     * Packs the given position of the given trip in a long.
+     *
+     * @param tripId the identifier of the trip
+     * @param position the position of a connection in the trip
+     * @return the trip position
+     */
+    static long tripPosition(int tripId, int position) {
+        return (long) tripId << Integer.SIZE | position;
+    }
+
+    static void writeFront(DataOutputStream out, ParetoFront front) throws IOException {
+        out.writeInt(front.size());
+        long[] criteria = new long[front.size()];
+        int[] index = {0};
+        front.forEach(c -> criteria[index[0]++] = PackedCriteria.withPayload(c, 0));
+        for (long c : criteria) {
+            out.writeLong(c);
+        }
+    }
+
+    static ParetoFront readFront(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        ParetoFront.Builder builder = new ParetoFront.Builder();
+        for (int i = 0; i < size; i++) {
+            builder.add(in.readLong());
+        }
+        return builder.build();
+    }
+
+    static void writeFrontList(DataOutputStream out, List<ParetoFront> fronts)
+            throws IOException {
+        out.writeInt(fronts.size());
+        for (ParetoFront front : fronts) {
+            writeFront(out, front);
+        }
+    }
+
+    static List<ParetoFront> readFrontList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<ParetoFront> fronts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            fronts.add(readFront(in));
+        }
+        return fronts;
+    }
+
+    static void writeFrontMap(DataOutputStream out, Map<Integer, ParetoFront> fronts)
+            throws IOException {
+        out.writeInt(fronts.size());
+        for (Map.Entry<Integer, ParetoFront> entry : fronts.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeFront(out, entry.getValue());
+        }
+    }
+
+    static Map<Integer, ParetoFront> readFrontMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<Integer, ParetoFront> fronts = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            int key = in.readInt();
+            fronts.put(key, readFront(in));
+        }
+        return fronts;
+    }
+
+    static void writeTripFrontMap(DataOutputStream out, Map<Long, ParetoFront> fronts)
+            throws IOException {
+        out.writeInt(fronts.size());
+        for (Map.Entry<Long, ParetoFront> entry : fronts.entrySet()) {
+            out.writeLong(entry.getKey());
+            writeFront(out, entry.getValue());
+        }
+    }
+
+    static Map<Long, ParetoFront> readTripFrontMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<Long, ParetoFront> fronts = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            long key = in.readLong();
+            fronts.put(key, readFront(in));
+        }
+        return fronts;
+    }
+
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    static long[] readLongs(DataInputStream in) throws IOException {
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,273 @@
+package ch.epfl.rechor.shard;
+
+import ch.epfl.rechor.PackedRange;
+import ch.epfl.rechor.Preconditions;
+import ch.epfl.rechor.journey.PackedCriteria;
+import ch.epfl.rechor.journey.ParetoFront;
+import ch.epfl.rechor.journey.Profile;
+import ch.epfl.rechor.journey.Router;
+import ch.epfl.rechor.timetable.ArrayTimeTable;
+import ch.epfl.rechor.timetable.Connections;
+import ch.epfl.rechor.timetable.TimeTable;
+import ch.epfl.rechor.timetable.Transfers;
+import ch.epfl.rechor.timetable.mapped.FileTimeTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Worker of a sharded timetable, holding the connections departing from the stations of one
+ * region, and answering the requests of the coordinator over a socket (see ShardProtocol).
+ * The connections of each date are copied on the heap the first time the date is requested,
+ * while the other data of the timetable (stations, platforms, routes, transfers and trips) is
+ * kept in full, so that the identifiers are the same in every worker.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class ShardWorker implements Closeable {
+
+    /**
+     * The message printed on the standard output when the worker is ready, followed by its
+     * port, read by the coordinator when it starts the workers.
+     */
+    static final String READY_MESSAGE = "Listening on port ";
+
+    /**
+     * The partition of the stations.
+     */
+    private final RegionPartition partition;
+
+    /**
+     * The timetable restricted to the connections of the region of the worker.
+     */
+    private final TimeTable timeTable;
+
+    /**
+     * The socket on which the worker accepts the connections of the coordinator.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * Constructs a worker for the given region of the given timetable, listening on the given
+     * port of the loopback address.
+     *
+     * @param timeTable the full timetable
+     * @param partition the partition of the stations of the timetable
+     * @param region the region of the worker
+     * @param port the port on which the worker listens, 0 to choose a free one
+     * @throws IOException if the socket cannot be opened
+     * @throws IllegalArgumentException if the region is not one of the partition
+     */
+    public ShardWorker(TimeTable timeTable, RegionPartition partition, int region, int port)
+            throws IOException {
+        Preconditions.checkArgument(region >= 0 && region < partition.regionCount());
+        this.partition = partition;
+        this.timeTable = ArrayTimeTable.copyOf(timeTable, List.of(),
+                stationId -> partition.region(stationId) == region);
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Returns the port on which the worker listens.
+     *
+     * @return the port of the worker
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts the connections of the coordinator until the worker is closed, answering the
+     * requests of each of them in its own thread.
+     */
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().start(() -> answer(socket));
+            } catch (IOException e) {
+                // The socket was closed, or the connection was aborted before being accepted.
+            }
+        }
+    }
+
+    private void answer(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(socket.getOutputStream()))) {
+            for (int kind = in.read(); kind >= 0; kind = in.read()) {
+                switch (kind) {
+                    case ShardProtocol.BORDER -> answerBorder(in, out);
+                    case ShardProtocol.PROFILE -> answerProfile(in, out);
+                    default -> throw new IOException("Unknown request " + kind);
+                }
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The connection is closed, the coordinator seeing the failure of its request.
+        }
+    }
+
+    private void answerBorder(DataInputStream in, DataOutputStream out) throws IOException {
+        LocalDate date = LocalDate.ofEpochDay(in.readLong());
+
+        Connections connections = timeTable.connectionsFor(date);
+        BitSet arrStations = new BitSet();
+        Set<Long> tripPositions = new HashSet<>();
+        for (int i = 0; i < connections.size(); i++) {
+            arrStations.set(timeTable.stationId(connections.arrStopId(i)));
+            tripPositions.add(ShardProtocol.tripPosition(connections.tripId(i),
+                    connections.tripPos(i)));
+        }
+
+        List<Long> entries = new ArrayList<>();
+        List<Long> exits = new ArrayList<>();
+        for (int i = 0; i < connections.size(); i++) {
+            int tripId = connections.tripId(i);
+            int tripPos = connections.tripPos(i);
+            if (tripPos > 0 && !tripPositions.contains(
+                    ShardProtocol.tripPosition(tripId, tripPos - 1))) {
+                entries.add(ShardProtocol.tripPosition(tripId, tripPos));
+            }
+            if (!tripPositions.contains(ShardProtocol.tripPosition(tripId, tripPos + 1))) {
+                exits.add(ShardProtocol.tripPosition(tripId, tripPos));
+            }
+        }
+        ShardProtocol.writeInts(out, arrStations.stream().toArray());
+        ShardProtocol.writeLongs(out, entries.stream().mapToLong(Long::longValue).toArray());
+        ShardProtocol.writeLongs(out, exits.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    private void answerProfile(DataInputStream in, DataOutputStream out) throws IOException {
+        LocalDate date = LocalDate.ofEpochDay(in.readLong());
+        int arrStationId = in.readInt();
+        Map<Integer, ParetoFront> knownStationFronts = ShardProtocol.readFrontMap(in);
+        Map<Long, ParetoFront> knownTripFronts = ShardProtocol.readTripFrontMap(in);
+        int[] stationIds = ShardProtocol.readInts(in);
+        long[] tripPositions = ShardProtocol.readLongs(in);
+
+        // The journeys staying on a trip after it leaves the region continue with the front
+        // known at its next position, from the connection of the region preceding it.
+        Connections connections = timeTable.connectionsFor(date);
+        Map<Integer, ParetoFront> exitFronts = new HashMap<>();
+        if (!knownTripFronts.isEmpty()) {
+            for (int i = 0; i < connections.size(); i++) {
+                ParetoFront knownFront = knownTripFronts.get(ShardProtocol.tripPosition(
+                        connections.tripId(i), connections.tripPos(i) + 1));
+                if (knownFront != null) {
+                    exitFronts.put(i, knownFront);
+                }
+            }
+        }
+
+        Profile profile = new Router(timeTable).profile(date, arrStationId, knownStationFronts,
+                exitFronts);
+        List<ParetoFront> stationFronts = new ArrayList<>();
+        for (int stationId : stationIds) {
+            stationFronts.add(profile.forStation(stationId));
+        }
+        ShardProtocol.writeFrontList(out, stationFronts);
+        ShardProtocol.writeFrontList(out,
+                tripFronts(profile, connections, exitFronts, tripPositions));
+    }
+
+    /**
+     * Computes the fronts of the journeys staying on the given trips from the given positions,
+     * from the fronts of the stations at which their connections of this region arrive, and
+     * from the fronts known after the connections at which they leave the region.
+     */
+    private List<ParetoFront> tripFronts(Profile profile, Connections connections,
+                                         Map<Integer, ParetoFront> exitFronts,
+                                         long[] tripPositions) {
+        int[] arrivalMinutes = new int[timeTable.stations().size()];
+        Arrays.fill(arrivalMinutes, -1);
+        Transfers transfers = timeTable.transfers();
+        int arrivingTransfers = transfers.arrivingAt(profile.arrStationId());
+        for (int i = PackedRange.startInclusive(arrivingTransfers);
+             i < PackedRange.endExclusive(arrivingTransfers); i++) {
+            arrivalMinutes[transfers.depStationId(i)] = transfers.minutes(i);
+        }
+
+        Map<Integer, List<Integer>> tripIndexes = new HashMap<>();
+        List<ParetoFront.Builder> fronts = new ArrayList<>();
+        for (long tripPosition : tripPositions) {
+            tripIndexes.computeIfAbsent((int) (tripPosition >>> Integer.SIZE),
+                    t -> new ArrayList<>()).add(fronts.size());
+            fronts.add(new ParetoFront.Builder());
+        }
+        for (int i = 0; i < connections.size(); i++) {
+            List<Integer> indexes = tripIndexes.get(connections.tripId(i));
+            if (indexes == null) {
+                continue;
+            }
+            int arrStationId = timeTable.stationId(connections.arrStopId(i));
+            int arrMins = connections.arrMins(i);
+            ParetoFront exitFront = exitFronts.getOrDefault(i, ParetoFront.EMPTY);
+            for (int index : indexes) {
+                if (connections.tripPos(i) < (int) tripPositions[index]) {
+                    continue;
+                }
+                ParetoFront.Builder front = fronts.get(index);
+                if (arrivalMinutes[arrStationId] >= 0) {
+                    front.add(arrMins + arrivalMinutes[arrStationId], 0, 0);
+                }
+                profile.forStation(arrStationId).forEach(c -> {
+                    if (PackedCriteria.depMins(c) >= arrMins) {
+                        front.add(PackedCriteria.arrMins(c), PackedCriteria.changes(c) + 1, 0);
+                    }
+                });
+                exitFront.forEach(front::add);
+            }
+        }
+        return fronts.stream().map(ParetoFront.Builder::build).toList();
+    }
+
+    /**
+     * Stops accepting connections.
+     *
+     * @throws IOException if closing the socket causes a problem
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Starts a worker, which serves requests until its process is killed.
+     *
+     * @param args the directory of the timetable, the number of regions, the region of the
+     *             worker and the port on which it listens (0 to choose a free one)
+     * @throws IOException if reading the timetable or opening the socket causes a problem
+     */
+    public static void main(String[] args) throws IOException {
+        TimeTable timeTable = FileTimeTable.in(Path.of(args[0]));
+        RegionPartition partition = RegionPartition.of(timeTable.stations(),
+                Integer.parseInt(args[1]));
+        try (ShardWorker worker = new ShardWorker(timeTable, partition,
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]))) {
+            System.out.println(READY_MESSAGE + worker.port());
+            System.out.flush();
+            worker.serve();
+        }
+    }
+}
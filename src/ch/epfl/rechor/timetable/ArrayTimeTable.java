@@ -0,0 +1,474 @@
+package ch.epfl.rechor.timetable;
+
+import ch.epfl.rechor.PackedRange;
+import ch.epfl.rechor.journey.Vehicle;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * A timetable whose data is entirely copied into primitive arrays on the heap, so that
+ * accessing it never causes page faults on mapped files, and only costs array accesses.
+ * The data of the days given at construction is copied immediately, and the data of the
+ * other days is copied the first time it is requested.
+ * The copy can be restricted to the connections departing from some stations, for instance
+ * those of the region of a sharded timetable, so that the copy only holds the connections of
+ * that region, all the other data being kept in full.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class ArrayTimeTable implements TimeTable {
+
+    /**
+     * Mask constant for the transfer minutes, stored as unsigned bytes.
+     */
+    private static final int MASK_8_BITS = 0xFF;
+
+    /**
+     * The timetable from which the data of the days is copied.
+     */
+    private final TimeTable source;
+
+    private final Stations stations;
+    private final StationAliases stationAliases;
+    private final Platforms platforms;
+    private final Routes routes;
+    private final Transfers transfers;
+
+    /**
+     * The spatial index of the stations, shared with the copied timetable.
+     */
+    private final StationSpatialIndex stationSpatialIndex;
+
+    /**
+     * The stations whose departing connections are copied.
+     */
+    private final IntPredicate departureStations;
+
+    /**
+     * The station of each stop.
+     */
+    private final int[] stopStations;
+
+    /**
+     * The copied trips and connections, by date.
+     */
+    private final Map<LocalDate, Trips> dayTrips;
+    private final Map<LocalDate, Connections> dayConnections;
+
+    private ArrayTimeTable(TimeTable source, IntPredicate departureStations) {
+        this.source = source;
+        this.departureStations = departureStations;
+        stations = ArrayStations.copyOf(source.stations());
+        stationAliases = ArrayStationAliases.copyOf(source.stationAliases());
+        platforms = ArrayPlatforms.copyOf(source.platforms());
+        routes = ArrayRoutes.copyOf(source.routes());
+        transfers = ArrayTransfers.copyOf(source.transfers(), stations.size());
+        stationSpatialIndex = source.stationSpatialIndex();
+
+        stopStations = new int[stations.size() + platforms.size()];
+        for (int i = 0; i < stopStations.length; i++) {
+            stopStations[i] = source.stationId(i);
+        }
+        dayTrips = new ConcurrentHashMap<>();
+        dayConnections = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Copies the given timetable, and the trips and connections of the given dates,
+     * into primitive arrays.
+     *
+     * @param source the timetable to copy
+     * @param dates the dates whose trips and connections are copied immediately
+     * @return a copy of the timetable, stored in arrays
+     */
+    public static ArrayTimeTable copyOf(TimeTable source, Collection<LocalDate> dates) {
+        return copyOf(source, dates, stationId -> true);
+    }
+
+    /**
+     * Copies the given timetable, and the trips and the connections departing from the given
+     * stations of the given dates, into primitive arrays.
+     * The kept connections have the same trips and positions in their trips as in the given
+     * timetable, and the next connection of each of them is the next kept connection of its
+     * trip.
+     *
+     * @param source the timetable to copy
+     * @param dates the dates whose trips and connections are copied immediately
+     * @param departureStations the predicate that the departure station of a connection must
+     *                          satisfy for the connection to be copied
+     * @return a copy of the timetable, stored in arrays
+     */
+    public static ArrayTimeTable copyOf(TimeTable source, Collection<LocalDate> dates,
+                                        IntPredicate departureStations) {
+        ArrayTimeTable timeTable = new ArrayTimeTable(Objects.requireNonNull(source),
+                Objects.requireNonNull(departureStations));
+        for (LocalDate date : dates) {
+            timeTable.tripsFor(date);
+            timeTable.connectionsFor(date);
+        }
+        return timeTable;
+    }
+
+    @Override
+    public Stations stations() {
+        return stations;
+    }
+
+    @Override
+    public StationSpatialIndex stationSpatialIndex() {
+        return stationSpatialIndex;
+    }
+
+    @Override
+    public StationAliases stationAliases() {
+        return stationAliases;
+    }
+
+    @Override
+    public Platforms platforms() {
+        return platforms;
+    }
+
+    @Override
+    public Routes routes() {
+        return routes;
+    }
+
+    @Override
+    public Transfers transfers() {
+        return transfers;
+    }
+
+    @Override
+    public Trips tripsFor(LocalDate date) {
+        return dayTrips.computeIfAbsent(date, d -> ArrayTrips.copyOf(source.tripsFor(d)));
+    }
+
+    @Override
+    public Connections connectionsFor(LocalDate date) {
+        return dayConnections.computeIfAbsent(date,
+                d -> ArrayConnections.copyOf(source.connectionsFor(d),
+                        stopId -> departureStations.test(stopStations[stopId])));
+    }
+
+    @Override
+    public int stationId(int stopId) {
+        return stopStations[stopId];
+    }
+
+    /**
+     * Stations stored in arrays.
+     */
+    private record ArrayStations(String[] names, double[] longitudes, double[] latitudes)
+            implements Stations {
+
+        static ArrayStations copyOf(Stations stations) {
+            int size = stations.size();
+            String[] names = new String[size];
+            double[] longitudes = new double[size];
+            double[] latitudes = new double[size];
+            for (int i = 0; i < size; i++) {
+                names[i] = stations.name(i);
+                longitudes[i] = stations.longitude(i);
+                latitudes[i] = stations.latitude(i);
+            }
+            return new ArrayStations(names, longitudes, latitudes);
+        }
+
+        @Override
+        public String name(int id) {
+            return names[id];
+        }
+
+        @Override
+        public double longitude(int id) {
+            return longitudes[id];
+        }
+
+        @Override
+        public double latitude(int id) {
+            return latitudes[id];
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+    }
+
+    /**
+     * Station aliases stored in arrays.
+     */
+    private record ArrayStationAliases(String[] aliases, String[] stationNames)
+            implements StationAliases {
+
+        static ArrayStationAliases copyOf(StationAliases stationAliases) {
+            int size = stationAliases.size();
+            String[] aliases = new String[size];
+            String[] stationNames = new String[size];
+            for (int i = 0; i < size; i++) {
+                aliases[i] = stationAliases.alias(i);
+                stationNames[i] = stationAliases.stationName(i);
+            }
+            return new ArrayStationAliases(aliases, stationNames);
+        }
+
+        @Override
+        public String alias(int id) {
+            return aliases[id];
+        }
+
+        @Override
+        public String stationName(int id) {
+            return stationNames[id];
+        }
+
+        @Override
+        public int size() {
+            return aliases.length;
+        }
+    }
+
+    /**
+     * Platforms stored in arrays.
+     */
+    private record ArrayPlatforms(String[] names, int[] stationIds) implements Platforms {
+
+        static ArrayPlatforms copyOf(Platforms platforms) {
+            int size = platforms.size();
+            String[] names = new String[size];
+            int[] stationIds = new int[size];
+            for (int i = 0; i < size; i++) {
+                names[i] = platforms.name(i);
+                stationIds[i] = platforms.stationId(i);
+            }
+            return new ArrayPlatforms(names, stationIds);
+        }
+
+        @Override
+        public String name(int id) {
+            return names[id];
+        }
+
+        @Override
+        public int stationId(int id) {
+            return stationIds[id];
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+    }
+
+    /**
+     * Routes stored in arrays, the vehicles being stored by their index in Vehicle.ALL.
+     */
+    private record ArrayRoutes(String[] names, byte[] vehicles) implements Routes {
+
+        static ArrayRoutes copyOf(Routes routes) {
+            int size = routes.size();
+            String[] names = new String[size];
+            byte[] vehicles = new byte[size];
+            for (int i = 0; i < size; i++) {
+                names[i] = routes.name(i);
+                vehicles[i] = (byte) routes.vehicle(i).ordinal();
+            }
+            return new ArrayRoutes(names, vehicles);
+        }
+
+        @Override
+        public Vehicle vehicle(int id) {
+            return Vehicle.ALL.get(vehicles[id]);
+        }
+
+        @Override
+        public String name(int id) {
+            return names[id];
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+    }
+
+    /**
+     * Transfers stored in arrays, the minutes being stored as unsigned bytes.
+     */
+    private record ArrayTransfers(int[] depStationIds, byte[] minutes, int[] packedChanges)
+            implements Transfers {
+
+        static ArrayTransfers copyOf(Transfers transfers, int stationsCount) {
+            int size = transfers.size();
+            int[] depStationIds = new int[size];
+            byte[] minutes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                depStationIds[i] = transfers.depStationId(i);
+                minutes[i] = (byte) transfers.minutes(i);
+            }
+
+            int[] packedChanges = new int[stationsCount];
+            for (int i = 0; i < stationsCount; i++) {
+                packedChanges[i] = transfers.arrivingAt(i);
+            }
+            return new ArrayTransfers(depStationIds, minutes, packedChanges);
+        }
+
+        @Override
+        public int depStationId(int id) {
+            return depStationIds[id];
+        }
+
+        @Override
+        public int minutes(int id) {
+            return minutes[id] & MASK_8_BITS;
+        }
+
+        @Override
+        public int arrivingAt(int stationId) {
+            return packedChanges[stationId];
+        }
+
+        @Override
+        public int minutesBetween(int depStationId, int arrStationId) {
+            int packedChange = arrivingAt(arrStationId);
+            int end = PackedRange.endExclusive(packedChange);
+            for (int i = PackedRange.startInclusive(packedChange); i < end; i++) {
+                if (depStationIds[i] == depStationId) {
+                    return minutes(i);
+                }
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public int size() {
+            return depStationIds.length;
+        }
+    }
+
+    /**
+     * Trips stored in arrays.
+     */
+    private record ArrayTrips(int[] routeIds, String[] destinations) implements Trips {
+
+        static ArrayTrips copyOf(Trips trips) {
+            int size = trips.size();
+            int[] routeIds = new int[size];
+            String[] destinations = new String[size];
+            for (int i = 0; i < size; i++) {
+                routeIds[i] = trips.routeId(i);
+                destinations[i] = trips.destination(i);
+            }
+            return new ArrayTrips(routeIds, destinations);
+        }
+
+        @Override
+        public int routeId(int id) {
+            return routeIds[id];
+        }
+
+        @Override
+        public String destination(int id) {
+            return destinations[id];
+        }
+
+        @Override
+        public int size() {
+            return routeIds.length;
+        }
+    }
+
+    /**
+     * Connections stored in arrays, one array per field, the minutes and the positions in the
+     * trips being stored as unsigned shorts.
+     */
+    private record ArrayConnections(int[] depStopIds, short[] depMins, int[] arrStopIds,
+                                    short[] arrMins, int[] tripIds, short[] tripPos,
+                                    int[] nextConnectionIds) implements Connections {
+
+        static ArrayConnections copyOf(Connections connections, IntPredicate departureStops) {
+            int[] copiedIds = new int[connections.size()];
+            int size = 0;
+            for (int i = 0; i < copiedIds.length; i++) {
+                copiedIds[i] = departureStops.test(connections.depStopId(i)) ? size++ : -1;
+            }
+
+            int[] depStopIds = new int[size];
+            short[] depMins = new short[size];
+            int[] arrStopIds = new int[size];
+            short[] arrMins = new short[size];
+            int[] tripIds = new int[size];
+            short[] tripPos = new short[size];
+            int[] nextConnectionIds = new int[size];
+            for (int i = 0; i < copiedIds.length; i++) {
+                int id = copiedIds[i];
+                if (id < 0) {
+                    continue;
+                }
+                depStopIds[id] = connections.depStopId(i);
+                depMins[id] = (short) connections.depMins(i);
+                arrStopIds[id] = connections.arrStopId(i);
+                arrMins[id] = (short) connections.arrMins(i);
+                tripIds[id] = connections.tripId(i);
+                tripPos[id] = (short) connections.tripPos(i);
+                // The trips being circular, the next kept connection is at worst i itself.
+                int next = connections.nextConnectionId(i);
+                while (copiedIds[next] < 0) {
+                    next = connections.nextConnectionId(next);
+                }
+                nextConnectionIds[id] = copiedIds[next];
+            }
+            return new ArrayConnections(depStopIds, depMins, arrStopIds, arrMins, tripIds,
+                    tripPos, nextConnectionIds);
+        }
+
+        @Override
+        public int depStopId(int id) {
+            return depStopIds[id];
+        }
+
+        @Override
+        public int depMins(int id) {
+            return Short.toUnsignedInt(depMins[id]);
+        }
+
+        @Override
+        public int arrStopId(int id) {
+            return arrStopIds[id];
+        }
+
+        @Override
+        public int arrMins(int id) {
+            return Short.toUnsignedInt(arrMins[id]);
+        }
+
+        @Override
+        public int tripId(int id) {
+            return tripIds[id];
+        }
+
+        @Override
+        public int tripPos(int id) {
+            return Short.toUnsignedInt(tripPos[id]);
+        }
+
+        @Override
+        public int nextConnectionId(int id) {
+            return nextConnectionIds[id];
+        }
+
+        @Override
+        public int size() {
+            return depStopIds.length;
+        }
+    }
+}
@@ -30,6 +30,11 @@ public class CachedTimeTable implements TimeTable {
         return timeTable.stations();
     }
 
+    @Override
+    public StationSpatialIndex stationSpatialIndex() {
+        return timeTable.stationSpatialIndex();
+    }
+
     @Override
     public StationAliases stationAliases() {
         return timeTable.stationAliases();
@@ -50,6 +55,11 @@ public class CachedTimeTable implements TimeTable {
         return timeTable.transfers();
     }
 
+    @Override
+    public int stationId(int stopId) {
+        return timeTable.stationId(stopId);
+    }
+
     @Override
     public Trips tripsFor(LocalDate date) {
         if (!Objects.equals(date, currentDate)) {
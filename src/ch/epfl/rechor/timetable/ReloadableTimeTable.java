@@ -0,0 +1,149 @@
+package ch.epfl.rechor.timetable;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A handle on a timetable whose data can be replaced while it is in use.
+ * A new version is loaded and warmed in the background, and then replaces the current one
+ * atomically: the queries started after the replacement use the new version, while the
+ * queries in progress keep the version they started with.
+ * <p>
+ * This handle is not a timetable itself: a query gets the version it uses once, with
+ * {@link #current()} (for instance to build its Router), so that all its data comes from the
+ * same version even if a reload happens during the query. The old versions are not referenced
+ * by this handle anymore once replaced, so their mapped files are released as soon as the
+ * last query using them is done; the resources that the garbage collector does not release,
+ * such as locked memory, are released with {@link TimeTable#release()} at the replacement.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class ReloadableTimeTable {
+
+    /**
+     * The current version of the timetable.
+     */
+    private final AtomicReference<TimeTable> current;
+
+    /**
+     * The thread on which the new versions are loaded.
+     */
+    private final ExecutorService loadingExecutor;
+
+    /**
+     * The actions called with each new version, once it replaced the previous one.
+     */
+    private final List<Consumer<TimeTable>> reloadListeners;
+
+    /**
+     * Constructs a reloadable timetable whose first version is the given timetable.
+     *
+     * @param timeTable the first version of the timetable
+     */
+    public ReloadableTimeTable(TimeTable timeTable) {
+        current = new AtomicReference<>(Objects.requireNonNull(timeTable));
+        loadingExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "timetable-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloadListeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Returns the current version of the timetable, which a query should use from its
+     * beginning to its end.
+     *
+     * @return the current version of the timetable
+     */
+    public TimeTable current() {
+        return current.get();
+    }
+
+    /**
+     * Adds an action called with each new version of the timetable, once it replaced the
+     * previous one, for instance to invalidate data derived from the timetable.
+     *
+     * @param listener the action called with each new version
+     */
+    public void addReloadListener(Consumer<TimeTable> listener) {
+        reloadListeners.add(Objects.requireNonNull(listener));
+    }
+
+    /**
+     * Loads a new version of the timetable in the background, warms it up for the given date
+     * and then makes it the current version.
+     * If loading or warming up the new version fails, the current version is kept and the
+     * returned future completes exceptionally.
+     *
+     * @param loader the loader of the new version, for instance
+     *               {@code () -> FileTimeTable.in(newDirectory)}
+     * @param warmUpDate the date whose trips and connections are loaded before the replacement
+     * @return a future completed with the new version once it became the current one
+     */
+    public CompletableFuture<TimeTable> reload(Callable<TimeTable> loader, LocalDate warmUpDate) {
+        return CompletableFuture.supplyAsync(() -> {
+            TimeTable newTimeTable;
+            try {
+                newTimeTable = Objects.requireNonNull(loader.call());
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+            warmUp(newTimeTable, warmUpDate);
+            current.getAndSet(newTimeTable).release();
+            reloadListeners.forEach(listener -> listener.accept(newTimeTable));
+            return newTimeTable;
+        }, loadingExecutor);
+    }
+
+    /**
+     * Accesses all the data a first query on the given date reads, so that its pages are
+     * loaded and its derived structures built before the version is used: among them, the
+     * ranges of the transfers arriving at each station and the station of each stop, which a
+     * FileTimeTable only builds or loads from its cache when they are first used.
+     */
+    private static void warmUp(TimeTable timeTable, LocalDate date) {
+        Stations stations = timeTable.stations();
+        Transfers transfers = timeTable.transfers();
+        for (int i = 0; i < stations.size(); i++) {
+            stations.name(i);
+            stations.longitude(i);
+            stations.latitude(i);
+        }
+        timeTable.stationSpatialIndex();
+        for (int i = 0; i < transfers.size(); i++) {
+            transfers.depStationId(i);
+            transfers.minutes(i);
+        }
+        for (int i = 0; i < stations.size(); i++) {
+            transfers.arrivingAt(i);
+        }
+        for (int i = 0; i < timeTable.platforms().size(); i++) {
+            timeTable.platforms().stationId(i);
+        }
+        for (int stopId = 0; stopId < stations.size() + timeTable.platforms().size(); stopId++) {
+            timeTable.stationId(stopId);
+        }
+
+        Connections connections = timeTable.connectionsFor(date);
+        for (int i = 0; i < connections.size(); i++) {
+            connections.depStopId(i);
+            connections.arrStopId(i);
+            connections.depMins(i);
+            connections.arrMins(i);
+            connections.tripPos(i);
+            connections.nextConnectionId(i);
+        }
+        timeTable.tripsFor(date).size();
+    }
+}
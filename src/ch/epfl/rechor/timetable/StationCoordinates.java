@@ -0,0 +1,142 @@
+package ch.epfl.rechor.timetable;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-point coordinates of the stations of a timetable, in units of a 2^32th of a turn as
+ * in the timetable files, used to split the stations geographically: by the spatial index of
+ * the stations, and by the partition of the stations of a sharded timetable.
+ * The stations are given by the indexes of an array of their identifiers, between two indexes,
+ * which the sort reorders.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class StationCoordinates {
+
+    /**
+     * The number of units of the coordinates in a full turn, as in the timetable files.
+     */
+    public static final double UNITS_PER_TURN = 0x1p32;
+
+    /**
+     * Mask constant for the 32 least significant bits of the sort keys.
+     */
+    private static final long MASK_32_BITS = 0xFFFF_FFFFL;
+
+    /**
+     * The coordinates of each station, in units.
+     */
+    private final int[] longitudes;
+    private final int[] latitudes;
+
+    private StationCoordinates(int[] longitudes, int[] latitudes) {
+        this.longitudes = longitudes;
+        this.latitudes = latitudes;
+    }
+
+    /**
+     * Returns the coordinates of the given stations.
+     *
+     * @param stations the stations
+     * @return the coordinates of the stations, in units
+     */
+    public static StationCoordinates of(Stations stations) {
+        int size = stations.size();
+        int[] longitudes = new int[size];
+        int[] latitudes = new int[size];
+        for (int i = 0; i < size; i++) {
+            longitudes[i] = unitsOf(stations.longitude(i));
+            latitudes[i] = unitsOf(stations.latitude(i));
+        }
+        return new StationCoordinates(longitudes, latitudes);
+    }
+
+    /**
+     * Returns the given coordinate in units, clamped to the range of an int.
+     *
+     * @param degrees the coordinate, in degrees
+     * @return the coordinate, in units
+     */
+    public static int unitsOf(double degrees) {
+        return Math.clamp(Math.round(degrees / 360 * UNITS_PER_TURN), Integer.MIN_VALUE,
+                Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the longitude of the given station.
+     *
+     * @param stationId the index of the station
+     * @return the longitude of the station, in units
+     * @throws IndexOutOfBoundsException if the station does not exist
+     */
+    public int longitude(int stationId) {
+        return longitudes[stationId];
+    }
+
+    /**
+     * Returns the latitude of the given station.
+     *
+     * @param stationId the index of the station
+     * @return the latitude of the station, in units
+     * @throws IndexOutOfBoundsException if the station does not exist
+     */
+    public int latitude(int stationId) {
+        return latitudes[stationId];
+    }
+
+    /**
+     * Returns the identifiers of all the stations, in increasing order, to be split.
+     *
+     * @return the identifiers of the stations
+     */
+    public int[] stationIds() {
+        int[] stationIds = new int[longitudes.length];
+        Arrays.setAll(stationIds, i -> i);
+        return stationIds;
+    }
+
+    /**
+     * Returns true if the given stations are at least as spread along their longitude as along
+     * their latitude.
+     *
+     * @param stationIds the identifiers of stations
+     * @param from the index of the first station (included)
+     * @param to the index of the last station (excluded)
+     * @return true if the stations are the most spread along their longitude
+     */
+    public boolean mostSpreadAlongLongitude(int[] stationIds, int from, int to) {
+        return spread(stationIds, from, to, longitudes) >= spread(stationIds, from, to, latitudes);
+    }
+
+    private static long spread(int[] stationIds, int from, int to, int[] coordinates) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            min = Math.min(min, coordinates[stationIds[i]]);
+            max = Math.max(max, coordinates[stationIds[i]]);
+        }
+        return (long) max - min;
+    }
+
+    /**
+     * Sorts the given stations by their longitude or their latitude, the stations having the
+     * same coordinate being sorted by identifier, so that the order is always the same.
+     *
+     * @param stationIds the identifiers of stations
+     * @param from the index of the first station (included)
+     * @param to the index of the last station (excluded)
+     * @param alongLongitude whether the stations are sorted by longitude (or else by latitude)
+     */
+    public void sort(int[] stationIds, int from, int to, boolean alongLongitude) {
+        int[] coordinates = alongLongitude ? longitudes : latitudes;
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) {
+            keys[i - from] = (long) coordinates[stationIds[i]] << Integer.SIZE | stationIds[i];
+        }
+        Arrays.sort(keys);
+        for (int i = from; i < to; i++) {
+            stationIds[i] = (int) (keys[i - from] & MASK_32_BITS);
+        }
+    }
+}
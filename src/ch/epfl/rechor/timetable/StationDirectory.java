@@ -0,0 +1,129 @@
+package ch.epfl.rechor.timetable;
+
+import java.util.Arrays;
+
+/**
+ * Directory of the stations of a timetable, giving the index of the station having a given name
+ * or alias in constant time.
+ * The names are stored in an open-addressing hash table with linear probing, built once out of
+ * the timetable: each slot holds a name, its hash and the index of its station, so that a
+ * lookup only compares the hashes and then the names, without decoding any string of the
+ * timetable nor allocating anything.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class StationDirectory {
+
+    /**
+     * The value of the station of the empty slots.
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * The names of the slots, null for the empty ones.
+     */
+    private final String[] names;
+
+    /**
+     * The hashes of the names of the slots.
+     */
+    private final int[] hashes;
+
+    /**
+     * The index of the station of each slot, or EMPTY.
+     */
+    private final int[] stationIds;
+
+    /**
+     * Mask giving the slot of a hash, the number of slots being a power of two.
+     */
+    private final int mask;
+
+    /**
+     * The number of names of the directory.
+     */
+    private int size;
+
+    private StationDirectory(int capacity) {
+        // At most half of the slots are used, so that the probe sequences stay short.
+        int slotCount = Integer.highestOneBit(Math.max(2 * capacity - 1, 1)) << 1;
+        names = new String[slotCount];
+        hashes = new int[slotCount];
+        stationIds = new int[slotCount];
+        Arrays.fill(stationIds, EMPTY);
+        mask = slotCount - 1;
+    }
+
+    /**
+     * Builds the directory of the stations of the given timetable, containing their names and
+     * their aliases.
+     * If several stations have the same name, the name designates the first of them, and an
+     * alias having the name of a station designates that station.
+     *
+     * @param timeTable the timetable whose stations are indexed
+     * @return the directory of the stations of the timetable
+     */
+    public static StationDirectory of(TimeTable timeTable) {
+        Stations stations = timeTable.stations();
+        StationAliases aliases = timeTable.stationAliases();
+        StationDirectory directory = new StationDirectory(stations.size() + aliases.size());
+        for (int i = 0; i < stations.size(); i++) {
+            directory.putIfAbsent(stations.name(i), i);
+        }
+        for (int i = 0; i < aliases.size(); i++) {
+            int stationId = directory.stationId(aliases.stationName(i));
+            if (stationId != EMPTY) {
+                directory.putIfAbsent(aliases.alias(i), stationId);
+            }
+        }
+        return directory;
+    }
+
+    private static int hash(String name) {
+        int hash = name.hashCode() * 0x9E37_79B9;
+        return hash ^ hash >>> 16;
+    }
+
+    private void putIfAbsent(String name, int stationId) {
+        int hash = hash(name);
+        int slot = hash & mask;
+        while (stationIds[slot] != EMPTY) {
+            if (hashes[slot] == hash && names[slot].equals(name)) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        hashes[slot] = hash;
+        stationIds[slot] = stationId;
+        size++;
+    }
+
+    /**
+     * Returns the index of the station having the given name or alias.
+     *
+     * @param name the name or alias of the station
+     * @return the index of the station, or -1 if no station has this name or alias
+     */
+    public int stationId(String name) {
+        int hash = hash(name);
+        int slot = hash & mask;
+        while (stationIds[slot] != EMPTY) {
+            if (hashes[slot] == hash && names[slot].equals(name)) {
+                return stationIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Returns the number of distinct names and aliases of the directory.
+     *
+     * @return the number of names and aliases
+     */
+    public int size() {
+        return size;
+    }
+}
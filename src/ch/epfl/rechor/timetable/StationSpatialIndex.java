@@ -0,0 +1,300 @@
+package ch.epfl.rechor.timetable;
+
+import ch.epfl.rechor.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index of the stations of a timetable, giving the stations nearest to a point and the
+ * stations within a given distance of it without going through all the stations.
+ * The index is a k-d tree over the fixed-point coordinates of the stations, stored in primitive
+ * arrays: the stations are ordered so that the station splitting the stations between two
+ * indexes is at the middle of them, the stations before it being on one side of it along the
+ * coordinate along which they are the most spread, and the stations after it on the other side.
+ * <p>
+ * The distances are computed with an equirectangular projection centered on the queried point,
+ * which is very precise at the distances at which stations are searched (a few kilometers), and
+ * are expressed in meters.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class StationSpatialIndex {
+
+    /**
+     * The mean radius of the Earth, in meters.
+     */
+    private static final double EARTH_RADIUS = 6_371_000;
+
+    /**
+     * The number of meters in a unit of latitude.
+     */
+    private static final double METERS_PER_UNIT =
+            2 * Math.PI * EARTH_RADIUS / StationCoordinates.UNITS_PER_TURN;
+
+    /**
+     * Mask constant for the 32 least significant bits of the keys.
+     */
+    private static final long MASK_32_BITS = 0xFFFF_FFFFL;
+
+    /**
+     * The stations, in the order of the tree.
+     */
+    private final int[] stationIds;
+
+    /**
+     * The coordinates of the stations, in units, in the order of the tree.
+     */
+    private final int[] longitudes;
+    private final int[] latitudes;
+
+    /**
+     * Whether the station at each position of the tree splits the stations around it along
+     * their longitude (or else along their latitude).
+     */
+    private final boolean[] longitudeSplits;
+
+    private StationSpatialIndex(int[] stationIds, int[] longitudes, int[] latitudes,
+                                boolean[] longitudeSplits) {
+        this.stationIds = stationIds;
+        this.longitudes = longitudes;
+        this.latitudes = latitudes;
+        this.longitudeSplits = longitudeSplits;
+    }
+
+    /**
+     * Builds the spatial index of the given stations.
+     *
+     * @param stations the stations to index
+     * @return the spatial index of the stations
+     */
+    public static StationSpatialIndex of(Stations stations) {
+        StationCoordinates coordinates = StationCoordinates.of(stations);
+        int[] stationIds = coordinates.stationIds();
+        int size = stationIds.length;
+        boolean[] longitudeSplits = new boolean[size];
+        build(stationIds, 0, size, coordinates, longitudeSplits);
+
+        int[] longitudes = new int[size];
+        int[] latitudes = new int[size];
+        for (int i = 0; i < size; i++) {
+            longitudes[i] = coordinates.longitude(stationIds[i]);
+            latitudes[i] = coordinates.latitude(stationIds[i]);
+        }
+        return new StationSpatialIndex(stationIds, longitudes, latitudes, longitudeSplits);
+    }
+
+    /**
+     * Orders the stations between the given indexes of the given array as a tree.
+     */
+    private static void build(int[] stationIds, int from, int to,
+                              StationCoordinates coordinates, boolean[] longitudeSplits) {
+        if (to - from <= 1) {
+            return;
+        }
+
+        boolean longitudeSplit = coordinates.mostSpreadAlongLongitude(stationIds, from, to);
+        coordinates.sort(stationIds, from, to, longitudeSplit);
+
+        int middle = (from + to) >>> 1;
+        longitudeSplits[middle] = longitudeSplit;
+        build(stationIds, from, middle, coordinates, longitudeSplits);
+        build(stationIds, middle + 1, to, coordinates, longitudeSplits);
+    }
+
+    /**
+     * Returns the number of stations of the index.
+     *
+     * @return the number of stations
+     */
+    public int size() {
+        return stationIds.length;
+    }
+
+    /**
+     * Returns the given number of stations nearest to the given point, or all the stations if
+     * there are less of them.
+     *
+     * @param longitude the longitude of the point, in degrees
+     * @param latitude the latitude of the point, in degrees
+     * @param count the number of stations
+     * @return the indexes of the stations, from the nearest to the farthest
+     * @throws IllegalArgumentException if the number of stations is negative
+     */
+    public int[] nearest(double longitude, double latitude, int count) {
+        Preconditions.checkArgument(count >= 0);
+        Query query = new Query(longitude, latitude, Math.min(count, size()));
+        if (query.capacity > 0) {
+            nearest(0, size(), query);
+        }
+        return query.stationIds();
+    }
+
+    private void nearest(int from, int to, Query query) {
+        if (from >= to) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        query.offer(middle);
+
+        double axisDistance = query.axisDistance(middle);
+        int nearFrom = axisDistance < 0 ? from : middle + 1;
+        int nearTo = axisDistance < 0 ? middle : to;
+        nearest(nearFrom, nearTo, query);
+        // The stations on the other side are at least as far as the splitting line.
+        if (!query.isFull() || axisDistance * axisDistance <= query.maxSquaredDistance()) {
+            nearest(axisDistance < 0 ? middle + 1 : from, axisDistance < 0 ? to : middle, query);
+        }
+    }
+
+    /**
+     * Returns the stations within the given distance of the given point.
+     *
+     * @param longitude the longitude of the point, in degrees
+     * @param latitude the latitude of the point, in degrees
+     * @param radius the distance, in meters
+     * @return the indexes of the stations, from the nearest to the farthest
+     * @throws IllegalArgumentException if the distance is negative or not a number
+     */
+    public int[] within(double longitude, double latitude, double radius) {
+        Preconditions.checkArgument(radius >= 0);
+        Query query = new Query(longitude, latitude, 0);
+        within(0, size(), query, radius * radius);
+        return query.stationIds();
+    }
+
+    private void within(int from, int to, Query query, double squaredRadius) {
+        if (from >= to) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        if (query.squaredDistance(middle) <= squaredRadius) {
+            query.add(middle);
+        }
+
+        double axisDistance = query.axisDistance(middle);
+        if (axisDistance <= 0 || axisDistance * axisDistance <= squaredRadius) {
+            within(from, middle, query, squaredRadius);
+        }
+        if (axisDistance >= 0 || axisDistance * axisDistance <= squaredRadius) {
+            within(middle + 1, to, query, squaredRadius);
+        }
+    }
+
+    /**
+     * A search around a point, collecting the stations found with their distance, each packed
+     * in a long whose 32 most significant bits are the bits of the squared distance as a float
+     * (which are ordered as the distances, these being positive) and whose 32 least significant
+     * bits are the index of the station.
+     * If the number of stations collected is bounded, they are stored in a max-heap, whose root
+     * is the farthest station.
+     */
+    private final class Query {
+
+        private final int longitude;
+        private final int latitude;
+
+        /**
+         * The number of meters in a unit of longitude, at the latitude of the point.
+         */
+        private final double metersPerLongitudeUnit;
+
+        private final int capacity;
+        private long[] keys;
+        private int size;
+
+        Query(double longitude, double latitude, int capacity) {
+            this.longitude = StationCoordinates.unitsOf(longitude);
+            this.latitude = StationCoordinates.unitsOf(latitude);
+            metersPerLongitudeUnit = METERS_PER_UNIT * Math.cos(Math.toRadians(latitude));
+            this.capacity = capacity;
+            keys = new long[Math.max(capacity, 16)];
+        }
+
+        /**
+         * Returns the signed distance from the point to the line splitting the stations at the
+         * given position, negative if the point is before the station along the split
+         * coordinate.
+         */
+        double axisDistance(int position) {
+            return longitudeSplits[position]
+                    ? (double) ((long) longitude - longitudes[position]) * metersPerLongitudeUnit
+                    : (double) ((long) latitude - latitudes[position]) * METERS_PER_UNIT;
+        }
+
+        double squaredDistance(int position) {
+            double x = ((long) longitudes[position] - longitude) * metersPerLongitudeUnit;
+            double y = ((long) latitudes[position] - latitude) * METERS_PER_UNIT;
+            return x * x + y * y;
+        }
+
+        private long key(int position) {
+            return (long) Float.floatToIntBits((float) squaredDistance(position)) << Integer.SIZE
+                    | stationIds[position];
+        }
+
+        boolean isFull() {
+            return size == capacity;
+        }
+
+        double maxSquaredDistance() {
+            return Float.intBitsToFloat((int) (keys[0] >>> Integer.SIZE));
+        }
+
+        /**
+         * Adds the station at the given position, without bounding the number of stations.
+         */
+        void add(int position) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * size);
+            }
+            keys[size++] = key(position);
+        }
+
+        /**
+         * Adds the station at the given position if it is nearer than the farthest station
+         * kept, removing the farthest one if needed.
+         */
+        void offer(int position) {
+            long key = key(position);
+            if (size < capacity) {
+                keys[size] = key;
+                int i = size++;
+                while (i > 0 && keys[(i - 1) / 2] < keys[i]) {
+                    swap(i, (i - 1) / 2);
+                    i = (i - 1) / 2;
+                }
+            } else if (key < keys[0]) {
+                keys[0] = key;
+                int i = 0;
+                while (2 * i + 1 < size) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < size && keys[child + 1] > keys[child]) {
+                        child++;
+                    }
+                    if (keys[i] >= keys[child]) {
+                        break;
+                    }
+                    swap(i, child);
+                    i = child;
+                }
+            }
+        }
+
+        private void swap(int i, int j) {
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+
+        int[] stationIds() {
+            long[] sortedKeys = Arrays.copyOf(keys, size);
+            Arrays.sort(sortedKeys);
+            int[] ids = new int[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = (int) (sortedKeys[i] & MASK_32_BITS);
+            }
+            return ids;
+        }
+    }
+}
@@ -24,6 +24,14 @@ public interface TimeTable {
      */
     Stations stations();
 
+    /**
+     * Retrieves the spatial index of the stations of the timetable, built once for the
+     * timetable, as StationSpatialIndex.of builds it, rather than at each call.
+     *
+     * @return the spatial index of the stations
+     */
+    StationSpatialIndex stationSpatialIndex();
+
     /**
      * Retrieves the station aliases of the timetable.
      *
@@ -104,6 +112,14 @@ public interface TimeTable {
         return stopId;
     }
 
+    /**
+     * Releases the resources held by this timetable that the garbage collector does not
+     * release, once the timetable was replaced by a new version of it, for instance the memory
+     * locked for its mapped files. The queries still using the timetable can keep using it.
+     * By default, the method does nothing.
+     */
+    default void release() {}
+
     /**
      * Retrieves the platform name corresponding to the given stop ID.
      * If the stop ID corresponds to a platform, the method returns its name; otherwise,
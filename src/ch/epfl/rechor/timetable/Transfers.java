@@ -35,7 +35,9 @@ public interface Transfers extends Indexed {
 
     /**
      * Retrieves the packed interval representing all transfers arriving at the given station.
-     * The returned value is an encoded integer that can be decoded using PackedRange.
+     * The returned value is an encoded integer that can be decoded using PackedRange, so that
+     * at most 255 transfers arrive at a station, the first of them being one of the first
+     * 2<sup>24</sup> transfers.
      *
      * @param stationId the ID of the arrival station.
      * @return a packed integer representing the interval of transfers arriving at the station.
@@ -3,8 +3,12 @@ package ch.epfl.rechor.timetable.mapped;
 import ch.epfl.rechor.Bits32_24_8;
 import ch.epfl.rechor.timetable.Connections;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Class used to represent and extract data out of the representation of a Connection.
@@ -18,29 +22,29 @@ public final class BufferedConnections implements Connections {
     /**
      * Constant representing the field index of departure stops index, inside a connection array.
      */
-    private static final int DEP_STOP_ID = 0;
+    public static final int DEP_STOP_ID = 0;
 
     /**
      * Constant representing the field index of the departure time, inside a connection array.
      */
-    private static final int DEP_MINUTES = 1;
+    public static final int DEP_MINUTES = 1;
 
     /**
      * Constant representing the field index of arrival stops index, inside a connection array.
      */
-    private static final int ARR_STOP_ID = 2;
+    public static final int ARR_STOP_ID = 2;
 
     /**
      * Constant representing the field index of arrival time (in minutes), inside a connection array.
      */
-    private static final int ARR_MINUTES = 3;
+    public static final int ARR_MINUTES = 3;
 
     /**
      * Constant representing the field index of TRIP_POS_ID: the current id of the course of the
      * current connection
      * as well as the position of the connection in the course (in the eight less significant bits).
      */
-    private static final int TRIP_POS_ID = 4;
+    public static final int TRIP_POS_ID = 4;
 
     /**
      * Attribute storing an int buffer that stores for each connection,
@@ -53,6 +57,18 @@ public final class BufferedConnections implements Connections {
      */
     private final StructuredBuffer structuredBuffer;
 
+    /**
+     * Attribute storing the reader of the departure stop identifiers, chosen once for the type of
+     * their field in the version of the format.
+     */
+    private final IntUnaryOperator depStopIds;
+
+    /**
+     * Attribute storing the reader of the arrival stop identifiers, chosen once for the type of
+     * their field in the version of the format.
+     */
+    private final IntUnaryOperator arrStopIds;
+
     /**
      * Final attribute storing the structure.
      */
@@ -63,6 +79,29 @@ public final class BufferedConnections implements Connections {
             Structure.field(ARR_MINUTES, Structure.FieldType.U16), Structure.field(TRIP_POS_ID,
             Structure.FieldType.S32));
 
+    /**
+     * Final attribute storing the structure of the wide format, in which the stops are U24.
+     */
+    private static final Structure wideConnectionStructure = new Structure(
+            Structure.field(DEP_STOP_ID, Structure.FieldType.U24),
+            Structure.field(DEP_MINUTES, Structure.FieldType.U16),
+            Structure.field(ARR_STOP_ID, Structure.FieldType.U24),
+            Structure.field(ARR_MINUTES, Structure.FieldType.U16),
+            Structure.field(TRIP_POS_ID, Structure.FieldType.S32));
+
+    /**
+     * Returns the structure of the connections in the given version of the format, for instance
+     * to write them with a {@link StructuredBufferWriter}.
+     *
+     * @param version the version of the format, {@link FileHeader#DEFAULT_VERSION} or
+     *                {@link FileHeader#WIDE_IDS_VERSION}
+     * @return the structure of the connections in the given version
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    public static Structure structure(int version) {
+        return FileHeader.hasWideIds(version) ? wideConnectionStructure : connectionStructure;
+    }
+
     /**
      * Constructs a buffered connection object using a structured buffer and a successor buffer.
      *
@@ -70,8 +109,45 @@ public final class BufferedConnections implements Connections {
      * @param succBuffer the buffer that will contain the id of the next connection for each connection
      */
     public BufferedConnections(ByteBuffer buffer, ByteBuffer succBuffer) {
+        this(buffer, succBuffer, FileHeader.DEFAULT_VERSION);
+    }
+
+    /**
+     * Constructs a buffered connection object whose connections are in the given version of
+     * the format.
+     *
+     * @param buffer the buffer that will be structured containing the five fields of a connection
+     * @param succBuffer the buffer that will contain the id of the next connection for each connection
+     * @param version the version of the format of the connections, {@link FileHeader#DEFAULT_VERSION}
+     *                or {@link FileHeader#WIDE_IDS_VERSION}
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    public BufferedConnections(ByteBuffer buffer, ByteBuffer succBuffer, int version) {
         intBuffer = succBuffer.asIntBuffer();
-        structuredBuffer = new StructuredBuffer(connectionStructure,buffer);
+        structuredBuffer = new StructuredBuffer(structure(version), buffer);
+        depStopIds = structuredBuffer.unsignedReader(DEP_STOP_ID);
+        arrStopIds = structuredBuffer.unsignedReader(ARR_STOP_ID);
+    }
+
+    /**
+     * Reads the connections.bin and connections-succ.bin files of the given directory in
+     * memory, in the version of the format given by their headers, if any.
+     *
+     * @param dayDirectory the directory of a day
+     * @return the connections of the directory
+     * @throws IOException if reading one of the files causes a problem
+     */
+    static BufferedConnections readFrom(Path dayDirectory) throws IOException {
+        ByteBuffer connectionsFile = ByteBuffer.wrap(
+                Files.readAllBytes(dayDirectory.resolve("connections.bin")));
+        ByteBuffer succFile = ByteBuffer.wrap(
+                Files.readAllBytes(dayDirectory.resolve("connections-succ.bin")));
+        if (!FileHeader.isPresentIn(connectionsFile)) {
+            return new BufferedConnections(connectionsFile, succFile);
+        }
+        return new BufferedConnections(FileHeader.payloadOf(connectionsFile),
+                FileHeader.isPresentIn(succFile) ? FileHeader.payloadOf(succFile) : succFile,
+                FileHeader.read(connectionsFile).version());
     }
 
     /**
@@ -83,7 +159,7 @@ public final class BufferedConnections implements Connections {
      */
     @Override
     public int depStopId(int id) throws IndexOutOfBoundsException {
-        return structuredBuffer.getU16(DEP_STOP_ID,id);
+        return depStopIds.applyAsInt(id);
     }
 
     /**
@@ -106,7 +182,7 @@ public final class BufferedConnections implements Connections {
      */
     @Override
     public int arrStopId(int id) throws IndexOutOfBoundsException {
-        return structuredBuffer.getU16(ARR_STOP_ID,id);
+        return arrStopIds.applyAsInt(id);
     }
 
     /**
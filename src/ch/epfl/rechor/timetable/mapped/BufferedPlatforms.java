@@ -4,6 +4,7 @@ import ch.epfl.rechor.timetable.Platforms;
 
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Class allowing access to a platform timetable in a flattened representation.
@@ -17,18 +18,57 @@ public final class BufferedPlatforms implements Platforms {
     /**
      * Constant representing the field index of names inside the platform representation.
      */
-    private static final int NAME_ID = 0;
+    public static final int NAME_ID = 0;
 
     /**
      * Constant representing the field index of stations inside the platform representation.
      */
-    private static final int STATION_ID = 1;
+    public static final int STATION_ID = 1;
+
+    /**
+     * Structure defining the format of platforms in the structured buffer.
+     */
+    private static final Structure structurePlatform = new Structure(
+            Structure.field(NAME_ID, Structure.FieldType.U16),
+            Structure.field(STATION_ID, Structure.FieldType.U16));
+
+    /**
+     * Structure defining the format of platforms in the wide format.
+     */
+    private static final Structure wideStructurePlatform = new Structure(
+            Structure.field(NAME_ID, Structure.FieldType.U32),
+            Structure.field(STATION_ID, Structure.FieldType.U24));
+
+    /**
+     * Returns the structure of the platforms in the given version of the format, for instance
+     * to write them with a {@link StructuredBufferWriter}.
+     *
+     * @param version the version of the format, {@link FileHeader#DEFAULT_VERSION} or
+     *                {@link FileHeader#WIDE_IDS_VERSION}
+     * @return the structure of the platforms in the given version
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    public static Structure structure(int version) {
+        return FileHeader.hasWideIds(version) ? wideStructurePlatform : structurePlatform;
+    }
 
     /**
      * Attribute storing the structured buffer of platforms.
      */
     private final StructuredBuffer structuredBuffer;
 
+    /**
+     * Attribute storing the reader of the name identifiers, chosen once for the type of their field
+     * in the version of the format.
+     */
+    private final IntUnaryOperator nameIds;
+
+    /**
+     * Attribute storing the reader of the station identifiers, chosen once for the type of their
+     * field in the version of the format.
+     */
+    private final IntUnaryOperator stationIds;
+
     /**
      * Attribute storing the table of platform names.
      */
@@ -41,11 +81,23 @@ public final class BufferedPlatforms implements Platforms {
      * @param buffer      a ByteBuffer containing structured platform data.
      */
     public BufferedPlatforms(List<String> stringTable, ByteBuffer buffer) {
+        this(stringTable, buffer, FileHeader.DEFAULT_VERSION);
+    }
+
+    /**
+     * Constructs a BufferedPlatforms instance whose data is in the given version of the format.
+     *
+     * @param stringTable a list of platform names associated with their respective indexes.
+     * @param buffer      a ByteBuffer containing structured platform data.
+     * @param version     the version of the format of the data, {@link FileHeader#DEFAULT_VERSION}
+     *                    or {@link FileHeader#WIDE_IDS_VERSION}.
+     * @throws IllegalArgumentException if the version is unknown.
+     */
+    public BufferedPlatforms(List<String> stringTable, ByteBuffer buffer, int version) {
         this.stringTable = stringTable;
-        Structure structurePlatform = new Structure(
-                Structure.field(NAME_ID, Structure.FieldType.U16),
-                Structure.field(STATION_ID, Structure.FieldType.U16));
-        this.structuredBuffer = new StructuredBuffer(structurePlatform, buffer);
+        this.structuredBuffer = new StructuredBuffer(structure(version), buffer);
+        this.nameIds = structuredBuffer.unsignedReader(NAME_ID);
+        this.stationIds = structuredBuffer.unsignedReader(STATION_ID);
     }
 
     /**
@@ -57,7 +109,7 @@ public final class BufferedPlatforms implements Platforms {
      */
     @Override
     public String name(int id) throws IndexOutOfBoundsException {
-        int nameIndex = structuredBuffer.getU16(NAME_ID, id);
+        int nameIndex = nameIds.applyAsInt(id);
         return stringTable.get(nameIndex);
     }
 
@@ -70,7 +122,7 @@ public final class BufferedPlatforms implements Platforms {
      */
     @Override
     public int stationId(int id) throws IndexOutOfBoundsException {
-        return structuredBuffer.getU16(STATION_ID, id);
+        return stationIds.applyAsInt(id);
     }
 
     /**
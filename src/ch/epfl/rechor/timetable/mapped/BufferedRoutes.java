@@ -5,6 +5,7 @@ import ch.epfl.rechor.timetable.Routes;
 
 import java.util.List;
 import java.nio.ByteBuffer;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Class used to represent all the routes of the Swiss timetable in a structured way.
@@ -18,18 +19,24 @@ public final class BufferedRoutes implements Routes {
     /**
      * Constant representing the field index of names inside the route representation.
      */
-    private static final int NAME_ID = 0;
+    public static final int NAME_ID = 0;
 
     /**
      * Constant representing the field index of vehicle types inside the route representation.
      */
-    private static final int KIND = 1;
+    public static final int KIND = 1;
 
     /**
      * Attribute storing the structured buffer of routes.
      */
     private final StructuredBuffer structuredBuffer;
 
+    /**
+     * Attribute storing the reader of the name identifiers, chosen once for the type of their field
+     * in the version of the format.
+     */
+    private final IntUnaryOperator nameIds;
+
     /**
      * Attribute storing the table of route names.
      */
@@ -42,6 +49,26 @@ public final class BufferedRoutes implements Routes {
             Structure.field(NAME_ID, Structure.FieldType.U16),
             Structure.field(KIND, Structure.FieldType.U8));
 
+    /**
+     * Structure defining the format of a route in the wide format.
+     */
+    private static final Structure wideRouteStructure = new Structure(
+            Structure.field(NAME_ID, Structure.FieldType.U32),
+            Structure.field(KIND, Structure.FieldType.U8));
+
+    /**
+     * Returns the structure of the routes in the given version of the format, for instance
+     * to write them with a {@link StructuredBufferWriter}.
+     *
+     * @param version the version of the format, {@link FileHeader#DEFAULT_VERSION} or
+     *                {@link FileHeader#WIDE_IDS_VERSION}
+     * @return the structure of the routes in the given version
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    public static Structure structure(int version) {
+        return FileHeader.hasWideIds(version) ? wideRouteStructure : routeStructure;
+    }
+
     /**
      * Constructs a BufferedRoutes instance.
      *
@@ -49,7 +76,21 @@ public final class BufferedRoutes implements Routes {
      * @param buffer      a ByteBuffer containing structured route data.
      */
     public BufferedRoutes(List<String> stringTable, ByteBuffer buffer) {
-        structuredBuffer = new StructuredBuffer(routeStructure, buffer);
+        this(stringTable, buffer, FileHeader.DEFAULT_VERSION);
+    }
+
+    /**
+     * Constructs a BufferedRoutes instance whose data is in the given version of the format.
+     *
+     * @param stringTable a list of route names associated with their respective indexes.
+     * @param buffer      a ByteBuffer containing structured route data.
+     * @param version     the version of the format of the data, {@link FileHeader#DEFAULT_VERSION}
+     *                    or {@link FileHeader#WIDE_IDS_VERSION}.
+     * @throws IllegalArgumentException if the version is unknown.
+     */
+    public BufferedRoutes(List<String> stringTable, ByteBuffer buffer, int version) {
+        structuredBuffer = new StructuredBuffer(structure(version), buffer);
+        nameIds = structuredBuffer.unsignedReader(NAME_ID);
         this.stringTable = stringTable;
     }
 
@@ -75,7 +116,7 @@ public final class BufferedRoutes implements Routes {
      */
     @Override
     public String name(int id) throws IndexOutOfBoundsException {
-        int listIdx = structuredBuffer.getU16(NAME_ID, id);
+        int listIdx = nameIds.applyAsInt(id);
         return stringTable.get(listIdx);
     }
 
@@ -4,6 +4,7 @@ import ch.epfl.rechor.timetable.StationAliases;
 
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Class allowing access to alias station timetable in a flattened representation.
@@ -17,12 +18,12 @@ public final class BufferedStationAliases implements StationAliases {
     /**
      * Constant representing the field index of alias names inside the station aliases representation.
      */
-    private static final int ALIAS_ID = 0;
+    public static final int ALIAS_ID = 0;
 
     /**
      * Constant representing the field index of station names inside the station aliases representation.
      */
-    private static final int STATION_NAME_ID = 1;
+    public static final int STATION_NAME_ID = 1;
 
     /**
      * Structure defining the format of station aliases in the structured buffer.
@@ -31,11 +32,45 @@ public final class BufferedStationAliases implements StationAliases {
             Structure.field(ALIAS_ID, Structure.FieldType.U16),
             Structure.field(STATION_NAME_ID, Structure.FieldType.U16));
 
+    /**
+     * Structure defining the format of station aliases in the wide format.
+     */
+    private static final Structure wideStructureStationAliases = new Structure(
+            Structure.field(ALIAS_ID, Structure.FieldType.U32),
+            Structure.field(STATION_NAME_ID, Structure.FieldType.U32));
+
+    /**
+     * Returns the structure of the station aliases in the given version of the format, for instance
+     * to write them with a {@link StructuredBufferWriter}.
+     *
+     * @param version the version of the format, {@link FileHeader#DEFAULT_VERSION} or
+     *                {@link FileHeader#WIDE_IDS_VERSION}
+     * @return the structure of the station aliases in the given version
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    public static Structure structure(int version) {
+        return FileHeader.hasWideIds(version)
+                ? wideStructureStationAliases
+                : structureStationAliases;
+    }
+
     /**
      * Attribute storing the structured buffer of station aliases.
      */
     private final StructuredBuffer structuredBuffer;
 
+    /**
+     * Attribute storing the reader of the alias identifiers, chosen once for the type of their
+     * field in the version of the format.
+     */
+    private final IntUnaryOperator aliasIds;
+
+    /**
+     * Attribute storing the reader of the station name identifiers, chosen once for the type of
+     * their field in the version of the format.
+     */
+    private final IntUnaryOperator stationNameIds;
+
     /**
      * Attribute storing the table of alias and station names.
      */
@@ -48,8 +83,24 @@ public final class BufferedStationAliases implements StationAliases {
      * @param buffer      a ByteBuffer containing structured alias station data.
      */
     public BufferedStationAliases(List<String> stringTable, ByteBuffer buffer) {
+        this(stringTable, buffer, FileHeader.DEFAULT_VERSION);
+    }
+
+    /**
+     * Constructs a BufferedStationAliases instance whose data is in the given version of the
+     * format.
+     *
+     * @param stringTable a list of alias and station names associated with their respective indexes.
+     * @param buffer      a ByteBuffer containing structured alias station data.
+     * @param version     the version of the format of the data, {@link FileHeader#DEFAULT_VERSION}
+     *                    or {@link FileHeader#WIDE_IDS_VERSION}.
+     * @throws IllegalArgumentException if the version is unknown.
+     */
+    public BufferedStationAliases(List<String> stringTable, ByteBuffer buffer, int version) {
         this.stringTable = stringTable;
-        this.structuredBuffer = new StructuredBuffer(structureStationAliases, buffer);
+        this.structuredBuffer = new StructuredBuffer(structure(version), buffer);
+        this.aliasIds = structuredBuffer.unsignedReader(ALIAS_ID);
+        this.stationNameIds = structuredBuffer.unsignedReader(STATION_NAME_ID);
     }
 
     /**
@@ -61,7 +112,7 @@ public final class BufferedStationAliases implements StationAliases {
      */
     @Override
     public String alias(int id) throws IndexOutOfBoundsException {
-        int aliasIndex = structuredBuffer.getU16(ALIAS_ID, id);
+        int aliasIndex = aliasIds.applyAsInt(id);
         return stringTable.get(aliasIndex);
     }
 
@@ -74,7 +125,7 @@ public final class BufferedStationAliases implements StationAliases {
      */
     @Override
     public String stationName(int id) throws IndexOutOfBoundsException {
-        int stationNameIndex = structuredBuffer.getU16(STATION_NAME_ID, id);
+        int stationNameIndex = stationNameIds.applyAsInt(id);
         return stringTable.get(stationNameIndex);
     }
 
@@ -4,6 +4,7 @@ import ch.epfl.rechor.timetable.Stations;
 
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.function.IntUnaryOperator;
 /**
  * Class providing access to the station timetable in a flattened representation.
  * This class allows efficient retrieval of station names and their geographical coordinates.
@@ -16,17 +17,17 @@ public final class BufferedStations implements Stations {
     /**
      * Constant representing the field index of station names inside the structured representation.
      */
-    private static final int NAME_ID = 0;
+    public static final int NAME_ID = 0;
 
     /**
      * Constant representing the field index of longitude values inside the structured representation.
      */
-    private static final int LON = 1;
+    public static final int LON = 1;
 
     /**
      * Constant representing the field index of latitude values inside the structured representation.
      */
-    private static final int LAT = 2;
+    public static final int LAT = 2;
 
     /**
      * Structure defining the format of stations in the structured buffer.
@@ -36,11 +37,38 @@ public final class BufferedStations implements Stations {
             Structure.field(LON, Structure.FieldType.S32),
             Structure.field(LAT, Structure.FieldType.S32));
 
+    /**
+     * Structure defining the format of stations in the wide format.
+     */
+    private static final Structure wideStructureStation = new Structure(
+            Structure.field(NAME_ID, Structure.FieldType.U32),
+            Structure.field(LON, Structure.FieldType.S32),
+            Structure.field(LAT, Structure.FieldType.S32));
+
+    /**
+     * Returns the structure of the stations in the given version of the format, for instance
+     * to write them with a {@link StructuredBufferWriter}.
+     *
+     * @param version the version of the format, {@link FileHeader#DEFAULT_VERSION} or
+     *                {@link FileHeader#WIDE_IDS_VERSION}
+     * @return the structure of the stations in the given version
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    public static Structure structure(int version) {
+        return FileHeader.hasWideIds(version) ? wideStructureStation : structureStation;
+    }
+
     /**
      * Attribute storing the structured buffer of station data.
      */
     private final StructuredBuffer structuredBuffer;
 
+    /**
+     * Attribute storing the reader of the name identifiers, chosen once for the type of their field
+     * in the version of the format.
+     */
+    private final IntUnaryOperator nameIds;
+
     /**
      * Attribute storing the table of station names.
      */
@@ -53,8 +81,22 @@ public final class BufferedStations implements Stations {
      * @param buffer      a ByteBuffer containing structured station data.
      */
     public BufferedStations(List<String> stringTable, ByteBuffer buffer) {
+        this(stringTable, buffer, FileHeader.DEFAULT_VERSION);
+    }
+
+    /**
+     * Constructs a BufferedStations instance whose data is in the given version of the format.
+     *
+     * @param stringTable a list of station names associated with their respective indexes.
+     * @param buffer      a ByteBuffer containing structured station data.
+     * @param version     the version of the format of the data, {@link FileHeader#DEFAULT_VERSION}
+     *                    or {@link FileHeader#WIDE_IDS_VERSION}.
+     * @throws IllegalArgumentException if the version is unknown.
+     */
+    public BufferedStations(List<String> stringTable, ByteBuffer buffer, int version) {
         this.stringTable = stringTable;
-        this.structuredBuffer = new StructuredBuffer(structureStation, buffer);
+        this.structuredBuffer = new StructuredBuffer(structure(version), buffer);
+        this.nameIds = structuredBuffer.unsignedReader(NAME_ID);
     }
 
     /**
@@ -66,7 +108,7 @@ public final class BufferedStations implements Stations {
      */
     @Override
     public String name(int id) throws IndexOutOfBoundsException {
-        int nameIndex = structuredBuffer.getU16(NAME_ID, id);
+        int nameIndex = nameIds.applyAsInt(id);
         return stringTable.get(nameIndex);
     }
 
@@ -4,7 +4,10 @@ import ch.epfl.rechor.PackedRange;
 import ch.epfl.rechor.timetable.Transfers;
 
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.NoSuchElementException;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
 
 /**
  * Class providing access to transfer times between stations in a flattened representation.
@@ -18,18 +21,18 @@ public final class BufferedTransfers implements Transfers {
     /**
      * Constant representing the field index of departure station IDs inside the transfer representation.
      */
-    private static final int DEP_STATION_ID = 0;
+    public static final int DEP_STATION_ID = 0;
 
     /**
      * Constant representing the field index of arrival station IDs inside the transfer representation.
      */
-    private static final int ARR_STATION_ID = 1;
+    public static final int ARR_STATION_ID = 1;
 
     /**
      * Constant representing the field index of transfer durations (in minutes) inside the
      * transfer representation.
      */
-    private static final int TRANSFER_MINUTES = 2;
+    public static final int TRANSFER_MINUTES = 2;
 
     /**
      * Structure defining the format of transfers in the structured buffer.
@@ -39,15 +42,43 @@ public final class BufferedTransfers implements Transfers {
             Structure.field(ARR_STATION_ID, Structure.FieldType.U16),
             Structure.field(TRANSFER_MINUTES, Structure.FieldType.U8));
 
+    /**
+     * Structure defining the format of transfers in the wide format.
+     */
+    private static final Structure wideStructureTransfers = new Structure(
+            Structure.field(DEP_STATION_ID, Structure.FieldType.U24),
+            Structure.field(ARR_STATION_ID, Structure.FieldType.U24),
+            Structure.field(TRANSFER_MINUTES, Structure.FieldType.U8));
+
+    /**
+     * Returns the structure of the transfers in the given version of the format, for instance
+     * to write them with a {@link StructuredBufferWriter}.
+     *
+     * @param version the version of the format, {@link FileHeader#DEFAULT_VERSION} or
+     *                {@link FileHeader#WIDE_IDS_VERSION}
+     * @return the structure of the transfers in the given version
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    public static Structure structure(int version) {
+        return FileHeader.hasWideIds(version) ? wideStructureTransfers : structureTransfers;
+    }
+
     /**
      * Attribute storing the structured buffer of transfers.
      */
     private final StructuredBuffer structuredBuffer;
 
     /**
-     * Array storing packed intervals representing transfer connections for each station.
+     * Attribute storing the reader of the departure station identifiers, chosen once for the type
+     * of their field in the version of the format.
+     */
+    private final IntUnaryOperator depStationIds;
+
+    /**
+     * Buffer storing packed intervals representing transfer connections for each station,
+     * computed the first time a transfer interval is requested.
      */
-    private final int[] arrayOfPackedChanges;
+    private final Supplier<IntBuffer> arrayOfPackedChanges;
 
     /**
      * Constructs a BufferedTransfers instance from a given buffer.
@@ -56,11 +87,82 @@ public final class BufferedTransfers implements Transfers {
      * @param buffer a ByteBuffer containing structured transfer data.
      */
     public BufferedTransfers(ByteBuffer buffer) {
-        structuredBuffer = new StructuredBuffer(structureTransfers, buffer);
+        this(buffer, IntBuffer.wrap(packedChangesOf(buffer)));
+    }
+
+    /**
+     * Constructs a BufferedTransfers instance from a given buffer and the packed intervals
+     * of the transfers arriving at each station, previously computed by
+     * {@link #packedChangesOf(ByteBuffer)}.
+     *
+     * @param buffer a ByteBuffer containing structured transfer data.
+     * @param packedChanges the packed interval of the transfers arriving at each station.
+     */
+    public BufferedTransfers(ByteBuffer buffer, IntBuffer packedChanges) {
+        this(buffer, () -> packedChanges);
+    }
+
+    /**
+     * Constructs a BufferedTransfers instance from a given buffer and a function giving the
+     * packed intervals of the transfers arriving at each station, which is only called the
+     * first time an interval is requested, so that a timetable whose transfers are never
+     * used does not compute them.
+     *
+     * @param buffer a ByteBuffer containing structured transfer data.
+     * @param packedChanges the function giving the packed interval of the transfers arriving
+     *                      at each station, called at most once even if used by several threads.
+     */
+    public BufferedTransfers(ByteBuffer buffer, Supplier<IntBuffer> packedChanges) {
+        this(buffer, packedChanges, FileHeader.DEFAULT_VERSION);
+    }
+
+    /**
+     * Constructs a BufferedTransfers instance whose transfers are in the given version of the
+     * format, the packed intervals being computed the first time one is requested.
+     *
+     * @param buffer a ByteBuffer containing structured transfer data.
+     * @param packedChanges the function giving the packed interval of the transfers arriving
+     *                      at each station, called at most once even if used by several threads.
+     * @param version the version of the format of the data, {@link FileHeader#DEFAULT_VERSION}
+     *                or {@link FileHeader#WIDE_IDS_VERSION}.
+     * @throws IllegalArgumentException if the version is unknown.
+     */
+    public BufferedTransfers(ByteBuffer buffer, Supplier<IntBuffer> packedChanges, int version) {
+        structuredBuffer = new StructuredBuffer(structure(version), buffer);
+        depStationIds = structuredBuffer.unsignedReader(DEP_STATION_ID);
+        arrayOfPackedChanges = new Lazy<>(packedChanges);
+    }
+
+
+    /**
+     * Computes the packed intervals of the transfers arriving at each station, the transfers
+     * being sorted by arrival station in the given buffer.
+     *
+     * @param buffer a ByteBuffer containing structured transfer data.
+     * @return the packed interval of the transfers arriving at each station, indexed by station.
+     */
+    public static int[] packedChangesOf(ByteBuffer buffer) {
+        return packedChangesOf(buffer, FileHeader.DEFAULT_VERSION);
+    }
+
+    /**
+     * Computes the packed intervals of the transfers arriving at each station, the transfers
+     * being sorted by arrival station in the given buffer, in the given version of the format.
+     *
+     * @param buffer a ByteBuffer containing structured transfer data.
+     * @param version the version of the format of the transfers.
+     * @return the packed interval of the transfers arriving at each station, indexed by station.
+     * @throws IllegalArgumentException if the version is unknown, or if the transfers arriving
+     * at a station do not fit in a PackedRange.
+     */
+    public static int[] packedChangesOf(ByteBuffer buffer, int version) {
+        StructuredBuffer structuredBuffer = new StructuredBuffer(structure(version), buffer);
+        IntUnaryOperator arrStationIds = structuredBuffer.unsignedReader(ARR_STATION_ID);
+        int size = structuredBuffer.size();
 
         int maxStationsIdx = 0;
-        for (int i = 0; i < size(); i++) {
-            int currentArrId = structuredBuffer.getU16(ARR_STATION_ID, i);
+        for (int i = 0; i < size; i++) {
+            int currentArrId = arrStationIds.applyAsInt(i);
             if (currentArrId > maxStationsIdx) {
                 maxStationsIdx = currentArrId;
             }
@@ -69,16 +171,16 @@ public final class BufferedTransfers implements Transfers {
         int lastExcludedIdx = 0;
         int[] arrStationsPackedInterval = new int[++maxStationsIdx];
 
-        while (lastExcludedIdx < size()) {
+        while (lastExcludedIdx < size) {
             int startIdx = lastExcludedIdx;
-            int currentArrId = structuredBuffer.getU16(ARR_STATION_ID, startIdx);
-            while (lastExcludedIdx < size()
-                    && structuredBuffer.getU16(ARR_STATION_ID, lastExcludedIdx) == currentArrId) {
+            int currentArrId = arrStationIds.applyAsInt(startIdx);
+            while (lastExcludedIdx < size
+                    && arrStationIds.applyAsInt(lastExcludedIdx) == currentArrId) {
                 lastExcludedIdx++;
             }
             arrStationsPackedInterval[currentArrId] = PackedRange.pack(startIdx, lastExcludedIdx);
         }
-        arrayOfPackedChanges = arrStationsPackedInterval;
+        return arrStationsPackedInterval;
     }
 
     /**
@@ -90,7 +192,7 @@ public final class BufferedTransfers implements Transfers {
      */
     @Override
     public int depStationId(int id) throws IndexOutOfBoundsException {
-        return structuredBuffer.getU16(DEP_STATION_ID, id);
+        return depStationIds.applyAsInt(id);
     }
 
     /**
@@ -107,14 +209,19 @@ public final class BufferedTransfers implements Transfers {
 
     /**
      * Retrieves the packed interval representing all transfers arriving at the given station.
+     * The stations after the last station having arriving transfers have none, their interval
+     * being empty.
      *
      * @param stationId the ID of the arrival station.
      * @return the packed interval representing all transfers arriving at the station.
-     * @throws IndexOutOfBoundsException if the given station ID is invalid.
+     * @throws IndexOutOfBoundsException if the given station ID is negative.
      */
     @Override
     public int arrivingAt(int stationId) throws IndexOutOfBoundsException {
-        return arrayOfPackedChanges[stationId];
+        IntBuffer packedChanges = arrayOfPackedChanges.get();
+        return stationId < packedChanges.limit()
+                ? packedChanges.get(stationId)
+                : PackedRange.pack(0, 0);
     }
 
     /**
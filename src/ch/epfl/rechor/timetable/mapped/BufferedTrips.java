@@ -4,6 +4,7 @@ import ch.epfl.rechor.timetable.Trips;
 
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Class providing access to trips in a flattened representation.
@@ -17,13 +18,13 @@ public final class BufferedTrips implements Trips {
     /**
      * Constant representing the field index of route IDs inside the structured trip representation.
      */
-    private static final int ROUTE_ID = 0;
+    public static final int ROUTE_ID = 0;
 
     /**
      * Constant representing the field index of destination IDs inside the structured
      * trip representation.
      */
-    private static final int DESTINATION_ID = 1;
+    public static final int DESTINATION_ID = 1;
 
     /**
      * Structure defining the format of trips in the structured buffer.
@@ -32,11 +33,43 @@ public final class BufferedTrips implements Trips {
             Structure.field(ROUTE_ID, Structure.FieldType.U16),
             Structure.field(DESTINATION_ID, Structure.FieldType.U16));
 
+    /**
+     * Structure defining the format of trips in the wide format.
+     */
+    private static final Structure wideTripsStructure = new Structure(
+            Structure.field(ROUTE_ID, Structure.FieldType.U24),
+            Structure.field(DESTINATION_ID, Structure.FieldType.U32));
+
+    /**
+     * Returns the structure of the trips in the given version of the format, for instance
+     * to write them with a {@link StructuredBufferWriter}.
+     *
+     * @param version the version of the format, {@link FileHeader#DEFAULT_VERSION} or
+     *                {@link FileHeader#WIDE_IDS_VERSION}
+     * @return the structure of the trips in the given version
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    public static Structure structure(int version) {
+        return FileHeader.hasWideIds(version) ? wideTripsStructure : tripsStructure;
+    }
+
     /**
      * Attribute storing the structured buffer of trips.
      */
     private final StructuredBuffer structuredBuffer;
 
+    /**
+     * Attribute storing the reader of the route identifiers, chosen once for the type of their
+     * field in the version of the format.
+     */
+    private final IntUnaryOperator routeIds;
+
+    /**
+     * Attribute storing the reader of the destination identifiers, chosen once for the type of
+     * their field in the version of the format.
+     */
+    private final IntUnaryOperator destinationIds;
+
     /**
      * Attribute storing the table of route and destination names.
      */
@@ -50,8 +83,24 @@ public final class BufferedTrips implements Trips {
      * @param buffer      a ByteBuffer containing structured trip data.
      */
     public BufferedTrips(List<String> stringTable, ByteBuffer buffer) {
+        this(stringTable, buffer, FileHeader.DEFAULT_VERSION);
+    }
+
+    /**
+     * Constructs a BufferedTrips instance whose data is in the given version of the format.
+     *
+     * @param stringTable a list of route names and destinations associated with their
+     *                    respective indexes.
+     * @param buffer      a ByteBuffer containing structured trip data.
+     * @param version     the version of the format of the data, {@link FileHeader#DEFAULT_VERSION}
+     *                    or {@link FileHeader#WIDE_IDS_VERSION}.
+     * @throws IllegalArgumentException if the version is unknown.
+     */
+    public BufferedTrips(List<String> stringTable, ByteBuffer buffer, int version) {
         this.stringTable = stringTable;
-        structuredBuffer = new StructuredBuffer(tripsStructure, buffer);
+        structuredBuffer = new StructuredBuffer(structure(version), buffer);
+        routeIds = structuredBuffer.unsignedReader(ROUTE_ID);
+        destinationIds = structuredBuffer.unsignedReader(DESTINATION_ID);
     }
 
     /**
@@ -63,7 +112,7 @@ public final class BufferedTrips implements Trips {
      */
     @Override
     public int routeId(int id) throws IndexOutOfBoundsException {
-        return structuredBuffer.getU16(ROUTE_ID, id);
+        return routeIds.applyAsInt(id);
     }
 
     /**
@@ -75,7 +124,7 @@ public final class BufferedTrips implements Trips {
      */
     @Override
     public String destination(int id) throws IndexOutOfBoundsException {
-        int stringIdx = structuredBuffer.getU16(DESTINATION_ID, id);
+        int stringIdx = destinationIds.applyAsInt(id);
         return stringTable.get(stringIdx);
     }
 
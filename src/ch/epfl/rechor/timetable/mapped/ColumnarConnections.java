@@ -0,0 +1,279 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import ch.epfl.rechor.Bits32_24_8;
+import ch.epfl.rechor.Preconditions;
+import ch.epfl.rechor.timetable.Connections;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Class used to represent the connections of a day stored column by column:
+ * each field of the connections is stored in its own dense file, so that a scan
+ * of a single field (for instance the departure times) only touches the bytes of that field.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class ColumnarConnections implements Connections {
+
+    /**
+     * Names of the column files, in the order depStop, depMins, arrStop, arrMins, tripPos.
+     */
+    public static final List<String> COLUMN_FILES = List.of(
+            "connections-dep-stop.bin",
+            "connections-dep-mins.bin",
+            "connections-arr-stop.bin",
+            "connections-arr-mins.bin",
+            "connections-trip-pos.bin");
+
+    /**
+     * Name of the file storing, for each connection, the index of the next connection.
+     */
+    private static final String SUCC_FILE = "connections-succ.bin";
+
+    /**
+     * The largest stop that the 16-bit columns can store.
+     */
+    private static final int MAX_STOP_ID = 0xFFFF;
+
+    /**
+     * Structures of the columns, made of a single field.
+     */
+    private static final Structure U16_COLUMN = new Structure(
+            Structure.field(0, Structure.FieldType.U16));
+    private static final Structure S32_COLUMN = new Structure(
+            Structure.field(0, Structure.FieldType.S32));
+
+    /**
+     * Column of the departure stop indexes (U16).
+     */
+    private final ShortBuffer depStops;
+
+    /**
+     * Column of the departure times, in minutes after midnight (U16).
+     */
+    private final ShortBuffer depMins;
+
+    /**
+     * Column of the arrival stop indexes (U16).
+     */
+    private final ShortBuffer arrStops;
+
+    /**
+     * Column of the arrival times, in minutes after midnight (U16).
+     */
+    private final ShortBuffer arrMins;
+
+    /**
+     * Column of the trip indexes and positions, packed with Bits32_24_8 (S32).
+     */
+    private final IntBuffer tripPos;
+
+    /**
+     * Index of the next connection, for each connection.
+     */
+    private final IntBuffer succ;
+
+    /**
+     * Constructs the columnar connections out of one buffer per column.
+     *
+     * @param depStopsBuffer the buffer of the departure stop indexes
+     * @param depMinsBuffer the buffer of the departure times
+     * @param arrStopsBuffer the buffer of the arrival stop indexes
+     * @param arrMinsBuffer the buffer of the arrival times
+     * @param tripPosBuffer the buffer of the packed trip indexes and positions
+     * @param succBuffer the buffer of the indexes of the next connections
+     * @throws IllegalArgumentException if the columns do not all have the same number of elements
+     */
+    public ColumnarConnections(ByteBuffer depStopsBuffer, ByteBuffer depMinsBuffer,
+                               ByteBuffer arrStopsBuffer, ByteBuffer arrMinsBuffer,
+                               ByteBuffer tripPosBuffer, ByteBuffer succBuffer) {
+        depStops = depStopsBuffer.asShortBuffer();
+        depMins = depMinsBuffer.asShortBuffer();
+        arrStops = arrStopsBuffer.asShortBuffer();
+        arrMins = arrMinsBuffer.asShortBuffer();
+        tripPos = tripPosBuffer.asIntBuffer();
+        succ = succBuffer.asIntBuffer();
+
+        int size = depStops.capacity();
+        Preconditions.checkArgument(depMins.capacity() == size
+                && arrStops.capacity() == size
+                && arrMins.capacity() == size
+                && tripPos.capacity() == size
+                && succ.capacity() == size);
+    }
+
+    /**
+     * Checks whether the given directory contains the connections in the columnar format.
+     *
+     * @param dayDirectory the directory of a day
+     * @return true if all the column files are present in the directory
+     */
+    public static boolean isPresentIn(Path dayDirectory) {
+        for (String column : COLUMN_FILES) {
+            if (!Files.exists(dayDirectory.resolve(column))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts the connections of the given day directory, stored in connections.bin,
+     * into the columnar format. The successor file is shared by both formats and left untouched.
+     *
+     * @param dayDirectory the directory of a day, containing connections.bin
+     *                     and connections-succ.bin
+     * @throws IOException if reading or writing one of the files causes a problem
+     */
+    public static void convert(Path dayDirectory) throws IOException {
+        write(BufferedConnections.readFrom(dayDirectory), dayDirectory);
+    }
+
+    /**
+     * Writes the given connections column by column in the given directory.
+     *
+     * @param connections the connections to write
+     * @param dayDirectory the directory in which the column files are written
+     * @throws IOException if writing one of the files causes a problem
+     * @throws IllegalArgumentException if a stop does not fit in the 16 bits of the columns
+     */
+    public static void write(Connections connections, Path dayDirectory) throws IOException {
+        int size = connections.size();
+        for (int i = 0; i < size; i++) {
+            Preconditions.checkArgument(connections.depStopId(i) <= MAX_STOP_ID
+                    && connections.arrStopId(i) <= MAX_STOP_ID);
+        }
+        try (StructuredBufferWriter depStops = columnWriter(dayDirectory, 0, U16_COLUMN);
+             StructuredBufferWriter depMins = columnWriter(dayDirectory, 1, U16_COLUMN);
+             StructuredBufferWriter arrStops = columnWriter(dayDirectory, 2, U16_COLUMN);
+             StructuredBufferWriter arrMins = columnWriter(dayDirectory, 3, U16_COLUMN);
+             StructuredBufferWriter tripPos = columnWriter(dayDirectory, 4, S32_COLUMN)) {
+            for (int i = 0; i < size; i++) {
+                depStops.newRecord().putU16(0, connections.depStopId(i));
+                depMins.newRecord().putU16(0, connections.depMins(i));
+                arrStops.newRecord().putU16(0, connections.arrStopId(i));
+                arrMins.newRecord().putU16(0, connections.arrMins(i));
+                tripPos.newRecord().putS32(0,
+                        Bits32_24_8.pack(connections.tripId(i), connections.tripPos(i)));
+            }
+        }
+    }
+
+    private static StructuredBufferWriter columnWriter(Path dayDirectory, int column,
+                                                       Structure structure) throws IOException {
+        return new StructuredBufferWriter(structure,
+                dayDirectory.resolve(COLUMN_FILES.get(column)));
+    }
+
+    /**
+     * Returns a read-only view of the whole departure times column, in which the element
+     * at position i is the departure time (as an unsigned short) of the connection i.
+     * Scanning this view only touches the departure times of the connections.
+     *
+     * @return a read-only view of the departure times column
+     */
+    public ShortBuffer depMinsColumn() {
+        return depMins.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the ID of the departure stop for the given connection.
+     *
+     * @param id the index of the connection
+     * @return the departure stop index
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int depStopId(int id) throws IndexOutOfBoundsException {
+        return Short.toUnsignedInt(depStops.get(id));
+    }
+
+    /**
+     * Returns the departure time (in minutes after midnight) for the given connection.
+     *
+     * @param id the index of the connection
+     * @return the departure time in minutes after midnight of the given connection
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int depMins(int id) throws IndexOutOfBoundsException {
+        return Short.toUnsignedInt(depMins.get(id));
+    }
+
+    /**
+     * Returns the ID of the arrival stop for the given connection.
+     *
+     * @param id the index of the connection
+     * @return the arrival stop index
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int arrStopId(int id) throws IndexOutOfBoundsException {
+        return Short.toUnsignedInt(arrStops.get(id));
+    }
+
+    /**
+     * Returns the arrival time (in minutes after midnight) for the given connection.
+     *
+     * @param id the index of the connection
+     * @return the arrival time in minutes after midnight of the given connection
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int arrMins(int id) throws IndexOutOfBoundsException {
+        return Short.toUnsignedInt(arrMins.get(id));
+    }
+
+    /**
+     * Returns the trip ID of the given connection.
+     *
+     * @param id the index of the connection
+     * @return the index of the course of the current connection
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int tripId(int id) throws IndexOutOfBoundsException {
+        return Bits32_24_8.unpack24(tripPos.get(id));
+    }
+
+    /**
+     * Returns the position of the connection within its trip.
+     *
+     * @param id the index of the connection
+     * @return the position of the connection inside the course it belongs to
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int tripPos(int id) throws IndexOutOfBoundsException {
+        return Bits32_24_8.unpack8(tripPos.get(id));
+    }
+
+    /**
+     * Returns the index of the next connection that follows the given one.
+     *
+     * @param id the index of the connection
+     * @return the index of the next connection in the array containing the connections
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int nextConnectionId(int id) throws IndexOutOfBoundsException {
+        return succ.get(id);
+    }
+
+    /**
+     * The number of connections.
+     *
+     * @return the number of connections
+     */
+    @Override
+    public int size() {
+        return depStops.capacity();
+    }
+}
@@ -0,0 +1,367 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import ch.epfl.rechor.Preconditions;
+import ch.epfl.rechor.timetable.Connections;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class used to represent the connections of a day stored in a compressed file,
+ * made of fixed-size blocks of connections.
+ * Inside a block, each field is stored as a column of bit-packed values relative to a
+ * reference value (the minimum of the column in the block). The arrival time is stored as
+ * a delta to the departure time, and the next connection as a delta to the connection index,
+ * so that these columns only need a few bits.
+ * <p>
+ * The file starts with the number of connections, the number of connections per block and
+ * the number of blocks (three S32), followed by the byte offset of each block (S32),
+ * used to access a connection by its index without decoding the previous blocks.
+ * <p>
+ * Connections are decoded one block at a time, and the last decoded block is kept,
+ * so that scanning the connections in order only decodes each block once. As this block is
+ * shared by all the users of an instance, an instance should only be used by one thread at a
+ * time, for instance by a single query; instances sharing the buffer of a file are cheap to
+ * construct.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class CompressedConnections implements Connections {
+
+    /**
+     * Name of the compressed connections file in the directory of a day.
+     */
+    public static final String FILE_NAME = "connections-packed.bin";
+
+    /**
+     * Default number of connections per block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 128;
+
+    /**
+     * Indexes of the columns inside a block.
+     */
+    private static final int DEP_STOP_ID = 0;
+    private static final int DEP_MINUTES = 1;
+    private static final int ARR_STOP_ID = 2;
+    private static final int DURATION = 3;
+    private static final int TRIP_ID = 4;
+    private static final int TRIP_POS = 5;
+    private static final int SUCC_DELTA = 6;
+    private static final int COLUMN_COUNT = 7;
+
+    /**
+     * Number of bytes of the file header, and of the header of each column in a block.
+     */
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int COLUMN_HEADER_SIZE = Integer.BYTES + Byte.BYTES;
+
+    /**
+     * Number of zero bytes written after the last block, so that a value can always be read
+     * with a single long access.
+     */
+    private static final int PADDING = Long.BYTES;
+
+    /**
+     * The buffer containing the whole compressed file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The number of connections, and the number of connections per block.
+     */
+    private final int size;
+    private final int blockSize;
+
+    /**
+     * The last decoded block.
+     */
+    private DecodedBlock lastBlock;
+
+    /**
+     * A decoded block: the index of the block and its columns.
+     *
+     * @param blockIndex the index of the block
+     * @param columns the decoded columns, indexed by column and then by position in the block
+     */
+    private record DecodedBlock(int blockIndex, int[][] columns) {}
+
+    /**
+     * Constructs compressed connections out of the buffer containing a compressed file.
+     *
+     * @param buffer the buffer containing the compressed connections
+     * @throws IllegalArgumentException if the header of the buffer is invalid
+     */
+    public CompressedConnections(ByteBuffer buffer) {
+        this.buffer = buffer;
+        size = buffer.getInt(0);
+        blockSize = buffer.getInt(Integer.BYTES);
+        int blockCount = buffer.getInt(2 * Integer.BYTES);
+        Preconditions.checkArgument(size >= 0 && blockSize > 0
+                && blockCount == Math.ceilDiv(size, blockSize));
+        lastBlock = new DecodedBlock(-1, new int[COLUMN_COUNT][0]);
+    }
+
+    /**
+     * Checks whether the given directory contains the connections in the compressed format.
+     *
+     * @param dayDirectory the directory of a day
+     * @return true if the compressed connections file is present in the directory
+     */
+    public static boolean isPresentIn(Path dayDirectory) {
+        return Files.exists(dayDirectory.resolve(FILE_NAME));
+    }
+
+    /**
+     * Converts the connections of the given day directory, stored in connections.bin and
+     * connections-succ.bin, into the compressed format.
+     *
+     * @param dayDirectory the directory of a day
+     * @throws IOException if reading or writing one of the files causes a problem
+     */
+    public static void convert(Path dayDirectory) throws IOException {
+        write(BufferedConnections.readFrom(dayDirectory), dayDirectory.resolve(FILE_NAME),
+                DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Writes the given connections in the compressed format.
+     *
+     * @param connections the connections to write
+     * @param path the path of the file to write
+     * @param blockSize the number of connections per block
+     * @throws IOException if writing the file causes a problem
+     * @throws IllegalArgumentException if the block size is not strictly positive
+     */
+    public static void write(Connections connections, Path path, int blockSize)
+            throws IOException {
+        Preconditions.checkArgument(blockSize > 0);
+        int size = connections.size();
+        int blockCount = Math.ceilDiv(size, blockSize);
+
+        ByteBuffer[] blocks = new ByteBuffer[blockCount];
+        int[][] columns = new int[COLUMN_COUNT][blockSize];
+        int dataSize = 0;
+        for (int b = 0; b < blockCount; b++) {
+            int first = b * blockSize;
+            int count = Math.min(blockSize, size - first);
+            for (int i = 0; i < count; i++) {
+                int id = first + i;
+                columns[DEP_STOP_ID][i] = connections.depStopId(id);
+                columns[DEP_MINUTES][i] = connections.depMins(id);
+                columns[ARR_STOP_ID][i] = connections.arrStopId(id);
+                columns[DURATION][i] = connections.arrMins(id) - connections.depMins(id);
+                columns[TRIP_ID][i] = connections.tripId(id);
+                columns[TRIP_POS][i] = connections.tripPos(id);
+                columns[SUCC_DELTA][i] = connections.nextConnectionId(id) - id;
+            }
+            blocks[b] = encodeBlock(columns, count);
+            dataSize += blocks[b].remaining();
+        }
+
+        int dataStart = HEADER_SIZE + blockCount * Integer.BYTES;
+        ByteBuffer file = ByteBuffer.allocate(dataStart + dataSize + PADDING);
+        file.putInt(size).putInt(blockSize).putInt(blockCount);
+        int offset = dataStart;
+        for (ByteBuffer block : blocks) {
+            file.putInt(offset);
+            offset += block.remaining();
+        }
+        for (ByteBuffer block : blocks) {
+            file.put(block);
+        }
+        file.position(file.capacity()).flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (file.hasRemaining()) {
+                channel.write(file);
+            }
+        }
+    }
+
+    /**
+     * Encodes one block: the header of each column (reference value and bit width),
+     * followed by the bit-packed values of every column.
+     */
+    private static ByteBuffer encodeBlock(int[][] columns, int count) {
+        int[] references = new int[COLUMN_COUNT];
+        int[] widths = new int[COLUMN_COUNT];
+        long totalBits = 0;
+        for (int c = 0; c < COLUMN_COUNT; c++) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                min = Math.min(min, columns[c][i]);
+                max = Math.max(max, columns[c][i]);
+            }
+            references[c] = min;
+            widths[c] = Long.SIZE - Long.numberOfLeadingZeros((long) max - min);
+            totalBits += (long) widths[c] * count;
+        }
+
+        int packedBytes = (int) ((totalBits + Byte.SIZE - 1) / Byte.SIZE);
+        ByteBuffer block = ByteBuffer.allocate(COLUMN_COUNT * COLUMN_HEADER_SIZE + packedBytes);
+        for (int c = 0; c < COLUMN_COUNT; c++) {
+            block.putInt(references[c]).put((byte) widths[c]);
+        }
+
+        long bitPosition = 0;
+        int packedStart = block.position();
+        for (int c = 0; c < COLUMN_COUNT; c++) {
+            for (int i = 0; i < count; i++) {
+                long value = (long) columns[c][i] - references[c];
+                for (int bit = widths[c] - 1; bit >= 0; bit--, bitPosition++) {
+                    if (((value >>> bit) & 1) != 0) {
+                        int index = packedStart + (int) (bitPosition >>> 3);
+                        block.put(index, (byte) (block.get(index) | (0x80 >>> (bitPosition & 7))));
+                    }
+                }
+            }
+        }
+        return block.position(0);
+    }
+
+    /**
+     * Returns the decoded block containing the given connection, decoding it if it is not
+     * the last decoded block.
+     */
+    private int[][] blockOf(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        int blockIndex = id / blockSize;
+        DecodedBlock block = lastBlock;
+        if (block.blockIndex() != blockIndex) {
+            block = new DecodedBlock(blockIndex, decodeBlock(blockIndex));
+            lastBlock = block;
+        }
+        return block.columns();
+    }
+
+    private int[][] decodeBlock(int blockIndex) {
+        int count = Math.min(blockSize, size - blockIndex * blockSize);
+        int blockStart = buffer.getInt(HEADER_SIZE + blockIndex * Integer.BYTES);
+        long bitPosition = (long) (blockStart + COLUMN_COUNT * COLUMN_HEADER_SIZE) * Byte.SIZE;
+
+        int[][] columns = new int[COLUMN_COUNT][count];
+        for (int c = 0; c < COLUMN_COUNT; c++) {
+            int columnHeader = blockStart + c * COLUMN_HEADER_SIZE;
+            int reference = buffer.getInt(columnHeader);
+            int width = Byte.toUnsignedInt(buffer.get(columnHeader + Integer.BYTES));
+            for (int i = 0; i < count; i++, bitPosition += width) {
+                columns[c][i] = (int) (reference + readBits(bitPosition, width));
+            }
+        }
+        return columns;
+    }
+
+    private long readBits(long bitPosition, int width) {
+        if (width == 0) {
+            return 0;
+        }
+        long word = buffer.getLong((int) (bitPosition >>> 3));
+        int shift = Long.SIZE - (int) (bitPosition & 7) - width;
+        return (word >>> shift) & ((1L << width) - 1);
+    }
+
+    /**
+     * Returns the ID of the departure stop for the given connection.
+     *
+     * @param id the index of the connection
+     * @return the departure stop index
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int depStopId(int id) throws IndexOutOfBoundsException {
+        return blockOf(id)[DEP_STOP_ID][id % blockSize];
+    }
+
+    /**
+     * Returns the departure time (in minutes after midnight) for the given connection.
+     *
+     * @param id the index of the connection
+     * @return the departure time in minutes after midnight of the given connection
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int depMins(int id) throws IndexOutOfBoundsException {
+        return blockOf(id)[DEP_MINUTES][id % blockSize];
+    }
+
+    /**
+     * Returns the ID of the arrival stop for the given connection.
+     *
+     * @param id the index of the connection
+     * @return the arrival stop index
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int arrStopId(int id) throws IndexOutOfBoundsException {
+        return blockOf(id)[ARR_STOP_ID][id % blockSize];
+    }
+
+    /**
+     * Returns the arrival time (in minutes after midnight) for the given connection.
+     *
+     * @param id the index of the connection
+     * @return the arrival time in minutes after midnight of the given connection
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int arrMins(int id) throws IndexOutOfBoundsException {
+        int[][] block = blockOf(id);
+        return block[DEP_MINUTES][id % blockSize] + block[DURATION][id % blockSize];
+    }
+
+    /**
+     * Returns the trip ID of the given connection.
+     *
+     * @param id the index of the connection
+     * @return the index of the course of the current connection
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int tripId(int id) throws IndexOutOfBoundsException {
+        return blockOf(id)[TRIP_ID][id % blockSize];
+    }
+
+    /**
+     * Returns the position of the connection within its trip.
+     *
+     * @param id the index of the connection
+     * @return the position of the connection inside the course it belongs to
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int tripPos(int id) throws IndexOutOfBoundsException {
+        return blockOf(id)[TRIP_POS][id % blockSize];
+    }
+
+    /**
+     * Returns the index of the next connection that follows the given one.
+     *
+     * @param id the index of the connection
+     * @return the index of the next connection in the array containing the connections
+     * @throws IndexOutOfBoundsException if the given index exceeds the number of connection
+     */
+    @Override
+    public int nextConnectionId(int id) throws IndexOutOfBoundsException {
+        return id + blockOf(id)[SUCC_DELTA][id % blockSize];
+    }
+
+    /**
+     * The number of connections.
+     *
+     * @return the number of connections
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,130 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Class giving access to the cache of derived indexes of a timetable: arrays computed out of
+ * the timetable files (for instance the range of transfers arriving at each station), saved in
+ * the directory index-cache of the timetable so that they are mapped instead of being computed
+ * at each start.
+ * Each index is stored in a file named after the index and a key, computed out of the
+ * checksums of the source files (or of their modification time and size, for the files
+ * without header), so that an index is computed again when its sources change.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class DerivedIndexCache {
+
+    /**
+     * Name of the cache directory, in the directory of the timetable.
+     */
+    public static final String DIRECTORY = "index-cache";
+
+    /**
+     * The directory containing the cached indexes.
+     */
+    private final Path cacheDirectory;
+
+    /**
+     * Constructs the cache of the derived indexes of the given timetable directory.
+     *
+     * @param timetableDirectory the directory of the timetable
+     */
+    public DerivedIndexCache(Path timetableDirectory) {
+        cacheDirectory = timetableDirectory.resolve(DIRECTORY);
+    }
+
+    /**
+     * Returns the key of an index computed out of the given file: the checksum given by its
+     * header if it has one, or a hash of its modification time and size otherwise, so that
+     * the key never requires reading the whole file.
+     *
+     * @param file the path of a source file
+     * @return the key of the indexes computed out of the file
+     * @throws IOException if accessing the file causes a problem
+     */
+    public static int keyOf(Path file) throws IOException {
+        ByteBuffer buffer = FileTimeTable.mapFile(file);
+        return FileHeader.isPresentIn(buffer)
+                ? FileHeader.read(buffer).checksum()
+                : Objects.hash(Files.getLastModifiedTime(file).toMillis(), Files.size(file));
+    }
+
+    /**
+     * Returns the index of the given name and key, mapped from the cache if it contains it,
+     * or computed by the given builder and saved in the cache otherwise.
+     * As the cache only avoids computations, failing to save an index (for instance because
+     * the directory is read-only) is ignored.
+     *
+     * @param name the name of the index
+     * @param key the key of the index, computed out of its sources
+     * @param builder the builder computing the index if it is not in the cache
+     * @return the index
+     */
+    public IntBuffer intIndex(String name, long key, Supplier<int[]> builder) {
+        Path indexFile = cacheDirectory.resolve(name + "-" + Long.toHexString(key) + ".bin");
+        try {
+            if (Files.exists(indexFile)) {
+                ByteBuffer file = FileTimeTable.mapFile(indexFile);
+                if (FileHeader.isPresentIn(file)) {
+                    ByteBuffer payload = FileHeader.payloadOf(file);
+                    if (FileHeader.read(file).describes(payload)) {
+                        return payload.asIntBuffer();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // The index is computed again below.
+        }
+
+        int[] index = builder.get();
+        try {
+            save(name, indexFile, index);
+        } catch (IOException e) {
+            // The index will simply be computed again at the next start.
+        }
+        return IntBuffer.wrap(index);
+    }
+
+    /**
+     * Saves the given index in the given file, through a temporary file so that a partially
+     * written index is never read, and removes the outdated versions of the index.
+     */
+    private void save(String name, Path indexFile, int[] index) throws IOException {
+        Files.createDirectories(cacheDirectory);
+        ByteBuffer payload = ByteBuffer.allocate(index.length * Integer.BYTES);
+        payload.asIntBuffer().put(index);
+        ByteBuffer header = FileHeader.of(FileHeader.DEFAULT_VERSION, Integer.BYTES, payload)
+                .toBuffer();
+
+        Path temporaryFile = Files.createTempFile(cacheDirectory, name, ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+            ByteBuffer[] buffers = {header, payload};
+            while (header.hasRemaining() || payload.hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+        Files.move(temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            for (Path file : files.toList()) {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith(name + "-") && !file.equals(indexFile)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+}
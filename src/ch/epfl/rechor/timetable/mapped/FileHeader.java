@@ -0,0 +1,198 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import ch.epfl.rechor.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Record representing the header placed at the beginning of a binary timetable file.
+ * The header is made of 16 bytes: the magic number "RCHR" (S32), the format version (U16),
+ * the size of a record in bytes (U16), the number of records (S32) and the CRC32C
+ * checksum of the records (S32). Files without header are still accepted, and are then
+ * considered to be in version 1.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ *
+ * @param version the version of the format of the file
+ * @param recordSize the size of one record, in bytes
+ * @param recordCount the number of records of the file
+ * @param checksum the CRC32C checksum of the records
+ */
+public record FileHeader(int version, int recordSize, int recordCount, int checksum) {
+
+    /**
+     * The magic number identifying a header, "RCHR" in ASCII.
+     */
+    public static final int MAGIC = 0x52434852;
+
+    /**
+     * The size of the header, in bytes.
+     */
+    public static final int SIZE = 16;
+
+    /**
+     * The version of the format of the files without header.
+     */
+    public static final int DEFAULT_VERSION = 1;
+
+    /**
+     * The version of the format in which the identifiers of strings are stored as U32, and the
+     * identifiers of stations, stops and routes as U24, instead of U16 in the version 1.
+     */
+    public static final int WIDE_IDS_VERSION = 2;
+
+    /**
+     * Mask constant for the U16 fields.
+     */
+    private static final int MASK_16_BITS = 0xFFFF;
+
+    public FileHeader {
+        Preconditions.checkArgument((version & ~MASK_16_BITS) == 0
+                && recordSize > 0 && (recordSize & ~MASK_16_BITS) == 0
+                && recordCount >= 0);
+    }
+
+    /**
+     * Checks whether the given version of a timetable file stores its identifiers in the
+     * wide format.
+     *
+     * @param version the version of the format of a timetable file
+     * @return true if the version is {@link #WIDE_IDS_VERSION}, false if it is
+     * {@link #DEFAULT_VERSION}
+     * @throws IllegalArgumentException if the version is unknown
+     */
+    public static boolean hasWideIds(int version) {
+        Preconditions.checkArgument(version == DEFAULT_VERSION || version == WIDE_IDS_VERSION);
+        return version == WIDE_IDS_VERSION;
+    }
+
+    /**
+     * Checks whether the given buffer, containing a whole file, starts with a header.
+     *
+     * @param buffer the buffer containing a whole file
+     * @return true if the buffer starts with a header
+     */
+    public static boolean isPresentIn(ByteBuffer buffer) {
+        return buffer.capacity() >= SIZE && buffer.getInt(0) == MAGIC;
+    }
+
+    /**
+     * Reads the header at the beginning of the given buffer.
+     *
+     * @param buffer the buffer containing a whole file
+     * @return the header of the file
+     * @throws IllegalArgumentException if the buffer does not start with a valid header
+     */
+    public static FileHeader read(ByteBuffer buffer) {
+        Preconditions.checkArgument(isPresentIn(buffer));
+        return new FileHeader(Short.toUnsignedInt(buffer.getShort(4)),
+                Short.toUnsignedInt(buffer.getShort(6)),
+                buffer.getInt(8),
+                buffer.getInt(12));
+    }
+
+    /**
+     * Returns the records of the given buffer, i.e. the bytes following the header.
+     *
+     * @param buffer the buffer containing a whole file, starting with a header
+     * @return a buffer containing the records of the file
+     */
+    public static ByteBuffer payloadOf(ByteBuffer buffer) {
+        return buffer.slice(SIZE, buffer.capacity() - SIZE);
+    }
+
+    /**
+     * Computes the CRC32C checksum of the given records.
+     *
+     * @param payload the records
+     * @return the checksum of the records
+     */
+    public static int checksumOf(ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate().clear());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Checks whether the header describes the given records: their size must be the
+     * number of records multiplied by the size of a record.
+     *
+     * @param payload the records following the header
+     * @return true if the size of the records is the one given by the header
+     */
+    public boolean describes(ByteBuffer payload) {
+        return (long) recordSize * recordCount == payload.capacity();
+    }
+
+    /**
+     * Checks whether the checksum of the header is the one of the given records.
+     *
+     * @param payload the records following the header
+     * @return true if the checksum of the records is the one given by the header
+     */
+    public boolean checksumMatches(ByteBuffer payload) {
+        return checksumOf(payload) == checksum;
+    }
+
+    /**
+     * Returns the 16 bytes of the header.
+     *
+     * @return a buffer containing the header, ready to be read
+     */
+    public ByteBuffer toBuffer() {
+        return ByteBuffer.allocate(SIZE)
+                .putInt(MAGIC)
+                .putShort((short) version)
+                .putShort((short) recordSize)
+                .putInt(recordCount)
+                .putInt(checksum)
+                .flip();
+    }
+
+    /**
+     * Returns the header describing the given records.
+     *
+     * @param version the version of the format of the records
+     * @param recordSize the size of one record, in bytes
+     * @param payload the records
+     * @return the header of the records
+     * @throws IllegalArgumentException if the size of the records is not a multiple of
+     * the size of a record
+     */
+    public static FileHeader of(int version, int recordSize, ByteBuffer payload) {
+        Preconditions.checkArgument(recordSize > 0 && payload.capacity() % recordSize == 0);
+        return new FileHeader(version, recordSize, payload.capacity() / recordSize,
+                checksumOf(payload));
+    }
+
+    /**
+     * Adds a header to the given file, which must not already have one.
+     *
+     * @param file the file to which the header is added
+     * @param version the version of the format of the file
+     * @param recordSize the size of one record of the file, in bytes
+     * @throws IOException if reading or writing the file causes a problem
+     * @throws IllegalArgumentException if the file already has a header, or if its size is not
+     * a multiple of the size of a record
+     */
+    public static void addTo(Path file, int version, int recordSize) throws IOException {
+        ByteBuffer payload = ByteBuffer.wrap(Files.readAllBytes(file));
+        Preconditions.checkArgument(!isPresentIn(payload));
+        ByteBuffer header = of(version, recordSize, payload).toBuffer();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = {header, payload};
+            while (header.hasRemaining() || payload.hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+    }
+}
@@ -5,42 +5,194 @@ import ch.epfl.rechor.timetable.*;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * The class represents a public transport timetable, in which we store the flattened data.
+ * The trips and the connections of the most recently used days are kept mapped, the least
+ * recently used ones being released first.
  *
  * @author Matteo Lazzari (397247)
  * @author Pamphil Nedev (380400)
- *
- * @param directory the directory where all the flattened files are located
- * @param stringTable a list of Strings for the ReChor project
- * @param stations a list of stations
- * @param stationAliases a list of stationAliases
- * @param platforms a list of platforms
- * @param routes a list of routes
- * @param transfers a list of transfers
  */
-public record FileTimeTable (Path directory,
-                            List<String> stringTable, Stations stations,
-                            StationAliases stationAliases, Platforms platforms,
-                            Routes routes, Transfers transfers) implements TimeTable {
+public final class FileTimeTable implements TimeTable {
+
+    /**
+     * The maximal number of days whose trips, and of days whose connections, stay mapped.
+     */
+    private static final int MAPPED_DAYS_CAPACITY = 8;
+
+    /**
+     * The number of threads verifying the checksums in the background, a fraction of the
+     * processors so that the verifications do not compete with the queries.
+     */
+    private static final int VERIFICATION_THREADS =
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+
+    /**
+     * The threads verifying the checksums in the background, shared by all the timetables,
+     * rather than the common pool, used by the parallel streams of the router and of the stop
+     * index.
+     */
+    private static final ExecutorService VERIFICATION_EXECUTOR =
+            Executors.newFixedThreadPool(VERIFICATION_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "checksum-verification");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The directory where all the flattened files are located.
+     */
+    private final Path directory;
+
+    /**
+     * The strings of the timetable.
+     */
+    private final List<String> stringTable;
+
+    private final Stations stations;
+
+    /**
+     * The spatial index of the stations, built when loading.
+     */
+    private final StationSpatialIndex stationSpatialIndex;
+
+    private final StationAliases stationAliases;
+    private final Platforms platforms;
+    private final Routes routes;
+    private final Transfers transfers;
+
+    /**
+     * The service calendar associating each date to the directory of its data.
+     */
+    private final ServiceCalendar calendar;
+
+    /**
+     * A date of each directory of day, in increasing order.
+     */
+    private final List<LocalDate> dayDates;
+
+    /**
+     * The trips already mapped, by directory of day.
+     */
+    private final DayCache<Trips> dayTrips;
+
+    /**
+     * The connections already mapped, by directory of day.
+     */
+    private final DayCache<MappedConnections> dayConnections;
+
+    /**
+     * The buffers of the stations and of the transfers, used by every query.
+     */
+    private final List<ByteBuffer> hotBuffers;
+
+    /**
+     * The files whose checksum was already verified.
+     */
+    private final VerifiedFiles verifiedFiles;
+
+    /**
+     * The verification of the checksums of the files of each day, run in the background.
+     */
+    private final Map<Path, DayVerification> dayVerifications;
+
+    /**
+     * The index of the station of each stop, computed when first used.
+     */
+    private final Supplier<IntBuffer> stopStations;
+
+    private FileTimeTable(Path directory, List<String> stringTable, Stations stations,
+                          StationSpatialIndex stationSpatialIndex,
+                          StationAliases stationAliases, Platforms platforms, Routes routes,
+                          Transfers transfers, ServiceCalendar calendar,
+                          List<LocalDate> dayDates, VerifiedFiles verifiedFiles,
+                          Map<Path, DayVerification> dayVerifications,
+                          Supplier<IntBuffer> stopStations, List<ByteBuffer> hotBuffers) {
+        this.directory = directory;
+        this.stringTable = stringTable;
+        this.stations = stations;
+        this.stationSpatialIndex = stationSpatialIndex;
+        this.stationAliases = stationAliases;
+        this.platforms = platforms;
+        this.routes = routes;
+        this.transfers = transfers;
+        this.calendar = calendar;
+        this.dayDates = dayDates;
+        this.verifiedFiles = verifiedFiles;
+        this.dayVerifications = dayVerifications;
+        this.stopStations = stopStations;
+        this.hotBuffers = hotBuffers;
+        dayTrips = new DayCache<>(trips -> {});
+        dayConnections = new DayCache<>(MappedConnections::unlock);
+    }
+
+    /**
+     * The method helps to create a new instance of fileTimeTable which flattened data
+     * where obtained from the files in the directory.
+     * It is equivalent to {@link #in(Path, LoadReport)} with a report that is not used.
+     *
+     * @param directory the directory in which the files are located
+     * @return an instance of fileTimeTable with the buffered lists
+     * (for instance stations or platforms).
+     * @throws IOException if accessing the files in the directory cause a problem,
+     * or if a file is truncated or does not match its checksum
+     */
+    public static FileTimeTable in(Path directory) throws IOException {
+        return in(directory, new LoadReport());
+    }
 
     /**
      * The method helps to create a new instance of fileTimeTable which flattened data
      * where obtained from the files in the directory.
+     * The files are mapped in parallel, and the time spent on each of them is recorded in the
+     * given report.
+     * If the directory contains a binary string table (strings.bin), it is used instead of
+     * strings.txt, and its strings are only decoded when accessed.
+     * If the directory contains a service calendar, the data of each date is read from
+     * the directory of its dataset, and the dates sharing a dataset share its mapping.
+     * The checksums of the files having a header are verified in parallel with the loading,
+     * unless they were already verified and did not change since. The files of the days are
+     * verified in the background, a query on a day only waiting for the verification of the
+     * files of that day, and the list of verified files is saved once all of them are verified.
+     * Each file is read in the version of the format given by its header, the files without
+     * header being in the version 1.
+     * The kernel is advised to back the stations and transfers with huge pages, and to read
+     * the connections ahead, when the system allows it.
+     * The spatial index of the stations is built while the other files are mapped.
+     * The indexes derived from the files (the range of transfers arriving at each station and
+     * the station of each stop) are only obtained the first time they are used, from the cache
+     * of derived indexes when they are up to date, or computed and saved in it otherwise.
      *
      * @param directory the directory in which the files are located
+     * @param report the report in which the loading time of each component is recorded,
+     *               including the derived indexes when they are first used
      * @return an instance of fileTimeTable with the buffered lists
      * (for instance stations or platforms).
-     * @throws IOException if accessing the files in the directory cause a problem
+     * @throws IOException if accessing the files in the directory cause a problem,
+     * or if a file is truncated or does not match its checksum
      */
-    public static TimeTable in(Path directory) throws IOException {
+    public static FileTimeTable in(Path directory, LoadReport report) throws IOException {
 
         Path strings = directory.resolve("strings.txt");
         Path stationsPath = directory.resolve("stations.bin");
@@ -48,34 +200,373 @@ public record FileTimeTable (Path directory,
         Path platformsPath = directory.resolve("platforms.bin");
         Path routesPath = directory.resolve("routes.bin");
         Path transfersPath = directory.resolve("transfers.bin");
-        List <String> immutableStringList = List.copyOf(Files.readAllLines(strings,
-                StandardCharsets.ISO_8859_1));
+        Path binaryStrings = directory.resolve(MappedStringTable.FILE_NAME);
+
+        long verificationStart = System.nanoTime();
+        VerifiedFiles verifiedFiles = VerifiedFiles.in(directory);
+        List<Path> verifiedPaths = MappedStringTable.isPresentIn(directory)
+                ? List.of(binaryStrings, stationsPath, stationsAliasesPath, platformsPath,
+                        routesPath, transfersPath)
+                : List.of(stationsPath, stationsAliasesPath, platformsPath, routesPath,
+                        transfersPath);
+        CompletableFuture<Void> verifications = verifyAsync(verifiedFiles, verifiedPaths);
 
-        ByteBuffer stationsBuffer = getBufferFromPath(stationsPath);
-        ByteBuffer stationsAliasesBuffer = getBufferFromPath(stationsAliasesPath);
-        ByteBuffer platformsBuffer = getBufferFromPath(platformsPath);
-        ByteBuffer routesBuffer = getBufferFromPath(routesPath);
-        ByteBuffer transfersBuffer = getBufferFromPath(transfersPath);
+        CompletableFuture<List<String>> stringTableFuture = CompletableFuture.supplyAsync(
+                () -> report.timed("strings", () -> {
+                    try {
+                        return MappedStringTable.isPresentIn(directory)
+                                ? new MappedStringTable(getBufferFromPath(binaryStrings))
+                                : List.copyOf(Files.readAllLines(strings,
+                                        StandardCharsets.ISO_8859_1));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+        CompletableFuture<MappedFile> stationsFuture = mapAsync(stationsPath, report)
+                .thenApply(MappedFile::hot);
+        CompletableFuture<MappedFile> stationsAliasesFuture = mapAsync(stationsAliasesPath, report);
+        CompletableFuture<MappedFile> platformsFuture = mapAsync(platformsPath, report);
+        CompletableFuture<MappedFile> routesFuture = mapAsync(routesPath, report);
+        CompletableFuture<MappedFile> transfersFuture = mapAsync(transfersPath, report)
+                .thenApply(MappedFile::hot);
 
-        BufferedStations stationsBuffered = new BufferedStations(immutableStringList, stationsBuffer);
+        List <String> immutableStringList = join(stringTableFuture);
+        MappedFile stationsFile = join(stationsFuture);
+        BufferedStations stationsBuffered = new BufferedStations(immutableStringList,
+                stationsFile.payload(), stationsFile.version());
+        CompletableFuture<StationSpatialIndex> stationSpatialIndexFuture =
+                CompletableFuture.supplyAsync(() -> report.timed("station-spatial-index",
+                        () -> StationSpatialIndex.of(stationsBuffered)));
+        MappedFile stationsAliasesFile = join(stationsAliasesFuture);
         BufferedStationAliases stationsAliasesBuffered = new BufferedStationAliases
-                (immutableStringList, stationsAliasesBuffer);
+                (immutableStringList, stationsAliasesFile.payload(), stationsAliasesFile.version());
+        MappedFile platformsFile = join(platformsFuture);
         BufferedPlatforms platformsBuffered = new BufferedPlatforms(immutableStringList,
-                platformsBuffer);
-        BufferedRoutes routesBuffered = new BufferedRoutes(immutableStringList, routesBuffer);
-        BufferedTransfers transfersBuffered = new BufferedTransfers(transfersBuffer);
+                platformsFile.payload(), platformsFile.version());
+        MappedFile routesFile = join(routesFuture);
+        BufferedRoutes routesBuffered = new BufferedRoutes(immutableStringList,
+                routesFile.payload(), routesFile.version());
+        MappedFile transfersFile = join(transfersFuture);
+
+        DerivedIndexCache indexCache = new DerivedIndexCache(directory);
+        BufferedTransfers transfersBuffered = new BufferedTransfers(transfersFile.payload(),
+                () -> report.timed("transfer-ranges", () -> indexCache.intIndex(
+                        "transfer-ranges",
+                        Integer.toUnsignedLong(keyOfUnchecked(transfersPath)),
+                        () -> BufferedTransfers.packedChangesOf(transfersFile.payload(),
+                                transfersFile.version()))),
+                transfersFile.version());
+
+        Lazy<IntBuffer> stopStations = new Lazy<>(() -> report.timed("stop-stations", () -> {
+            long stopStationsKey = ((long) keyOfUnchecked(platformsPath) << 32)
+                    | stationsBuffered.size();
+            return indexCache.intIndex("stop-stations", stopStationsKey, () -> {
+                int[] stopStationsArray =
+                        new int[stationsBuffered.size() + platformsBuffered.size()];
+                for (int i = 0; i < stationsBuffered.size(); i++) {
+                    stopStationsArray[i] = i;
+                }
+                for (int i = 0; i < platformsBuffered.size(); i++) {
+                    stopStationsArray[stationsBuffered.size() + i] =
+                            platformsBuffered.stationId(i);
+                }
+                return stopStationsArray;
+            });
+        }));
+
+        ServiceCalendar calendar = report.timed("calendar", () -> {
+            try {
+                return ServiceCalendar.isPresentIn(directory)
+                        ? ServiceCalendar.in(directory)
+                        : new ServiceCalendar(Map.of());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        Map<Path, DayVerification> dayVerifications = new HashMap<>();
+        for (Path dayDirectory : calendar.dayDirectories(directory)) {
+            DayVerification dayVerification = new DayVerification(verifiedFiles,
+                    dayFiles(dayDirectory));
+            dayVerifications.put(dayDirectory, dayVerification);
+            VERIFICATION_EXECUTOR.execute(dayVerification::run);
+        }
+        CompletableFuture.allOf(Stream.concat(Stream.of(verifications),
+                        dayVerifications.values().stream().map(DayVerification::done))
+                .toArray(CompletableFuture[]::new))
+                .whenComplete((result, failure) -> verifiedFiles.save());
+
+        join(verifications);
+        report.record("checksums", Duration.ofNanos(System.nanoTime() - verificationStart));
 
         return new FileTimeTable(directory, immutableStringList, stationsBuffered,
-                stationsAliasesBuffered, platformsBuffered, routesBuffered, transfersBuffered);
+                join(stationSpatialIndexFuture), stationsAliasesBuffered, platformsBuffered,
+                routesBuffered, transfersBuffered, calendar, calendar.dayDates(directory),
+                verifiedFiles, Map.copyOf(dayVerifications), stopStations,
+                List.of(stationsFile.payload(), transfersFile.payload()));
 
     }
 
-    private static ByteBuffer getBufferFromPath (Path path) throws IOException {
+    /**
+     * Verifies the checksums of the given files in the background, each file in parallel on
+     * the verification threads.
+     */
+    private static CompletableFuture<Void> verifyAsync(VerifiedFiles verifiedFiles,
+                                                       List<Path> paths) {
+        return CompletableFuture.allOf(paths.stream()
+                .map(path -> CompletableFuture.runAsync(() -> {
+                    try {
+                        verifiedFiles.verify(path);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, VERIFICATION_EXECUTOR))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * The verification of the checksums of the files of a directory of day, run once, either
+     * by a verification thread or by the first query of the day if no thread started it yet,
+     * so that this query does not wait for the verifications of the days queued before it.
+     */
+    private static final class DayVerification {
+
+        private final VerifiedFiles verifiedFiles;
+        private final List<Path> files;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        DayVerification(VerifiedFiles verifiedFiles, List<Path> files) {
+            this.verifiedFiles = verifiedFiles;
+            this.files = files;
+        }
+
+        /**
+         * Verifies the files, unless their verification already started.
+         */
+        void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                for (Path file : files) {
+                    verifiedFiles.verify(file);
+                }
+                done.complete(null);
+            } catch (IOException e) {
+                done.completeExceptionally(new UncheckedIOException(e));
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+
+        CompletableFuture<Void> done() {
+            return done;
+        }
+    }
+
+    /**
+     * Returns the files of the given directory of day that are read: the trips, and the
+     * connections in the format in which they are read.
+     */
+    private static List<Path> dayFiles(Path dayDirectory) {
+        Path connections_succPath = dayDirectory.resolve("connections-succ.bin");
+        if (CompressedConnections.isPresentIn(dayDirectory)) {
+            return List.of(dayDirectory.resolve("trips.bin"),
+                    dayDirectory.resolve(CompressedConnections.FILE_NAME));
+        }
+        if (ColumnarConnections.isPresentIn(dayDirectory)) {
+            List<Path> files = new ArrayList<>();
+            files.add(dayDirectory.resolve("trips.bin"));
+            for (String column : ColumnarConnections.COLUMN_FILES) {
+                files.add(dayDirectory.resolve(column));
+            }
+            files.add(connections_succPath);
+            return files;
+        }
+        return List.of(dayDirectory.resolve("trips.bin"), dayDirectory.resolve("connections.bin"),
+                connections_succPath);
+    }
+
+    /**
+     * Maps the given file in the background, recording the time it took under the name of
+     * the file.
+     */
+    private static CompletableFuture<MappedFile> mapAsync(Path path, LoadReport report) {
+        return CompletableFuture.supplyAsync(() -> report.timed(path.getFileName().toString(),
+                () -> {
+                    try {
+                        return mapPayload(path);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+    }
+
+    /**
+     * Waits for the given loading to finish, and throws the IOException it failed with,
+     * if any.
+     */
+    private static <T> T join(CompletableFuture<T> loading) throws IOException {
+        try {
+            return loading.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the whole given file in memory, in read-only mode.
+     *
+     * @param path the path of the file
+     * @return a buffer containing the whole file, header included
+     * @throws IOException if accessing the file causes a problem
+     */
+    static ByteBuffer mapFile(Path path) throws IOException {
         try(FileChannel channel = FileChannel.open(path)) {
             return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
         }
     }
 
+    private static int keyOfUnchecked(Path path) {
+        try {
+            return DerivedIndexCache.keyOf(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A mapped timetable file: its records, without header, and the version of their format.
+     */
+    private record MappedFile(ByteBuffer payload, int version) {
+
+        MappedFile hot() {
+            MemoryAdvice.hot(payload);
+            return this;
+        }
+
+        MappedFile scanned() {
+            MemoryAdvice.scanned(payload);
+            return this;
+        }
+    }
+
+    private static MappedFile mapPayload(Path path) throws IOException {
+        ByteBuffer buffer = mapFile(path);
+        if (!FileHeader.isPresentIn(buffer)) {
+            return new MappedFile(buffer, FileHeader.DEFAULT_VERSION);
+        }
+        ByteBuffer payload = FileHeader.payloadOf(buffer);
+        FileHeader header = FileHeader.read(buffer);
+        if (!header.describes(payload)) {
+            throw new IOException("Truncated or mismatched file " + path);
+        }
+        return new MappedFile(payload, header.version());
+    }
+
+    private static ByteBuffer getBufferFromPath (Path path) throws IOException {
+        return mapPayload(path).payload();
+    }
+
+    private static ByteBuffer getScannedBufferFromPath(Path path, List<ByteBuffer> scannedBuffers)
+            throws IOException {
+        ByteBuffer buffer = mapPayload(path).scanned().payload();
+        scannedBuffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Waits for the checksums of the files of the given directory of day to be verified, or
+     * verifies them in this thread if their verification did not start yet, or if the
+     * directory was not known when the timetable was loaded.
+     */
+    private void awaitVerification(Path dayDirectory) throws IOException {
+        DayVerification verification = dayVerifications.get(dayDirectory);
+        if (verification != null) {
+            verification.run();
+            join(verification.done());
+        } else {
+            for (Path file : dayFiles(dayDirectory)) {
+                verifiedFiles.verify(file);
+            }
+        }
+    }
+
+    /**
+     * Returns a date of each directory of day of the timetable, in increasing order: the first
+     * date of each dataset of the service calendar, and the dates having their own directory.
+     * Reading the data of these dates reads all the data of the timetable, each directory once.
+     *
+     * @return a date of each directory of day
+     */
+    public List<LocalDate> dayDates() {
+        return dayDates;
+    }
+
+    /**
+     * Returns the directory where all the flattened files are located.
+     *
+     * @return the directory of the timetable
+     */
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * Returns the strings of the timetable.
+     *
+     * @return the strings of the timetable
+     */
+    public List<String> stringTable() {
+        return stringTable;
+    }
+
+    @Override
+    public Stations stations() {
+        return stations;
+    }
+
+    @Override
+    public StationSpatialIndex stationSpatialIndex() {
+        return stationSpatialIndex;
+    }
+
+    @Override
+    public StationAliases stationAliases() {
+        return stationAliases;
+    }
+
+    @Override
+    public Platforms platforms() {
+        return platforms;
+    }
+
+    @Override
+    public Routes routes() {
+        return routes;
+    }
+
+    @Override
+    public Transfers transfers() {
+        return transfers;
+    }
+
+    /**
+     * Retrieves the station ID corresponding to the given stop ID, using the index of the
+     * station of each stop.
+     *
+     * @param stopId the ID of the stop.
+     * @return the station ID corresponding to the given stop ID.
+     */
+    @Override
+    public int stationId(int stopId) {
+        return stopStations.get().get(stopId);
+    }
+
     /**
      * The method uses binary files to instantiate buffered trips for a given date.
      *
@@ -85,17 +576,26 @@ public record FileTimeTable (Path directory,
     @Override
     public Trips tripsFor(LocalDate date) {
         try {
-            Path timetableDirectory = directory.resolve(date.toString());
-            Path pathToSearchIn = timetableDirectory.resolve("trips.bin");
-            return new BufferedTrips(stringTable, getBufferFromPath(pathToSearchIn));
-        }
-        catch (IOException e) {
+            Path dayDirectory = calendar.dayDirectory(directory, date);
+            awaitVerification(dayDirectory);
+            return dayTrips.get(dayDirectory, this::tripsIn);
+        } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    private Trips tripsIn(Path dayDirectory) throws IOException {
+        MappedFile tripsFile = mapPayload(dayDirectory.resolve("trips.bin"));
+        return new BufferedTrips(stringTable, tripsFile.payload(), tripsFile.version());
+    }
+
     /**
      * The method uses binary files to instantiate buffered connections for a given date.
+     * If the directory of the date contains the connections in the compressed or in the
+     * columnar format, they are used instead of connections.bin.
+     * As compressed connections keep the last block they decoded, each call returns a new
+     * instance of them, sharing the mapping of their file, so that the queries running in
+     * parallel do not share it.
      *
      * @param date the date for which connections should be retrieved.
      * @return buffered connections corresponding to a given date.
@@ -103,14 +603,127 @@ public record FileTimeTable (Path directory,
     @Override
     public Connections connectionsFor(LocalDate date) {
         try {
-            Path timetableDirectory = directory.resolve(date.toString());
-            Path connectionsPath = timetableDirectory.resolve("connections.bin");
-            Path connections_succPath = timetableDirectory.resolve("connections-succ.bin");
-            return new BufferedConnections(getBufferFromPath(connectionsPath),
-                    getBufferFromPath(connections_succPath));
-
+            Path dayDirectory = calendar.dayDirectory(directory, date);
+            awaitVerification(dayDirectory);
+            return dayConnections.get(dayDirectory, FileTimeTable::connectionsIn)
+                    .connections().get();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
+
+    /**
+     * Unlocks the memory locked for this timetable, when the system property enabling the
+     * locking of the mapped files is set, so that it can be paged out once this timetable is
+     * replaced. The timetable can still be used afterwards.
+     */
+    @Override
+    public void release() {
+        hotBuffers.forEach(MemoryAdvice::unlock);
+        dayConnections.forEach(MappedConnections::unlock);
+    }
+
+    /**
+     * The mapped connections of a day: the function giving them, returning a new instance at
+     * each call when they are not meant to be shared between threads, and the buffers read
+     * ahead for them.
+     */
+    private record MappedConnections(Supplier<Connections> connections,
+                                     List<ByteBuffer> scannedBuffers) {
+
+        void unlock() {
+            scannedBuffers.forEach(MemoryAdvice::unlock);
+        }
+    }
+
+    private static MappedConnections connectionsIn(Path timetableDirectory) throws IOException {
+        Path connections_succPath = timetableDirectory.resolve("connections-succ.bin");
+        List<ByteBuffer> scannedBuffers = new ArrayList<>();
+
+        if (CompressedConnections.isPresentIn(timetableDirectory)) {
+            ByteBuffer compressedBuffer = getScannedBufferFromPath(
+                    timetableDirectory.resolve(CompressedConnections.FILE_NAME), scannedBuffers);
+            return new MappedConnections(() -> new CompressedConnections(compressedBuffer),
+                    scannedBuffers);
+        }
+        Connections connections;
+        if (ColumnarConnections.isPresentIn(timetableDirectory)) {
+            List<ByteBuffer> columns = new ArrayList<>();
+            for (String column : ColumnarConnections.COLUMN_FILES) {
+                columns.add(getScannedBufferFromPath(timetableDirectory.resolve(column),
+                        scannedBuffers));
+            }
+            connections = new ColumnarConnections(columns.get(0), columns.get(1),
+                    columns.get(2), columns.get(3), columns.get(4),
+                    getScannedBufferFromPath(connections_succPath, scannedBuffers));
+        } else {
+            MappedFile connectionsFile = mapPayload(timetableDirectory.resolve("connections.bin"))
+                    .scanned();
+            scannedBuffers.add(connectionsFile.payload());
+            connections = new BufferedConnections(connectionsFile.payload(),
+                    getScannedBufferFromPath(connections_succPath, scannedBuffers),
+                    connectionsFile.version());
+        }
+        return new MappedConnections(() -> connections, scannedBuffers);
+    }
+
+    /**
+     * A function loading the data of a day out of the directory of the day.
+     */
+    @FunctionalInterface
+    private interface DayLoader<T> {
+        T load(Path dayDirectory) throws IOException;
+    }
+
+    /**
+     * Cache of the data of the most recently used days, by directory of day, holding at most
+     * MAPPED_DAYS_CAPACITY days, the days removed from it being passed to a given action.
+     * A day is loaded outside of the lock of the cache, so that loading a day does not block
+     * the callers using the other days; if several callers load the same day at the same
+     * time, the first one loaded is kept.
+     */
+    private static final class DayCache<T> {
+
+        private final Consumer<T> removalAction;
+
+        private final Map<Path, T> days = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, T> eldest) {
+                if (size() <= MAPPED_DAYS_CAPACITY) {
+                    return false;
+                }
+                removalAction.accept(eldest.getValue());
+                return true;
+            }
+        };
+
+        DayCache(Consumer<T> removalAction) {
+            this.removalAction = removalAction;
+        }
+
+        T get(Path dayDirectory, DayLoader<T> loader) throws IOException {
+            synchronized (days) {
+                T day = days.get(dayDirectory);
+                if (day != null) {
+                    return day;
+                }
+            }
+            T loadedDay = loader.load(dayDirectory);
+            T day;
+            synchronized (days) {
+                day = days.putIfAbsent(dayDirectory, loadedDay);
+            }
+            if (day == null) {
+                return loadedDay;
+            }
+            removalAction.accept(loadedDay);
+            return day;
+        }
+
+        void forEach(Consumer<T> action) {
+            synchronized (days) {
+                days.values().forEach(action);
+            }
+        }
+    }
 }
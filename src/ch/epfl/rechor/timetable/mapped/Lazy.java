@@ -0,0 +1,56 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Class representing a value computed the first time it is requested, and then kept.
+ * The value is computed only once even if several threads request it at the same time,
+ * the other threads waiting for it to be computed.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ *
+ * @param <T> the type of the value
+ */
+final class Lazy<T> implements Supplier<T> {
+
+    /**
+     * The function computing the value.
+     */
+    private final Supplier<T> initializer;
+
+    /**
+     * The value, null as long as it was not computed.
+     */
+    private volatile T value;
+
+    /**
+     * Constructs a value computed by the given function the first time it is requested.
+     *
+     * @param initializer the function computing the value, which must not return null
+     */
+    Lazy(Supplier<T> initializer) {
+        this.initializer = Objects.requireNonNull(initializer);
+    }
+
+    /**
+     * Returns the value, computing it if it was never requested.
+     *
+     * @return the value
+     */
+    @Override
+    public T get() {
+        T result = value;
+        if (result == null) {
+            synchronized (this) {
+                result = value;
+                if (result == null) {
+                    result = Objects.requireNonNull(initializer.get());
+                    value = result;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Class recording the time spent loading each component of a timetable.
+ * The components loaded in parallel are recorded in the order in which they finish, and
+ * the derived structures built lazily are recorded when they are first used.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class LoadReport {
+
+    /**
+     * The time spent loading each component, by name of component.
+     */
+    private final Map<String, Duration> durations = new LinkedHashMap<>();
+
+    /**
+     * Records the time spent loading the given component. If the component was already
+     * recorded, the given time is added to the previous one.
+     *
+     * @param component the name of the component
+     * @param duration the time spent loading the component
+     */
+    public synchronized void record(String component, Duration duration) {
+        durations.merge(component, duration, Duration::plus);
+    }
+
+    /**
+     * Loads a component with the given function, and records the time it took.
+     *
+     * @param component the name of the component
+     * @param loader the function loading the component
+     * @param <T> the type of the component
+     * @return the component returned by the function
+     */
+    public <T> T timed(String component, Supplier<T> loader) {
+        long start = System.nanoTime();
+        try {
+            return loader.get();
+        } finally {
+            record(component, Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Returns the time spent loading each component recorded so far.
+     *
+     * @return a copy of the times, by name of component, in the order they were recorded
+     */
+    public synchronized Map<String, Duration> durations() {
+        return new LinkedHashMap<>(durations);
+    }
+
+    /**
+     * Returns the report, with one line per component giving its loading time
+     * in milliseconds.
+     *
+     * @return the textual report
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+        durations.forEach((component, duration) -> report.append(component)
+                .append(": ")
+                .append(String.format("%.3f ms", duration.toNanos() / 1e6))
+                .append(System.lineSeparator()));
+        return report.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import ch.epfl.rechor.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Class representing the string table of a timetable stored in binary form (strings.bin),
+ * in which the strings are only decoded when they are accessed.
+ * The file contains the number of strings n (S32), followed by n + 1 offsets (S32) and by
+ * the ISO-8859-1 bytes of all the strings, the string of index i being made of the bytes
+ * between the offsets i (included) and i + 1 (excluded).
+ * Each string is decoded the first time it is accessed, and then kept.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class MappedStringTable extends AbstractList<String> implements RandomAccess {
+
+    /**
+     * Name of the binary string table in the directory of a timetable.
+     */
+    public static final String FILE_NAME = "strings.bin";
+
+    /**
+     * The buffer containing the string table.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The number of strings, and the position of the first byte of the strings in the buffer.
+     */
+    private final int size;
+    private final int bytesStart;
+
+    /**
+     * The strings already decoded, null for the ones that are not.
+     */
+    private final String[] decodedStrings;
+
+    /**
+     * Constructs a string table out of the buffer containing a binary string table.
+     *
+     * @param buffer the buffer containing the string table
+     * @throws IllegalArgumentException if the buffer is too small for the strings it declares
+     */
+    public MappedStringTable(ByteBuffer buffer) {
+        this.buffer = buffer;
+        size = buffer.getInt(0);
+        bytesStart = (size + 2) * Integer.BYTES;
+        Preconditions.checkArgument(size >= 0 && bytesStart <= buffer.capacity()
+                && bytesStart + offset(size) <= buffer.capacity());
+        decodedStrings = new String[size];
+    }
+
+    /**
+     * Checks whether the given timetable directory contains a binary string table.
+     *
+     * @param directory the directory of the timetable
+     * @return true if the directory contains strings.bin
+     */
+    public static boolean isPresentIn(Path directory) {
+        return Files.exists(directory.resolve(FILE_NAME));
+    }
+
+    /**
+     * Converts the string table of the given timetable directory, stored in strings.txt,
+     * into a binary string table.
+     *
+     * @param directory the directory of the timetable
+     * @throws IOException if reading or writing one of the files causes a problem
+     */
+    public static void convert(Path directory) throws IOException {
+        write(Files.readAllLines(directory.resolve("strings.txt"), StandardCharsets.ISO_8859_1),
+                directory.resolve(FILE_NAME));
+    }
+
+    /**
+     * Writes the given strings as a binary string table.
+     *
+     * @param strings the strings to write
+     * @param path the path of the file to write
+     * @throws IOException if writing the file causes a problem
+     */
+    public static void write(List<String> strings, Path path) throws IOException {
+        byte[][] encodedStrings = new byte[strings.size()][];
+        int bytesSize = 0;
+        for (int i = 0; i < strings.size(); i++) {
+            encodedStrings[i] = strings.get(i).getBytes(StandardCharsets.ISO_8859_1);
+            bytesSize += encodedStrings[i].length;
+        }
+
+        ByteBuffer file = ByteBuffer.allocate((strings.size() + 2) * Integer.BYTES + bytesSize);
+        file.putInt(strings.size());
+        int offset = 0;
+        for (byte[] encodedString : encodedStrings) {
+            file.putInt(offset);
+            offset += encodedString.length;
+        }
+        file.putInt(offset);
+        for (byte[] encodedString : encodedStrings) {
+            file.put(encodedString);
+        }
+        file.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (file.hasRemaining()) {
+                channel.write(file);
+            }
+        }
+    }
+
+    private int offset(int index) {
+        return buffer.getInt((index + 1) * Integer.BYTES);
+    }
+
+    /**
+     * Returns the string of the given index, decoding it if it was never accessed.
+     *
+     * @param index the index of the string
+     * @return the string of the given index
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    @Override
+    public String get(int index) {
+        String string = decodedStrings[index];
+        if (string == null) {
+            int start = offset(index);
+            byte[] bytes = new byte[offset(index + 1) - start];
+            buffer.get(bytesStart + start, bytes);
+            string = new String(bytes, StandardCharsets.ISO_8859_1);
+            decodedStrings[index] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Returns the number of strings of the table.
+     *
+     * @return the number of strings
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+}
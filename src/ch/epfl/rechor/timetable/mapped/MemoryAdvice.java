@@ -0,0 +1,222 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * Class giving the kernel advice on how the mapped files of a timetable are used, through the
+ * system calls madvise, mlock and munlock, called with the foreign function API.
+ * The connections, scanned in order by the router, are read ahead sequentially, while the
+ * always used stations and transfers are backed by huge pages when the kernel allows it.
+ * If the system property {@value #LOCK_PROPERTY} is true, the advised buffers are also locked
+ * in memory, so that they are never paged out, until they are unlocked when the timetable
+ * using them is replaced or when the day whose connections they contain is released.
+ * <p>
+ * The foreign function API being a preview API in Java 21, it is used by reflection so that
+ * the project compiles without preview features. The advice is only given on Linux, and
+ * every failure (API or system call unavailable, call refused by the kernel) is ignored,
+ * advising a buffer then doing nothing. As the foreign function API is restricted, the
+ * application should be started with --enable-native-access=ReCHor (the name of its module, or
+ * ALL-UNNAMED when it is run from the class path) to avoid a warning.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+final class MemoryAdvice {
+
+    /**
+     * Name of the system property enabling the locking of the advised buffers.
+     */
+    static final String LOCK_PROPERTY = "rechor.mlock";
+
+    /**
+     * Values of the advice of madvise on Linux.
+     */
+    private static final int MADV_SEQUENTIAL = 2;
+    private static final int MADV_WILLNEED = 3;
+    private static final int MADV_HUGEPAGE = 14;
+
+    /**
+     * The handles of madvise, taking an address, a length and an advice, and of mlock and
+     * munlock, taking an address and a length, or null if they are not available.
+     */
+    private static final MethodHandle MADVISE;
+    private static final MethodHandle MLOCK;
+    private static final MethodHandle MUNLOCK;
+
+    /**
+     * The size of a page, to which the advised regions are aligned.
+     */
+    private static final long PAGE_SIZE;
+
+    /**
+     * The methods MemorySegment.ofBuffer and MemorySegment.address, giving the address of a
+     * direct buffer.
+     */
+    private static final Method SEGMENT_OF_BUFFER;
+    private static final Method SEGMENT_ADDRESS;
+
+    /**
+     * Whether the advised buffers are locked in memory.
+     */
+    private static final boolean LOCK = Boolean.getBoolean(LOCK_PROPERTY);
+
+    static {
+        MethodHandle madvise = null;
+        MethodHandle mlock = null;
+        MethodHandle munlock = null;
+        long pageSize = 0;
+        Method segmentOfBuffer = null;
+        Method segmentAddress = null;
+        if (System.getProperty("os.name", "").startsWith("Linux")) {
+            try {
+                Class<?> memorySegment = Class.forName("java.lang.foreign.MemorySegment");
+                segmentOfBuffer = memorySegment.getMethod("ofBuffer", Buffer.class);
+                segmentAddress = memorySegment.getMethod("address");
+
+                MethodHandle getPageSize = downcallHandle("getpagesize", "JAVA_INT");
+                pageSize = (int) getPageSize.invoke();
+                madvise = downcallHandle("madvise", "JAVA_INT", "JAVA_LONG", "JAVA_LONG",
+                        "JAVA_INT");
+                mlock = downcallHandle("mlock", "JAVA_INT", "JAVA_LONG", "JAVA_LONG");
+                munlock = downcallHandle("munlock", "JAVA_INT", "JAVA_LONG", "JAVA_LONG");
+            } catch (Throwable e) {
+                madvise = null;
+                mlock = null;
+                munlock = null;
+            }
+        }
+        MADVISE = madvise;
+        MLOCK = mlock;
+        MUNLOCK = munlock;
+        PAGE_SIZE = pageSize;
+        SEGMENT_OF_BUFFER = segmentOfBuffer;
+        SEGMENT_ADDRESS = segmentAddress;
+    }
+
+    private MemoryAdvice() {}
+
+    /**
+     * Returns a handle calling the given C function of the standard library, whose return
+     * value and parameters have the given layouts (names of the constants of ValueLayout).
+     */
+    private static MethodHandle downcallHandle(String function, String returnLayout,
+                                               String... parameterLayouts) throws Exception {
+        Class<?> linkerClass = Class.forName("java.lang.foreign.Linker");
+        Class<?> optionClass = Class.forName("java.lang.foreign.Linker$Option");
+        Class<?> symbolLookupClass = Class.forName("java.lang.foreign.SymbolLookup");
+        Class<?> memorySegmentClass = Class.forName("java.lang.foreign.MemorySegment");
+        Class<?> memoryLayoutClass = Class.forName("java.lang.foreign.MemoryLayout");
+        Class<?> valueLayoutClass = Class.forName("java.lang.foreign.ValueLayout");
+        Class<?> descriptorClass = Class.forName("java.lang.foreign.FunctionDescriptor");
+
+        Object linker = linkerClass.getMethod("nativeLinker").invoke(null);
+        Object lookup = linkerClass.getMethod("defaultLookup").invoke(linker);
+        Optional<?> symbol = (Optional<?>) symbolLookupClass.getMethod("find", String.class)
+                .invoke(lookup, function);
+
+        Object parameters = Array.newInstance(memoryLayoutClass, parameterLayouts.length);
+        for (int i = 0; i < parameterLayouts.length; i++) {
+            Array.set(parameters, i, valueLayoutClass.getField(parameterLayouts[i]).get(null));
+        }
+        Object descriptor = descriptorClass
+                .getMethod("of", memoryLayoutClass, parameters.getClass())
+                .invoke(null, valueLayoutClass.getField(returnLayout).get(null), parameters);
+
+        return (MethodHandle) linkerClass
+                .getMethod("downcallHandle", memorySegmentClass, descriptorClass,
+                        optionClass.arrayType())
+                .invoke(linker, symbol.orElseThrow(), descriptor,
+                        Array.newInstance(optionClass, 0));
+    }
+
+    /**
+     * Checks whether the advice can be given on this system.
+     *
+     * @return true if madvise can be called
+     */
+    static boolean isAvailable() {
+        return MADVISE != null;
+    }
+
+    /**
+     * Advises the kernel that the given buffer is going to be read sequentially and soon,
+     * so that it is read ahead aggressively.
+     *
+     * @param buffer the mapped buffer
+     * @return the given buffer
+     */
+    static ByteBuffer scanned(ByteBuffer buffer) {
+        advise(buffer, MADV_SEQUENTIAL);
+        advise(buffer, MADV_WILLNEED);
+        lockIfEnabled(buffer);
+        return buffer;
+    }
+
+    /**
+     * Advises the kernel that the given buffer is used by every query, so that it is backed by
+     * huge pages, reducing the number of TLB misses, when the kernel allows it.
+     *
+     * @param buffer the mapped buffer
+     * @return the given buffer
+     */
+    static ByteBuffer hot(ByteBuffer buffer) {
+        advise(buffer, MADV_HUGEPAGE);
+        advise(buffer, MADV_WILLNEED);
+        lockIfEnabled(buffer);
+        return buffer;
+    }
+
+    private static void advise(ByteBuffer buffer, int advice) {
+        if (MADVISE == null) {
+            return;
+        }
+        callOnPages(MADVISE, buffer, advice);
+    }
+
+    private static void lockIfEnabled(ByteBuffer buffer) {
+        if (!LOCK || MLOCK == null) {
+            return;
+        }
+        callOnPages(MLOCK, buffer, -1);
+    }
+
+    /**
+     * Unlocks the given buffer if it was locked in memory when advised, so that it can be paged
+     * out again. The buffer can still be used afterwards.
+     *
+     * @param buffer the mapped buffer, previously advised
+     */
+    static void unlock(ByteBuffer buffer) {
+        if (!LOCK || MUNLOCK == null) {
+            return;
+        }
+        callOnPages(MUNLOCK, buffer, -1);
+    }
+
+    /**
+     * Calls the given function on the pages containing the given buffer, passing the given
+     * advice if it is positive. The result of the call is ignored, as the advice is only a hint.
+     */
+    private static void callOnPages(MethodHandle function, ByteBuffer buffer, int advice) {
+        if (!buffer.isDirect() || buffer.capacity() == 0) {
+            return;
+        }
+        try {
+            long address = (long) SEGMENT_ADDRESS.invoke(SEGMENT_OF_BUFFER.invoke(null, buffer));
+            long start = address - Math.floorMod(address, PAGE_SIZE);
+            long length = address + buffer.capacity() - start;
+            if (advice >= 0) {
+                function.invoke(start, length, advice);
+            } else {
+                function.invoke(start, length);
+            }
+        } catch (Throwable e) {
+            // The advice is only a hint, the buffer can be used without it.
+        }
+    }
+}
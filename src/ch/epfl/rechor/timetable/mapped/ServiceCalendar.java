@@ -0,0 +1,224 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Record representing the service calendar of a timetable stored in the deduplicated mode:
+ * the data of a day (trips and connections) is stored once per distinct content, in a
+ * directory of "days" named after the hash of its content, and the file calendar.txt
+ * associates each date to the name of the directory of its data.
+ * Each line of calendar.txt contains a date (in ISO format) and a dataset name,
+ * separated by a space.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ *
+ * @param datasets the name of the dataset of each date
+ */
+public record ServiceCalendar(Map<LocalDate, String> datasets) {
+
+    /**
+     * Name of the calendar file, and of the directory containing the datasets.
+     */
+    public static final String FILE_NAME = "calendar.txt";
+    public static final String DATASETS_DIRECTORY = "days";
+
+    public ServiceCalendar {
+        datasets = Map.copyOf(datasets);
+    }
+
+    /**
+     * Checks whether the given timetable directory is stored in the deduplicated mode.
+     *
+     * @param directory the directory of the timetable
+     * @return true if the directory contains a calendar file
+     */
+    public static boolean isPresentIn(Path directory) {
+        return Files.exists(directory.resolve(FILE_NAME));
+    }
+
+    /**
+     * Reads the calendar file of the given timetable directory.
+     *
+     * @param directory the directory of the timetable
+     * @return the service calendar of the timetable
+     * @throws IOException if reading the calendar file causes a problem
+     * @throws IllegalArgumentException if a line of the calendar file is malformed
+     */
+    public static ServiceCalendar in(Path directory) throws IOException {
+        Map<LocalDate, String> datasets = new TreeMap<>();
+        for (String line : Files.readAllLines(directory.resolve(FILE_NAME),
+                StandardCharsets.ISO_8859_1)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] dateAndDataset = line.trim().split(" ");
+            if (dateAndDataset.length != 2 || !isDate(dateAndDataset[0])) {
+                throw new IllegalArgumentException(line);
+            }
+            datasets.put(LocalDate.parse(dateAndDataset[0]), dateAndDataset[1]);
+        }
+        return new ServiceCalendar(datasets);
+    }
+
+    /**
+     * Returns the directory containing the data of the given date.
+     * If the date is not part of the calendar, the directory named after the date
+     * is returned, as in the non-deduplicated mode.
+     *
+     * @param directory the directory of the timetable
+     * @param date the date
+     * @return the directory containing the trips and connections of the date
+     */
+    public Path dayDirectory(Path directory, LocalDate date) {
+        String dataset = datasets.get(date);
+        return dataset == null
+                ? directory.resolve(date.toString())
+                : directory.resolve(DATASETS_DIRECTORY).resolve(dataset);
+    }
+
+    /**
+     * Returns the directories containing the data of the dates of the given timetable
+     * directory: the directories of the datasets of the calendar, and the directories named
+     * after a date.
+     *
+     * @param directory the directory of the timetable
+     * @return the directories containing the data of the dates, each one once
+     * @throws IOException if listing the timetable directory causes a problem
+     */
+    public List<Path> dayDirectories(Path directory) throws IOException {
+        Set<Path> dayDirectories = new LinkedHashSet<>();
+        for (String dataset : new TreeSet<>(datasets.values())) {
+            dayDirectories.add(directory.resolve(DATASETS_DIRECTORY).resolve(dataset));
+        }
+        try (Stream<Path> children = Files.list(directory)) {
+            children.filter(Files::isDirectory)
+                    .filter(child -> isDate(child.getFileName().toString()))
+                    .sorted()
+                    .forEach(dayDirectories::add);
+        }
+        return List.copyOf(dayDirectories);
+    }
+
+    /**
+     * Returns a date of each directory of dayDirectories, in increasing order: the first date
+     * of each dataset of the calendar, and the date of each directory named after a date not
+     * part of the calendar, so that reading the data of these dates reads each directory once.
+     *
+     * @param directory the directory of the timetable
+     * @return a date of each directory containing the data of dates
+     * @throws IOException if listing the timetable directory causes a problem
+     */
+    public List<LocalDate> dayDates(Path directory) throws IOException {
+        Map<Path, LocalDate> dayDates = new HashMap<>();
+        for (LocalDate date : new TreeSet<>(datasets.keySet())) {
+            dayDates.putIfAbsent(dayDirectory(directory, date), date);
+        }
+        try (Stream<Path> children = Files.list(directory)) {
+            children.filter(Files::isDirectory)
+                    .filter(child -> isDate(child.getFileName().toString()))
+                    .forEach(child -> dayDates.putIfAbsent(child,
+                            LocalDate.parse(child.getFileName().toString())));
+        }
+        return dayDates.values().stream().sorted().toList();
+    }
+
+    /**
+     * Converts a timetable directory containing one directory per date into the deduplicated
+     * mode: the directories of the dates having the same content are replaced by a single
+     * directory in "days", and the calendar file is written.
+     *
+     * @param directory the directory of the timetable
+     * @return the service calendar of the converted timetable
+     * @throws IOException if reading, moving or writing one of the files causes a problem
+     */
+    public static ServiceCalendar deduplicate(Path directory) throws IOException {
+        Path datasetsDirectory = directory.resolve(DATASETS_DIRECTORY);
+        Files.createDirectories(datasetsDirectory);
+
+        Map<LocalDate, String> datasets = new TreeMap<>();
+        if (isPresentIn(directory)) {
+            datasets.putAll(in(directory).datasets());
+        }
+
+        List<Path> dateDirectories = new ArrayList<>();
+        try (Stream<Path> children = Files.list(directory)) {
+            children.filter(Files::isDirectory)
+                    .filter(child -> isDate(child.getFileName().toString()))
+                    .forEach(dateDirectories::add);
+        }
+
+        for (Path dateDirectory : dateDirectories) {
+            String dataset = contentHash(dateDirectory);
+            Path datasetDirectory = datasetsDirectory.resolve(dataset);
+            if (Files.exists(datasetDirectory)) {
+                deleteDayDirectory(dateDirectory);
+            } else {
+                Files.move(dateDirectory, datasetDirectory);
+            }
+            datasets.put(LocalDate.parse(dateDirectory.getFileName().toString()), dataset);
+        }
+
+        List<String> lines = new ArrayList<>();
+        datasets.forEach((date, dataset) -> lines.add(date + " " + dataset));
+        Files.write(directory.resolve(FILE_NAME), lines, StandardCharsets.ISO_8859_1);
+        return new ServiceCalendar(datasets);
+    }
+
+    private static boolean isDate(String name) {
+        try {
+            LocalDate.parse(name);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Computes the SHA-256 hash of the names and contents of the files of a day directory.
+     */
+    private static String contentHash(Path dayDirectory) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Path file : sortedFiles(dayDirectory)) {
+            digest.update(file.getFileName().toString().getBytes(StandardCharsets.ISO_8859_1));
+            digest.update((byte) 0);
+            digest.update(Files.readAllBytes(file));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static List<Path> sortedFiles(Path dayDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(dayDirectory)) {
+            return files.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+
+    private static void deleteDayDirectory(Path dayDirectory) throws IOException {
+        for (Path file : sortedFiles(dayDirectory)) {
+            Files.delete(file);
+        }
+        Files.delete(dayDirectory);
+    }
+}
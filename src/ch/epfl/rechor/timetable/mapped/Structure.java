@@ -26,6 +26,11 @@ public class Structure {
      */
     private short structureSize;
 
+    /**
+     * Array containing the type of each field.
+     */
+    private final FieldType[] fieldTypes;
+
     /**
      * Constructs a new structure from the given fields.
      * Each field must have an index equal to its position in the argument list.
@@ -36,6 +41,7 @@ public class Structure {
     public Structure (Field ... fields) {
 
         firstBytes = new short[fields.length];
+        fieldTypes = new FieldType[fields.length];
         for (int i = 0; i < fields.length; i++) {
             Preconditions.checkArgument(fields[i].index == i);
         }
@@ -43,6 +49,7 @@ public class Structure {
         for (int i = 0; i < fields.length; i++) {
             FieldType currentFieldType = fields[i].type;
             firstBytes[i] = structureSize;
+            fieldTypes[i] = currentFieldType;
             switch (currentFieldType) {
                 case U8 -> {
                     structureSize++;
@@ -50,7 +57,10 @@ public class Structure {
                 case U16 -> {
                     structureSize += 2;
                 }
-                case S32 -> {
+                case U24 -> {
+                    structureSize += 3;
+                }
+                case S32, U32 -> {
                     structureSize += 4;
                 }
             }
@@ -81,12 +91,26 @@ public class Structure {
     }
 
     /**
-     * The only three fieldType, i.e. number representations that will be used in ReCHor.
+     * Returns the type of the given field.
+     *
+     * @param fieldIndex the index of the field
+     * @return the type used to store the field
+     */
+    public FieldType type(int fieldIndex) {
+        return fieldTypes[fieldIndex];
+    }
+
+    /**
+     * The fieldTypes, i.e. number representations that are used in ReCHor.
+     * U24 and U32 are used for the identifiers of the wide format (version 2), in which
+     * there can be more than 65535 stations or strings.
      */
     public enum FieldType {
         U8,
         U16,
-        S32;
+        S32,
+        U24,
+        U32;
     }
 
     /**
@@ -3,6 +3,7 @@ package ch.epfl.rechor.timetable.mapped;
 import ch.epfl.rechor.Preconditions;
 
 import java.nio.ByteBuffer;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Class used to work with buffers, following a given structure.
@@ -96,4 +97,53 @@ public class StructuredBuffer {
 
         return buffer.getInt(structure.offset(fieldIndex, elementIndex));
     }
+
+    /**
+     * Reads an unsigned 24-bit value (U24), stored in big-endian order, from the buffer.
+     *
+     * @param fieldIndex the index of the field (from the structure)
+     * @param elementIndex the position of the element from which we want to extract the value
+     * @return the corresponding int value
+     */
+    public int getU24(int fieldIndex, int elementIndex) {
+        checkElementIndex(elementIndex);
+
+        int offset = structure.offset(fieldIndex, elementIndex);
+        return Short.toUnsignedInt(buffer.getShort(offset)) << Byte.SIZE
+                | Byte.toUnsignedInt(buffer.get(offset + 2));
+    }
+
+    /**
+     * Reads an unsigned 32-bit value (U32) from the buffer.
+     *
+     * @param fieldIndex the index of the field (from the structure)
+     * @param elementIndex the position of the element from which we want to extract the value
+     * @return the corresponding long value
+     */
+    public long getU32(int fieldIndex, int elementIndex) {
+        checkElementIndex(elementIndex);
+
+        return Integer.toUnsignedLong(buffer.getInt(structure.offset(fieldIndex, elementIndex)));
+    }
+
+    /**
+     * Returns a reader of the unsigned values of the given field, whatever the unsigned type of
+     * the field is, so that an identifier can be read the same way from the narrow and the wide
+     * formats. The type of the field is examined once, here, so that callers on hot paths
+     * should obtain the reader once and keep it.
+     *
+     * @param fieldIndex the index of the field (from the structure)
+     * @return a function mapping the position of an element to the int value of its field
+     * @throws IllegalArgumentException if the field is not unsigned
+     * @throws ArithmeticException when applied, if a U32 value does not fit in an int
+     */
+    public IntUnaryOperator unsignedReader(int fieldIndex) {
+        return switch (structure.type(fieldIndex)) {
+            case U8 -> elementIndex -> getU8(fieldIndex, elementIndex);
+            case U16 -> elementIndex -> getU16(fieldIndex, elementIndex);
+            case U24 -> elementIndex -> getU24(fieldIndex, elementIndex);
+            case U32 -> elementIndex -> Math.toIntExact(getU32(fieldIndex, elementIndex));
+            case S32 -> throw new IllegalArgumentException();
+        };
+    }
 }
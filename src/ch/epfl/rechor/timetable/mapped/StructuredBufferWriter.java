@@ -0,0 +1,280 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import ch.epfl.rechor.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Class used to write a file of records following a given structure, the counterpart of
+ * StructuredBuffer.
+ * The records are written one after the other: a record is started with {@link #newRecord()},
+ * and its fields are then set with the put methods, the fields that are not set being 0.
+ * The records are batched in a direct buffer, written to the file each time it is full.
+ * If a version is given, the file starts with a header (see {@link FileHeader}), whose
+ * number of records and checksum are computed while the records are written, and which is
+ * written when the writer is closed.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class StructuredBufferWriter implements Closeable {
+
+    /**
+     * The approximate size of the batches of records, in bytes.
+     */
+    private static final int BATCH_SIZE = 1 << 20;
+
+    /**
+     * Value of the version when the file has no header.
+     */
+    private static final int NO_HEADER = -1;
+
+    /**
+     * Mask constants for the unsigned fields.
+     */
+    private static final int MASK_8_BITS = 0xFF;
+    private static final int MASK_16_BITS = 0xFFFF;
+    private static final int MASK_24_BITS = 0xFFFFFF;
+    private static final long MASK_32_BITS = 0xFFFF_FFFFL;
+
+    /**
+     * The structure of the records.
+     */
+    private final Structure structure;
+
+    /**
+     * The channel of the written file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The version written in the header, or NO_HEADER if the file has no header.
+     */
+    private final int version;
+
+    /**
+     * The batch of records not yet written to the file.
+     */
+    private final ByteBuffer batch;
+
+    /**
+     * A record whose fields are all 0, copied at the start of each record.
+     */
+    private final byte[] emptyRecord;
+
+    /**
+     * The checksum of the records written so far.
+     */
+    private final CRC32C checksum;
+
+    /**
+     * The position of the current record in the batch, -1 before the first record.
+     */
+    private int recordPosition;
+
+    /**
+     * The number of records started so far.
+     */
+    private int recordCount;
+
+    /**
+     * Constructs a writer of a file without header, replacing the given file if it exists.
+     *
+     * @param structure the structure of the records
+     * @param path the path of the file to write
+     * @throws IOException if opening the file causes a problem
+     */
+    public StructuredBufferWriter(Structure structure, Path path) throws IOException {
+        this(structure, path, NO_HEADER);
+    }
+
+    /**
+     * Constructs a writer of a file starting with a header of the given version, replacing
+     * the given file if it exists.
+     *
+     * @param structure the structure of the records
+     * @param path the path of the file to write
+     * @param version the version of the format of the records, written in the header
+     * @throws IOException if opening the file causes a problem
+     * @throws IllegalArgumentException if the version does not fit in a header
+     */
+    public StructuredBufferWriter(Structure structure, Path path, int version)
+            throws IOException {
+        Preconditions.checkArgument(version == NO_HEADER || (version >= 0
+                && version <= MASK_16_BITS));
+        this.structure = structure;
+        this.version = version;
+        int recordsPerBatch = Math.max(1, BATCH_SIZE / structure.totalSize());
+        batch = ByteBuffer.allocateDirect(recordsPerBatch * structure.totalSize());
+        emptyRecord = new byte[structure.totalSize()];
+        checksum = new CRC32C();
+        recordPosition = -1;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (version != NO_HEADER) {
+            channel.position(FileHeader.SIZE);
+        }
+    }
+
+    /**
+     * Starts a new record, whose fields are all 0 until they are set.
+     *
+     * @return this writer
+     * @throws IOException if writing the previous records to the file causes a problem
+     */
+    public StructuredBufferWriter newRecord() throws IOException {
+        int recordSize = structure.totalSize();
+        recordPosition = batch.position();
+        if (recordPosition + recordSize > batch.capacity()) {
+            flush();
+            recordPosition = 0;
+        }
+        batch.put(emptyRecord);
+        recordCount++;
+        return this;
+    }
+
+    private int fieldPosition(int fieldIndex, Structure.FieldType type) {
+        Preconditions.checkArgument(recordPosition >= 0 && structure.type(fieldIndex) == type);
+        return recordPosition + structure.offset(fieldIndex, 0);
+    }
+
+    /**
+     * Sets an unsigned 8-bit field (U8) of the current record.
+     *
+     * @param fieldIndex the index of the field (from the structure)
+     * @param value the value of the field
+     * @return this writer
+     * @throws IllegalArgumentException if no record was started, if the field is not a U8,
+     * or if the value does not fit in 8 unsigned bits
+     */
+    public StructuredBufferWriter putU8(int fieldIndex, int value) {
+        Preconditions.checkArgument((value & ~MASK_8_BITS) == 0);
+        batch.put(fieldPosition(fieldIndex, Structure.FieldType.U8), (byte) value);
+        return this;
+    }
+
+    /**
+     * Sets an unsigned 16-bit field (U16) of the current record.
+     *
+     * @param fieldIndex the index of the field (from the structure)
+     * @param value the value of the field
+     * @return this writer
+     * @throws IllegalArgumentException if no record was started, if the field is not a U16,
+     * or if the value does not fit in 16 unsigned bits
+     */
+    public StructuredBufferWriter putU16(int fieldIndex, int value) {
+        Preconditions.checkArgument((value & ~MASK_16_BITS) == 0);
+        batch.putShort(fieldPosition(fieldIndex, Structure.FieldType.U16), (short) value);
+        return this;
+    }
+
+    /**
+     * Sets an unsigned 24-bit field (U24) of the current record, in big-endian order.
+     *
+     * @param fieldIndex the index of the field (from the structure)
+     * @param value the value of the field
+     * @return this writer
+     * @throws IllegalArgumentException if no record was started, if the field is not a U24,
+     * or if the value does not fit in 24 unsigned bits
+     */
+    public StructuredBufferWriter putU24(int fieldIndex, int value) {
+        Preconditions.checkArgument((value & ~MASK_24_BITS) == 0);
+        int position = fieldPosition(fieldIndex, Structure.FieldType.U24);
+        batch.putShort(position, (short) (value >>> Byte.SIZE));
+        batch.put(position + 2, (byte) value);
+        return this;
+    }
+
+    /**
+     * Sets an unsigned 32-bit field (U32) of the current record.
+     *
+     * @param fieldIndex the index of the field (from the structure)
+     * @param value the value of the field
+     * @return this writer
+     * @throws IllegalArgumentException if no record was started, if the field is not a U32,
+     * or if the value does not fit in 32 unsigned bits
+     */
+    public StructuredBufferWriter putU32(int fieldIndex, long value) {
+        Preconditions.checkArgument((value & ~MASK_32_BITS) == 0);
+        batch.putInt(fieldPosition(fieldIndex, Structure.FieldType.U32), (int) value);
+        return this;
+    }
+
+    /**
+     * Sets a signed 32-bit field (S32) of the current record.
+     *
+     * @param fieldIndex the index of the field (from the structure)
+     * @param value the value of the field
+     * @return this writer
+     * @throws IllegalArgumentException if no record was started, or if the field is not a S32
+     */
+    public StructuredBufferWriter putS32(int fieldIndex, int value) {
+        batch.putInt(fieldPosition(fieldIndex, Structure.FieldType.S32), value);
+        return this;
+    }
+
+    /**
+     * Sets an unsigned field of the current record, whatever its unsigned type is, so that an
+     * identifier can be written the same way in the narrow and the wide formats.
+     *
+     * @param fieldIndex the index of the field (from the structure)
+     * @param value the value of the field
+     * @return this writer
+     * @throws IllegalArgumentException if no record was started, if the field is not
+     * unsigned, or if the value does not fit in the field
+     */
+    public StructuredBufferWriter putUnsigned(int fieldIndex, int value) {
+        return switch (structure.type(fieldIndex)) {
+            case U8 -> putU8(fieldIndex, value);
+            case U16 -> putU16(fieldIndex, value);
+            case U24 -> putU24(fieldIndex, value);
+            case U32 -> putU32(fieldIndex, Integer.toUnsignedLong(value));
+            case S32 -> throw new IllegalArgumentException();
+        };
+    }
+
+    /**
+     * Returns the number of records started so far.
+     *
+     * @return the number of records
+     */
+    public int recordCount() {
+        return recordCount;
+    }
+
+    private void flush() throws IOException {
+        batch.flip();
+        checksum.update(batch.duplicate());
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Writes the remaining records and the header, if any, and closes the file.
+     *
+     * @throws IOException if writing the file causes a problem
+     */
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            flush();
+            if (version != NO_HEADER) {
+                ByteBuffer header = new FileHeader(version, structure.totalSize(), recordCount,
+                        (int) checksum.getValue()).toBuffer();
+                long position = 0;
+                while (header.hasRemaining()) {
+                    position += channel.write(header, position);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class keeping track of the files of a timetable whose checksum was already verified.
+ * A file is identified by its path relative to the timetable directory, and is considered
+ * verified as long as its modification time and size do not change.
+ * The verified files are saved in the file checksums-verified.txt of the timetable directory,
+ * so that the checksums are not computed again at the next start.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class VerifiedFiles {
+
+    /**
+     * Name of the file listing the verified files, in the directory of the timetable.
+     */
+    public static final String FILE_NAME = "checksums-verified.txt";
+
+    /**
+     * The directory of the timetable.
+     */
+    private final Path directory;
+
+    /**
+     * The modification time and size of each verified file, by relative path.
+     */
+    private final Map<String, String> verifiedStamps;
+
+    /**
+     * Whether files were verified since the list was read or last saved.
+     */
+    private volatile boolean modified;
+
+    private VerifiedFiles(Path directory, Map<String, String> verifiedStamps) {
+        this.directory = directory;
+        this.verifiedStamps = verifiedStamps;
+    }
+
+    /**
+     * Reads the list of verified files of the given timetable directory.
+     * Missing or malformed lists are considered empty.
+     *
+     * @param directory the directory of the timetable
+     * @return the verified files of the timetable
+     */
+    public static VerifiedFiles in(Path directory) {
+        Map<String, String> stamps = new ConcurrentHashMap<>();
+        try {
+            for (String line : Files.readAllLines(directory.resolve(FILE_NAME),
+                    StandardCharsets.UTF_8)) {
+                int separator = line.indexOf('\t');
+                if (separator > 0) {
+                    stamps.put(line.substring(0, separator), line.substring(separator + 1));
+                }
+            }
+        } catch (IOException e) {
+            stamps.clear();
+        }
+        return new VerifiedFiles(directory, stamps);
+    }
+
+    /**
+     * Verifies the checksum of the given file, unless it was already verified and did not
+     * change since. Files without header carry no checksum and are not verified.
+     *
+     * @param file the file to verify
+     * @throws IOException if the checksum of the file does not match its header,
+     * or if reading the file causes a problem
+     */
+    public void verify(Path file) throws IOException {
+        String key = directory.relativize(file).toString();
+        String stamp = Files.getLastModifiedTime(file).toMillis() + " " + Files.size(file);
+        if (stamp.equals(verifiedStamps.get(key))) {
+            return;
+        }
+
+        ByteBuffer buffer = FileTimeTable.mapFile(file);
+        if (FileHeader.isPresentIn(buffer)) {
+            if (!FileHeader.read(buffer).checksumMatches(FileHeader.payloadOf(buffer))) {
+                throw new IOException("Checksum mismatch in " + file);
+            }
+            verifiedStamps.put(key, stamp);
+            modified = true;
+        }
+    }
+
+    /**
+     * Saves the list of verified files in the timetable directory, if files were verified
+     * since it was read or last saved. As the list is only a cache, failing to write it (for instance because the directory
+     * is read-only) is ignored.
+     */
+    public synchronized void save() {
+        if (!modified) {
+            return;
+        }
+        modified = false;
+        List<String> lines = new ArrayList<>();
+        new TreeMap<>(verifiedStamps).forEach((file, stamp) -> lines.add(file + "\t" + stamp));
+        try {
+            Files.write(directory.resolve(FILE_NAME), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // The checksums will simply be verified again at the next start.
+        }
+    }
+}
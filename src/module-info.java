@@ -9,4 +9,6 @@ module ReCHor {
     exports ch.epfl.rechor.gui;
     exports ch.epfl.rechor.journey;
     exports ch.epfl.rechor.timetable.mapped;
+    exports ch.epfl.rechor.gtfs;
+    exports ch.epfl.rechor.shard;
 }
\ No newline at end of file
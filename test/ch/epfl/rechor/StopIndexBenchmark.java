@@ -0,0 +1,110 @@
+package ch.epfl.rechor;
+
+import ch.epfl.rechor.timetable.TimeTable;
+import ch.epfl.rechor.timetable.mapped.FileTimeTable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark measuring the latency of the queries of the stop index on the names and aliases of
+ * the stations of a timetable: the median, 90th and 99th percentiles and the worst time of
+ * queries made of a word of a name with a typo (a missing, replaced or swapped letter) and
+ * possibly truncated, and of the prefixes of names typed one character after the other, once
+ * warmed up.
+ * The arguments are the directory of the timetable and the number of stops requested, by
+ * default "timetable" and 30. On a timetable of 400 stations, the 99th percentiles are below
+ * 0.1 ms for the misspelled queries and 0.3 ms for the prefixes. On 93 000 names and aliases,
+ * a third of which contain the same word, they are about 4 ms and 7 ms, above the budget of a
+ * millisecond, the medians staying around 0.5 ms: the slowest queries are those occurring in
+ * most of these names, such as that word missing its first letter or a prefix followed by a
+ * comma, whose scores are too close for their length to rule out many of them, and the
+ * misspelled versions of that word, near all of these names.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class StopIndexBenchmark {
+
+    private static final int QUERY_COUNT = 2_000;
+    private static final int WARM_UP_ROUNDS = 5;
+
+    private StopIndexBenchmark() {}
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : "timetable");
+        int maxNumberOfStops = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        TimeTable timeTable = FileTimeTable.in(directory);
+        StopIndex index = StopIndex.of(timeTable);
+        Random random = new Random(2025);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < timeTable.stations().size(); i++) {
+            names.add(timeTable.stations().name(i));
+        }
+
+        List<String> misspelledQueries = new ArrayList<>();
+        List<String> typedQueries = new ArrayList<>();
+        while (misspelledQueries.size() < QUERY_COUNT) {
+            String name = names.get(random.nextInt(names.size()));
+            String[] words = name.toLowerCase().split("[^\\p{L}]+");
+            String word = words[random.nextInt(words.length)];
+            if (word.length() >= 4) {
+                misspelledQueries.add(misspelled(word, random));
+            }
+            if (typedQueries.size() < QUERY_COUNT) {
+                for (int length = 1; length <= name.length(); length++) {
+                    typedQueries.add(name.substring(0, length));
+                }
+            }
+        }
+
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            times(index, misspelledQueries, maxNumberOfStops);
+            times(index, typedQueries, maxNumberOfStops);
+        }
+        print("misspelled words", times(index, misspelledQueries, maxNumberOfStops));
+        print("typed prefixes", times(index, typedQueries, maxNumberOfStops));
+    }
+
+    /**
+     * Returns the given word with a typo, possibly without its last characters.
+     */
+    private static String misspelled(String word, Random random) {
+        int position = random.nextInt(word.length() - 1);
+        String typo = switch (random.nextInt(3)) {
+            case 0 -> word.substring(0, position) + word.substring(position + 1);
+            case 1 -> word.substring(0, position) + (char) ('a' + random.nextInt(26))
+                    + word.substring(position + 1);
+            default -> word.substring(0, position) + word.charAt(position + 1)
+                    + word.charAt(position) + word.substring(position + 2);
+        };
+        return random.nextBoolean()
+                ? typo
+                : typo.substring(0, Math.max(3, typo.length() - random.nextInt(3)));
+    }
+
+    /**
+     * Returns the sorted times of the given queries, in milliseconds.
+     */
+    private static double[] times(StopIndex index, List<String> queries, int maxNumberOfStops) {
+        double[] times = new double[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            index.stopsMatching(queries.get(i), maxNumberOfStops);
+            times[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static void print(String kind, double[] times) {
+        System.out.printf("%s: median %.3f ms, p90 %.3f ms, p99 %.3f ms, worst %.3f ms%n",
+                kind, times[times.length / 2], times[times.length * 9 / 10],
+                times[times.length * 99 / 100], times[times.length - 1]);
+    }
+}
@@ -0,0 +1,201 @@
+package ch.epfl.rechor;
+
+import ch.epfl.rechor.timetable.ReloadableTimeTable;
+import ch.epfl.rechor.timetable.TimeTable;
+import ch.epfl.rechor.timetable.mapped.FileHeader;
+import ch.epfl.rechor.timetable.mapped.FileTimeTable;
+import ch.epfl.rechor.timetable.mapped.SyntheticTimeTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static ch.epfl.rechor.timetable.mapped.SyntheticTimeTable.DATE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the selection of the stops matching a query by the stop index and its cache.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+class StopIndexTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void stopsMatchingAcceptsTheLargestNumberOfStops() {
+        List<String> names = IntStream.range(0, 5_000)
+                .mapToObj(i -> "Lausanne " + i)
+                .toList();
+        StopIndex index = new StopIndex(names, Map.of("Losanna 0", "Lausanne 0"));
+
+        assertEquals(names.size(), index.stopsMatching("laus", Integer.MAX_VALUE).size());
+        assertEquals(names.size(), index.session().stopsMatching("laus", Integer.MAX_VALUE).size());
+        assertEquals(List.of("Lausanne 0"), index.stopsMatching("losanna 0", Integer.MAX_VALUE));
+    }
+
+    @Test
+    void stopsMatchingOnlyGivesNearMatchesToQueriesThatNoNameMatches() {
+        StopIndex index = new StopIndex(List.of("Bern", "Bernex", "Berg", "Barn", "Ferney",
+                "Lausanne", "Renens VD", "Morges", "Genève"), Map.of());
+
+        assertEquals(List.of("Bern", "Bernex"), index.stopsMatching("Bern", 5));
+        assertEquals(List.of("Bern", "Bernex"), index.session().stopsMatching("Bern", 5));
+        assertEquals(List.of("Lausanne"), index.stopsMatching("Lausane", 5));
+        assertEquals(List.of("Genève"), index.stopsMatching("geneve", 5));
+    }
+
+    @Test
+    void stopsMatchingGivesTheResultsOfTheRegexScoring() {
+        List<String> names = List.of("Lausanne", "Lausanne-Flon", "Lausanne, gare",
+                "Renens VD", "Genève", "Genève-Aéroport", "Zürich HB", "Zürich Flughafen",
+                "St. Gallen", "St-Maurice", "Biel/Bienne", "L'Isle", "Écublens VD, EPFL",
+                "Crissier, Centre", "Fribourg/Freiburg", "Neuchâtel", "Mézières FR",
+                "Le Châtelard VS", "Bern", "Bern Bümpliz Süd", "Basel SBB", "Bâle Saint-Jean");
+        Map<String, String> aliases = new LinkedHashMap<>();
+        aliases.put("Losanna", "Lausanne");
+        aliases.put("Ginevra", "Genève");
+        aliases.put("Zurich", "Zürich HB");
+        aliases.put("Bâle", "Basel SBB");
+        aliases.put("Saint-Gall", "St. Gallen");
+        StopIndex index = new StopIndex(names, aliases);
+
+        List<String> queries = new ArrayList<>(List.of("genève", "geneve", "GENEVE", "Genève",
+                "zurich", "zürich", "Zuri", "aé", "ae", "mezieres", "LAUS", "lAuS", "Lausanne",
+                "Renens VD", "laus gare", "gare laus", "st gal", "bern sud", "ch", "e", "E",
+                "St. Gallen", "St.", "st-", "Lausanne,", "Biel/", "/Bienne", "l'isle", "L'",
+                "-", ", ", "epfl, VD", "Bâle", "bale", "saint", "Saint-", "sbb", "Sbb", "ü"));
+        Random random = new Random(2025);
+        List<String> allNames = new ArrayList<>(names);
+        allNames.addAll(aliases.keySet());
+        for (int i = 0; i < 200; i++) {
+            String name = allNames.get(random.nextInt(allNames.size()));
+            int start = random.nextInt(name.length());
+            String query = name.substring(start,
+                    start + 1 + random.nextInt(name.length() - start));
+            queries.add(random.nextBoolean() ? query : query.toLowerCase());
+        }
+
+        for (String query : queries) {
+            for (int maxNumberOfStops : new int[]{1, 3, 10, Integer.MAX_VALUE}) {
+                List<String> expected = regexStopsMatching(names, aliases, query,
+                        maxNumberOfStops);
+                if (query.isBlank() || expected.isEmpty()) {
+                    continue;
+                }
+                assertEquals(expected, index.stopsMatching(query, maxNumberOfStops), query);
+                assertEquals(expected, index.session().stopsMatching(query, maxNumberOfStops),
+                        query);
+            }
+        }
+
+        // A session typing a name scores the names matching the previous prefix only.
+        StopIndex.Session session = index.session();
+        for (String name : List.of("Lausanne, gare", "Zürich Flughafen", "St. Gallen")) {
+            for (int length = 1; length <= name.length(); length++) {
+                String query = name.substring(0, length);
+                if (!query.isBlank()) {
+                    assertEquals(regexStopsMatching(names, aliases, query, 5),
+                            session.stopsMatching(query, 5), query);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the stops matching the given query as the index scored them with the patterns of
+     * its sub-queries, before it was indexed: every name is scored, and the names are sorted by
+     * decreasing score, then in their order, the main names before the alternative ones.
+     */
+    private static List<String> regexStopsMatching(List<String> names,
+                                                   Map<String, String> aliases, String query,
+                                                   int maxNumberOfStops) {
+        List<Pattern> patterns = Arrays.stream(query.split(" "))
+                .map(StopIndex::pattern)
+                .toList();
+        List<String> allNames = new ArrayList<>(names);
+        allNames.addAll(aliases.keySet());
+        Map<String, Integer> scores = new HashMap<>();
+        for (String name : allNames) {
+            int score = 0;
+            for (Pattern pattern : patterns) {
+                Matcher matcher = pattern.matcher(name);
+                if (!matcher.find()) {
+                    score = -1;
+                    break;
+                }
+                int start = matcher.start();
+                int end = matcher.end();
+                int subQueryScore = (int) ((double) (end - start) / name.length() * 100);
+                if (start == 0 || !Character.isLetter(name.charAt(start - 1))) {
+                    subQueryScore *= 4;
+                }
+                if (end == name.length() || !Character.isLetter(name.charAt(end))) {
+                    subQueryScore *= 2;
+                }
+                score += subQueryScore;
+            }
+            scores.put(name, score);
+        }
+        return allNames.stream()
+                .filter(name -> scores.get(name) >= 0)
+                .sorted(Comparator.comparingInt(name -> -scores.get(name)))
+                .map(name -> aliases.getOrDefault(name, name))
+                .distinct()
+                .limit(maxNumberOfStops)
+                .toList();
+    }
+
+    @Test
+    void cacheGivesTheResultsOfTheIndexForBlankQueries() {
+        StopIndex index = new StopIndex(List.of("Lausanne", "Renens VD", "Morges"), Map.of());
+        StopIndexCache cache = new StopIndexCache(index, 16);
+
+        for (String query : List.of("", " ", "   ", " renens  vd ")) {
+            assertEquals(index.stopsMatching(query, 3), cache.stopsMatching(query, 3));
+            assertEquals(index.stopsMatching(query, 3), cache.stopsMatching(query, 3));
+        }
+    }
+
+    @Test
+    void cacheRanksTheStationsByTheirImportanceInTheFilesWhateverTheDate() throws IOException {
+        Path directory = SyntheticTimeTable.write(temporaryDirectory,
+                FileHeader.DEFAULT_VERSION, 0);
+        FileTimeTable timeTable = FileTimeTable.in(directory);
+        assertEquals(List.of(DATE), timeTable.dayDates());
+
+        short[] importances = StopIndex.stationImportances(timeTable, timeTable.dayDates());
+        assertArrayEquals(StopIndex.stationImportances(timeTable, DATE), importances);
+        assertArrayEquals(importances, StopIndex.stationImportances(timeTable,
+                List.of(DATE.minusDays(1), DATE, DATE.plusDays(1))));
+        assertArrayEquals(new short[importances.length], StopIndex.stationImportances(timeTable,
+                List.of(DATE.plusDays(1))));
+
+        StopIndexCache cache = StopIndexCache.of(new ReloadableTimeTable(timeTable), 16);
+        assertTrue(Files.exists(directory.resolve(StopIndexSnapshot.FILE_NAME)));
+        StopIndex expected = StopIndex.of(timeTable, importances);
+        assertEquals(expected.stopsMatching("station", 10), cache.stopsMatching("station", 10));
+
+        TimeTable reloaded = FileTimeTable.in(directory);
+        assertEquals(expected.stopsMatching("station", 10),
+                StopIndexCache.of(new ReloadableTimeTable(reloaded), 16)
+                        .stopsMatching("station", 10));
+    }
+}
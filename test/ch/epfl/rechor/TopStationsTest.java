@@ -0,0 +1,56 @@
+package ch.epfl.rechor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.IntBuffer;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks the selection of the best stations against a sort of all the scored names.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+class TopStationsTest {
+
+    private static final int NAME_COUNT = 3_000;
+
+    @Test
+    void bestNameIdsAreThoseOfASortOfAllTheNames() {
+        Random random = new Random(2025);
+        for (int stationCount : new int[]{10, 700, NAME_COUNT}) {
+            int[] stations = random.ints(NAME_COUNT, 0, stationCount).toArray();
+            int[] scores = random.ints(NAME_COUNT, 0, 50).toArray();
+            for (int capacity : new int[]{0, 1, 7, 100, stationCount, Integer.MAX_VALUE}) {
+                TopStations topStations = new TopStations(capacity, IntBuffer.wrap(stations),
+                        false);
+                for (int nameId = 0; nameId < NAME_COUNT; nameId++) {
+                    topStations.add(nameId, scores[nameId]);
+                }
+                assertArrayEquals(sortedBestNameIds(stations, scores, capacity),
+                        topStations.bestNameIds());
+            }
+        }
+    }
+
+    private static int[] sortedBestNameIds(int[] stations, int[] scores, int capacity) {
+        List<Integer> nameIds = IntStream.range(0, NAME_COUNT)
+                .boxed()
+                .sorted(Comparator.<Integer>comparingInt(nameId -> -scores[nameId])
+                        .thenComparingInt(nameId -> nameId))
+                .toList();
+        Set<Integer> selectedStations = new HashSet<>();
+        return nameIds.stream()
+                .filter(nameId -> selectedStations.add(stations[nameId]))
+                .limit(capacity)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+}
@@ -0,0 +1,88 @@
+package ch.epfl.rechor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the names given by the trigram index against a scan of all the names.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+class TrigramIndexTest {
+
+    private static final List<String> NAMES = List.of("lausanne", "lausanne-flon",
+            "lausanne, gare", "renens vd", "geneve", "geneve-aeroport", "zurich hb", "st. gallen",
+            "biel/bienne", "l'isle", "ecublens vd, epfl", "annemasse", "aa", "", "nnn");
+
+    @Test
+    void candidatesOfShortStringsAreTheNamesContainingThem() {
+        TrigramIndex index = new TrigramIndex(NAMES);
+        for (String string : List.of("a", "n", "la", "ne", "nne", "e-", ", ", "/", "'is",
+                "aa", "x", "zz", "-f")) {
+            assertArrayEquals(containing(List.of(string)), index.candidates(List.of(string)),
+                    string);
+        }
+        assertArrayEquals(containing(List.of("la", "nn")),
+                index.candidates(List.of("la", "nn")));
+    }
+
+    @Test
+    void candidatesOfLongStringsHaveAllTheirTrigrams() {
+        TrigramIndex index = new TrigramIndex(NAMES);
+        Random random = new Random(2025);
+        for (int i = 0; i < 500; i++) {
+            String name = NAMES.get(random.nextInt(NAMES.size()));
+            String string = name.isEmpty() ? "" : name.substring(random.nextInt(name.length()));
+            if (random.nextBoolean() && string.length() > 1) {
+                // Swapping two characters gives strings that may have all their trigrams in a
+                // name without occurring in it.
+                char[] chars = string.toCharArray();
+                char first = chars[0];
+                chars[0] = chars[1];
+                chars[1] = first;
+                string = new String(chars);
+            }
+            int[] candidates = index.candidates(List.of(string));
+            int[] expected = containing(List.of(string));
+            assertTrue(IntStream.of(expected).allMatch(nameId ->
+                    IntStream.of(candidates).anyMatch(candidate -> candidate == nameId)), string);
+            for (int candidate : candidates) {
+                for (int start = 0; start + TrigramIndex.TRIGRAM_LENGTH <= string.length();
+                     start++) {
+                    assertTrue(NAMES.get(candidate).contains(string.substring(start,
+                            start + TrigramIndex.TRIGRAM_LENGTH)), string);
+                }
+            }
+        }
+    }
+
+    @Test
+    void candidatesAreSortedAndEmptyStringsDoNotRestrictThem() {
+        TrigramIndex index = new TrigramIndex(NAMES);
+        assertArrayEquals(IntStream.range(0, NAMES.size()).toArray(),
+                index.candidates(List.of()));
+        assertArrayEquals(IntStream.range(0, NAMES.size()).toArray(),
+                index.candidates(List.of("", "")));
+        assertArrayEquals(containing(List.of("lausanne")),
+                index.candidates(List.of("", "lausanne")));
+        assertEquals(0, index.candidates(List.of("lausanne", "zur")).length);
+        int[] candidates = index.candidates(List.of("ne"));
+        for (int i = 1; i < candidates.length; i++) {
+            assertTrue(candidates[i - 1] < candidates[i]);
+        }
+    }
+
+    private static int[] containing(List<String> strings) {
+        return IntStream.range(0, NAMES.size())
+                .filter(nameId -> strings.stream().allMatch(NAMES.get(nameId)::contains))
+                .toArray();
+    }
+}
@@ -0,0 +1,133 @@
+package ch.epfl.rechor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the names given by the trie of the words of names against a scan of their words.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+class WordTrieTest {
+
+    private static final List<String> NAMES = List.of("lausanne", "lausanne-flon",
+            "lausanne, gare", "renens vd", "geneve", "geneve-aeroport", "zurich hb",
+            "zurich flughafen", "st. gallen", "st-gall", "biel/bienne", "l'isle",
+            "ecublens vd, epfl", "bern", "bern bumpliz sud", "berne", "", "123 vd", "gare gare");
+
+    @Test
+    void namesWithWordStartingWithAPrefixAreThoseOfTheScan() {
+        WordTrie trie = new WordTrie(NAMES);
+        for (String prefix : prefixes()) {
+            assertArrayEquals(scan(word -> word.startsWith(prefix)),
+                    trie.namesWithWordStartingWith(prefix), prefix);
+            assertArrayEquals(scan(word -> word.equals(prefix)), trie.namesWithWord(prefix),
+                    prefix);
+        }
+        assertArrayEquals(new int[0], trie.namesWithWordStartingWith("x"));
+        assertArrayEquals(new int[0], trie.namesWithWord("lausan"));
+    }
+
+    @Test
+    void namesWithWordStartingNearAStringAreThoseOfTheScan() {
+        WordTrie trie = new WordTrie(NAMES);
+        List<String> strings = new ArrayList<>(prefixes());
+        strings.addAll(List.of("lasuanne", "lusanne", "genve", "zruich", "bren", "garre", "x",
+                "stgall", "flughaffen", "bumplitz"));
+        for (String string : strings) {
+            for (int maxDistance = 0; maxDistance <= 2; maxDistance++) {
+                assertArrayEquals(nearScan(string, maxDistance),
+                        trie.namesWithWordStartingNear(string, maxDistance),
+                        string + " " + maxDistance);
+            }
+        }
+    }
+
+    @Test
+    void wordPrefixesAreMadeOfLettersOnly() {
+        assertTrue(WordTrie.isWordPrefix("lausanne"));
+        assertTrue(WordTrie.isWordPrefix("zürich"));
+        assertTrue(WordTrie.isWordPrefix(""));
+        assertFalse(WordTrie.isWordPrefix("st."));
+        assertFalse(WordTrie.isWordPrefix("l'isle"));
+        assertFalse(WordTrie.isWordPrefix("vd1"));
+    }
+
+    /**
+     * Returns the prefixes of the words of the names, and a few random strings.
+     */
+    private static List<String> prefixes() {
+        List<String> prefixes = new ArrayList<>(List.of(""));
+        for (String name : NAMES) {
+            for (String word : words(name)) {
+                for (int length = 1; length <= word.length(); length++) {
+                    prefixes.add(word.substring(0, length));
+                }
+            }
+        }
+        Random random = new Random(2025);
+        for (int i = 0; i < 20; i++) {
+            prefixes.add(random.ints(1 + random.nextInt(3), 'a', 'z' + 1)
+                    .collect(StringBuilder::new, StringBuilder::appendCodePoint,
+                            StringBuilder::append)
+                    .toString());
+        }
+        return prefixes.stream().distinct().toList();
+    }
+
+    private static List<String> words(String name) {
+        return Arrays.stream(name.split("\\P{L}+"))
+                .filter(word -> !word.isEmpty())
+                .toList();
+    }
+
+    private static int[] scan(Predicate<String> wordPredicate) {
+        return IntStream.range(0, NAMES.size())
+                .filter(nameId -> words(NAMES.get(nameId)).stream().anyMatch(wordPredicate))
+                .toArray();
+    }
+
+    /**
+     * Returns the names having a word with a prefix at most the given distance away from the
+     * given string, each packed with the smallest such distance as by the trie.
+     */
+    private static long[] nearScan(String string, int maxDistance) {
+        List<Long> names = new ArrayList<>();
+        for (int nameId = 0; nameId < NAMES.size(); nameId++) {
+            int distance = Integer.MAX_VALUE;
+            for (String word : words(NAMES.get(nameId))) {
+                for (int length = 0; length <= word.length(); length++) {
+                    distance = Math.min(distance, distance(string, word.substring(0, length)));
+                }
+            }
+            if (distance <= maxDistance) {
+                names.add((long) nameId << Integer.SIZE | distance);
+            }
+        }
+        return names.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static int distance(String first, String second) {
+        int[][] distances = new int[first.length() + 1][second.length() + 1];
+        for (int i = 0; i <= first.length(); i++) {
+            for (int j = 0; j <= second.length(); j++) {
+                distances[i][j] = i == 0 || j == 0 ? i + j : Math.min(
+                        Math.min(distances[i - 1][j], distances[i][j - 1]) + 1,
+                        distances[i - 1][j - 1]
+                                + (first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1));
+            }
+        }
+        return distances[first.length()][second.length()];
+    }
+}
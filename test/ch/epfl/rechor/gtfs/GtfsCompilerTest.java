@@ -0,0 +1,260 @@
+package ch.epfl.rechor.gtfs;
+
+import ch.epfl.rechor.PackedRange;
+import ch.epfl.rechor.timetable.Connections;
+import ch.epfl.rechor.timetable.Platforms;
+import ch.epfl.rechor.timetable.Stations;
+import ch.epfl.rechor.timetable.TimeTable;
+import ch.epfl.rechor.timetable.Transfers;
+import ch.epfl.rechor.timetable.Trips;
+import ch.epfl.rechor.timetable.mapped.FileTimeTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the timetable compiled from a small feed: a station with two platforms, plain stops,
+ * a hub at which more transfers arrive than a station can have, a service removed on a day by
+ * calendar_dates.txt, another one only added by it, and a trip repeated by frequencies.txt.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+class GtfsCompilerTest {
+
+    private static final LocalDate TUESDAY = LocalDate.of(2025, 3, 18);
+    private static final LocalDate WEDNESDAY = TUESDAY.plusDays(1);
+    private static final LocalDate THURSDAY = TUESDAY.plusDays(2);
+
+    /**
+     * The stops transferring to the hub, more numerous than the transfers of a station.
+     */
+    private static final int FEEDER_COUNT = 300;
+    private static final int MAX_STATION_TRANSFERS = 0xFF;
+
+    /**
+     * The identifiers of the stations, in the order of stops.txt, followed by the platforms.
+     */
+    private static final int LAUSANNE = 0;
+    private static final int RENENS = 1;
+    private static final int MORGES = 2;
+    private static final int HUB = 3;
+    private static final int FIRST_FEEDER = 4;
+    private static final int STATION_COUNT = FIRST_FEEDER + FEEDER_COUNT;
+    private static final int LAUSANNE_1 = STATION_COUNT;
+    private static final int LAUSANNE_2 = STATION_COUNT + 1;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private TimeTable timeTable;
+
+    @BeforeEach
+    void compileFeed() throws IOException {
+        Path feed = Files.createDirectories(temporaryDirectory.resolve("feed"));
+        List<String> stops = new ArrayList<>(List.of(
+                "stop_id,stop_name,stop_lat,stop_lon,location_type,parent_station,platform_code",
+                "L,Lausanne,46.5167,6.6291,1,,",
+                "L1,Lausanne,46.5167,6.6291,0,L,1",
+                "R,Renens VD,46.5372,6.5785,,,",
+                "L2,Lausanne,46.5167,6.6291,0,L,2",
+                "M,Morges,46.5110,6.4951,0,,",
+                "H,Hub,46.0,7.0,1,,"));
+        List<String> transfers = new ArrayList<>(List.of(
+                "from_stop_id,to_stop_id,transfer_type,min_transfer_time",
+                "L1,R,2,300",
+                "L2,R,2,130",
+                "R,M,,",
+                "M,R,3,60"));
+        for (int i = 0; i < FEEDER_COUNT; i++) {
+            stops.add("F" + i + ",Feeder " + i + ",46.0,7.0,,,");
+            transfers.add("F" + i + ",H,2," + feederMinutes(i) * 60);
+        }
+        Files.write(feed.resolve("stops.txt"), stops);
+        Files.write(feed.resolve("transfers.txt"), transfers);
+        Files.write(feed.resolve("routes.txt"), List.of(
+                "route_id,route_short_name,route_long_name,route_type",
+                "IR,IR 15,,2",
+                "B,,Bus 701,3"));
+        Files.write(feed.resolve("calendar.txt"), List.of(
+                "service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,"
+                        + "start_date,end_date",
+                "WEEK,1,1,1,1,1,0,0,20250317,20250323"));
+        Files.write(feed.resolve("calendar_dates.txt"), List.of(
+                "service_id,date,exception_type",
+                "WEEK,20250319,2",
+                "EXTRA,20250320,1"));
+        Files.write(feed.resolve("trips.txt"), List.of(
+                "route_id,service_id,trip_id,trip_headsign",
+                "IR,WEEK,direct,",
+                "B,WEEK,shuttle,Renens VD",
+                "IR,EXTRA,extra,Lausanne"));
+        Files.write(feed.resolve("frequencies.txt"), List.of(
+                "trip_id,start_time,end_time,headway_secs",
+                "shuttle,09:00:00,10:00:00,1200"));
+        Files.write(feed.resolve("stop_times.txt"), List.of(
+                "trip_id,arrival_time,departure_time,stop_id,stop_sequence",
+                "direct,08:25:00,08:25:00,M,3",
+                "direct,08:00:00,08:00:00,L1,1",
+                "direct,08:09:00,08:10:00,R,2",
+                "shuttle,06:00:00,06:00:00,M,1",
+                "shuttle,06:12:00,06:12:00,R,2",
+                "extra,12:00:00,12:00:00,R,1",
+                "extra,12:10:00,12:10:00,L2,2"));
+
+        Path directory = temporaryDirectory.resolve("timetable");
+        GtfsCompiler.compile(feed, directory, TUESDAY, THURSDAY);
+        timeTable = FileTimeTable.in(directory);
+    }
+
+    private static int feederMinutes(int feeder) {
+        return 1 + feeder % 100;
+    }
+
+    @Test
+    void stationsHaveTheirPlatformsAndTheStopsWithoutParentAreStations() {
+        Stations stations = timeTable.stations();
+        assertEquals(STATION_COUNT, stations.size());
+        assertEquals("Lausanne", stations.name(LAUSANNE));
+        assertEquals("Renens VD", stations.name(RENENS));
+        assertEquals("Morges", stations.name(MORGES));
+        assertEquals(6.6291, stations.longitude(LAUSANNE), 1e-6);
+        assertEquals(46.5167, stations.latitude(LAUSANNE), 1e-6);
+
+        Platforms platforms = timeTable.platforms();
+        assertEquals(2, platforms.size());
+        assertEquals("1", timeTable.platformName(LAUSANNE_1));
+        assertEquals("2", timeTable.platformName(LAUSANNE_2));
+        assertEquals(LAUSANNE, timeTable.stationId(LAUSANNE_1));
+        assertEquals(LAUSANNE, timeTable.stationId(LAUSANNE_2));
+        assertEquals(0, timeTable.stationAliases().size());
+    }
+
+    @Test
+    void transfersAreAggregatedByStationAndCappedAtEachStation() {
+        Transfers transfers = timeTable.transfers();
+        assertEquals(3, transfers.minutesBetween(LAUSANNE, RENENS));
+        assertEquals(GtfsCompiler.DEFAULT_CHANGE_MINUTES, transfers.minutesBetween(RENENS, MORGES));
+        assertEquals(2, transfers.minutesBetween(MORGES, MORGES));
+        assertEquals(List.of(LAUSANNE, RENENS), arrivingStations(transfers, RENENS));
+        assertEquals(List.of(RENENS, MORGES), arrivingStations(transfers, MORGES));
+
+        // The hub keeps the shortest of the transfers of the feeders and the one to itself.
+        int[] minutes = IntStream.concat(
+                        IntStream.range(0, FEEDER_COUNT).map(GtfsCompilerTest::feederMinutes),
+                        IntStream.of(GtfsCompiler.DEFAULT_CHANGE_MINUTES))
+                .sorted()
+                .toArray();
+        int longestKeptMinutes = minutes[MAX_STATION_TRANSFERS - 1];
+
+        int hubTransfers = transfers.arrivingAt(HUB);
+        assertEquals(MAX_STATION_TRANSFERS, PackedRange.length(hubTransfers));
+        Map<Integer, Integer> hubMinutes = new HashMap<>();
+        for (int i = PackedRange.startInclusive(hubTransfers);
+             i < PackedRange.endExclusive(hubTransfers); i++) {
+            hubMinutes.put(transfers.depStationId(i), transfers.minutes(i));
+            assertTrue(transfers.minutes(i) <= longestKeptMinutes);
+        }
+        assertEquals(GtfsCompiler.DEFAULT_CHANGE_MINUTES, hubMinutes.get(HUB));
+        for (int feeder = 0; feeder < FEEDER_COUNT; feeder++) {
+            if (feederMinutes(feeder) < longestKeptMinutes) {
+                assertEquals(feederMinutes(feeder), hubMinutes.get(FIRST_FEEDER + feeder));
+            }
+        }
+    }
+
+    @Test
+    void tripsRunOnTheDaysOfTheirServiceAndFrequenciesRepeatThem() {
+        Trips tuesdayTrips = timeTable.tripsFor(TUESDAY);
+        assertEquals(4, tuesdayTrips.size());
+        assertEquals(List.of("Morges", "Renens VD", "Renens VD", "Renens VD"),
+                destinations(tuesdayTrips));
+        assertEquals("IR 15", timeTable.routes().name(tuesdayTrips.routeId(0)));
+        assertEquals("Bus 701", timeTable.routes().name(tuesdayTrips.routeId(1)));
+
+        // The week service is removed on Wednesday, the extra one only added on Thursday.
+        assertEquals(0, timeTable.tripsFor(WEDNESDAY).size());
+        assertEquals(0, timeTable.connectionsFor(WEDNESDAY).size());
+        assertEquals(List.of("Morges", "Renens VD", "Renens VD", "Renens VD", "Lausanne"),
+                destinations(timeTable.tripsFor(THURSDAY)));
+
+        // The shuttle leaves at the start of each of its intervals, 20 minutes apart.
+        Connections connections = timeTable.connectionsFor(TUESDAY);
+        List<List<Integer>> shuttles = new ArrayList<>();
+        for (int c = 0; c < connections.size(); c++) {
+            if (connections.depStopId(c) == MORGES) {
+                shuttles.add(List.of(connections.depMins(c), connections.arrMins(c),
+                        connections.arrStopId(c)));
+            }
+        }
+        assertEquals(List.of(List.of(580, 592, RENENS), List.of(560, 572, RENENS),
+                List.of(540, 552, RENENS)), shuttles);
+    }
+
+    @Test
+    void connectionsAreSortedAndLinkedToTheNextOneOfTheirTrip() {
+        for (LocalDate date : List.of(TUESDAY, THURSDAY)) {
+            Connections connections = timeTable.connectionsFor(date);
+            Trips trips = timeTable.tripsFor(date);
+            int[] tripConnections = new int[trips.size()];
+            for (int c = 0; c < connections.size(); c++) {
+                tripConnections[connections.tripId(c)]++;
+                if (c > 0) {
+                    assertTrue(connections.depMins(c - 1) >= connections.depMins(c));
+                }
+            }
+            for (int c = 0; c < connections.size(); c++) {
+                int next = connections.nextConnectionId(c);
+                assertEquals(connections.tripId(c), connections.tripId(next));
+                if (connections.tripPos(c) + 1 < tripConnections[connections.tripId(c)]) {
+                    assertEquals(connections.tripPos(c) + 1, connections.tripPos(next));
+                    assertEquals(connections.arrStopId(c), connections.depStopId(next));
+                    assertTrue(connections.arrMins(c) <= connections.depMins(next));
+                } else {
+                    assertEquals(0, connections.tripPos(next));
+                }
+            }
+        }
+
+        // The direct train leaves the first platform of Lausanne and stops at Renens.
+        Connections connections = timeTable.connectionsFor(TUESDAY);
+        int first = IntStream.range(0, connections.size())
+                .filter(c -> connections.depStopId(c) == LAUSANNE_1)
+                .findFirst()
+                .orElseThrow();
+        int second = connections.nextConnectionId(first);
+        assertEquals(List.of(480, 489, RENENS), List.of(connections.depMins(first),
+                connections.arrMins(first), connections.arrStopId(first)));
+        assertEquals(List.of(490, 505, MORGES), List.of(connections.depMins(second),
+                connections.arrMins(second), connections.arrStopId(second)));
+        assertEquals(first, connections.nextConnectionId(second));
+    }
+
+    private static List<Integer> arrivingStations(Transfers transfers, int arrStation) {
+        int range = transfers.arrivingAt(arrStation);
+        return IntStream.range(PackedRange.startInclusive(range), PackedRange.endExclusive(range))
+                .map(transfers::depStationId)
+                .sorted()
+                .boxed()
+                .toList();
+    }
+
+    private static List<String> destinations(Trips trips) {
+        return IntStream.range(0, trips.size())
+                .mapToObj(trips::destination)
+                .toList();
+    }
+}
@@ -0,0 +1,67 @@
+package ch.epfl.rechor.journey;
+
+import ch.epfl.rechor.timetable.CachedTimeTable;
+import ch.epfl.rechor.timetable.TimeTable;
+import ch.epfl.rechor.timetable.mapped.FileTimeTable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Benchmark measuring the cost of the wide mode of the payloads: the median and the worst time
+ * of a query and of the extraction of its journeys once warmed up, and the number of entries
+ * of the table of the payloads of a profile, from which its memory is deduced.
+ * The arguments are the directory of the timetable, the date of the queries and the mode
+ * measured ("narrow" or "wide"), by default "timetable", the current date and "narrow".
+ * Each run measures a single mode, so that the router is compiled for the packing of that mode
+ * only; the two modes are compared by running the benchmark once for each, and the numbers of
+ * journeys printed by the two runs must be equal.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class PayloadModeBenchmark {
+
+    private static final int WARM_UP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 30;
+    private static final int QUERIED_STATIONS = 20;
+
+    private PayloadModeBenchmark() {}
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : "timetable");
+        LocalDate date = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.now();
+        Router.PayloadMode mode = args.length > 2 && args[2].equals("wide")
+                ? Router.PayloadMode.WIDE
+                : Router.PayloadMode.NARROW;
+
+        TimeTable timeTable = new CachedTimeTable(FileTimeTable.in(directory));
+        Router router = new Router(timeTable, mode);
+        int stations = Math.min(QUERIED_STATIONS, timeTable.stations().size());
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            JourneyExtractor.journeys(router.profile(date, round % stations),
+                    (round + 1) % stations);
+        }
+
+        double[] times = new double[MEASURED_ROUNDS];
+        long journeys = 0;
+        long tableEntries = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            Profile profile = router.profile(date, round % stations);
+            journeys += JourneyExtractor.journeys(profile, (round + 1) % stations).size();
+            times[round] = (System.nanoTime() - start) / 1e6;
+            tableEntries += profile.payloads().size();
+        }
+        Arrays.sort(times);
+        System.out.printf("%s payloads%n", mode.name().toLowerCase());
+        System.out.printf("median query: %.2f ms, worst: %.2f ms%n",
+                times[MEASURED_ROUNDS / 2], times[MEASURED_ROUNDS - 1]);
+        System.out.printf("table entries per profile: %d (%d KiB)%n",
+                tableEntries / MEASURED_ROUNDS,
+                tableEntries / MEASURED_ROUNDS * Long.BYTES / 1024);
+        System.out.printf("journeys extracted: %d%n", journeys);
+    }
+}
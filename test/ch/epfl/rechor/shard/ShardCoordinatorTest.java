@@ -0,0 +1,116 @@
+package ch.epfl.rechor.shard;
+
+import ch.epfl.rechor.journey.PackedCriteria;
+import ch.epfl.rechor.journey.ParetoFront;
+import ch.epfl.rechor.journey.Profile;
+import ch.epfl.rechor.journey.Router;
+import ch.epfl.rechor.timetable.TimeTable;
+import ch.epfl.rechor.timetable.mapped.FileHeader;
+import ch.epfl.rechor.timetable.mapped.FileTimeTable;
+import ch.epfl.rechor.timetable.mapped.SyntheticTimeTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static ch.epfl.rechor.timetable.mapped.SyntheticTimeTable.DATE;
+import static ch.epfl.rechor.timetable.mapped.SyntheticTimeTable.STATION_COUNT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the fronts combined by the coordinator of a sharded timetable are the optimal
+ * fronts computed by the router on the full timetable, on a network whose trips go back and
+ * forth between the regions and whose transfers are not closed under walking.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+class ShardCoordinatorTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4})
+    void coordinatorFrontsAreThoseOfTheFullRouter(int regionCount) throws IOException {
+        // The even stations are west of the odd ones, so that the trips, going from a station
+        // to the next one, cross the border between the two halves at each connection.
+        TimeTable timeTable = FileTimeTable.in(SyntheticTimeTable.write(temporaryDirectory,
+                FileHeader.DEFAULT_VERSION, 0, station -> 6.5 + station % 2 + station * 1e-4));
+        RegionPartition partition = RegionPartition.of(timeTable.stations(), regionCount);
+
+        List<ShardWorker> workers = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int region = 0; region < regionCount; region++) {
+                ShardWorker worker = new ShardWorker(timeTable, partition, region, 0);
+                workers.add(worker);
+                Thread.ofVirtual().start(worker::serve);
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                        worker.port()));
+            }
+
+            int crossingFronts = 0;
+            try (ShardCoordinator coordinator = new ShardCoordinator(partition, addresses)) {
+                for (int arrStation = 0; arrStation < STATION_COUNT; arrStation += 3) {
+                    Profile profile = new Router(timeTable).profile(DATE, arrStation, Map.of(),
+                            Map.of());
+                    for (int depStation = 0; depStation < STATION_COUNT; depStation++) {
+                        Set<Long> expected = criteriaOf(profile.forStation(depStation));
+                        assertEquals(expected, criteriaOf(
+                                coordinator.front(DATE, depStation, arrStation)));
+                        if (!expected.isEmpty()
+                                && partition.region(depStation) != partition.region(arrStation)) {
+                            crossingFronts++;
+                        }
+                    }
+                }
+            }
+            assertTrue(regionCount == 1 || crossingFronts > 0);
+        } finally {
+            for (ShardWorker worker : workers) {
+                worker.close();
+            }
+        }
+    }
+
+    @Test
+    void prunedRouterMissesOptimalFrontsOnTheNetwork() throws IOException {
+        TimeTable timeTable = FileTimeTable.in(SyntheticTimeTable.write(temporaryDirectory,
+                FileHeader.DEFAULT_VERSION, 0));
+        Router router = new Router(timeTable);
+        int differentFronts = 0;
+        for (int arrStation = 0; arrStation < STATION_COUNT; arrStation++) {
+            Profile pruned = router.profile(DATE, arrStation);
+            Profile optimal = router.profile(DATE, arrStation, Map.of(), Map.of());
+            for (int depStation = 0; depStation < STATION_COUNT; depStation++) {
+                Set<Long> optimalCriteria = criteriaOf(optimal.forStation(depStation));
+                pruned.forStation(depStation).forEach(c -> assertTrue(optimalCriteria.stream()
+                        .anyMatch(o -> PackedCriteria.dominatesOrIsEqual(o,
+                                PackedCriteria.withPayload(c, 0)))));
+                if (!optimalCriteria.equals(criteriaOf(pruned.forStation(depStation)))) {
+                    differentFronts++;
+                }
+            }
+        }
+        // The network is one on which the coordinator could not match the pruned router.
+        assertTrue(differentFronts > 0);
+    }
+
+    private static Set<Long> criteriaOf(ParetoFront front) {
+        Set<Long> criteria = new TreeSet<>();
+        front.forEach(c -> criteria.add(PackedCriteria.withPayload(c, 0)));
+        return criteria;
+    }
+}
@@ -0,0 +1,97 @@
+package ch.epfl.rechor.timetable;
+
+import ch.epfl.rechor.journey.Router;
+import ch.epfl.rechor.timetable.mapped.FileTimeTable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmark comparing an ArrayTimeTable with the FileTimeTable it copies: the latency of the
+ * first query, loading included, the throughput of a scan of the connections of a day reading
+ * all their fields, as the router does, and the median time of a query once warmed up.
+ * The arguments are the directory of the timetable, the date of the queries and the timetable
+ * measured ("file" or "array"), by default "timetable", the current date and "file".
+ * Each run measures a single timetable, so that its first query is the first of the JVM and
+ * that the accesses to its connections are compiled for its class only; the two timetables
+ * are compared by running the benchmark once for each. As the files of the timetable stay in
+ * the page cache of the system once read, the first query is only measured cold after the
+ * cache was dropped.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class ArrayTimeTableBenchmark {
+
+    private static final int WARM_UP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 30;
+    private static final int QUERIED_STATIONS = 20;
+
+    private ArrayTimeTableBenchmark() {}
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : "timetable");
+        LocalDate date = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.now();
+        boolean array = args.length > 2 && args[2].equals("array");
+
+        long start = System.nanoTime();
+        TimeTable timeTable = array
+                ? ArrayTimeTable.copyOf(FileTimeTable.in(directory), List.of(date))
+                : FileTimeTable.in(directory);
+        new Router(new CachedTimeTable(timeTable)).profile(date, 0);
+        System.out.printf("%s timetable%n", array ? "array" : "file");
+        System.out.printf("first query, loading included: %.1f ms%n", millisSince(start));
+        System.out.printf("connections scanned per us: %.1f%n",
+                scanThroughput(timeTable.connectionsFor(date)));
+        System.out.printf("median query: %.2f ms%n", medianQuery(timeTable, date));
+    }
+
+    private static double millisSince(long start) {
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /**
+     * Returns the number of connections scanned per microsecond, in the best round.
+     */
+    private static double scanThroughput(Connections connections) {
+        long best = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int round = 0; round < WARM_UP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = connections.size() - 1; i >= 0; i--) {
+                checksum += connections.depStopId(i) + connections.depMins(i)
+                        + connections.arrStopId(i) + connections.arrMins(i)
+                        + connections.tripPos(i) + connections.nextConnectionId(i);
+            }
+            if (round >= WARM_UP_ROUNDS) {
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+        if (checksum == 42) {
+            System.out.println();
+        }
+        return connections.size() * 1e3 / best;
+    }
+
+    /**
+     * Returns the median time of a query to one of the first stations, once warmed up.
+     */
+    private static double medianQuery(TimeTable timeTable, LocalDate date) {
+        Router router = new Router(new CachedTimeTable(timeTable));
+        int stations = Math.min(QUERIED_STATIONS, timeTable.stations().size());
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            router.profile(date, round % stations);
+        }
+        double[] times = new double[MEASURED_ROUNDS];
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            router.profile(date, round % stations);
+            times[round] = millisSince(start);
+        }
+        Arrays.sort(times);
+        return times[MEASURED_ROUNDS / 2];
+    }
+}
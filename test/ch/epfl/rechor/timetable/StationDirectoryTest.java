@@ -0,0 +1,158 @@
+package ch.epfl.rechor.timetable;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the stations designated by the names and aliases of a station directory.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+class StationDirectoryTest {
+
+    private static final List<String> NAMES = List.of("Lausanne", "Renens VD", "Morges",
+            "Lausanne", "Genève", "Zürich HB");
+
+    /**
+     * The aliases of the stations, and the name of their station.
+     */
+    private static final List<List<String>> ALIASES = List.of(
+            List.of("Losanna", "Lausanne"),
+            List.of("Ginevra", "Genève"),
+            List.of("Zurich", "Zürich HB"),
+            List.of("Morsee", "Morges"),
+            List.of("Berna", "Bern"),
+            List.of("Renens", "Renens VD"),
+            List.of("Morges", "Lausanne"));
+
+    @Test
+    void stationIdGivesTheStationOfANameOrAnAlias() {
+        StationDirectory directory = StationDirectory.of(new TestTimeTable(NAMES, ALIASES));
+
+        assertEquals(1, directory.stationId("Renens VD"));
+        assertEquals(4, directory.stationId("Genève"));
+        assertEquals(5, directory.stationId("Zürich HB"));
+        assertEquals(0, directory.stationId("Losanna"));
+        assertEquals(4, directory.stationId("Ginevra"));
+        assertEquals(1, directory.stationId("Renens"));
+
+        // Duplicate names designate the first station, and names prevail over aliases.
+        assertEquals(0, directory.stationId("Lausanne"));
+        assertEquals(2, directory.stationId("Morges"));
+
+        // An alias of a station that does not exist designates no station.
+        assertEquals(-1, directory.stationId("Berna"));
+        assertEquals(-1, directory.stationId("Bern"));
+        assertEquals(-1, directory.stationId("lausanne"));
+        assertEquals(-1, directory.stationId(""));
+
+        // The distinct names and the aliases of existing stations, other than the names.
+        assertEquals(10, directory.size());
+    }
+
+    @Test
+    void stationIdFindsAllTheNamesOfALargeDirectory() {
+        List<String> names = new ArrayList<>();
+        List<List<String>> aliases = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            names.add("Station " + i);
+            aliases.add(List.of("Alias " + i, "Station " + (i / 2)));
+        }
+        StationDirectory directory = StationDirectory.of(new TestTimeTable(names, aliases));
+
+        assertEquals(10_000, directory.size());
+        for (int i = 0; i < 5_000; i++) {
+            assertEquals(i, directory.stationId("Station " + i));
+            assertEquals(i / 2, directory.stationId("Alias " + i));
+            assertEquals(-1, directory.stationId("Station " + (5_000 + i)));
+        }
+    }
+
+    /**
+     * Timetable having only stations, of the given names, and the given aliases.
+     */
+    private record TestTimeTable(List<String> names, List<List<String>> aliases)
+            implements TimeTable {
+
+        @Override
+        public Stations stations() {
+            return new Stations() {
+                @Override
+                public String name(int id) {
+                    return names.get(id);
+                }
+
+                @Override
+                public double longitude(int id) {
+                    return 0;
+                }
+
+                @Override
+                public double latitude(int id) {
+                    return 0;
+                }
+
+                @Override
+                public int size() {
+                    return names.size();
+                }
+            };
+        }
+
+        @Override
+        public StationAliases stationAliases() {
+            return new StationAliases() {
+                @Override
+                public String alias(int id) {
+                    return aliases.get(id).get(0);
+                }
+
+                @Override
+                public String stationName(int id) {
+                    return aliases.get(id).get(1);
+                }
+
+                @Override
+                public int size() {
+                    return aliases.size();
+                }
+            };
+        }
+
+        @Override
+        public StationSpatialIndex stationSpatialIndex() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Platforms platforms() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Routes routes() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Transfers transfers() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Trips tripsFor(LocalDate date) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Connections connectionsFor(LocalDate date) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
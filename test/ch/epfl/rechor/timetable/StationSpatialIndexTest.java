@@ -0,0 +1,175 @@
+package ch.epfl.rechor.timetable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the nearest stations and the stations within a distance given by the spatial index
+ * against a scan of all the stations.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+class StationSpatialIndexTest {
+
+    private static final int STATION_COUNT = 500;
+
+    /**
+     * The number of meters in a unit of latitude, as the index computes it.
+     */
+    private static final double METERS_PER_UNIT =
+            2 * Math.PI * 6_371_000 / StationCoordinates.UNITS_PER_TURN;
+
+    private static final long MASK_32_BITS = 0xFFFF_FFFFL;
+
+    /**
+     * Stations around Lausanne, every tenth one at the same place as the one before it.
+     */
+    private static TestStations stations(Random random) {
+        double[] longitudes = new double[STATION_COUNT];
+        double[] latitudes = new double[STATION_COUNT];
+        for (int i = 0; i < STATION_COUNT; i++) {
+            boolean duplicate = i % 10 == 9;
+            longitudes[i] = duplicate ? longitudes[i - 1] : 6.4 + 0.4 * random.nextDouble();
+            latitudes[i] = duplicate ? latitudes[i - 1] : 46.4 + 0.3 * random.nextDouble();
+        }
+        return new TestStations(longitudes, latitudes);
+    }
+
+    @Test
+    void nearestStationsAreThoseOfTheScan() {
+        Random random = new Random(2025);
+        TestStations stations = stations(random);
+        StationSpatialIndex index = StationSpatialIndex.of(stations);
+        assertEquals(STATION_COUNT, index.size());
+
+        for (int q = 0; q < 200; q++) {
+            double longitude;
+            double latitude;
+            if (q % 2 == 0) {
+                int station = random.nextInt(STATION_COUNT);
+                longitude = stations.longitude(station);
+                latitude = stations.latitude(station);
+            } else {
+                longitude = 6.3 + 0.6 * random.nextDouble();
+                latitude = 46.3 + 0.5 * random.nextDouble();
+            }
+            long[] keys = scan(stations, longitude, latitude);
+            for (int count : new int[]{0, 1, 2, 7, 50, STATION_COUNT, STATION_COUNT + 10}) {
+                assertArrayEquals(stationIds(keys, Math.min(count, STATION_COUNT)),
+                        index.nearest(longitude, latitude, count));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> index.nearest(6.6, 46.5, -1));
+    }
+
+    @Test
+    void stationsWithinADistanceAreThoseOfTheScan() {
+        Random random = new Random(2025);
+        TestStations stations = stations(random);
+        StationSpatialIndex index = StationSpatialIndex.of(stations);
+
+        for (int q = 0; q < 200; q++) {
+            int station = random.nextInt(STATION_COUNT);
+            double longitude = q % 2 == 0
+                    ? stations.longitude(station)
+                    : 6.3 + 0.6 * random.nextDouble();
+            double latitude = q % 2 == 0
+                    ? stations.latitude(station)
+                    : 46.3 + 0.5 * random.nextDouble();
+            long[] keys = scan(stations, longitude, latitude);
+            for (double radius : new double[]{0, 1, 250, 1_000, 5_000, 100_000}) {
+                int[] expected = Arrays.stream(keys)
+                        .mapToInt(key -> (int) (key & MASK_32_BITS))
+                        .filter(i -> squaredDistance(stations, i, longitude, latitude)
+                                <= radius * radius)
+                        .toArray();
+                assertArrayEquals(expected, index.within(longitude, latitude, radius));
+            }
+        }
+
+        // A radius of 0 gives the stations at the point, including those sharing its place.
+        assertArrayEquals(new int[]{8, 9}, index.within(stations.longitude(9),
+                stations.latitude(9), 0));
+        assertArrayEquals(new int[]{8, 9}, index.nearest(stations.longitude(8),
+                stations.latitude(8), 2));
+        assertThrows(IllegalArgumentException.class, () -> index.within(6.6, 46.5, -1));
+        assertThrows(IllegalArgumentException.class, () -> index.within(6.6, 46.5, Double.NaN));
+    }
+
+    @Test
+    void emptyIndexHasNoStations() {
+        StationSpatialIndex index = StationSpatialIndex.of(new TestStations(new double[0],
+                new double[0]));
+        assertEquals(0, index.size());
+        assertArrayEquals(new int[0], index.nearest(6.6, 46.5, 3));
+        assertArrayEquals(new int[0], index.within(6.6, 46.5, 1_000));
+    }
+
+    /**
+     * Returns the keys of all the stations sorted by distance to the given point and then by
+     * index, each packing the squared distance as a float with the index of the station.
+     */
+    private static long[] scan(TestStations stations, double longitude, double latitude) {
+        long[] keys = new long[stations.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) Float.floatToIntBits(
+                    (float) squaredDistance(stations, i, longitude, latitude)) << Integer.SIZE
+                    | i;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Returns the squared distance in meters between the given station and the given point,
+     * with the equirectangular projection centered on the point.
+     */
+    private static double squaredDistance(TestStations stations, int station, double longitude,
+                                          double latitude) {
+        double metersPerLongitudeUnit = METERS_PER_UNIT * Math.cos(Math.toRadians(latitude));
+        double x = ((long) StationCoordinates.unitsOf(stations.longitude(station))
+                - StationCoordinates.unitsOf(longitude)) * metersPerLongitudeUnit;
+        double y = ((long) StationCoordinates.unitsOf(stations.latitude(station))
+                - StationCoordinates.unitsOf(latitude)) * METERS_PER_UNIT;
+        return x * x + y * y;
+    }
+
+    private static int[] stationIds(long[] keys, int count) {
+        return Arrays.stream(keys, 0, count)
+                .mapToInt(key -> (int) (key & MASK_32_BITS))
+                .toArray();
+    }
+
+    /**
+     * Stations of the given coordinates, named after their index.
+     */
+    private record TestStations(double[] longitudes, double[] latitudes) implements Stations {
+
+        @Override
+        public String name(int id) {
+            return "Station " + id;
+        }
+
+        @Override
+        public double longitude(int id) {
+            return longitudes[id];
+        }
+
+        @Override
+        public double latitude(int id) {
+            return latitudes[id];
+        }
+
+        @Override
+        public int size() {
+            return longitudes.length;
+        }
+    }
+}
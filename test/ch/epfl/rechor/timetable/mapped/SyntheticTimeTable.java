@@ -0,0 +1,245 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import ch.epfl.rechor.Bits32_24_8;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Writer of a small synthetic timetable for the tests: stations served by trips going back
+ * and forth along them, each station having platforms and transfers to itself and to its
+ * neighbours, over a single day without service calendar. The transfers are not closed under
+ * walking: two stations apart, the neighbours of a station cannot walk to each other.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+public final class SyntheticTimeTable {
+
+    /**
+     * The number of stations of the network.
+     */
+    public static final int STATION_COUNT = 40;
+
+    /**
+     * The number of routes of the network.
+     */
+    public static final int ROUTE_COUNT = 6;
+
+    /**
+     * The date of the only day of the network.
+     */
+    public static final LocalDate DATE = LocalDate.of(2025, 3, 18);
+
+    /**
+     * The number of platforms of each station.
+     */
+    private static final int PLATFORMS_PER_STATION = 2;
+
+    /**
+     * The number of trips of the network.
+     */
+    private static final int TRIP_COUNT = 120;
+
+    /**
+     * The structure of the successors of the connections.
+     */
+    private static final Structure SUCCESSOR_STRUCTURE =
+            new Structure(Structure.field(0, Structure.FieldType.S32));
+
+    private SyntheticTimeTable() {}
+
+    /**
+     * Writes the network in the given directory, in the given version of the format, its
+     * stations being aligned from west to east.
+     *
+     * @param directory the directory of the timetable, created if needed
+     * @param version the version of the format
+     * @param padding the number of stations and routes used by no trip written before those
+     *                of the network
+     * @return the directory of the timetable
+     * @throws IOException if writing the files causes a problem
+     */
+    public static Path write(Path directory, int version, int padding) throws IOException {
+        return write(directory, version, padding, station -> 6.5 + station * 1e-4);
+    }
+
+    /**
+     * Writes the network in the given directory, in the given version of the format,
+     * preceded by the given number of stations and routes used by no trip. The narrow
+     * version is written without headers, like the files of the original format.
+     *
+     * @param directory the directory of the timetable, created if needed
+     * @param version the version of the format
+     * @param padding the number of stations and routes used by no trip written before those
+     *                of the network
+     * @param longitudes the longitude of each station of the network, in degrees, all of them
+     *                   being at the same latitude
+     * @return the directory of the timetable
+     * @throws IOException if writing the files causes a problem
+     */
+    public static Path write(Path directory, int version, int padding,
+                             IntToDoubleFunction longitudes) throws IOException {
+        Files.createDirectories(directory.resolve(DATE.toString()));
+        boolean withHeader = version != FileHeader.DEFAULT_VERSION;
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int stationCount = padding + STATION_COUNT;
+
+        try (StructuredBufferWriter writer = writer(BufferedStations.structure(version),
+                directory.resolve("stations.bin"), version, withHeader)) {
+            for (int station = 0; station < stationCount; station++) {
+                String name = station < padding
+                        ? "Padding " + station
+                        : "Station " + (station - padding);
+                writer.newRecord()
+                        .putUnsigned(BufferedStations.NAME_ID, stringId(name, stringIds, strings))
+                        .putS32(BufferedStations.LON, unitsOf(station < padding
+                                ? 6.5
+                                : longitudes.applyAsDouble(station - padding)))
+                        .putS32(BufferedStations.LAT, unitsOf(46.5));
+            }
+        }
+        try (StructuredBufferWriter writer = writer(BufferedStationAliases.structure(version),
+                directory.resolve("station-aliases.bin"), version, withHeader)) {
+            for (int station = 0; station < STATION_COUNT; station++) {
+                writer.newRecord()
+                        .putUnsigned(BufferedStationAliases.ALIAS_ID,
+                                stringId("Alias " + station, stringIds, strings))
+                        .putUnsigned(BufferedStationAliases.STATION_NAME_ID,
+                                stringId("Station " + station, stringIds, strings));
+            }
+        }
+        try (StructuredBufferWriter writer = writer(BufferedPlatforms.structure(version),
+                directory.resolve("platforms.bin"), version, withHeader)) {
+            for (int station = 0; station < STATION_COUNT; station++) {
+                for (int platform = 0; platform < PLATFORMS_PER_STATION; platform++) {
+                    writer.newRecord()
+                            .putUnsigned(BufferedPlatforms.NAME_ID,
+                                    stringId(Integer.toString(platform + 1), stringIds, strings))
+                            .putUnsigned(BufferedPlatforms.STATION_ID, padding + station);
+                }
+            }
+        }
+        try (StructuredBufferWriter writer = writer(BufferedRoutes.structure(version),
+                directory.resolve("routes.bin"), version, withHeader)) {
+            for (int route = 0; route < padding + ROUTE_COUNT; route++) {
+                String name = route < padding
+                        ? "Padding route " + route
+                        : "Route " + (route - padding);
+                writer.newRecord()
+                        .putUnsigned(BufferedRoutes.NAME_ID, stringId(name, stringIds, strings))
+                        .putU8(BufferedRoutes.KIND, Math.floorMod(route - padding, 7));
+            }
+        }
+        try (StructuredBufferWriter writer = writer(BufferedTransfers.structure(version),
+                directory.resolve("transfers.bin"), version, withHeader)) {
+            for (int arrStation = 0; arrStation < STATION_COUNT; arrStation++) {
+                for (int depStation = Math.max(0, arrStation - 1);
+                     depStation <= Math.min(STATION_COUNT - 1, arrStation + 1); depStation++) {
+                    writer.newRecord()
+                            .putUnsigned(BufferedTransfers.DEP_STATION_ID, padding + depStation)
+                            .putUnsigned(BufferedTransfers.ARR_STATION_ID, padding + arrStation)
+                            .putU8(BufferedTransfers.TRANSFER_MINUTES,
+                                    depStation == arrStation ? 2 : 6);
+                }
+            }
+        }
+
+        Random random = new Random(2025);
+        List<int[]> connections = new ArrayList<>();
+        try (StructuredBufferWriter writer = writer(BufferedTrips.structure(version),
+                directory.resolve(DATE + "/trips.bin"), version, withHeader)) {
+            for (int trip = 0; trip < TRIP_COUNT; trip++) {
+                int station = random.nextInt(STATION_COUNT);
+                int direction = station < STATION_COUNT / 2 ? 1 : -1;
+                int minutes = 6 * 60 + random.nextInt(12 * 60);
+                int length = 2 + random.nextInt(8);
+                for (int position = 0; position < length; position++) {
+                    int next = station + direction;
+                    int arrMinutes = minutes + 2 + random.nextInt(5);
+                    connections.add(new int[]{stopId(station, random, stationCount), minutes,
+                            stopId(next, random, stationCount), arrMinutes, trip, position});
+                    station = next;
+                    minutes = arrMinutes + random.nextInt(2);
+                }
+                writer.newRecord()
+                        .putUnsigned(BufferedTrips.ROUTE_ID, padding + trip % ROUTE_COUNT)
+                        .putUnsigned(BufferedTrips.DESTINATION_ID,
+                                stringId("Station " + station, stringIds, strings));
+            }
+        }
+        connections.sort(Comparator.<int[]>comparingInt(c -> -c[1])
+                .thenComparingInt(c -> c[4]).thenComparingInt(c -> c[5]));
+        Map<Long, Integer> connectionIds = new HashMap<>();
+        for (int id = 0; id < connections.size(); id++) {
+            connectionIds.put(tripPosition(connections.get(id)[4], connections.get(id)[5]), id);
+        }
+        try (StructuredBufferWriter writer = writer(BufferedConnections.structure(version),
+                directory.resolve(DATE + "/connections.bin"), version, withHeader);
+             StructuredBufferWriter successors = writer(SUCCESSOR_STRUCTURE,
+                     directory.resolve(DATE + "/connections-succ.bin"), version, withHeader)) {
+            for (int[] connection : connections) {
+                writer.newRecord()
+                        .putUnsigned(BufferedConnections.DEP_STOP_ID, connection[0])
+                        .putU16(BufferedConnections.DEP_MINUTES, connection[1])
+                        .putUnsigned(BufferedConnections.ARR_STOP_ID, connection[2])
+                        .putU16(BufferedConnections.ARR_MINUTES, connection[3])
+                        .putS32(BufferedConnections.TRIP_POS_ID,
+                                Bits32_24_8.pack(connection[4], connection[5]));
+                Integer successor = connectionIds.get(
+                        tripPosition(connection[4], connection[5] + 1));
+                successors.newRecord().putS32(0, successor != null
+                        ? successor
+                        : connectionIds.get(tripPosition(connection[4], 0)));
+            }
+        }
+        Files.write(directory.resolve("strings.txt"), strings, StandardCharsets.ISO_8859_1);
+        return directory;
+    }
+
+    private static StructuredBufferWriter writer(Structure structure, Path path, int version,
+                                                 boolean withHeader) throws IOException {
+        return withHeader
+                ? new StructuredBufferWriter(structure, path, version)
+                : new StructuredBufferWriter(structure, path);
+    }
+
+    private static int unitsOf(double degrees) {
+        return (int) Math.round(Math.scalb(degrees / 360, Integer.SIZE));
+    }
+
+    private static int stringId(String string, Map<String, Integer> stringIds,
+                                List<String> strings) {
+        return stringIds.computeIfAbsent(string, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+    /**
+     * Returns the identifier of the given real station, or of one of its platforms, the
+     * platforms being numbered after all the stations.
+     */
+    private static int stopId(int station, Random random, int stationCount) {
+        int platform = random.nextInt(PLATFORMS_PER_STATION + 1);
+        int padding = stationCount - STATION_COUNT;
+        return platform == PLATFORMS_PER_STATION
+                ? padding + station
+                : stationCount + station * PLATFORMS_PER_STATION + platform;
+    }
+
+    private static long tripPosition(int trip, int position) {
+        return (long) trip << Integer.SIZE | position;
+    }
+}
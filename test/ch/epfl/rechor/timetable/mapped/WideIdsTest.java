@@ -0,0 +1,119 @@
+package ch.epfl.rechor.timetable.mapped;
+
+import ch.epfl.rechor.journey.Journey;
+import ch.epfl.rechor.journey.JourneyExtractor;
+import ch.epfl.rechor.journey.Profile;
+import ch.epfl.rechor.journey.Router;
+import ch.epfl.rechor.timetable.TimeTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ch.epfl.rechor.timetable.mapped.SyntheticTimeTable.DATE;
+import static ch.epfl.rechor.timetable.mapped.SyntheticTimeTable.ROUTE_COUNT;
+import static ch.epfl.rechor.timetable.mapped.SyntheticTimeTable.STATION_COUNT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the router works unchanged on timetables in the wide-ids format whose
+ * identifiers exceed the limits of the narrow format.
+ *
+ * @author Matteo Lazzari (397247)
+ * @author Pamphil Nedev (380400)
+ */
+class WideIdsTest {
+
+    /**
+     * The largest identifier of the narrow format.
+     */
+    private static final int U16_LIMIT = 0xFFFF;
+
+    /**
+     * The number of stations and routes written before the real ones in the wide timetable,
+     * so that the identifiers of the real ones exceed the limit of the narrow format.
+     */
+    private static final int PADDING = U16_LIMIT + 5_000;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void wideTimeTableExceedsNarrowLimits() throws IOException {
+        TimeTable wide = FileTimeTable.in(write("wide", FileHeader.WIDE_IDS_VERSION, PADDING));
+
+        int lastStation = PADDING + STATION_COUNT - 1;
+        assertTrue(wide.stations().size() > U16_LIMIT);
+        assertEquals("Station " + (STATION_COUNT - 1), wide.stations().name(lastStation));
+        assertEquals(lastStation, wide.platforms().stationId(wide.platforms().size() - 1));
+        assertEquals("Station 0", wide.stationAliases().stationName(0));
+        assertEquals("Route " + (ROUTE_COUNT - 1), wide.routes().name(PADDING + ROUTE_COUNT - 1));
+        assertTrue(wide.connectionsFor(DATE).depStopId(0) > U16_LIMIT);
+    }
+
+    @Test
+    void routerFindsTheSameJourneysInTheWideFormat() throws IOException {
+        TimeTable narrow = FileTimeTable.in(write("narrow", FileHeader.DEFAULT_VERSION, 0));
+        TimeTable wide = FileTimeTable.in(write("wide", FileHeader.WIDE_IDS_VERSION, PADDING));
+
+        int journeyCount = 0;
+        for (int arrStation : new int[]{0, STATION_COUNT / 2, STATION_COUNT - 1}) {
+            Profile narrowProfile = new Router(narrow).profile(DATE, arrStation);
+            Profile wideProfile = new Router(wide).profile(DATE, PADDING + arrStation);
+            for (int depStation = 0; depStation < STATION_COUNT; depStation++) {
+                if (depStation == arrStation) continue;
+                List<Journey> narrowJourneys =
+                        JourneyExtractor.journeys(narrowProfile, depStation);
+                assertEquals(narrowJourneys,
+                        JourneyExtractor.journeys(wideProfile, PADDING + depStation));
+                journeyCount += narrowJourneys.size();
+            }
+        }
+        assertTrue(journeyCount > 0);
+    }
+
+    @Test
+    void wideFormatWithoutPaddingGivesTheSameProfileFronts() throws IOException {
+        TimeTable narrow = FileTimeTable.in(write("narrow", FileHeader.DEFAULT_VERSION, 0));
+        TimeTable wide = FileTimeTable.in(write("wide", FileHeader.WIDE_IDS_VERSION, 0));
+
+        Profile narrowProfile = new Router(narrow).profile(DATE, 0);
+        Profile wideProfile = new Router(wide).profile(DATE, 0);
+        boolean anyCriteria = false;
+        for (int station = 0; station < STATION_COUNT; station++) {
+            assertEquals(criteriaOf(narrowProfile, station), criteriaOf(wideProfile, station));
+            anyCriteria |= !criteriaOf(narrowProfile, station).isEmpty();
+        }
+        assertTrue(anyCriteria);
+    }
+
+    @Test
+    void wideFilesStartWithAHeaderOfTheirVersion() throws IOException {
+        Path directory = write("wide", FileHeader.WIDE_IDS_VERSION, PADDING);
+        for (String file : List.of("stations.bin", "platforms.bin", "station-aliases.bin",
+                "routes.bin", "transfers.bin", DATE + "/trips.bin", DATE + "/connections.bin")) {
+            FileHeader header = FileHeader.read(
+                    ByteBuffer.wrap(Files.readAllBytes(directory.resolve(file))));
+            assertEquals(FileHeader.WIDE_IDS_VERSION, header.version());
+        }
+        assertFalse(FileHeader.isPresentIn(ByteBuffer.wrap(Files.readAllBytes(
+                write("narrow", FileHeader.DEFAULT_VERSION, 0).resolve("stations.bin")))));
+    }
+
+    private Path write(String name, int version, int padding) throws IOException {
+        return SyntheticTimeTable.write(temporaryDirectory.resolve(name), version, padding);
+    }
+
+    private static List<Long> criteriaOf(Profile profile, int station) {
+        List<Long> criteria = new ArrayList<>();
+        profile.forStation(station).forEach(criteria::add);
+        return criteria;
+    }
+}